@@ -0,0 +1,37 @@
+package com.eyespot.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler attached, so that every result reports allocated bytes
+ * per operation ({@code gc.alloc.rate.norm}) next to the throughput. Accepts the usual JMH command
+ * line, for example {@code java -jar benchmarks.jar SampleDecode -p sample=24bit.bmp}.
+ *
+ * @author Kevin Babu
+ */
+public final class Benchmarks {
+
+  private Benchmarks() {}
+
+  /**
+   * Runs the benchmarks selected on the command line, or all of them.
+   *
+   * @param args JMH command line options
+   * @throws CommandLineOptionException if the options cannot be parsed
+   * @throws RunnerException if a benchmark fails
+   */
+  public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+    CommandLineOptions options = new CommandLineOptions(args);
+    ChainedOptionsBuilder builder = new OptionsBuilder().parent(options);
+    if (options.getProfilers().isEmpty()) {
+      builder.addProfiler(GCProfiler.class);
+    }
+    new Runner(builder.build()).run();
+  }
+}
@@ -0,0 +1,119 @@
+package com.eyespot.benchmarks;
+
+import com.eyespot.imageparser.Picture;
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures every decode entry point on the sample BMPs from the library's tests, one per pixel
+ * format and header version.
+ *
+ * @author Kevin Babu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SampleDecodeBenchmark {
+
+  /** The sample file: one for each bit depth, compression and header version. */
+  @Param({
+    "1bit.bmp", // 1 bpp, palette
+    "4bit.bmp", // 4 bpp, palette
+    "8bit.bmp", // 8 bpp, palette
+    "4bit_compressed.bmp", // RLE4
+    "8bit_compressed.bmp", // RLE8
+    "16bit.bmp", // 16 bpp, BI_RGB 555
+    "16bit_555_bitfield.bmp", // 16 bpp, BI_BITFIELDS 555
+    "16bit_565_bitfield.bmp", // 16 bpp, BI_BITFIELDS 565
+    "24bit.bmp", // 24 bpp
+    "32bit_888_bitfield.bmp", // 32 bpp, BI_BITFIELDS
+    "32bit_888_bitfield_v4.bmp", // 32 bpp, BITMAPV4HEADER
+    "32_bit_transparent_v4.bmp", // 32 bpp with alpha, BITMAPV4HEADER
+    "32bit_v5.bmp" // 32 bpp, BITMAPV5HEADER
+  })
+  public String sample;
+
+  private Path path;
+  private byte[] bytes;
+  private BitmapParser parser;
+  private PixelBuffer decoded;
+
+  /**
+   * Reads the sample and parses it once for the benchmarks that start from a parser.
+   *
+   * @throws IOException if the sample cannot be read
+   */
+  @Setup
+  public void setUp() throws IOException {
+    path = Samples.resolve(sample);
+    bytes = Files.readAllBytes(path);
+    parser = new BitmapParser(bytes);
+    decoded = parser.decode();
+  }
+
+  /** @return a parser built from bytes already in memory, which parses the headers */
+  @Benchmark
+  public BitmapParser parseBytes() {
+    return new BitmapParser(bytes);
+  }
+
+  /**
+   * @return a parser built from the file, including the read
+   * @throws IOException if the sample cannot be read
+   */
+  @Benchmark
+  public BitmapParser parseFile() throws IOException {
+    return new BitmapParser(path);
+  }
+
+  /** @return the pixels as the legacy {@code int[][]} */
+  @Benchmark
+  public int[][] getPixels() {
+    return parser.getPixels();
+  }
+
+  /** @return the pixels as a flat buffer */
+  @Benchmark
+  public PixelBuffer decode() {
+    return parser.decode();
+  }
+
+  /** @return whether the parser reports an alpha channel from the headers */
+  @Benchmark
+  public boolean hasAlphaChannel() {
+    return parser.hasAlphaChannel();
+  }
+
+  /** @return whether the decoded pixels use their alpha channel */
+  @Benchmark
+  public boolean hasAlphaChannelDecoded() {
+    return parser.hasAlphaChannel(decoded);
+  }
+
+  /**
+   * @return a picture loaded from the file
+   * @throws IOException if the sample cannot be read
+   */
+  @Benchmark
+  public Picture picture() throws IOException {
+    return new Picture(path);
+  }
+}
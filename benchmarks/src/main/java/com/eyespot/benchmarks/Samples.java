@@ -0,0 +1,102 @@
+package com.eyespot.benchmarks;
+
+import com.eyespot.imageparser.ColourQuantizer;
+import com.eyespot.imageparser.IndexedImage;
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.bitmap.BitmapWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Locates the sample images shipped with the library's tests and generates large synthetic ones.
+ *
+ * @author Kevin Babu
+ */
+final class Samples {
+  /** System property naming the directory that holds the sample BMPs. */
+  static final String DIRECTORY_PROPERTY = "eyespot.samples";
+
+  private Samples() {}
+
+  /**
+   * Resolves a sample file. The directory is taken from the {@value #DIRECTORY_PROPERTY} system
+   * property, or else the library's {@code src/test/resources}, whether the benchmarks are run from
+   * the repository root or from the {@code benchmarks} directory.
+   *
+   * @param name the file name
+   * @return the path of the sample
+   * @throws IllegalStateException if the sample cannot be found
+   */
+  static Path resolve(String name) {
+    String configured = System.getProperty(DIRECTORY_PROPERTY);
+    Path[] candidates =
+        configured != null
+            ? new Path[] {Paths.get(configured)}
+            : new Path[] {
+              Paths.get("src", "test", "resources"), Paths.get("..", "src", "test", "resources")
+            };
+    for (Path directory : candidates) {
+      Path file = directory.resolve(name);
+      if (Files.isRegularFile(file)) {
+        return file;
+      }
+    }
+    throw new IllegalStateException(
+        "Sample " + name + " not found; set -D" + DIRECTORY_PROPERTY + " to its directory");
+  }
+
+  /**
+   * Creates a photo-like image: smooth gradients in every channel with a little noise, so that
+   * indexed and run-length encodings see realistic runs and palettes.
+   *
+   * @param width the width in pixels
+   * @param height the height in pixels
+   * @return the image
+   */
+  static PixelBuffer photo(int width, int height) {
+    Random random = new Random(42);
+    PixelBuffer pixels = new PixelBuffer(width, height);
+    int[] row = new int[width];
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int red = x * 255 / Math.max(1, width - 1);
+        int green = y * 255 / Math.max(1, height - 1);
+        int blue = Math.min(255, Math.max(0, (red + green) / 2 + random.nextInt(9) - 4));
+        row[x] = 0xFF000000 | red << 16 | green << 8 | blue;
+      }
+      pixels.setARGB(0, y, width, 1, row, 0, width);
+    }
+    return pixels;
+  }
+
+  /**
+   * Encodes an image as a BMP in memory. Indexed formats are first quantized to the largest palette
+   * the format allows.
+   *
+   * @param pixels the image
+   * @param format the format to write
+   * @return the BMP file contents
+   */
+  static byte[] encode(PixelBuffer pixels, BitmapWriter.Format format) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    BitmapWriter writer = new BitmapWriter(format);
+    try (WritableByteChannel channel = Channels.newChannel(bytes)) {
+      if (format.isIndexed()) {
+        int colours = Math.min(IndexedImage.MAX_PALETTE_SIZE, format.getMaxPaletteSize());
+        writer.write(new ColourQuantizer(colours, false).quantize(pixels), channel);
+      } else {
+        writer.write(pixels, channel);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+}
@@ -0,0 +1,88 @@
+package com.eyespot.benchmarks;
+
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import com.eyespot.imageparser.bitmap.BitmapWriter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures decoding of large generated BMPs, from a typical screenshot size up to a 12-megapixel
+ * camera frame, in every format {@link BitmapWriter} can produce.
+ *
+ * @author Kevin Babu
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class SyntheticDecodeBenchmark {
+
+  /** The format the image is encoded in. */
+  @Param({
+    "RGB24",
+    "RGB32",
+    "RGB565",
+    "ARGB32_V4",
+    "ARGB32_V5",
+    "INDEXED8",
+    "INDEXED4",
+    "INDEXED1",
+    "RLE8",
+    "RLE4"
+  })
+  public BitmapWriter.Format format;
+
+  /** The dimensions of the image, as width x height. */
+  @Param({"1920x1080", "4000x3000"})
+  public String size;
+
+  private byte[] bytes;
+  private BitmapParser parser;
+
+  /** Generates and encodes the image. */
+  @Setup
+  public void setUp() {
+    String[] dimensions = size.split("x");
+    PixelBuffer pixels =
+        Samples.photo(Integer.parseInt(dimensions[0]), Integer.parseInt(dimensions[1]));
+    bytes = Samples.encode(pixels, format);
+    parser = new BitmapParser(bytes);
+  }
+
+  /** @return a parser for the image, which parses the headers */
+  @Benchmark
+  public BitmapParser parse() {
+    return new BitmapParser(bytes);
+  }
+
+  /** @return the decoded pixels */
+  @Benchmark
+  public PixelBuffer decode() {
+    return parser.decode();
+  }
+
+  /** @return the pixels as the legacy {@code int[][]} */
+  @Benchmark
+  public int[][] getPixels() {
+    return parser.getPixels();
+  }
+
+  /** @return whether the image has an alpha channel */
+  @Benchmark
+  public boolean hasAlphaChannel() {
+    return parser.hasAlphaChannel();
+  }
+}
@@ -0,0 +1,401 @@
+package com.eyespot.imageparser;
+
+import com.eyespot.imageparser.util.RowBands;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Reduces the colours of an image to a palette of at most a given size, for palette formats such as
+ * 8 or 4 bits per pixel BMP.
+ *
+ * <p>The palette is chosen by median cut over a histogram of the image in RGB555 space: the box of
+ * colours with the largest spread of pixels is repeatedly split at its median along its longest
+ * side, and each final box contributes the mean colour of its pixels. The histogram is built in
+ * parallel over bands of rows, into one histogram per worker thread. Pixels are then mapped to the
+ * nearest palette colour, remembering the answer for each of the 32768 RGB555 cells so that the
+ * palette is searched at most once per cell. With {@linkplain #isDithering() dithering},
+ * Floyd–Steinberg error diffusion is applied in serpentine order, which is inherently sequential.
+ *
+ * <p>Images that already use few enough colours are converted exactly. Otherwise fully transparent
+ * pixels share one transparent palette entry, and all other pixels are treated as opaque.
+ *
+ * <p>Instances are immutable and may be shared between threads.
+ *
+ * @author Kevin Babu
+ * @see IndexedImage
+ */
+public final class ColourQuantizer {
+  private static final int BITS = 5; // per channel in the histogram
+  private static final int LEVELS = 1 << BITS;
+  private static final int CELLS = 1 << (3 * BITS); // RGB555 histogram cells
+  private static final int LOW_BITS = 8 - BITS; // bits of a channel below its cell
+  private static final int TRANSPARENT = 0x00000000;
+
+  private final int maxColours;
+  private final boolean isDithering;
+
+  /**
+   * Creates a quantizer.
+   *
+   * @param maxColours the maximum palette size, 2 to 256; 16 suits 4 bits per pixel
+   * @param isDithering whether to diffuse the quantization error with Floyd–Steinberg dithering
+   * @throws IllegalArgumentException if {@code maxColours} is out of range
+   */
+  public ColourQuantizer(int maxColours, boolean isDithering) {
+    if (maxColours < 2 || maxColours > IndexedImage.MAX_PALETTE_SIZE) {
+      throw new IllegalArgumentException(
+          "Palette size must be between 2 and "
+              + IndexedImage.MAX_PALETTE_SIZE
+              + ": "
+              + maxColours);
+    }
+    this.maxColours = maxColours;
+    this.isDithering = isDithering;
+  }
+
+  /** @return the maximum palette size */
+  public int getMaxColours() {
+    return maxColours;
+  }
+
+  /** @return {@code true} if the quantization error is diffused to neighbouring pixels */
+  public boolean isDithering() {
+    return isDithering;
+  }
+
+  /**
+   * Quantizes the pixels.
+   *
+   * @param pixels the pixels to quantize
+   * @return an indexed image whose palette has at most {@link #getMaxColours()} entries
+   */
+  public IndexedImage quantize(PixelBuffer pixels) {
+    Objects.requireNonNull(pixels, "Pixels cannot be null.");
+    IndexedImage exact = IndexedImage.fromPixels(pixels);
+    if (exact != null && exact.getPalette().length <= maxColours) {
+      return exact;
+    }
+
+    Histogram histogram = buildHistogram(pixels);
+    boolean hasTransparent = histogram.transparentCount > 0;
+    int[] palette = medianCut(histogram, hasTransparent ? maxColours - 1 : maxColours);
+    if (hasTransparent) {
+      palette = Arrays.copyOf(palette, palette.length + 1);
+      palette[palette.length - 1] = TRANSPARENT;
+    }
+
+    int width = pixels.width();
+    int height = pixels.height();
+    byte[] indices = new byte[width * height];
+    NearestColour nearest = new NearestColour(palette, hasTransparent ? palette.length - 1 : -1);
+    if (isDithering) {
+      dither(pixels, nearest, indices);
+    } else {
+      RowBands.forEach(
+          width,
+          height,
+          (first, last) -> {
+            int[] row = new int[width];
+            for (int y = first; y < last; y++) {
+              pixels.getARGB(0, y, width, 1, row, 0, width);
+              for (int x = 0; x < width; x++) {
+                indices[y * width + x] = (byte) nearest.indexOf(row[x]);
+              }
+            }
+          });
+    }
+    return new IndexedImage(width, height, palette, indices);
+  }
+
+  // pixel counts and channel sums per RGB555 cell; the sums only hold the bits below the cell
+  private static final class Histogram {
+    final int[] counts = new int[CELLS];
+    final long[] redLow = new long[CELLS];
+    final long[] greenLow = new long[CELLS];
+    final long[] blueLow = new long[CELLS];
+    long transparentCount;
+
+    void add(Histogram other) {
+      for (int i = 0; i < CELLS; i++) {
+        if (other.counts[i] != 0) {
+          counts[i] += other.counts[i];
+          redLow[i] += other.redLow[i];
+          greenLow[i] += other.greenLow[i];
+          blueLow[i] += other.blueLow[i];
+        }
+      }
+      transparentCount += other.transparentCount;
+    }
+  }
+
+  private static Histogram buildHistogram(PixelBuffer pixels) {
+    int width = pixels.width();
+    // one histogram per worker thread, since each is far larger than a band's worth of counts
+    Map<Thread, Histogram> histograms = new ConcurrentHashMap<>();
+    RowBands.forEach(
+        width,
+        pixels.height(),
+        (first, last) -> {
+          Histogram histogram =
+              histograms.computeIfAbsent(Thread.currentThread(), thread -> new Histogram());
+          int[] row = new int[width];
+          for (int y = first; y < last; y++) {
+            pixels.getARGB(0, y, width, 1, row, 0, width);
+            for (int argb : row) {
+              if ((argb >>> 24) == 0) {
+                histogram.transparentCount++;
+                continue;
+              }
+              int cell = cellOf(argb);
+              histogram.counts[cell]++;
+              histogram.redLow[cell] += (argb >>> 16) & ((1 << LOW_BITS) - 1);
+              histogram.greenLow[cell] += (argb >>> 8) & ((1 << LOW_BITS) - 1);
+              histogram.blueLow[cell] += argb & ((1 << LOW_BITS) - 1);
+            }
+          }
+        });
+    Histogram total = null;
+    for (Histogram histogram : histograms.values()) {
+      if (total == null) {
+        total = histogram;
+      } else {
+        total.add(histogram);
+      }
+    }
+    return total != null ? total : new Histogram();
+  }
+
+  private static int cellOf(int argb) {
+    return ((argb >>> 9) & 0x7C00) | ((argb >>> 6) & 0x03E0) | ((argb >>> 3) & 0x001F);
+  }
+
+  private static int channel(int cell, int axis) {
+    return (cell >>> (BITS * (2 - axis))) & (LEVELS - 1);
+  }
+
+  // splits the occupied cells into at most maxColours boxes and returns the mean colour of each
+  private static int[] medianCut(Histogram histogram, int maxColours) {
+    int[] cells = new int[CELLS];
+    int n = 0;
+    for (int cell = 0; cell < CELLS; cell++) {
+      if (histogram.counts[cell] != 0) {
+        cells[n++] = cell;
+      }
+    }
+    if (n == 0) {
+      return new int[0];
+    }
+
+    // box i holds cells[start[i]..end[i]) and is widest along axis[i], by range[i] levels
+    int[] start = new int[maxColours];
+    int[] end = new int[maxColours];
+    long[] population = new long[maxColours];
+    int[] axis = new int[maxColours];
+    int[] range = new int[maxColours];
+    end[0] = n;
+    for (int k = 0; k < n; k++) {
+      population[0] += histogram.counts[cells[k]];
+    }
+    measure(cells, start, end, axis, range, 0);
+    int boxes = 1;
+    int[] scratch = new int[n];
+    int[] levelCounts = new int[LEVELS + 1];
+    while (boxes < maxColours) {
+      int chosen = -1;
+      long bestScore = 0;
+      for (int i = 0; i < boxes; i++) {
+        long score = population[i] * range[i];
+        if (score > bestScore) {
+          bestScore = score;
+          chosen = i;
+        }
+      }
+      if (chosen < 0) {
+        break; // every box holds a single cell
+      }
+
+      // counting sort of the box along its axis, then cut at the first change of level where at
+      // least half of its pixels lie below
+      int from = start[chosen];
+      int to = end[chosen];
+      int a = axis[chosen];
+      Arrays.fill(levelCounts, 0);
+      for (int k = from; k < to; k++) {
+        levelCounts[channel(cells[k], a) + 1]++;
+      }
+      for (int v = 0; v < LEVELS; v++) {
+        levelCounts[v + 1] += levelCounts[v];
+      }
+      for (int k = from; k < to; k++) {
+        scratch[from + levelCounts[channel(cells[k], a)]++] = cells[k];
+      }
+      System.arraycopy(scratch, from, cells, from, to - from);
+
+      long half = population[chosen] / 2;
+      long below = 0;
+      long belowCut = 0;
+      int cut = to;
+      for (int k = from + 1; k < to; k++) {
+        below += histogram.counts[cells[k - 1]];
+        if (channel(cells[k], a) != channel(cells[k - 1], a)) {
+          cut = k;
+          belowCut = below;
+          if (below >= half) {
+            break;
+          }
+        }
+      }
+      start[boxes] = cut;
+      end[boxes] = to;
+      population[boxes] = population[chosen] - belowCut;
+      end[chosen] = cut;
+      population[chosen] = belowCut;
+      measure(cells, start, end, axis, range, chosen);
+      measure(cells, start, end, axis, range, boxes);
+      boxes++;
+    }
+
+    int[] palette = new int[boxes];
+    for (int i = 0; i < boxes; i++) {
+      long red = 0;
+      long green = 0;
+      long blue = 0;
+      for (int k = start[i]; k < end[i]; k++) {
+        int cell = cells[k];
+        long count = histogram.counts[cell];
+        red += (((long) channel(cell, 0)) << LOW_BITS) * count + histogram.redLow[cell];
+        green += (((long) channel(cell, 1)) << LOW_BITS) * count + histogram.greenLow[cell];
+        blue += (((long) channel(cell, 2)) << LOW_BITS) * count + histogram.blueLow[cell];
+      }
+      long half = population[i] / 2;
+      palette[i] =
+          0xFF000000
+              | (int) ((red + half) / population[i]) << 16
+              | (int) ((green + half) / population[i]) << 8
+              | (int) ((blue + half) / population[i]);
+    }
+    return palette;
+  }
+
+  private static void measure(int[] cells, int[] start, int[] end, int[] axis, int[] range, int i) {
+    axis[i] = 0;
+    range[i] = 0;
+    for (int a = 0; a < 3; a++) {
+      int min = LEVELS;
+      int max = -1;
+      for (int k = start[i]; k < end[i]; k++) {
+        int level = channel(cells[k], a);
+        min = Math.min(min, level);
+        max = Math.max(max, level);
+      }
+      if (max - min > range[i]) {
+        range[i] = max - min;
+        axis[i] = a;
+      }
+    }
+  }
+
+  // nearest palette entry for each RGB555 cell, filled in on first use
+  private static final class NearestColour {
+    private final int[] palette;
+    private final int transparentIndex;
+    private final int[] cache = new int[CELLS]; // index + 1, 0 if not yet known
+
+    NearestColour(int[] palette, int transparentIndex) {
+      this.palette = palette;
+      this.transparentIndex = transparentIndex;
+    }
+
+    int indexOf(int argb) {
+      if ((argb >>> 24) == 0 && transparentIndex >= 0) {
+        return transparentIndex;
+      }
+      int cell = cellOf(argb);
+      // racing threads compute and store the same value, so the cache needs no locking
+      int cached = cache[cell];
+      if (cached == 0) {
+        int half = 1 << (LOW_BITS - 1);
+        cached =
+            1
+                + search(
+                    (channel(cell, 0) << LOW_BITS) + half,
+                    (channel(cell, 1) << LOW_BITS) + half,
+                    (channel(cell, 2) << LOW_BITS) + half);
+        cache[cell] = cached;
+      }
+      return cached - 1;
+    }
+
+    private int search(int red, int green, int blue) {
+      int best = 0;
+      int bestDistance = Integer.MAX_VALUE;
+      for (int i = 0; i < palette.length; i++) {
+        if (i == transparentIndex) {
+          continue;
+        }
+        int colour = palette[i];
+        int dr = ((colour >>> 16) & 0xFF) - red;
+        int dg = ((colour >>> 8) & 0xFF) - green;
+        int db = (colour & 0xFF) - blue;
+        int distance = dr * dr + dg * dg + db * db;
+        if (distance < bestDistance) {
+          bestDistance = distance;
+          best = i;
+        }
+      }
+      return best;
+    }
+  }
+
+  // Floyd–Steinberg in serpentine order, with errors kept in sixteenths
+  private static void dither(PixelBuffer pixels, NearestColour nearest, byte[] indices) {
+    int width = pixels.width();
+    int height = pixels.height();
+    int[] palette = nearest.palette;
+    int[] row = new int[width];
+    // one guard column on each side; this row's errors and the next row's
+    int[][] current = new int[3][width + 2];
+    int[][] next = new int[3][width + 2];
+    for (int y = 0; y < height; y++) {
+      pixels.getARGB(0, y, width, 1, row, 0, width);
+      boolean isLeftToRight = (y & 1) == 0;
+      int step = isLeftToRight ? 1 : -1;
+      for (int i = 0, x = isLeftToRight ? 0 : width - 1; i < width; i++, x += step) {
+        int argb = row[x];
+        if ((argb >>> 24) == 0 && nearest.transparentIndex >= 0) {
+          indices[y * width + x] = (byte) nearest.transparentIndex;
+          continue;
+        }
+        int red = clamp(((argb >>> 16) & 0xFF) + (current[0][x + 1] + 8 >> 4));
+        int green = clamp(((argb >>> 8) & 0xFF) + (current[1][x + 1] + 8 >> 4));
+        int blue = clamp((argb & 0xFF) + (current[2][x + 1] + 8 >> 4));
+        int index = nearest.indexOf(0xFF000000 | red << 16 | green << 8 | blue);
+        indices[y * width + x] = (byte) index;
+
+        int colour = palette[index];
+        diffuse(current[0], next[0], x + 1, step, red - ((colour >>> 16) & 0xFF));
+        diffuse(current[1], next[1], x + 1, step, green - ((colour >>> 8) & 0xFF));
+        diffuse(current[2], next[2], x + 1, step, blue - (colour & 0xFF));
+      }
+      int[][] swap = current;
+      current = next;
+      next = swap;
+      for (int[] errors : next) {
+        Arrays.fill(errors, 0);
+      }
+    }
+  }
+
+  private static void diffuse(int[] current, int[] next, int x, int step, int error) {
+    current[x + step] += error * 7;
+    next[x - step] += error * 3;
+    next[x] += error * 5;
+    next[x + step] += error;
+  }
+
+  private static int clamp(int value) {
+    return value < 0 ? 0 : Math.min(value, 0xFF);
+  }
+}
@@ -0,0 +1,183 @@
+package com.eyespot.imageparser;
+
+import com.eyespot.imageparser.util.IntIndexMap;
+import java.util.Objects;
+
+/**
+ * A palettized image: a colour palette of up to 256 ARGB entries and one palette index per pixel.
+ *
+ * <p>Indices are stored one per byte in a flat {@code byte[]}, in row-major order with row 0 at the
+ * top of the image, and are read as unsigned values. Like {@link PixelBuffer}, the index array is
+ * used directly rather than copied, and the class never touches AWT. The palette, at most 256
+ * entries, is copied in and out, so it cannot change after the indices are checked against it.
+ *
+ * <p>Indexed images are what the palette-based BMP encodings ({@code BI_RLE8}, {@code BI_RLE4} and
+ * 1, 4 or 8 bits per pixel) store.
+ *
+ * @author Kevin Babu
+ * @see PixelBuffer
+ */
+public final class IndexedImage {
+  /** Maximum number of palette entries. */
+  public static final int MAX_PALETTE_SIZE = 256;
+
+  private final int width;
+  private final int height;
+  private final int[] palette;
+  private final byte[] indices;
+
+  /**
+   * Creates an indexed image backed by the given index array, which is not copied, and a copy of
+   * the palette.
+   *
+   * @param width the width in pixels
+   * @param height the height in pixels
+   * @param palette the ARGB colours, at most {@value #MAX_PALETTE_SIZE}
+   * @param indices the palette index of each pixel in row-major order, top row first
+   * @throws IllegalArgumentException if the dimensions are negative or do not match the index
+   *     array, if the palette is empty or too large, or if an index has no palette entry
+   */
+  public IndexedImage(int width, int height, int[] palette, byte[] indices) {
+    Objects.requireNonNull(palette, "Palette cannot be null.");
+    Objects.requireNonNull(indices, "Index array cannot be null.");
+    if (width < 0 || height < 0) {
+      throw new IllegalArgumentException(
+          "Dimensions must be non-negative: " + width + "x" + height);
+    }
+    if ((long) width * height != indices.length) {
+      throw new IllegalArgumentException(
+          "Index array length " + indices.length + " does not match " + width + "x" + height);
+    }
+    if (palette.length == 0 || palette.length > MAX_PALETTE_SIZE) {
+      throw new IllegalArgumentException(
+          "Palette must have between 1 and " + MAX_PALETTE_SIZE + " entries: " + palette.length);
+    }
+    if (palette.length < MAX_PALETTE_SIZE) {
+      for (int i = 0; i < indices.length; i++) {
+        if ((indices[i] & 0xFF) >= palette.length) {
+          throw new IllegalArgumentException(
+              "Index " + (indices[i] & 0xFF) + " at pixel " + i + " is outside the palette");
+        }
+      }
+    }
+    this.width = width;
+    this.height = height;
+    this.palette = palette.clone();
+    this.indices = indices;
+  }
+
+  /**
+   * Converts the pixels to an indexed image without losing any colour, if they use no more than
+   * {@value #MAX_PALETTE_SIZE} distinct ARGB values. The palette holds the colours in the order
+   * they are first met, scanning from the top row.
+   *
+   * <p>The scan stops at the first pixel that would need a palette entry beyond the limit, so
+   * images with many colours are usually rejected after a few rows.
+   *
+   * @param pixels the pixels to convert
+   * @return the indexed image, or {@code null} if the pixels use more than {@value
+   *     #MAX_PALETTE_SIZE} colours
+   */
+  public static IndexedImage fromPixels(PixelBuffer pixels) {
+    Objects.requireNonNull(pixels, "Pixels cannot be null.");
+    int width = pixels.width();
+    int height = pixels.height();
+    IntIndexMap colours = new IntIndexMap(MAX_PALETTE_SIZE);
+    byte[] indices = new byte[width * height];
+    int[] row = new int[width];
+    int previous = 0;
+    int previousIndex = -1;
+    for (int y = 0; y < height; y++) {
+      pixels.getARGB(0, y, width, 1, row, 0, width);
+      int rowStart = y * width;
+      for (int x = 0; x < width; x++) {
+        int argb = row[x];
+        // neighbouring pixels often share a colour, which skips the hash lookup
+        if (argb != previous || previousIndex < 0) {
+          previousIndex = colours.add(argb);
+          if (previousIndex < 0) {
+            return null;
+          }
+          previous = argb;
+        }
+        indices[rowStart + x] = (byte) previousIndex;
+      }
+    }
+    int[] palette = colours.size() > 0 ? colours.toArray() : new int[1];
+    return new IndexedImage(width, height, palette, indices);
+  }
+
+  /** @return the width of the image in pixels */
+  public int width() {
+    return width;
+  }
+
+  /** @return the height of the image in pixels */
+  public int height() {
+    return height;
+  }
+
+  /** @return a copy of the palette */
+  public int[] getPalette() {
+    return palette.clone();
+  }
+
+  /**
+   * Returns the backing index array. The index of pixel ({@code col}, {@code row}) is at {@code row
+   * * width() + col}. This is the live array, not a copy, so that large images are not duplicated;
+   * indices written to it must stay inside the palette.
+   *
+   * @return the backing index array
+   */
+  public byte[] getIndices() {
+    return indices;
+  }
+
+  /**
+   * Returns the palette index of pixel ({@code col}, {@code row}).
+   *
+   * @param col the column index
+   * @param row the row index, counted from the top
+   * @return the palette index, between 0 and 255
+   * @throws IndexOutOfBoundsException unless both {@code 0 <= col < width} and {@code 0 <= row <
+   *     height}
+   */
+  public int getIndex(int col, int row) {
+    if (col < 0 || col >= width) {
+      throw new IndexOutOfBoundsException(
+          "column index must be between 0 and " + (width - 1) + ": " + col);
+    }
+    if (row < 0 || row >= height) {
+      throw new IndexOutOfBoundsException(
+          "row index must be between 0 and " + (height - 1) + ": " + row);
+    }
+    return indices[row * width + col] & 0xFF;
+  }
+
+  /**
+   * Returns the ARGB colour of pixel ({@code col}, {@code row}).
+   *
+   * @param col the column index
+   * @param row the row index, counted from the top
+   * @return the 32-bit ARGB colour
+   * @throws IndexOutOfBoundsException unless both {@code 0 <= col < width} and {@code 0 <= row <
+   *     height}
+   */
+  public int getARGB(int col, int row) {
+    return palette[getIndex(col, row)];
+  }
+
+  /**
+   * Expands the image to direct colour.
+   *
+   * @return a new packed {@code PixelBuffer} holding the colour of every pixel
+   */
+  public PixelBuffer toPixelBuffer() {
+    PixelBuffer buffer = new PixelBuffer(width, height);
+    int[] pixels = buffer.getPixels();
+    for (int i = 0; i < indices.length; i++) {
+      pixels[i] = palette[indices[i] & 0xFF];
+    }
+    return buffer;
+  }
+}
@@ -25,6 +25,9 @@ package com.eyespot.imageparser;
 
 import com.eyespot.ExcludeFromCoverageGenerated;
 import com.eyespot.imageparser.bitmap.BitmapParser;
+import com.eyespot.imageparser.bitmap.BitmapWriter;
+import com.eyespot.imageparser.jfr.AlphaScanEvent;
+import com.eyespot.imageparser.transform.Resampler;
 import java.awt.Color;
 import java.awt.FileDialog;
 import java.awt.Toolkit;
@@ -34,8 +37,15 @@ import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DirectColorModel;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
 import java.nio.file.Path;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -76,11 +86,15 @@ import javax.swing.WindowConstants;
  *
  * <ul>
  *   <li>{@link #Picture(Path filepath)}
+ *   <li>{@link #lazy(Path filepath)}
+ *   <li>{@link #fromPixels(PixelBuffer pixels)}
  * </ul>
  *
  * <p>The first constructor read an image in a supported file format (typically JPEG, PNG, GIF,
- * TIFF, and BMP) and initializes the picture to that image. The second constructor creates a
- * <em>width</em>-by-<em>height</em> picture, with each pixel black.
+ * TIFF, and BMP) and initializes the picture to that image. The {@code lazy} factory method only
+ * parses the headers and defers decoding the pixels until they are first needed, which suits code
+ * that mostly asks pictures for their dimensions. The {@code fromPixels} factory method wraps an
+ * existing {@link PixelBuffer}, for example one decoded on a headless server.
  *
  * <p><b>Getting and setting the colors of the individual pixels.</b> You can use the following
  * methods to get and set the color of a specified pixel:
@@ -118,6 +132,14 @@ import javax.swing.WindowConstants;
  *  grayscale.show();
  *  </pre>
  *
+ * <p>The loop above allocates two {@code Color} objects per pixel. Point operations like this one
+ * are much faster with {@link com.eyespot.imageparser.transform.PixelOp}, which fuses a chain of
+ * them into one pass over the backing array:
+ *
+ * <pre>
+ *  PixelOp.identity().grayscale().applyTo(picture.getPixelBuffer());
+ *  </pre>
+ *
  * <p><b>Transparency.</b> Both the {@link Color} and {@code Picture} classes support transparency,
  * using the <em>alpha channel</em>. The alpha value defines the transparency of a color, with 0
  * corresponding to completely transparent and 255 to completely opaque. If transparency is not
@@ -132,6 +154,10 @@ import javax.swing.WindowConstants;
  *   <li>{@link #setARGB(int col, int row, int rgb)}
  * </ul>
  *
+ * <p>To process many pixels at once, the bulk variants {@link #getARGB(int, int, int, int, int[],
+ * int, int)} and {@link #setARGB(int, int, int, int, int[], int, int)} copy a whole rectangle of
+ * pixels to or from an {@code int[]}, validating the region only once.
+ *
  * <p>The alpha (A), red (R), green (G), and blue (B) components are encoded as a single 32-bit
  * integer. Given a 32-bit {@code int} encoding the color, the following code extracts the ARGB
  * components:
@@ -184,12 +210,18 @@ import javax.swing.WindowConstants;
  * <p><b>File formats.</b> The {@code Picture} class supports reading and writing images to any of
  * the file formats supported by {@link javax.imageio} (typically JPEG, PNG, GIF, TIFF, and BMP).
  * The file extensions corresponding to JPEG, PNG, GIF, TIFF, and BMP, are {@code .jpg}, {@code
- * .png}, {@code .gif}, {@code .tif}, and {@code .bmp}, respectively. The file formats JPEG and BMP
- * do not support transparency.
+ * .png}, {@code .gif}, {@code .tif}, and {@code .bmp}, respectively. The file format JPEG does not
+ * support transparency; BMP files are written with an alpha channel when the picture has one.
  *
  * <p><b>Memory usage.</b> A <em>W</em>-by-<em>H</em> picture uses ~ 4 <em>W H</em> bytes of memory,
  * since the color of each pixel is encoded as a 32-bit <code>int</code>.
  *
+ * <p><b>Headless use.</b> The pixels live in a {@link PixelBuffer}, which never touches AWT. A
+ * {@link BufferedImage} view of the same pixels is only created the first time the picture is
+ * displayed or saved, so pictures that are only inspected never initialize the AWT toolkit. Bitmaps
+ * are decoded with their scanlines in file order, usually bottom-up; they are rearranged into the
+ * top-down layout AWT expects at that point, not at decode time.
+ *
  * <p><b>Additional documentation.</b> For additional documentation, see <a
  * href="https://introcs.cs.princeton.edu/31datatype">Section 3.1</a> of <i>Computer Science: An
  * Interdisciplinary Approach</i> by Robert Sedgewick and Kevin Wayne.
@@ -198,7 +230,8 @@ import javax.swing.WindowConstants;
  * @author Kevin Wayne
  */
 public class Picture implements ActionListener {
-  private final BufferedImage image; // the rasterized image
+  private PixelBuffer pixels; // the decoded pixels, null until first access in lazy mode
+  private BufferedImage image; // AWT view of the pixels, created on first display or save
   protected JFrame jframe; // on-screen view
   private String title; // window title (typically the name of the file)
   private boolean isOriginUpperLeft = true; // location of origin
@@ -206,8 +239,13 @@ public class Picture implements ActionListener {
   private boolean isDisposed = false; // has the window been disposed?
   private final int width;
   private final int height; // width and height
-  private final BitmapParser parser; // the image parser
+  private BitmapParser parser; // the image parser, released once the pixels are decoded
+  private Boolean hasAlpha; // transparency of the loaded image, null until first asked for
+  private Long contentHash; // cached content digest, null until computed or after a write
+  private boolean isPixelBufferShared; // can the pixels change without this picture knowing?
   private static final Logger LOGGER = Logger.getLogger(Picture.class.getName()); // the logger
+  private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+  private static final int CHARS_PER_PIXEL = 8; // "#RRGGBB "
 
   /**
    * Creates a new picture that is a deep copy of the argument picture.
@@ -216,6 +254,10 @@ public class Picture implements ActionListener {
    * @throws IllegalArgumentException if {@code picture} is {@code null}
    */
   public Picture(Path path) throws IOException {
+    this(path, false);
+  }
+
+  private Picture(Path path, boolean lazy) throws IOException {
     if (path == null) {
       throw new IllegalArgumentException("constructor argument is null");
     }
@@ -223,15 +265,136 @@ public class Picture implements ActionListener {
     parser = new BitmapParser(path);
     width = parser.getWidth();
     height = parser.getHeight();
-    image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
     title = String.valueOf(path);
+    if (!lazy) {
+      decodePixels();
+    }
+  }
+
+  private Picture(PixelBuffer pixels, String title) {
+    this.parser = null;
+    this.pixels = pixels;
+    this.width = pixels.width();
+    this.height = pixels.height();
+    this.title = title;
+    this.isOriginUpperLeft = pixels.isOriginUpperLeft();
+    this.isPixelBufferShared = true;
+  }
+
+  /**
+   * Creates a picture that only parses the image headers up front. The pixels are decoded on the
+   * first call that needs them, such as {@link #get(int, int)}, {@link #getARGB(int, int)} or
+   * {@link #show()}; {@link #width()} and {@link #height()} never trigger a decode, and {@link
+   * #hasAlpha()} only does so when the headers cannot answer it.
+   *
+   * <p>Until then the picture holds the raw file bytes; once decoded, the raw bytes are released
+   * and only the pixels are kept.
+   *
+   * @param path the picture's path
+   * @return a picture whose pixels are decoded on first access
+   * @throws IOException if an I/O error occurs reading from the file
+   * @throws IllegalArgumentException if {@code path} is {@code null}
+   */
+  public static Picture lazy(Path path) throws IOException {
+    return new Picture(path, true);
+  }
+
+  /**
+   * Creates a picture backed by the given pixels. The buffer is shared, not copied, so changes made
+   * through the picture are visible in {@code pixels} and vice versa.
+   *
+   * @param pixels the pixels to display
+   * @return a picture backed by {@code pixels}
+   * @throws IllegalArgumentException if {@code pixels} is {@code null}
+   */
+  public static Picture fromPixels(PixelBuffer pixels) {
+    if (pixels == null) {
+      throw new IllegalArgumentException("argument to fromPixels() is null");
+    }
+    return new Picture(pixels, pixels.width() + "-by-" + pixels.height());
+  }
+
+  /**
+   * Returns a copy of this picture resized to {@code width} by {@code height} pixels, using the
+   * bicubic filter in linear light. Use {@link Resampler} directly for the other filters.
+   *
+   * @param width the width of the copy in pixels
+   * @param height the height of the copy in pixels
+   * @return the resized picture
+   * @throws IllegalArgumentException if {@code width} or {@code height} is not positive
+   */
+  public Picture resize(int width, int height) {
+    return fromPixels(
+        new Resampler(Resampler.Filter.BICUBIC, true).resize(pixels(), width, height));
+  }
+
+  /**
+   * Returns the pixels backing this picture. The buffer is shared, not copied. Since writes made
+   * through the buffer cannot be tracked, {@link #contentHash()} is no longer cached afterwards.
+   *
+   * @return the backing {@code PixelBuffer}
+   */
+  public PixelBuffer getPixelBuffer() {
+    isPixelBufferShared = true;
+    contentHash = null;
+    return pixels();
+  }
+
+  /**
+   * Returns {@code true} if the pixels have been decoded. Pictures created with {@link #lazy(Path)}
+   * return {@code false} until a method that needs the pixels is first called.
+   *
+   * @return {@code true} if the pixels are in memory
+   */
+  public boolean isDecoded() {
+    return pixels != null;
+  }
+
+  // the decoded pixels, decoding them first if this picture is lazy
+  private PixelBuffer pixels() {
+    if (pixels == null) {
+      decodePixels();
+    }
+    return pixels;
+  }
+
+  // decodes the pixels, then releases the parser and the raw file bytes it holds
+  private void decodePixels() {
+    PixelBuffer decoded = parser.decode();
+    if (!isOriginUpperLeft) {
+      decoded.setOriginLowerLeft();
+    }
+    if (parser.isAlphaChannelKnown()) {
+      // the parser's headers are about to be released, so keep their answer while it is free
+      hasAlpha = parser.hasAlphaChannel();
+    }
+    pixels = decoded;
+    parser = null;
+  }
 
-    int[][] pixels = parser.getPixels();
-    for (int col = 0; col < width(); col++) {
-      for (int row = 0; row < height(); row++) {
-        image.setRGB(col, row, pixels[row][col]);
+  // wraps the pixel array in a BufferedImage without copying, on first use. AWT needs packed,
+  // top-down rows, so other layouts (such as bottom-up bitmaps) are compacted first; a shared
+  // buffer cannot be replaced, so it gets a fresh snapshot instead.
+  private BufferedImage getImage() {
+    if (image == null || !pixels().isPacked()) {
+      PixelBuffer source = pixels();
+      if (!source.isPacked() && !isPixelBufferShared) {
+        pixels = source.compact();
+        source = pixels;
       }
+      DirectColorModel colorModel = (DirectColorModel) ColorModel.getRGBdefault();
+      int[] data = source.compact().getPixels();
+      WritableRaster raster =
+          Raster.createPackedRaster(
+              new DataBufferInt(data, data.length),
+              width,
+              height,
+              width,
+              colorModel.getMasks(),
+              null);
+      image = new BufferedImage(colorModel, raster, false, null);
     }
+    return image;
   }
 
   // create the GUI for viewing the image if needed
@@ -276,18 +439,26 @@ public class Picture implements ActionListener {
    * @return the {@code JLabel}
    */
   public JLabel getJLabel() {
-    ImageIcon icon = new ImageIcon(image);
+    ImageIcon icon = new ImageIcon(getImage());
     return new JLabel(icon);
   }
 
   /** Sets the origin (0, 0) to be the upper left pixel. This is the default. */
   public void setOriginUpperLeft() {
     isOriginUpperLeft = true;
+    contentHash = null;
+    if (pixels != null) {
+      pixels.setOriginUpperLeft();
+    }
   }
 
   /** Sets the origin (0, 0) to be the lower left pixel. */
   public void setOriginLowerLeft() {
     isOriginUpperLeft = false;
+    contentHash = null;
+    if (pixels != null) {
+      pixels.setOriginLowerLeft();
+    }
   }
 
   /** Displays the picture in a window on the screen. */
@@ -385,13 +556,8 @@ public class Picture implements ActionListener {
    *     height}
    */
   public int getARGB(int col, int row) {
-    validateColumnIndex(col);
-    validateRowIndex(row);
-    if (isOriginUpperLeft) {
-      return image.getRGB(col, row);
-    } else {
-      return image.getRGB(col, height - row - 1);
-    }
+    // PixelBuffer validates the indices
+    return pixels().getARGB(col, row);
   }
 
   /**
@@ -424,19 +590,90 @@ public class Picture implements ActionListener {
    *     height}
    */
   public void setARGB(int col, int row, int argb) {
-    validateColumnIndex(col);
-    validateRowIndex(row);
-    if (isOriginUpperLeft) {
-      image.setRGB(col, row, argb);
-    } else {
-      image.setRGB(col, height - row - 1, argb);
+    // PixelBuffer validates the indices
+    pixels().setARGB(col, row, argb);
+    contentHash = null;
+  }
+
+  /**
+   * Copies the ARGB colors of a rectangle of pixels into {@code dst}. Pixel ({@code col + i},
+   * {@code row + j}) is stored at {@code dst[offset + j * scan + i]}. The region is validated once
+   * and copied a row at a time, which is much faster than calling {@link #getARGB(int, int)} for
+   * each pixel.
+   *
+   * @param col the column index of the upper-left corner of the region
+   * @param row the row index of the upper-left corner of the region
+   * @param w the width of the region
+   * @param h the height of the region
+   * @param dst the array to copy the colors into
+   * @param offset the index in {@code dst} of the first pixel
+   * @param scan the distance in {@code dst} between the starts of consecutive rows
+   * @throws IllegalArgumentException if {@code dst} is {@code null}
+   * @throws IndexOutOfBoundsException if the region is not inside the picture or does not fit in
+   *     {@code dst}
+   */
+  public void getARGB(int col, int row, int w, int h, int[] dst, int offset, int scan) {
+    if (dst == null) {
+      throw new IllegalArgumentException("destination array is null");
+    }
+    pixels().getARGB(col, row, w, h, dst, offset, scan);
+  }
+
+  /**
+   * Sets the ARGB colors of a rectangle of pixels from {@code src}. Pixel ({@code col + i}, {@code
+   * row + j}) is read from {@code src[offset + j * scan + i]}. The region is validated once and
+   * copied a row at a time, which is much faster than calling {@link #setARGB(int, int, int)} for
+   * each pixel.
+   *
+   * @param col the column index of the upper-left corner of the region
+   * @param row the row index of the upper-left corner of the region
+   * @param w the width of the region
+   * @param h the height of the region
+   * @param src the array to copy the colors from
+   * @param offset the index in {@code src} of the first pixel
+   * @param scan the distance in {@code src} between the starts of consecutive rows
+   * @throws IllegalArgumentException if {@code src} is {@code null}
+   * @throws IndexOutOfBoundsException if the region is not inside the picture or does not fit in
+   *     {@code src}
+   */
+  public void setARGB(int col, int row, int w, int h, int[] src, int offset, int scan) {
+    if (src == null) {
+      throw new IllegalArgumentException("source array is null");
+    }
+    pixels().setARGB(col, row, w, h, src, offset, scan);
+    contentHash = null;
+  }
+
+  /**
+   * Returns a 64-bit digest of the pixels, as computed by {@link PixelBuffer#contentHash()}. Equal
+   * pictures always have the same digest, so digests can be compared, stored or used as keys in
+   * place of whole images; different digests mean the pictures differ.
+   *
+   * <p>The digest is cached and recomputed only after the pixels or the origin change. Once the
+   * backing buffer is shared, through {@link #fromPixels(PixelBuffer)} or {@link
+   * #getPixelBuffer()}, it is recomputed on every call.
+   *
+   * @return the content digest
+   */
+  public long contentHash() {
+    if (contentHash != null) {
+      return contentHash;
+    }
+    long hash = pixels().contentHash();
+    if (!isPixelBufferShared) {
+      contentHash = hash;
     }
+    return hash;
   }
 
   /**
    * Returns {@code true} if this picture is equal to the argument picture, and {@code false}
    * otherwise.
    *
+   * <p>Pictures whose cached {@linkplain #contentHash() digests} differ are rejected without
+   * looking at the pixels; otherwise the pixels are compared a row at a time, stopping at the first
+   * row that differs.
+   *
    * @param other the other picture
    * @return {@code true} if this picture is the same dimension as {@code other} and if all pixels
    *     have the same color; {@code false} otherwise
@@ -459,14 +696,12 @@ public class Picture implements ActionListener {
     if (this.height() != that.height()) {
       return false;
     }
-    for (int col = 0; col < width(); col++) {
-      for (int row = 0; row < height(); row++) {
-        if (this.getARGB(col, row) != that.getARGB(col, row)) {
-          return false;
-        }
-      }
+    if (this.contentHash != null
+        && that.contentHash != null
+        && this.contentHash.longValue() != that.contentHash.longValue()) {
+      return false;
     }
-    return true;
+    return pixels().contentEquals(that.pixels());
   }
 
   /**
@@ -475,24 +710,69 @@ public class Picture implements ActionListener {
    * encode the red, green, and blue components.
    *
    * @return a string representation of this picture
+   * @see #writeTo(Appendable)
    */
   @Override
   public String toString() {
-    StringBuilder sb = new StringBuilder();
-    sb.append(width).append("-by-").append(height).append(" picture (RGB values given in hex)\n");
+    long length = 64 + (long) width * height * CHARS_PER_PIXEL + height;
+    StringBuilder sb = new StringBuilder((int) Math.min(length, Integer.MAX_VALUE - 8));
+    try {
+      writeTo(sb);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // StringBuilder does not throw
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Writes the same text as {@link #toString()} to {@code out}, one row at a time. The hex digits
+   * are formatted into a single reusable row buffer, so no objects are created per pixel and the
+   * whole dump is never held in memory at once. Wrap file or socket writers in a {@code
+   * BufferedWriter}.
+   *
+   * @param out where to write the text
+   * @throws IOException if {@code out} throws one
+   * @throws IllegalArgumentException if {@code out} is {@code null}
+   */
+  public void writeTo(Appendable out) throws IOException {
+    if (out == null) {
+      throw new IllegalArgumentException("argument to writeTo() is null");
+    }
+    out.append(Integer.toString(width))
+        .append("-by-")
+        .append(Integer.toString(height))
+        .append(" picture (RGB values given in hex)");
+    if (width == 0 || height == 0) {
+      return;
+    }
+    out.append('\n');
+
+    PixelBuffer buffer = pixels();
+    int[] argb = new int[width];
+    char[] chars = new char[width * CHARS_PER_PIXEL];
+    CharBuffer line = CharBuffer.wrap(chars);
     for (int row = 0; row < height; row++) {
+      buffer.getARGB(0, row, width, 1, argb, 0, width);
+      int pos = 0;
       for (int col = 0; col < width; col++) {
-        int rgb;
-        if (isOriginUpperLeft) {
-          rgb = image.getRGB(col, row);
-        } else {
-          rgb = image.getRGB(col, height - row - 1);
-        }
-        sb.append(String.format("#%06X ", rgb & 0xFFFFFF));
+        int rgb = argb[col];
+        chars[pos] = '#';
+        chars[pos + 1] = HEX_DIGITS[(rgb >>> 20) & 0xF];
+        chars[pos + 2] = HEX_DIGITS[(rgb >>> 16) & 0xF];
+        chars[pos + 3] = HEX_DIGITS[(rgb >>> 12) & 0xF];
+        chars[pos + 4] = HEX_DIGITS[(rgb >>> 8) & 0xF];
+        chars[pos + 5] = HEX_DIGITS[(rgb >>> 4) & 0xF];
+        chars[pos + 6] = HEX_DIGITS[rgb & 0xF];
+        chars[pos + 7] = ' ';
+        pos += CHARS_PER_PIXEL;
+      }
+      if (row < height - 1) {
+        out.append(line, 0, pos).append('\n');
+      } else {
+        // the last row has no trailing separator, as if the text had been trimmed
+        out.append(line, 0, pos - 1);
       }
-      sb.append("\n");
     }
-    return sb.toString().trim();
   }
 
   /**
@@ -522,14 +802,37 @@ public class Picture implements ActionListener {
 
   // does this picture use transparency (i.e., alpha < 255 for some pixel)?
   public boolean hasAlpha() {
-    return parser.hasAlphaChannel();
+    if (hasAlpha != null) {
+      return hasAlpha;
+    }
+    if (parser != null && parser.isAlphaChannelKnown()) {
+      // lazy and not yet decoded, but the headers can answer
+      hasAlpha = parser.hasAlphaChannel();
+      return hasAlpha;
+    }
+    // decodes a lazy picture once, for both the scan and later pixel access
+    PixelBuffer source = pixels();
+    AlphaScanEvent event = new AlphaScanEvent();
+    event.begin();
+    boolean isTransparent = source.hasTransparentPixel();
+    if (event.shouldCommit()) {
+      event.setResult(width, height, false, isTransparent);
+      event.commit();
+    }
+    if (!isPixelBufferShared) {
+      hasAlpha = isTransparent;
+    }
+    return isTransparent;
   }
 
   /**
    * Saves the picture to a file in a supported file format (typically JPEG, PNG, GIF, TIFF, and
    * BMP). The filetype extension must be {@code .jpg}, {@code .png}, {@code .gif}, {@code .bmp}, or
-   * {@code .tif}. If the file format does not support transparency (such as JPEG or BMP), it will
-   * be converted to be opaque (with purely transparent pixels converted to black).
+   * {@code .tif}. If the file format does not support transparency (such as JPEG), it will be
+   * converted to be opaque (with purely transparent pixels converted to black). BMP files are
+   * written by {@link BitmapWriter} without going through ImageIO, in the smallest format that
+   * keeps every pixel: palette indices for opaque pictures with at most 256 colours, 24 bits per
+   * pixel for other opaque pictures, and 32 bits per pixel with an alpha mask otherwise.
    *
    * @param filename the name of the file
    * @throws IllegalArgumentException if {@code filename} is {@code null}
@@ -551,8 +854,11 @@ public class Picture implements ActionListener {
   /**
    * Saves the picture to a file in a supported file format (typically JPEG, PNG, GIF, TIFF, and
    * BMP). The filetype extension must be {@code .jpg}, {@code .png}, {@code .gif}, {@code .bmp}, or
-   * {@code .tif}. If the file format does not support transparency (such as JPEG or BMP), it will
-   * be converted to be opaque (with purely transparent pixels converted to black).
+   * {@code .tif}. If the file format does not support transparency (such as JPEG), it will be
+   * converted to be opaque (with purely transparent pixels converted to black). BMP files are
+   * written by {@link BitmapWriter} without going through ImageIO, in the smallest format that
+   * keeps every pixel: palette indices for opaque pictures with at most 256 colours, 24 bits per
+   * pixel for other opaque pictures, and 32 bits per pixel with an alpha mask otherwise.
    *
    * @param file the file
    * @throws IllegalArgumentException if {@code file} is {@code null}
@@ -570,15 +876,22 @@ public class Picture implements ActionListener {
     }
 
     try {
+      // BMP is encoded natively, keeping the alpha channel when there is one
+      if (suffix.equalsIgnoreCase("bmp")) {
+        BitmapWriter.writeLossless(pixels(), file.toPath());
+        return;
+      }
+
       // for formats that support transparency (e.g., PNG and GIF)
-      if (ImageIO.write(image, suffix, file)) {
+      BufferedImage argbImage = getImage();
+      if (ImageIO.write(argbImage, suffix, file)) {
         return;
       }
 
-      // for formats that don't support transparency (e.g., JPG and BMP)
+      // for formats that don't support transparency (e.g., JPG)
       // create BufferedImage in RGB format and use white background
       BufferedImage imageRGB = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-      imageRGB.createGraphics().drawImage(image, 0, 0, Color.WHITE, null);
+      imageRGB.createGraphics().drawImage(argbImage, 0, 0, Color.WHITE, null);
       if (ImageIO.write(imageRGB, suffix, file)) {
         return;
       }
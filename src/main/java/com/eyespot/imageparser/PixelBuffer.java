@@ -0,0 +1,602 @@
+package com.eyespot.imageparser;
+
+import com.eyespot.imageparser.util.RowBands;
+import com.eyespot.imageparser.util.XxHash64;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A lightweight, headless container for decoded pixel data.
+ *
+ * <p>Pixels are stored as ARGB integers ({@code 0xAARRGGBB}) in a single flat {@code int[]}. Unlike
+ * {@link Picture}, this class never touches AWT or Swing, so it is safe to use on headless servers
+ * and cheap to create in short-lived processes.
+ *
+ * <p><b>Layout.</b> With the origin in the upper-left corner, pixel ({@code col}, {@code row}) is
+ * stored at {@code offset() + row * rowStride() + col * colStride()}. Buffers created with {@link
+ * #PixelBuffer(int, int)} are {@linkplain #isPacked() packed}: row-major, top row first, with no
+ * gaps. Other layouts describe bottom-up scanlines ({@link #bottomUp(int, int)}), padded rows, or
+ * views of another buffer.
+ *
+ * <p><b>Views.</b> {@link #crop(int, int, int, int)}, {@link #flipHorizontal()}, {@link
+ * #flipVertical()}, {@link #transpose()} and the {@code rotate} methods return a new buffer that
+ * shares this buffer's array and only records a different layout. They run in constant time and
+ * never copy pixels, so writes through a view are visible in the original and vice versa. Use
+ * {@link #compact()} to obtain a packed copy.
+ *
+ * <p>By default the origin (0, 0) is the upper-left pixel. {@link #setOriginLowerLeft()} flips the
+ * row coordinate used by the accessors without moving any pixel data.
+ *
+ * @author Kevin Babu
+ * @see Picture
+ */
+public final class PixelBuffer {
+  // side of the square tiles that transposed layouts are copied in
+  private static final int TILE_SIZE = 64;
+
+  private final int width;
+  private final int height;
+  private final int[] pixels;
+  private final int offset; // index of the upper-left pixel
+  private final int rowStride; // index distance between vertically adjacent pixels
+  private final int colStride; // index distance between horizontally adjacent pixels
+  private boolean isOriginUpperLeft = true;
+  private int base; // index of pixel (0, 0) relative to the current origin
+  private int rowStep; // index distance between rows relative to the current origin
+
+  /**
+   * Creates a {@code width}-by-{@code height} buffer with every pixel set to transparent black.
+   *
+   * @param width the width in pixels
+   * @param height the height in pixels
+   * @throws IllegalArgumentException if {@code width} or {@code height} is negative, or if the
+   *     buffer would hold more than {@link Integer#MAX_VALUE} pixels
+   */
+  public PixelBuffer(int width, int height) {
+    this(width, height, new int[checkedSize(width, height)]);
+  }
+
+  /**
+   * Creates a {@code width}-by-{@code height} buffer backed by the given array. The array is used
+   * directly, not copied, so changes to it are visible through this buffer and vice versa, and
+   * {@link #getPixels()} returns the same array.
+   *
+   * @param width the width in pixels
+   * @param height the height in pixels
+   * @param pixels the ARGB pixels in row-major order, top row first
+   * @throws IllegalArgumentException if the dimensions are negative or do not match the array
+   *     length
+   */
+  public PixelBuffer(int width, int height, int[] pixels) {
+    Objects.requireNonNull(pixels, "Pixel array cannot be null.");
+    if (pixels.length != checkedSize(width, height)) {
+      throw new IllegalArgumentException(
+          "Pixel array length " + pixels.length + " does not match " + width + "x" + height);
+    }
+    this.width = width;
+    this.height = height;
+    this.pixels = pixels;
+    this.offset = 0;
+    this.rowStride = width;
+    this.colStride = 1;
+    updateOrigin();
+  }
+
+  /**
+   * Creates a {@code width}-by-{@code height} buffer backed by the given array with an arbitrary
+   * row layout: the upper-left pixel is at index {@code offset}, and each row starts {@code
+   * rowStride} elements after the one above it. A negative stride describes rows stored bottom-up,
+   * and a stride larger than {@code width} describes padded rows or a region of a larger image. The
+   * array is used directly, not copied.
+   *
+   * @param width the width in pixels
+   * @param height the height in pixels
+   * @param pixels the backing array
+   * @param offset the index of the upper-left pixel
+   * @param rowStride the distance in {@code pixels} between the starts of consecutive rows
+   * @throws IllegalArgumentException if the dimensions are negative, if rows would overlap, or if
+   *     any pixel would lie outside the array
+   */
+  public PixelBuffer(int width, int height, int[] pixels, int offset, int rowStride) {
+    this(checkedArray(width, height, pixels, rowStride), width, height, offset, rowStride, 1);
+    long first = offset;
+    long last = first + (long) (height - 1) * rowStride;
+    if (width > 0
+        && height > 0
+        && (Math.min(first, last) < 0 || Math.max(first, last) + width > pixels.length)) {
+      throw new IllegalArgumentException(
+          String.format(
+              "A %dx%d layout at offset %d with row stride %d does not fit in an array of length %d",
+              width, height, offset, rowStride, pixels.length));
+    }
+  }
+
+  // the caller has checked that every pixel of the layout lies inside the array
+  private PixelBuffer(
+      int[] pixels, int width, int height, int offset, int rowStride, int colStride) {
+    this.width = width;
+    this.height = height;
+    this.pixels = pixels;
+    this.offset = offset;
+    this.rowStride = rowStride;
+    this.colStride = colStride;
+    updateOrigin();
+  }
+
+  /**
+   * Creates a {@code width}-by-{@code height} buffer whose backing array stores the bottom row
+   * first, the way most bitmap files store their scanlines. Row 0 is still the top row; only the
+   * layout of {@link #getPixels()} differs from {@link #PixelBuffer(int, int)}.
+   *
+   * @param width the width in pixels
+   * @param height the height in pixels
+   * @return a buffer with every pixel set to transparent black
+   * @throws IllegalArgumentException if {@code width} or {@code height} is negative, or if the
+   *     buffer would hold more than {@link Integer#MAX_VALUE} pixels
+   */
+  public static PixelBuffer bottomUp(int width, int height) {
+    int[] pixels = new int[checkedSize(width, height)];
+    int offset = height > 0 ? (height - 1) * width : 0;
+    return new PixelBuffer(pixels, width, height, offset, -width, 1);
+  }
+
+  private static int[] checkedArray(int width, int height, int[] pixels, int rowStride) {
+    Objects.requireNonNull(pixels, "Pixel array cannot be null.");
+    checkedSize(width, height);
+    if (height > 1 && Math.abs((long) rowStride) < width) {
+      throw new IllegalArgumentException(
+          "Row stride " + rowStride + " is smaller than the width " + width);
+    }
+    return pixels;
+  }
+
+  private static int checkedSize(int width, int height) {
+    if (width < 0 || height < 0) {
+      throw new IllegalArgumentException(
+          "Dimensions must be non-negative: " + width + "x" + height);
+    }
+    long size = (long) width * height;
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("Image too large: " + width + "x" + height);
+    }
+    return (int) size;
+  }
+
+  /** @return the width of the buffer in pixels */
+  public int width() {
+    return width;
+  }
+
+  /** @return the height of the buffer in pixels */
+  public int height() {
+    return height;
+  }
+
+  /**
+   * Returns the backing array. Pixel ({@code col}, {@code row}), counted from the upper-left corner
+   * regardless of the current origin, is at index {@code offset() + row * rowStride() + col *
+   * colStride()}. For a {@linkplain #isPacked() packed} buffer that is simply {@code row * width()
+   * + col}.
+   *
+   * <p>This is the live array, not a copy: writes to it change this buffer and every view that
+   * shares it. That is what lets callers read and write pixels without copying them.
+   *
+   * @return the backing ARGB array
+   */
+  public int[] getPixels() {
+    return pixels;
+  }
+
+  /** @return the index in {@link #getPixels()} of the upper-left pixel */
+  public int offset() {
+    return offset;
+  }
+
+  /** @return the distance in {@link #getPixels()} from a pixel to the one below it */
+  public int rowStride() {
+    return rowStride;
+  }
+
+  /** @return the distance in {@link #getPixels()} from a pixel to the one to its right */
+  public int colStride() {
+    return colStride;
+  }
+
+  /**
+   * Returns {@code true} if the backing array holds exactly this buffer's pixels in row-major
+   * order, top row first, which is the layout {@code BufferedImage.TYPE_INT_ARGB} uses.
+   *
+   * @return {@code true} if the layout is packed
+   */
+  public boolean isPacked() {
+    return offset == 0 && colStride == 1 && rowStride == width && pixels.length == width * height;
+  }
+
+  /**
+   * Returns a {@linkplain #isPacked() packed} buffer with the same pixels and origin: this buffer
+   * if it is already packed, otherwise a copy.
+   *
+   * <p>Compacting a rotated or transposed view materializes the rotation. Such views read the
+   * backing array down its columns, so they are copied in {@value #TILE_SIZE}-pixel square tiles
+   * whose source rows stay in cache. Large buffers are copied by several threads.
+   *
+   * @return a packed buffer holding this buffer's pixels
+   */
+  public PixelBuffer compact() {
+    if (isPacked()) {
+      return this;
+    }
+    PixelBuffer copy = new PixelBuffer(width, height);
+    int[] dst = copy.pixels;
+    if (colStride == 1 || colStride == -1) {
+      RowBands.forEach(
+          width,
+          height,
+          (first, end) -> {
+            for (int row = first; row < end; row++) {
+              copyRow(offset + row * rowStride, dst, row * width);
+            }
+          });
+    } else {
+      int rows = Math.max(1, RowBands.BAND_PIXELS / Math.max(width, 1) / TILE_SIZE) * TILE_SIZE;
+      RowBands.forEachBand(height, rows, (first, end) -> copyTiles(first, end, dst));
+    }
+    copy.isOriginUpperLeft = isOriginUpperLeft;
+    copy.updateOrigin();
+    return copy;
+  }
+
+  /**
+   * Returns a view of the {@code w}-by-{@code h} region whose corner nearest the origin is at
+   * ({@code x}, {@code y}). The view shares this buffer's pixels and origin.
+   *
+   * @param x the column of the region's corner
+   * @param y the row of the region's corner, relative to the current origin
+   * @param w the width of the region
+   * @param h the height of the region
+   * @return a view of the region
+   * @throws IndexOutOfBoundsException if the region lies outside the buffer
+   */
+  public PixelBuffer crop(int x, int y, int w, int h) {
+    checkRegion(x, y, w, h);
+    int top = isOriginUpperLeft ? y : height - y - h;
+    int start = w == 0 || h == 0 ? offset : offset + top * rowStride + x * colStride;
+    return view(w, h, start, rowStride, colStride);
+  }
+
+  /** @return a view of this buffer mirrored left to right */
+  public PixelBuffer flipHorizontal() {
+    return view(width, height, offset + lastIndex(width) * colStride, rowStride, -colStride);
+  }
+
+  /** @return a view of this buffer mirrored top to bottom */
+  public PixelBuffer flipVertical() {
+    return view(width, height, offset + lastIndex(height) * rowStride, -rowStride, colStride);
+  }
+
+  /** @return a view of this buffer mirrored along its main diagonal, so rows become columns */
+  public PixelBuffer transpose() {
+    return view(height, width, offset, colStride, rowStride);
+  }
+
+  /** @return a view of this buffer rotated 90 degrees clockwise */
+  public PixelBuffer rotate90() {
+    return view(height, width, offset + lastIndex(height) * rowStride, colStride, -rowStride);
+  }
+
+  /** @return a view of this buffer rotated 180 degrees */
+  public PixelBuffer rotate180() {
+    int start = offset + lastIndex(height) * rowStride + lastIndex(width) * colStride;
+    return view(width, height, start, -rowStride, -colStride);
+  }
+
+  /** @return a view of this buffer rotated 90 degrees counterclockwise */
+  public PixelBuffer rotate270() {
+    return view(height, width, offset + lastIndex(width) * colStride, -colStride, rowStride);
+  }
+
+  // index of the last row or column, or 0 if there is none, so empty views keep a valid offset
+  private static int lastIndex(int length) {
+    return length > 0 ? length - 1 : 0;
+  }
+
+  private PixelBuffer view(int w, int h, int start, int rowStride, int colStride) {
+    PixelBuffer view = new PixelBuffer(pixels, w, h, start, rowStride, colStride);
+    view.isOriginUpperLeft = isOriginUpperLeft;
+    view.updateOrigin();
+    return view;
+  }
+
+  /** Sets the origin (0, 0) to be the upper left pixel. This is the default. */
+  public void setOriginUpperLeft() {
+    isOriginUpperLeft = true;
+    updateOrigin();
+  }
+
+  /** Sets the origin (0, 0) to be the lower left pixel. */
+  public void setOriginLowerLeft() {
+    isOriginUpperLeft = false;
+    updateOrigin();
+  }
+
+  // folds the origin into the layout so the accessors need no branches
+  private void updateOrigin() {
+    if (isOriginUpperLeft) {
+      base = offset;
+      rowStep = rowStride;
+    } else {
+      base = offset + lastIndex(height) * rowStride;
+      rowStep = -rowStride;
+    }
+  }
+
+  /** @return {@code true} if the origin (0, 0) is the upper left pixel */
+  public boolean isOriginUpperLeft() {
+    return isOriginUpperLeft;
+  }
+
+  /**
+   * Returns the ARGB colour of pixel ({@code col}, {@code row}).
+   *
+   * @param col the column index
+   * @param row the row index, relative to the current origin
+   * @return the 32-bit ARGB colour
+   * @throws IndexOutOfBoundsException unless both {@code 0 <= col < width} and {@code 0 <= row <
+   *     height}
+   */
+  public int getARGB(int col, int row) {
+    return pixels[index(col, row)];
+  }
+
+  /**
+   * Sets the ARGB colour of pixel ({@code col}, {@code row}).
+   *
+   * @param col the column index
+   * @param row the row index, relative to the current origin
+   * @param argb the 32-bit ARGB colour
+   * @throws IndexOutOfBoundsException unless both {@code 0 <= col < width} and {@code 0 <= row <
+   *     height}
+   */
+  public void setARGB(int col, int row, int argb) {
+    pixels[index(col, row)] = argb;
+  }
+
+  /**
+   * Copies a rectangle of ARGB pixels into {@code dst}. Pixel ({@code x + i}, {@code y + j}) is
+   * stored at {@code dst[off + j * scan + i]}, matching the layout used by {@code
+   * BufferedImage.getRGB}. The region is validated once and copied row by row.
+   *
+   * @param x the column of the upper-left corner of the region
+   * @param y the row of the upper-left corner of the region, relative to the current origin
+   * @param w the width of the region
+   * @param h the height of the region
+   * @param dst the array to copy the pixels into
+   * @param off the index in {@code dst} of the first pixel
+   * @param scan the distance in {@code dst} between the starts of consecutive rows
+   * @throws IndexOutOfBoundsException if the region lies outside the buffer or does not fit in
+   *     {@code dst}
+   */
+  public void getARGB(int x, int y, int w, int h, int[] dst, int off, int scan) {
+    Objects.requireNonNull(dst, "Destination array cannot be null.");
+    checkRegion(x, y, w, h);
+    checkArrayRegion(w, h, dst.length, off, scan);
+    for (int j = 0; j < h; j++) {
+      int src = rowIndex(y + j) + x * colStride;
+      if (colStride == 1) {
+        System.arraycopy(pixels, src, dst, off + j * scan, w);
+      } else {
+        for (int i = 0, d = off + j * scan; i < w; i++, src += colStride) {
+          dst[d + i] = pixels[src];
+        }
+      }
+    }
+  }
+
+  /**
+   * Copies a rectangle of ARGB pixels from {@code src} into this buffer. Pixel ({@code x + i},
+   * {@code y + j}) is read from {@code src[off + j * scan + i]}, matching the layout used by {@code
+   * BufferedImage.setRGB}. The region is validated once and copied row by row.
+   *
+   * @param x the column of the upper-left corner of the region
+   * @param y the row of the upper-left corner of the region, relative to the current origin
+   * @param w the width of the region
+   * @param h the height of the region
+   * @param src the array to copy the pixels from
+   * @param off the index in {@code src} of the first pixel
+   * @param scan the distance in {@code src} between the starts of consecutive rows
+   * @throws IndexOutOfBoundsException if the region lies outside the buffer or does not fit in
+   *     {@code src}
+   */
+  public void setARGB(int x, int y, int w, int h, int[] src, int off, int scan) {
+    Objects.requireNonNull(src, "Source array cannot be null.");
+    checkRegion(x, y, w, h);
+    checkArrayRegion(w, h, src.length, off, scan);
+    for (int j = 0; j < h; j++) {
+      int dst = rowIndex(y + j) + x * colStride;
+      if (colStride == 1) {
+        System.arraycopy(src, off + j * scan, pixels, dst, w);
+      } else {
+        for (int i = 0, s = off + j * scan; i < w; i++, dst += colStride) {
+          pixels[dst] = src[s + i];
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns {@code true} if {@code other} has the same dimensions and the same ARGB value at every
+   * (column, row), each buffer being read relative to its own origin.
+   *
+   * <p>Rows are compared with {@link Arrays#equals(int[], int, int, int[], int, int)} where both
+   * layouts allow it, stopping at the first row that differs.
+   *
+   * @param other the buffer to compare with
+   * @return {@code true} if both buffers hold the same image
+   */
+  public boolean contentEquals(PixelBuffer other) {
+    if (other == this) {
+      return true;
+    }
+    if (other == null || width != other.width || height != other.height) {
+      return false;
+    }
+    if (isPacked() && other.isPacked() && isOriginUpperLeft == other.isOriginUpperLeft) {
+      return Arrays.equals(pixels, other.pixels);
+    }
+    for (int row = 0; row < height; row++) {
+      int a = rowIndex(row);
+      int b = other.rowIndex(row);
+      if (colStride == 1 && other.colStride == 1) {
+        if (!Arrays.equals(pixels, a, a + width, other.pixels, b, b + width)) {
+          return false;
+        }
+        continue;
+      }
+      for (int col = 0; col < width; col++, a += colStride, b += other.colStride) {
+        if (pixels[a] != other.pixels[b]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns a 64-bit digest of the image: the XXH64 hash of the ARGB values in row order, relative
+   * to the current origin, seeded with the dimensions. Buffers that are {@linkplain
+   * #contentEquals(PixelBuffer) equal in content} always have the same digest, and the digest is
+   * stable across runs and JVMs, so it can be stored alongside golden images.
+   *
+   * <p>The digest is recomputed on every call; {@link Picture#contentHash()} caches it.
+   *
+   * @return the content digest
+   */
+  public long contentHash() {
+    XxHash64 hasher = new XxHash64(((long) width << 32) | height);
+    if (isPacked() && isOriginUpperLeft) {
+      return hasher.update(pixels, 0, pixels.length).digest();
+    }
+    int[] scratch = colStride == 1 ? null : new int[width];
+    for (int row = 0; row < height; row++) {
+      if (scratch == null) {
+        hasher.update(pixels, rowIndex(row), width);
+      } else {
+        getARGB(0, row, width, 1, scratch, 0, width);
+        hasher.update(scratch, 0, width);
+      }
+    }
+    return hasher.digest();
+  }
+
+  /**
+   * Returns {@code true} if any pixel is not fully opaque.
+   *
+   * @return {@code true} if some pixel has an alpha value below 255
+   */
+  public boolean hasTransparentPixel() {
+    if (pixels.length == width * height && coversArray()) {
+      for (int argb : pixels) {
+        if ((argb >>> 24) != 0xFF) {
+          return true;
+        }
+      }
+      return false;
+    }
+    for (int row = 0; row < height; row++) {
+      int index = offset + row * rowStride;
+      for (int col = 0; col < width; col++, index += colStride) {
+        if ((pixels[index] >>> 24) != 0xFF) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  // true if every element of the array is one of this buffer's pixels, in any order
+  private boolean coversArray() {
+    return Math.abs(colStride) == 1 && Math.abs(rowStride) == width
+        || Math.abs(rowStride) == 1 && Math.abs(colStride) == height;
+  }
+
+  /**
+   * Copies the pixels into a new 2D array indexed as {@code [row][col]}, top row first.
+   *
+   * @return a {@code height}-by-{@code width} copy of the pixels
+   */
+  public int[][] toArray() {
+    int[][] rows = new int[height][];
+    for (int row = 0; row < height; row++) {
+      rows[row] = new int[width];
+      copyRow(offset + row * rowStride, rows[row], 0);
+    }
+    return rows;
+  }
+
+  // copies rows first to end into packed dst one square tile at a time
+  private void copyTiles(int first, int end, int[] dst) {
+    for (int top = first; top < end; top += TILE_SIZE) {
+      int bottom = Math.min(end, top + TILE_SIZE);
+      for (int left = 0; left < width; left += TILE_SIZE) {
+        int right = Math.min(width, left + TILE_SIZE);
+        for (int row = top; row < bottom; row++) {
+          int index = offset + row * rowStride + left * colStride;
+          for (int col = left; col < right; col++, index += colStride) {
+            dst[row * width + col] = pixels[index];
+          }
+        }
+      }
+    }
+  }
+
+  // copies the row starting at pixels[start] into dst[dstStart..]
+  private void copyRow(int start, int[] dst, int dstStart) {
+    if (colStride == 1) {
+      System.arraycopy(pixels, start, dst, dstStart, width);
+      return;
+    }
+    for (int col = 0, index = start; col < width; col++, index += colStride) {
+      dst[dstStart + col] = pixels[index];
+    }
+  }
+
+  // index of the first pixel of the given row, relative to the current origin
+  private int rowIndex(int row) {
+    return base + row * rowStep;
+  }
+
+  private void checkRegion(int x, int y, int w, int h) {
+    if (w < 0 || h < 0 || x < 0 || y < 0 || x > width - w || y > height - h) {
+      throw new IndexOutOfBoundsException(
+          String.format(
+              "Region (%d, %d, %d, %d) is outside the %d-by-%d buffer", x, y, w, h, width, height));
+    }
+  }
+
+  private static void checkArrayRegion(int w, int h, int length, int off, int scan) {
+    if (w == 0 || h == 0) {
+      return;
+    }
+    // Row starts are linear in the row number, so checking the first and last row covers all.
+    long first = off;
+    long last = off + (long) (h - 1) * scan;
+    if (Math.min(first, last) < 0 || Math.max(first, last) + w > length) {
+      throw new IndexOutOfBoundsException(
+          String.format(
+              "Array of length %d cannot hold a %d-by-%d region at offset %d with scan %d",
+              length, w, h, off, scan));
+    }
+  }
+
+  private int index(int col, int row) {
+    if (col < 0 || col >= width) {
+      throw new IndexOutOfBoundsException(
+          "column index must be between 0 and " + (width - 1) + ": " + col);
+    }
+    if (row < 0 || row >= height) {
+      throw new IndexOutOfBoundsException(
+          "row index must be between 0 and " + (height - 1) + ": " + row);
+    }
+    return base + row * rowStep + col * colStride;
+  }
+}
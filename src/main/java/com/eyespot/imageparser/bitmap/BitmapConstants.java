@@ -166,6 +166,19 @@ public final class BitmapConstants {
   /** Alpha bitfield compression (BI_ALPHABITFIELDS). */
   public static final int BI_ALPHABITFIELDS = 6;
 
+  // --- File Signature and Colour Space Values ---
+  /** The "BM" file type signature, as a little-endian 16-bit value. */
+  public static final int BM_SIGNATURE = 0x4D42;
+
+  /** Colour space type for sRGB ({@code LCS_sRGB}, the characters "sRGB"). */
+  public static final int LCS_SRGB = 0x73524742;
+
+  /** Rendering intent that preserves saturation ({@code LCS_GM_IMAGES}), used for photographs. */
+  public static final int LCS_GM_IMAGES = 4;
+
+  /** Resolution of 72 DPI, expressed in pixels per meter. */
+  public static final int DEFAULT_PELS_PER_METER = 2835;
+
   // --- Bit Manipulation Constants ---
   /** Mask for extracting a single byte (0xFF). */
   public static final int BYTE_MASK = 0xFF;
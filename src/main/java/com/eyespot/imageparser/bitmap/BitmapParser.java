@@ -5,12 +5,20 @@ import static com.eyespot.imageparser.util.ImageUtils.readShort;
 
 import com.eyespot.imageparser.IParser;
 import com.eyespot.imageparser.ImageType;
+import com.eyespot.imageparser.PixelBuffer;
 import com.eyespot.imageparser.exception.CorruptedImageException;
+import com.eyespot.imageparser.exception.DecodeCancelledException;
+import com.eyespot.imageparser.jfr.AlphaScanEvent;
+import com.eyespot.imageparser.jfr.ImageDecodeEvent;
+import com.eyespot.imageparser.jfr.ImageEvent;
+import com.eyespot.imageparser.jfr.ImageParseEvent;
 import com.eyespot.imageparser.util.ImageUtils;
+import com.eyespot.imageparser.util.RowBands;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -52,8 +60,17 @@ public class BitmapParser implements IParser {
   /** Cached result for alpha channel detection to avoid expensive pixel scanning. */
   private Boolean cachedHasAlphaChannel = null;
 
+  /** Bitfield masks used by {@link #decodeRow}, extracted on first use. */
+  private long[] scanlineMasks;
+
+  /** Receives the timings and counters of this parser, or {@link DecodeListener#NONE}. */
+  private final DecodeListener listener;
+
   private static final Logger LOGGER = Logger.getLogger(BitmapParser.class.getName());
 
+  /** The listener of parsers created without one. */
+  private static volatile DecodeListener defaultListener = DecodeListener.NONE;
+
   /**
    * Represents the {@code BITMAPFILEHEADER} structure (14 bytes). Contains basic metadata such as
    * file type, size, and offset to pixel data.
@@ -103,7 +120,21 @@ public class BitmapParser implements IParser {
    * @throws IllegalArgumentException if the file does not appear to be a valid BMP
    */
   public BitmapParser(Path path) throws IOException {
-    this(Files.readAllBytes(path));
+    this(path, defaultListener);
+  }
+
+  /**
+   * Constructs a new {@code BitmapParser} by reading all bytes from the given file path, reporting
+   * the read, the parsing of each header and every later {@link #decode()} to {@code listener}.
+   *
+   * @param path the path to a BMP image file
+   * @param listener receives the stage timings and counters
+   * @throws IOException if an I/O error occurs reading from the file
+   * @throws IllegalArgumentException if the file does not appear to be a valid BMP
+   */
+  public BitmapParser(Path path, DecodeListener listener) throws IOException {
+    // The array is freshly read and owned by this parser, so it does not need a defensive copy.
+    this(readAllBytes(path, listener), false, listener);
   }
 
   /**
@@ -117,35 +148,162 @@ public class BitmapParser implements IParser {
    * @throws IllegalArgumentException if the byte array does not represent a valid BMP image
    */
   public BitmapParser(byte[] bytes) {
+    this(bytes, true, defaultListener);
+  }
+
+  /**
+   * Constructs a new {@code BitmapParser} using the provided byte array, reporting the parsing of
+   * each header and every later {@link #decode()} to {@code listener}.
+   *
+   * @param bytes the byte array representing image data
+   * @param listener receives the stage timings and counters
+   * @throws IllegalArgumentException if the byte array does not represent a valid BMP image
+   */
+  public BitmapParser(byte[] bytes, DecodeListener listener) {
+    this(bytes, true, listener);
+  }
+
+  /**
+   * Creates a parser over bytes it may keep without copying, such as the headers of a file whose
+   * scanlines are read separately.
+   *
+   * @param bytes the start of a BMP file, at least up to the end of its colour palette
+   * @return a parser over {@code bytes}
+   * @throws IllegalArgumentException if the bytes do not start a valid BMP image
+   */
+  static BitmapParser wrap(byte[] bytes) {
+    return new BitmapParser(bytes, false, DecodeListener.NONE);
+  }
+
+  private BitmapParser(byte[] bytes, boolean copy, DecodeListener listener) {
     Objects.requireNonNull(bytes, "Input byte array cannot be null.");
+    this.listener = Objects.requireNonNull(listener, "Decode listener cannot be null.");
     if (bytes.length < BitmapConstants.FILE_HEADER_SIZE + BitmapConstants.BITMAPCOREHEADER_SIZE) {
       throw new IllegalArgumentException("Byte array too short to be a minimal BMP image.");
     }
 
-    this.data = Arrays.copyOf(bytes, bytes.length);
+    this.data = copy ? Arrays.copyOf(bytes, bytes.length) : bytes;
 
-    // Validate the image type before attempting to parse headers.
-    if (!ImageType.BITMAP.equals(ImageUtils.detectType(data))) {
-      throw new IllegalArgumentException(
-          "Provided data is not a valid BMP image (magic number mismatch).");
-    }
+    ImageParseEvent event = new ImageParseEvent();
+    event.begin();
+    DecodeListener.Stage stage = DecodeListener.Stage.HEADER;
+    long start = startStage(listener);
+    try {
+      // Validate the image type before attempting to parse headers.
+      if (!ImageType.BITMAP.equals(ImageUtils.detectType(data))) {
+        throw new IllegalArgumentException(
+            "Provided data is not a valid BMP image (magic number mismatch).");
+      }
 
-    this.header = new Header(this.data);
-    this.dibHeader = DIBHeader.createDIBHeader(this.data);
+      this.header = new Header(this.data);
+      start = endStage(listener, stage, start);
 
-    if (this.hasColourPalette()) {
-      int maskDataBlockSize = 0;
-      if (dibHeader.getCompression() == BitmapConstants.BI_BITFIELDS) {
-        maskDataBlockSize = BitmapConstants.BITFIELD_MASKS_SIZE_V3;
-      } else if (dibHeader.getCompression() == BitmapConstants.BI_ALPHABITFIELDS) {
-        maskDataBlockSize = BitmapConstants.BITFIELD_MASKS_SIZE_V4;
+      stage = DecodeListener.Stage.DIB_HEADER;
+      this.dibHeader = DIBHeader.createDIBHeader(this.data);
+      start = endStage(listener, stage, start);
+
+      if (this.hasColourPalette()) {
+        stage = DecodeListener.Stage.COLOUR_PALETTE;
+        int maskDataBlockSize = 0;
+        if (dibHeader.getCompression() == BitmapConstants.BI_BITFIELDS) {
+          maskDataBlockSize = BitmapConstants.BITFIELD_MASKS_SIZE_V3;
+        } else if (dibHeader.getCompression() == BitmapConstants.BI_ALPHABITFIELDS) {
+          maskDataBlockSize = BitmapConstants.BITFIELD_MASKS_SIZE_V4;
+        }
+        int paletteStartOffset =
+            BitmapConstants.FILE_HEADER_SIZE + this.dibHeader.getHeaderSize() + maskDataBlockSize;
+        this.colourPalette = new ColourPalette(this.data, this.dibHeader, paletteStartOffset);
+        endStage(listener, stage, start);
+      } else {
+        this.colourPalette = null;
       }
-      int paletteStartOffset =
-          BitmapConstants.FILE_HEADER_SIZE + this.dibHeader.getHeaderSize() + maskDataBlockSize;
-      this.colourPalette = new ColourPalette(this.data, this.dibHeader, paletteStartOffset);
-    } else {
-      this.colourPalette = null;
+    } catch (RuntimeException e) {
+      listener.failed(stage, e);
+      throw e;
     }
+
+    if (event.shouldCommit()) {
+      describe(event);
+      event.commit();
+    }
+    listener.parsed(this, data.length);
+  }
+
+  /**
+   * Fills in the fields a flight recorder event shares with every other event about this image.
+   *
+   * @param event the event to describe this image in
+   */
+  private void describe(ImageEvent event) {
+    event.setImage(
+        dibHeader.getWidth(),
+        dibHeader.getHeight(),
+        dibHeader.getBitsPerPixel(),
+        dibHeader.getCompression(),
+        String.valueOf(dibHeader.getType()),
+        data.length);
+  }
+
+  /**
+   * Sets the listener of the parsers later created without one, such as those {@link
+   * com.eyespot.imageparser.Picture} creates. Parsers that already exist keep their listener.
+   *
+   * @param listener the listener, or {@link DecodeListener#NONE} to stop reporting
+   */
+  public static void setDefaultListener(DecodeListener listener) {
+    defaultListener = Objects.requireNonNull(listener, "Decode listener cannot be null.");
+  }
+
+  /** @return the listener of parsers created without one, {@link DecodeListener#NONE} by default */
+  public static DecodeListener getDefaultListener() {
+    return defaultListener;
+  }
+
+  /**
+   * Reads a whole file, reporting the read to {@code listener}.
+   *
+   * @param path the file
+   * @param listener receives the duration of the read, or its failure
+   * @return the contents of the file
+   * @throws IOException if an I/O error occurs reading from the file
+   */
+  private static byte[] readAllBytes(Path path, DecodeListener listener) throws IOException {
+    Objects.requireNonNull(listener, "Decode listener cannot be null.");
+    long start = startStage(listener);
+    try {
+      byte[] bytes = Files.readAllBytes(path);
+      endStage(listener, DecodeListener.Stage.FILE_READ, start);
+      return bytes;
+    } catch (IOException | RuntimeException e) {
+      listener.failed(DecodeListener.Stage.FILE_READ, e);
+      throw e;
+    }
+  }
+
+  /**
+   * @param listener the listener being reported to
+   * @return the start time of a stage, or 0 when nobody is listening, so that parsers without a
+   *     listener never read the clock
+   */
+  private static long startStage(DecodeListener listener) {
+    return listener == DecodeListener.NONE ? 0L : System.nanoTime();
+  }
+
+  /**
+   * Reports the duration of a completed stage.
+   *
+   * @param listener the listener being reported to
+   * @param stage the stage that completed
+   * @param start the value {@link #startStage(DecodeListener)} returned when the stage started
+   * @return the end time, which is also the start time of the next stage
+   */
+  private static long endStage(DecodeListener listener, DecodeListener.Stage stage, long start) {
+    if (listener == DecodeListener.NONE) {
+      return 0L;
+    }
+    long end = System.nanoTime();
+    listener.stageCompleted(stage, end - start);
+    return end;
   }
 
   /**
@@ -198,463 +356,277 @@ public class BitmapParser implements IParser {
     return header.getOffset();
   }
 
-  /** Helper method to read uncompressed (BI_RGB) pixel data into the pixels array. */
-  private void readUncompressedPixels(
-      int[][] pixels, int displayRowMapMultiplier, int displayRowMapOffset)
-      throws CorruptedImageException {
+  /**
+   * Returns the file offset of the first scanline, for readers that fetch scanlines themselves.
+   *
+   * @return the offset to the pixel data, corrected if the header's offset is invalid
+   */
+  int getPixelDataOffset() {
+    return getActualOffset();
+  }
 
-    int width = dibHeader.getWidth();
-    int height = Math.abs(dibHeader.getHeight());
-    int bitsPerPixel = dibHeader.getBitsPerPixel();
-    int scanlineByteSize = DIBHeader.calculateScanlineSize(width, bitsPerPixel);
-    int fileRowIndexStart = 0;
-    int fileRowIncrement = 1;
-
-    for (int i = fileRowIndexStart; i != height; i += fileRowIncrement) {
-      // Calculate the corresponding row in the output array
-      int displayRowIndex = displayRowMapOffset + (i * displayRowMapMultiplier);
-
-      for (int x = 0; x < width; x++) {
-        int pixelValueARGB;
-
-        switch (bitsPerPixel) {
-          case 1:
-          case 4:
-          case 8:
-            pixelValueARGB =
-                colourPalette.getColour(getIndexedColourModePixelValue(i, x, scanlineByteSize));
-            break;
-          case 16:
-          case 24:
-          case 32:
-            pixelValueARGB = getNonIndexedColourModePixelValue(i, x, scanlineByteSize);
-            break;
-          default:
-            throw new UnsupportedOperationException(
-                "Unsupported bits per pixel for BI_RGB: " + bitsPerPixel);
-        }
-        pixels[displayRowIndex][x] = pixelValueARGB;
-      }
-    }
+  /** @return {@code true} if the file stores the bottom row first, as a positive height says */
+  boolean isBottomUp() {
+    return dibHeader.getHeight() > 0;
   }
 
   /**
-   * Extracts the pixel index from a byte array representing image data, based on the specified bit
-   * depth and pixel position.
-   *
-   * <p>This method handles three common bits-per-pixel configurations:
-   *
-   * <ul>
-   *   <li><b>8 bits per pixel</b>: each byte directly represents one pixel index.
-   *   <li><b>4 bits per pixel</b>: each byte contains two pixel indices (nibbles), with even
-   *       positions using the high nibble and odd positions using the low nibble.
-   *   <li><b>1 bit per pixel</b>: each byte contains 8 pixels, represented from the most
-   *       significant bit (leftmost pixel) to the least significant bit (rightmost pixel).
-   * </ul>
+   * Creates a decoder for the run-length encoded ({@code BI_RLE8} or {@code BI_RLE4}) pixel data of
+   * this image, for {@link #decode()} and for readers that fetch the stream themselves.
    *
-   * @param currentPixelFileOffset the offset into the data array where the relevant byte is located
-   * @param bitsPerPixel the number of bits used to represent each pixel (typically 1, 4, or 8)
-   * @param pos the position of the pixel relative to the byte, used for determining which bits to
-   *     extract
-   * @return the extracted pixel index
+   * @param progress the progress of the decode
+   * @return a decoder positioned at the first scanline, with no input yet
+   * @throws IllegalArgumentException if the bits per pixel do not match the compression
    */
-  private int getPixelIndex(int currentPixelFileOffset, int bitsPerPixel, int pos) {
-    int byteContainingPixels = data[currentPixelFileOffset] & BitmapConstants.BYTE_MASK;
-
-    if (bitsPerPixel == 8) {
-      return byteContainingPixels;
-    }
-    if (bitsPerPixel == 4) {
-      if (pos % 2 == 0) {
-        return (byteContainingPixels >> 4) & 0x0F;
-      } else {
-        return byteContainingPixels & 0x0F;
-      }
-    }
-
-    int bitPosition = 7 - (pos % 8);
-    return (byteContainingPixels >> bitPosition) & 0x01;
+  RleDecoder newRleDecoder(DecodeProgress progress) {
+    return new RleDecoder(
+        dibHeader.getCompression(),
+        dibHeader.getBitsPerPixel(),
+        dibHeader.getWidth(),
+        Math.abs(dibHeader.getHeight()),
+        colourPalette,
+        progress);
   }
 
   /**
-   * Retrieves the pixel value (palette index) for a specific pixel in an image using indexed colour
-   * mode.
-   *
-   * <p><b>Indexed Colour Mode:</b> In this mode, pixel values do not store actual colours but
-   * instead store indices into a colour palette (also known as a colour table). The palette
-   * contains the actual RGB colour definitions. Depending on the bit depth (e.g., 1, 4, or 8 bits
-   * per pixel), multiple pixels may be packed into a single byte.
-   *
-   * <p>This method calculates the file offset of the specified pixel within the image data,
-   * extracts the pixel index from the byte using {@code getPixelIndex()}, and then verifies that
-   * the index falls within the bounds of the defined palette.
+   * Decodes one scanline of uncompressed ({@code BI_RGB}) or bitfield ({@code BI_BITFIELDS}) pixel
+   * data into ARGB values. This is the row-at-a-time counterpart of {@link #decode()} for callers
+   * that read scanlines from the file themselves, so only the headers need to be in memory.
    *
-   * @param row the row index (scanline number) of the pixel (0-based from top or bottom depending
-   *     on image orientation)
-   * @param cell the column index (horizontal position) of the pixel (0-based)
-   * @param scanlineByteSize the total number of bytes in a single scanline (row) of the image
-   * @return the palette index corresponding to the specified pixel
-   * @throws IllegalArgumentException if the computed file offset is out of bounds or if the
-   *     extracted palette index is not valid
+   * @param src the bytes holding the scanline
+   * @param offset the index in {@code src} of the first byte of the scanline
+   * @param fileRow the index of the scanline in the file, used in error messages
+   * @param row receives {@link #getWidth()} ARGB pixels
+   * @throws IllegalArgumentException if a palette index has no palette entry
+   * @throws UnsupportedOperationException if the compression or bit depth is not supported
    */
-  private int getIndexedColourModePixelValue(int row, int cell, int scanlineByteSize)
-      throws CorruptedImageException {
-    // Calculate the current row's offset in the file
-    int currentScanlineFileOffset = getActualOffset() + (row * scanlineByteSize);
-    int bitsPerPixel = dibHeader.getBitsPerPixel();
-
-    int currentPixelFileOffset = currentScanlineFileOffset + (cell * bitsPerPixel / 8);
-
-    if (currentPixelFileOffset < 0 || currentPixelFileOffset >= data.length) {
-      throw new CorruptedImageException(
-          "Pixel data offset out of bounds for indexed pixel at (" + cell + "," + row + ")");
-    }
-
-    int pixelIndex = getPixelIndex(currentPixelFileOffset, bitsPerPixel, cell);
-    if (pixelIndex >= colourPalette.getNumberOfEntries()) {
-      throw new IllegalArgumentException(
-          "Palette index " + pixelIndex + " out of bounds at pixel (" + cell + "," + row + ")");
-    }
-    return pixelIndex;
+  void decodeScanline(byte[] src, int offset, int fileRow, int[] row) {
+    decodeRow(src, offset, fileRow, row, 0, dibHeader.getWidth());
   }
 
   /**
-   * Retrieves the ARGB colour value of a specific pixel in a non-indexed colour image (BI_RGB
-   * format).
-   *
-   * <p><b>Non-Indexed Colour Mode (BI_RGB):</b> Unlike indexed colour mode, non-indexed images
-   * store actual colour values for each pixel directly in the image data. This method supports 16,
-   * 24, and 32 bits per pixel (bpp) formats:
+   * Decodes the first {@code count} pixels of an uncompressed ({@code BI_RGB}) or bitfield ({@code
+   * BI_BITFIELDS}) scanline into ARGB values. This is the one place these formats are unpacked; the
+   * full-image readers and {@link #decodeScanline} both go through it.
    *
    * <ul>
-   *   <li><b>16bpp (RGB555):</b> Each pixel is stored as a 2-byte (16-bit) value. Bits are
-   *       allocated as:
-   *       <pre>
-   *       Bit layout: RRRRRGGGGGBBBBB
-   *       - Bits 15–11: Red (5 bits)
-   *       - Bits 10–5 : Green (5 bits)
-   *       - Bits 4–0  : Blue (5 bits)
-   *       </pre>
-   *       These are expanded to 8-bit components for ARGB output.
-   *   <li><b>24bpp (RGB888):</b> Each pixel uses 3 bytes (24 bits) in the order Blue, Green, Red
-   *       (BGR). Alpha is assumed to be 255 (fully opaque).
-   *   <li><b>32bpp (ARGB8888 or BGRA):</b> Each pixel uses 4 bytes. The order is Blue, Green, Red,
-   *       Alpha. The fourth byte is interpreted as the alpha (transparency) channel.
+   *   <li><b>1, 4 and 8 bits per pixel:</b> palette indices, packed from the most significant bit
+   *       of each byte, so the leftmost pixel is in the high bits.
+   *   <li><b>16 bits per pixel (RGB555):</b> bits 14–10 red, 9–5 green and 4–0 blue, expanded to 8
+   *       bits per channel.
+   *   <li><b>24 bits per pixel:</b> blue, green and red bytes, opaque.
+   *   <li><b>32 bits per pixel:</b> blue, green, red and alpha bytes.
+   *   <li><b>Bitfields (16 or 32 bits per pixel):</b> each channel is read with the mask from
+   *       {@link #extractMasks()}; without an alpha mask the pixel is opaque.
    * </ul>
    *
-   * @param i the row index (scanline number) of the pixel (0-based)
-   * @param x the column index (horizontal pixel position) within the scanline (0-based)
-   * @param scanlineByteSize the number of bytes that make up one scanline
-   * @return the ARGB colour value of the specified pixel as a 32-bit integer
-   * @throws IllegalArgumentException if the computed file offset is outside the bounds of the image
-   *     data
-   * @throws UnsupportedOperationException if the bits-per-pixel value is unsupported
+   * @param src the bytes holding the scanline
+   * @param offset the index in {@code src} of the first byte of the scanline
+   * @param fileRow the index of the scanline in the file, used in error messages
+   * @param dst receives the ARGB pixels
+   * @param dstStart the index in {@code dst} of the first pixel
+   * @param count the number of pixels to decode, from the start of the scanline
+   * @throws IllegalArgumentException if a palette index has no palette entry
+   * @throws UnsupportedOperationException if the compression or bit depth is not supported
    */
-  private int getNonIndexedColourModePixelValue(int i, int x, int scanlineByteSize)
-      throws CorruptedImageException {
-    // Calculate the current row's offset in the file
-    int currentScanlineFileOffset = getActualOffset() + (i * scanlineByteSize);
+  private void decodeRow(byte[] src, int offset, int fileRow, int[] dst, int dstStart, int count) {
+    int bitsPerPixel = dibHeader.getBitsPerPixel();
+    int compression = dibHeader.getCompression();
+    if (compression == BitmapConstants.BI_BITFIELDS && (bitsPerPixel == 16 || bitsPerPixel == 32)) {
+      if (scanlineMasks == null) {
+        scanlineMasks = extractMasks();
+      }
+      long alphaMask = scanlineMasks[3];
+      for (int x = 0, pos = offset; x < count; x++) {
+        long pixelData;
+        if (bitsPerPixel == 16) {
+          pixelData = (src[pos] & 0xFF) | (src[pos + 1] & 0xFF) << 8;
+          pos += 2;
+        } else {
+          pixelData =
+              ((src[pos] & 0xFF)
+                      | (src[pos + 1] & 0xFF) << 8
+                      | (src[pos + 2] & 0xFF) << 16
+                      | (src[pos + 3] & 0xFF) << 24)
+                  & 0xFFFFFFFFL;
+          pos += 4;
+        }
+        int r = extractComponent(pixelData, scanlineMasks[0]);
+        int g = extractComponent(pixelData, scanlineMasks[1]);
+        int b = extractComponent(pixelData, scanlineMasks[2]);
+        int a =
+            alphaMask != 0 ? extractComponent(pixelData, alphaMask) : BitmapConstants.OPAQUE_ALPHA;
+        dst[dstStart + x] = (a << 24) | (r << 16) | (g << 8) | b;
+      }
+      return;
+    }
+    if (compression != BitmapConstants.BI_RGB) {
+      throw new UnsupportedOperationException(
+          "Scanlines can only be decoded for BI_RGB and BI_BITFIELDS, not " + compression);
+    }
 
-    switch (dibHeader.getBitsPerPixel()) {
+    switch (bitsPerPixel) {
+      case 1:
+      case 4:
+      case 8:
+        int pixelsPerByte = 8 / bitsPerPixel;
+        int indexMask = (1 << bitsPerPixel) - 1;
+        for (int x = 0; x < count; x++) {
+          int packed = src[offset + x / pixelsPerByte] & BitmapConstants.BYTE_MASK;
+          int shift = 8 - bitsPerPixel * (x % pixelsPerByte + 1);
+          int pixelIndex = (packed >>> shift) & indexMask;
+          if (pixelIndex >= colourPalette.getNumberOfEntries()) {
+            throw new IllegalArgumentException(
+                "Palette index "
+                    + pixelIndex
+                    + " out of bounds at pixel ("
+                    + x
+                    + ","
+                    + fileRow
+                    + ")");
+          }
+          dst[dstStart + x] = colourPalette.getColour(pixelIndex);
+        }
+        break;
       case 16:
-        {
-          int currentPixelFileOffset = currentScanlineFileOffset + (x * 2);
-          ImageUtils.ensureBytesAvailable(
-              currentPixelFileOffset,
-              2,
-              "Pixel data offset out of bounds for 16bpp pixel at (" + x + "," + i + ")",
-              data.length,
-              true);
-          short pixelData = readShort(data, currentPixelFileOffset);
-
-          // Convert RGB555 5-bit components to 8-bit RGB888.
+        for (int x = 0, pos = offset; x < count; x++, pos += 2) {
+          short pixelData = (short) ((src[pos] & 0xFF) | (src[pos + 1] & 0xFF) << 8);
           int r = expand5BitTo8Bit(extractRed5Bit(pixelData));
           int g = expand5BitTo8Bit(extractGreen5Bit(pixelData));
           int b = expand5BitTo8Bit(extractBlue5Bit(pixelData));
-
-          return (BitmapConstants.OPAQUE_ALPHA << 24) | (r << 16) | (g << 8) | b;
+          dst[dstStart + x] = (BitmapConstants.OPAQUE_ALPHA << 24) | (r << 16) | (g << 8) | b;
         }
+        break;
       case 24:
-        {
-          int currentPixelFileOffset = currentScanlineFileOffset + (x * 3);
-          ImageUtils.ensureBytesAvailable(
-              currentPixelFileOffset,
-              3,
-              "Pixel data offset out of bounds for 24bpp pixel at (" + x + "," + i + ")",
-              data.length,
-              true);
-          int b = data[currentPixelFileOffset] & BitmapConstants.BYTE_MASK;
-          int g = data[currentPixelFileOffset + 1] & BitmapConstants.BYTE_MASK;
-          int r = data[currentPixelFileOffset + 2] & BitmapConstants.BYTE_MASK;
-          return (BitmapConstants.OPAQUE_ALPHA << 24) | (r << 16) | (g << 8) | b;
+        for (int x = 0, pos = offset; x < count; x++, pos += 3) {
+          dst[dstStart + x] =
+              (BitmapConstants.OPAQUE_ALPHA << 24)
+                  | (src[pos + 2] & 0xFF) << 16
+                  | (src[pos + 1] & 0xFF) << 8
+                  | (src[pos] & 0xFF);
         }
+        break;
       case 32:
-        int currentPixelFileOffset = currentScanlineFileOffset + (x * 4);
-        ImageUtils.ensureBytesAvailable(
-            currentPixelFileOffset,
-            4,
-            "Pixel data offset out of bounds for 32bpp pixel at (" + x + "," + i + ")",
-            data.length,
-            true);
-        int b = data[currentPixelFileOffset] & BitmapConstants.BYTE_MASK;
-        int g = data[currentPixelFileOffset + 1] & BitmapConstants.BYTE_MASK;
-        int r = data[currentPixelFileOffset + 2] & BitmapConstants.BYTE_MASK;
         // For BI_RGB 32bpp, the 4th byte is usually alpha (A) or unused (X).
         // Currently, interpret it as alpha, as is common in modern usage.
-        int a = data[currentPixelFileOffset + 3] & BitmapConstants.BYTE_MASK;
-        return (a << 24) | (r << 16) | (g << 8) | b;
+        for (int x = 0, pos = offset; x < count; x++, pos += 4) {
+          dst[dstStart + x] =
+              (src[pos + 3] & 0xFF) << 24
+                  | (src[pos + 2] & 0xFF) << 16
+                  | (src[pos + 1] & 0xFF) << 8
+                  | (src[pos] & 0xFF);
+        }
+        break;
       default:
         throw new UnsupportedOperationException(
-            "Unsupported bits per pixel for BI_RGB: " + dibHeader.getBitsPerPixel());
+            "Unsupported bits per pixel for BI_RGB: " + bitsPerPixel);
     }
   }
 
   /**
-   * Reads pixel data from a BMP image using bitfield masks (BI_BITFIELDS or BI_ALPHABITFIELDS
-   * compression) and returns it as a 2D array of ARGB pixel values.
+   * Decodes every scanline of uncompressed or bitfield pixel data from the file with {@link
+   * #decodeRow}, in file order. If the file ends part way through a scanline, the whole pixels
+   * before the end are still decoded.
    *
-   * <p><b>Bitfield Compression Mode:</b> In this mode, each pixel's colour components are not
-   * assumed to follow a fixed layout like RGB888. Instead, individual bit masks are used to define
-   * the positions of red, green, blue, and optionally alpha channels. These masks are typically
-   * defined in the {@code BitmapV2InfoHeader}, {@code BitmapV3InfoHeader}, or {@code
-   * BitmapV4Header}, and are extracted using {@link #extractMasks()}.
-   *
-   * <p>This method only supports 16bpp and 32bpp images. It dynamically chooses the appropriate
-   * pixel-reading method for each scanline depending on the bit depth.
-   *
-   * <p>The scanline reading direction is flexible, allowing for bottom-up or top-down row ordering
-   * via the {@code fileRowIndexStart}, {@code fileRowIndexEnd}, and {@code fileRowIncrement}
-   * parameters. The mapping to display coordinates is controlled by {@code displayRowMapMultiplier}
-   * and {@code displayRowMapOffset}, which determine how file rows map to the output image's row
-   * indices.
-   *
-   * @param displayRowMapMultiplier multiplier for converting file row index to display row index
-   * @param displayRowMapOffset offset to apply after scaling the file row index for display mapping
-   * @throws IllegalArgumentException if the image's bits per pixel is not 16 or 32
+   * @param pixels the flat output pixel array, first scanline in the file first
+   * @param progress the progress of the decode, updated before each scanline
+   * @param format the pixel format, used in error messages
+   * @throws CorruptedImageException if the pixel data ends before the last scanline
    */
-  private void readBitfieldPixels(
-      int[][] pixels, int displayRowMapMultiplier, int displayRowMapOffset) {
-
-    int fileRowIndexStart = 0;
-    int fileRowIncrement = 1;
-    int fileRowIndexEnd = Math.abs(dibHeader.getHeight());
-    long[] masks = extractMasks();
-
-    int bitsPerPixel = dibHeader.getBitsPerPixel();
+  private void readScanlines(int[] pixels, DecodeProgress progress, String format)
+      throws CorruptedImageException {
     int width = dibHeader.getWidth();
-
-    if (bitsPerPixel != 16 && bitsPerPixel != 32) {
-      throw new IllegalArgumentException(
-          "BI_BITFIELDS compression is only valid for 16 or 32 bits per pixel.");
-    }
-
+    int height = Math.abs(dibHeader.getHeight());
+    int bitsPerPixel = dibHeader.getBitsPerPixel();
     int scanlineByteSize = DIBHeader.calculateScanlineSize(width, bitsPerPixel);
-
-    long redMask = masks[0];
-    long greenMask = masks[1];
-    long blueMask = masks[2];
-    long alphaMask = masks[3];
-
-    int leap = bitsPerPixel / 8;
-    long unsignedShortMask = (1L << bitsPerPixel) - 1;
-
-    for (int i = fileRowIndexStart; i != fileRowIndexEnd; i += fileRowIncrement) {
-      int scanlineOffset = getActualOffset() + (i * scanlineByteSize);
-      int displayRowIndex = displayRowMapOffset + (i * displayRowMapMultiplier);
-
-      for (int x = 0; x < width; x++) {
-        int pixelOffset = scanlineOffset + (x * leap);
-
-        if (pixelOffset + leap > data.length) {
-          throw new IllegalArgumentException(
-              String.format(
-                  "Pixel data offset out of bounds for %d bitfield pixel at (%d, %d)",
-                  bitsPerPixel, x, i));
-        }
-
-        long pixelData = readBitfieldPixelData(pixelOffset, leap, x, i) & unsignedShortMask;
-
-        int r = extractComponent(pixelData, redMask);
-        int g = extractComponent(pixelData, greenMask);
-        int b = extractComponent(pixelData, blueMask);
-        int a =
-            (alphaMask != 0)
-                ? extractComponent(pixelData, alphaMask)
-                : BitmapConstants.OPAQUE_ALPHA;
-
-        pixels[displayRowIndex][x] = (a << 24) | (r << 16) | (g << 8) | b;
+    int pixelDataOffset = getActualOffset();
+
+    for (int i = 0; i != height; i++) {
+      progress.startRow(i);
+      int scanlineOffset = pixelDataOffset + (i * scanlineByteSize);
+      long bytesLeft = Math.max(0, data.length - scanlineOffset);
+      int available = (int) Math.min(width, bytesLeft * 8 / bitsPerPixel);
+      decodeRow(data, scanlineOffset, i, pixels, i * width, available);
+      if (available < width) {
+        throw new CorruptedImageException(
+            String.format(
+                "Pixel data offset out of bounds for %s pixel at (%d,%d)", format, available, i),
+            scanlineOffset + (int) ((long) available * bitsPerPixel / 8),
+            true);
       }
     }
   }
 
+  /** Helper method to read uncompressed (BI_RGB) pixel data into the pixels array. */
+  private void readUncompressedPixels(int[] pixels, DecodeProgress progress)
+      throws CorruptedImageException {
+    int bitsPerPixel = dibHeader.getBitsPerPixel();
+    switch (bitsPerPixel) {
+      case 1:
+      case 4:
+      case 8:
+        readScanlines(pixels, progress, "indexed");
+        break;
+      case 16:
+      case 24:
+      case 32:
+        readScanlines(pixels, progress, bitsPerPixel + "bpp");
+        break;
+      default:
+        throw new UnsupportedOperationException(
+            "Unsupported bits per pixel for BI_RGB: " + bitsPerPixel);
+    }
+  }
+
   /**
-   * Reads a pixel's raw bitfield data from the bitmap byte array at the given offset.
+   * Reads pixel data from a BMP image using bitfield masks (BI_BITFIELDS or BI_ALPHABITFIELDS
+   * compression) and writes them into a flat, row-major array of ARGB pixel values.
    *
-   * <p>This method supports both 16-bit and 32-bit pixels. The number of bytes to read (2 or 4) is
-   * determined by the {@code leap} parameter.
+   * <p><b>Bitfield Compression Mode:</b> In this mode, each pixel's colour components are not
+   * assumed to follow a fixed layout like RGB888. Instead, individual bit masks are used to define
+   * the positions of red, green, blue, and optionally alpha channels. These masks are typically
+   * defined in the {@code BitmapV2InfoHeader}, {@code BitmapV3InfoHeader}, or {@code
+   * BitmapV4Header}, and are extracted using {@link #extractMasks()}.
+   *
+   * <p>This method only supports 16bpp and 32bpp images. Each scanline is unpacked by {@link
+   * #decodeRow}.
    *
-   * @param offset the byte offset in the bitmap data where the pixel starts
-   * @param leap the number of bytes per pixel (typically 2 for 16bpp, 4 for 32bpp)
-   * @return the raw pixel data as an {@code int}; for 16bpp this will be a sign-extended short, for
-   *     32bpp it will be the full 4-byte integer
-   * @throws IllegalArgumentException if the bpp is not 16 or 32 or if offset is invalid
+   * <p>Rows are written in file order; {@link #decode()} maps them to display order.
+   *
+   * @param pixels the flat output pixel array, first scanline in the file first
+   * @param progress the progress of the decode, updated before each scanline
+   * @throws IllegalArgumentException if the image's bits per pixel is not 16 or 32
+   * @throws CorruptedImageException if the pixel data ends before the last scanline
    */
-  private int readBitfieldPixelData(int offset, int leap, int row, int col) {
+  private void readBitfieldPixels(int[] pixels, DecodeProgress progress)
+      throws CorruptedImageException {
     int bitsPerPixel = dibHeader.getBitsPerPixel();
-
-    if (offset + leap > data.length) {
-      throw new IllegalArgumentException(
-          String.format(
-              "Pixel data offset out of bounds for %d bitfield pixel at (%d, %d)",
-              bitsPerPixel, row, col));
-    }
-
     if (bitsPerPixel != 16 && bitsPerPixel != 32) {
       throw new IllegalArgumentException(
           "BI_BITFIELDS compression is only valid for 16 or 32 bits per pixel.");
     }
-    if (leap == 2) {
-      return readShort(data, offset);
-    }
-    return readInt(data, offset);
+    readScanlines(pixels, progress, bitsPerPixel + " bitfield");
   }
 
   /**
-   * Decodes pixel data compressed using BI_RLE8 (Run-Length Encoding for 8-bit BMP images). This
-   * method reads the compressed byte stream and fills the provided pixels array. It handles both
-   * encoded runs and absolute runs, mapping logical coordinates to display coordinates.
+   * Decodes pixel data compressed with BI_RLE8 or BI_RLE4, a scanline at a time in file order, into
+   * the pixels array. Pixels the stream skips are left transparent black.
    *
-   * @param pixels the 2D output pixel array to write decoded colours into
-   * @param displayRowMapMultiplier determines if rows are bottom-up (-1) or top-down (1)
-   * @param displayRowMapOffset offset to apply to the row index for display ordering
-   * @throws IllegalArgumentException if the DIB header does not specify 8 bits per pixel, or if the
-   *     data stream is malformed
+   * @param pixels the flat output pixel array to write decoded colours into, first scanline in the
+   *     file first
+   * @throws IllegalArgumentException if the bits per pixel do not match the compression
+   * @throws CorruptedImageException if the stream ends early, or in strict mode if it leaves the
+   *     image
    */
-  /** Helper class to track RLE decoding state and handle common escape sequences. */
-  private static class RLEDecodingContext {
-    private static final int END_OF_LINE = 0x00;
-    private static final int END_OF_BITMAP = 0x01;
-    private static final int DELTA = 0x02;
-    int fileOffset;
-    int x;
-    int y;
-    boolean endOfBitmap;
-
-    RLEDecodingContext(int initialOffset) {
-      this.fileOffset = initialOffset;
-      this.x = 0;
-      this.y = 0;
-      this.endOfBitmap = false;
-    }
-
-    /**
-     * Handles RLE escape sequences that are identical for RLE4 and RLE8. Returns true if handled.
-     */
-    boolean handleEscapeSequence(int code, byte[] data, String format)
-        throws CorruptedImageException {
-      switch (code) {
-        case END_OF_LINE:
-          x = 0;
-          y++;
-          return true;
-        case END_OF_BITMAP:
-          this.endOfBitmap = true;
-          return true;
-        case DELTA:
-          ImageUtils.ensureBytesAvailable(
-              fileOffset, 2, format + " decoding error: Missing delta offsets.", data.length, true);
-          int dx = data[fileOffset++] & BitmapConstants.BYTE_MASK;
-          int dy = data[fileOffset++] & BitmapConstants.BYTE_MASK;
-          x += dx;
-          y += dy;
-          return true;
-        default:
-          return false; // Not a standard escape sequence, caller handles absolute mode
-      }
-    }
-  }
-
-  private void readRLE8Pixels(int[][] pixels, int displayRowMapMultiplier, int displayRowMapOffset)
-      throws CorruptedImageException {
-    if (dibHeader.getBitsPerPixel() != 8) {
-      throw new IllegalArgumentException("BI_RLE8 compression is only valid for 8 bits per pixel.");
-    }
-
-    RLEDecodingContext ctx = new RLEDecodingContext(getActualOffset());
-
-    while (ctx.fileOffset < data.length && !ctx.endOfBitmap) {
-      if (ctx.fileOffset + 1 >= data.length) {
-        break;
-      }
-
-      int runLength = data[ctx.fileOffset++] & BitmapConstants.BYTE_MASK;
-
-      if (runLength != 0) {
-        // Encoded mode
-        ImageUtils.ensureBytesAvailable(
-            ctx.fileOffset,
-            1,
-            "RLE8 decoding error: Missing colour index for encoded run.",
-            data.length,
-            false);
-        int colourIndex = data[ctx.fileOffset++] & BitmapConstants.BYTE_MASK;
-        ctx.x =
-            writeBIRLE8EncodedRun(
-                pixels,
-                runLength,
-                displayRowMapOffset,
-                displayRowMapMultiplier,
-                ctx.x,
-                ctx.y,
-                colourIndex);
-      } else {
-        // Escape mode
-        ImageUtils.ensureBytesAvailable(
-            ctx.fileOffset,
-            1,
-            "RLE8 decoding error: Missing escape code parameter.",
-            data.length,
-            false);
-        int code = data[ctx.fileOffset++] & BitmapConstants.BYTE_MASK;
-
-        if (!ctx.handleEscapeSequence(code, data, "RLE8")) {
-          // Absolute mode
-          ImageUtils.ensureBytesAvailable(
-              ctx.fileOffset,
-              code,
-              "RLE8 decoding error: Not enough data for absolute run of " + code + " pixels.",
-              data.length,
-              false);
-          ctx.x =
-              writeBIRLE8AbsoluteRun(
-                  pixels,
-                  code,
-                  displayRowMapOffset,
-                  displayRowMapMultiplier,
-                  ctx.x,
-                  ctx.y,
-                  ctx.fileOffset);
-          ctx.fileOffset += code;
-          if (code % 2 != 0) {
-            ctx.fileOffset++;
-          }
-        }
-      }
+  private void readRLEPixels(int[] pixels, DecodeProgress progress) throws CorruptedImageException {
+    int width = dibHeader.getWidth();
+    int height = Math.abs(dibHeader.getHeight());
+    RleDecoder decoder = newRleDecoder(progress);
+    decoder.setInput(data, getActualOffset(), data.length, 0, true);
+    for (int row = 0; row < height && !decoder.isFinished(); row++) {
+      decoder.decodeRow(row, pixels, row * width);
     }
-  }
-
-  /**
-   * Helper method to check if a pixel is within valid bounds.
-   *
-   * @param x the X coordinate
-   * @param y the Y coordinate
-   * @param row the display row index
-   * @param width the image width
-   * @param displayHeight the image height
-   * @return true if the pixel is within bounds
-   */
-  private boolean isPixelInBounds(int x, int y, int row, int width, int displayHeight) {
-    return x >= 0 && x < width && y >= 0 && y < displayHeight && row >= 0 && row < displayHeight;
+    decoder.finish();
   }
 
   /**
@@ -711,205 +683,6 @@ public class BitmapParser implements IParser {
     return pixelData & BitmapConstants.RGB5_BLUE_MASK;
   }
 
-  /**
-   * Writes an encoded run to the output pixel array. In encoded mode, a single colour index is
-   * repeated for the specified run length.
-   *
-   * @param pixels the 2D output pixel array
-   * @param runLength the number of pixels to write with the same colour
-   * @param colourIndex the palette index for the colour to use
-   * @param displayRowMapOffset row offset for display mapping
-   * @param displayRowMapMultiplier direction for row mapping (1 for top-down, -1 for bottom-up)
-   * @param currentX starting X coordinate
-   * @param currentY current Y coordinate
-   * @return the updated X coordinate after writing the run
-   */
-  private int writeBIRLE8EncodedRun(
-      int[][] pixels,
-      int runLength,
-      int displayRowMapOffset,
-      int displayRowMapMultiplier,
-      int currentX,
-      int currentY,
-      int colourIndex) {
-    int width = dibHeader.getWidth();
-    int displayHeight = Math.abs(dibHeader.getHeight());
-    int colour = colourPalette.getColour(colourIndex);
-    int row = displayRowMapOffset + currentY * displayRowMapMultiplier;
-
-    for (int i = 0; i < runLength; i++, currentX++) {
-      if (isPixelInBounds(currentX, currentY, row, width, displayHeight)) {
-        pixels[row][currentX] = colour;
-      }
-    }
-    return currentX;
-  }
-
-  /**
-   * Writes an absolute run to the output pixel array. In absolute mode, each pixel index is
-   * explicitly specified in the data.
-   *
-   * @param pixels the 2D output pixel array
-   * @param count the number of explicit pixel indices to read and write
-   * @param displayRowMapOffset row offset for display mapping
-   * @param displayRowMapMultiplier direction for row mapping (1 for top-down, -1 for bottom-up)
-   * @param currentX starting X coordinate
-   * @param currentY current Y coordinate
-   * @param currentFileOffset offset into the data array where the pixel indices begin
-   * @return the updated X coordinate after writing the run
-   */
-  private int writeBIRLE8AbsoluteRun(
-      int[][] pixels,
-      int count,
-      int displayRowMapOffset,
-      int displayRowMapMultiplier,
-      int currentX,
-      int currentY,
-      int currentFileOffset) {
-    int width = dibHeader.getWidth();
-    int displayHeight = Math.abs(dibHeader.getHeight());
-    int row = displayRowMapOffset + (currentY * displayRowMapMultiplier);
-
-    for (int i = 0; i < count; i++, currentX++) {
-      if (isPixelInBounds(currentX, currentY, row, width, displayHeight)) {
-        int pixelIndex = data[currentFileOffset + i] & BitmapConstants.BYTE_MASK;
-        pixels[row][currentX] = colourPalette.getColour(pixelIndex);
-      }
-    }
-
-    return currentX;
-  }
-
-  private void readRLE4Pixels(int[][] pixels, int displayRowMapMultiplier, int displayRowMapOffset)
-      throws CorruptedImageException {
-    if (dibHeader.getBitsPerPixel() != 4) {
-      throw new IllegalArgumentException("BI_RLE4 compression is only valid for 4 bits per pixel.");
-    }
-
-    RLEDecodingContext ctx = new RLEDecodingContext(getActualOffset());
-
-    while (ctx.fileOffset < data.length && !ctx.endOfBitmap) {
-      if (ctx.fileOffset + 1 >= data.length) {
-        break;
-      }
-
-      int firstByte = data[ctx.fileOffset++] & BitmapConstants.BYTE_MASK;
-
-      if (firstByte != 0) {
-        // Encoded mode
-        ImageUtils.ensureBytesAvailable(
-            ctx.fileOffset,
-            1,
-            "RLE4 decoding error: Missing colour index for encoded run.",
-            data.length,
-            false);
-        int secondByte = data[ctx.fileOffset++] & BitmapConstants.BYTE_MASK;
-        int colourIndex1 = (secondByte >> 4) & 0x0F;
-        int colourIndex2 = secondByte & 0x0F;
-        ctx.x =
-            writeBIRLE4EncodedRun(
-                pixels,
-                firstByte,
-                displayRowMapOffset,
-                displayRowMapMultiplier,
-                ctx.x,
-                ctx.y,
-                colourIndex1,
-                colourIndex2);
-      } else {
-        // Escape mode
-        ImageUtils.ensureBytesAvailable(
-            ctx.fileOffset,
-            1,
-            "RLE4 decoding error: Missing escape code parameter.",
-            data.length,
-            false);
-        int code = data[ctx.fileOffset++] & BitmapConstants.BYTE_MASK;
-
-        if (!ctx.handleEscapeSequence(code, data, "RLE4")) {
-          // Absolute mode
-          int bytesNeeded = (code + 1) / 2;
-          ImageUtils.ensureBytesAvailable(
-              ctx.fileOffset,
-              bytesNeeded,
-              "RLE4 decoding error: Not enough data for absolute run of " + code + " pixels.",
-              data.length,
-              false);
-          ctx.x =
-              writeBIRLE4AbsoluteRun(
-                  pixels,
-                  code,
-                  displayRowMapOffset,
-                  displayRowMapMultiplier,
-                  ctx.x,
-                  ctx.y,
-                  ctx.fileOffset);
-          ctx.fileOffset += bytesNeeded;
-          if (bytesNeeded % 2 != 0) {
-            ctx.fileOffset++;
-          }
-        }
-      }
-    }
-  }
-
-  private int writeBIRLE4EncodedRun(
-      int[][] pixels,
-      int runLength,
-      int displayRowMapOffset,
-      int displayRowMapMultiplier,
-      int startX,
-      int y,
-      int colourIndex1,
-      int colourIndex2) {
-    int x = startX;
-    int width = dibHeader.getWidth();
-    int displayHeight = Math.abs(dibHeader.getHeight());
-    int row = displayRowMapOffset + y * displayRowMapMultiplier;
-
-    for (int i = 0; i < runLength; i++) {
-      if (isPixelInBounds(x, y, row, width, displayHeight)) {
-        int colour =
-            (i % 2 == 0)
-                ? colourPalette.getColour(colourIndex1)
-                : colourPalette.getColour(colourIndex2);
-        pixels[row][x] = colour;
-      }
-      x++;
-    }
-    return x;
-  }
-
-  private int writeBIRLE4AbsoluteRun(
-      int[][] pixels,
-      int numPixels,
-      int displayRowMapOffset,
-      int displayRowMapMultiplier,
-      int startX,
-      int y,
-      int fileOffset) {
-    int x = startX;
-    int width = dibHeader.getWidth();
-    int displayHeight = Math.abs(dibHeader.getHeight());
-    int row = displayRowMapOffset + (y * displayRowMapMultiplier);
-    int currentByte = 0;
-
-    for (int i = 0; i < numPixels; i++) {
-      if (isPixelInBounds(x, y, row, width, displayHeight)) {
-        if (i % 2 == 0) {
-          currentByte = data[fileOffset + i / 2] & BitmapConstants.BYTE_MASK;
-          int colourIndex = (currentByte >> 4) & 0x0F;
-          pixels[row][x] = colourPalette.getColour(colourIndex);
-        } else {
-          int colourIndex = currentByte & 0x0F;
-          pixels[row][x] = colourPalette.getColour(colourIndex);
-        }
-      }
-      x++;
-    }
-    return x;
-  }
-
   /**
    * Extracts the colour channel bit masks (red, green, blue, alpha) from the DIB header.
    *
@@ -1210,94 +983,299 @@ public class BitmapParser implements IParser {
    */
   @Override
   public boolean hasAlphaChannel() {
+    return hasAlphaChannel(null);
+  }
+
+  /**
+   * Determines if the bitmap has an alpha channel, scanning the given pixels instead of decoding
+   * the image again when the headers alone are not conclusive.
+   *
+   * <p>This lets callers that already hold the result of {@link #decode()} avoid a second decode.
+   *
+   * @param decoded the pixels previously returned by {@link #decode()} on this parser, or {@code
+   *     null} to decode them on demand
+   * @return true if alpha channel is present, false otherwise
+   */
+  public boolean hasAlphaChannel(PixelBuffer decoded) {
     // Return cached result if available
     if (cachedHasAlphaChannel != null) {
       return cachedHasAlphaChannel;
     }
 
-    boolean hasAlpha = false;
+    if (canTellAlphaChannelFromHeaders()) {
+      // an alpha mask means an alpha channel; a palette has one if an entry is not opaque
+      boolean fromHeaders = colourPalette == null || colourPalette.hasAlphaChannel();
+      cachedHasAlphaChannel = fromHeaders;
+      return fromHeaders;
+    }
 
-    // Check color palette first (for indexed color images)
-    if (colourPalette != null) {
-      hasAlpha = colourPalette.hasAlphaChannel();
-      cachedHasAlphaChannel = hasAlpha;
-      return hasAlpha;
+    AlphaScanEvent event = new AlphaScanEvent();
+    event.begin();
+    boolean hasAlpha = (decoded != null ? decoded : decode()).hasTransparentPixel();
+    if (event.shouldCommit()) {
+      event.setResult(
+          dibHeader.getWidth(), Math.abs(dibHeader.getHeight()), decoded == null, hasAlpha);
+      event.commit();
     }
+    cachedHasAlphaChannel = hasAlpha;
+    return hasAlpha;
+  }
 
-    // Check header metadata for alpha mask (V3/V4/V5 headers)
+  /**
+   * Returns {@code true} if {@link #hasAlphaChannel()} can answer from the colour palette or the
+   * alpha mask in the headers, without decoding and scanning the pixels.
+   *
+   * @return {@code true} if the alpha channel is known without decoding
+   */
+  public boolean isAlphaChannelKnown() {
+    return cachedHasAlphaChannel != null || canTellAlphaChannelFromHeaders();
+  }
+
+  /**
+   * Returns {@code true} if the colour palette (for indexed colour images) or a non-zero alpha mask
+   * in a V3, V4 or V5 header answers {@link #hasAlphaChannel()}, so that only other images need
+   * their pixels scanned.
+   *
+   * @return {@code true} if the headers alone tell whether there is an alpha channel
+   */
+  private boolean canTellAlphaChannelFromHeaders() {
+    if (colourPalette != null) {
+      return true;
+    }
     // Note: BitmapV5Header extends BitmapV4Header, so the V4 check covers both
     if (dibHeader instanceof BitmapV3InfoHeader) {
-      long alphaMask = ((BitmapV3InfoHeader) dibHeader).getAlphaMask();
-      if (alphaMask != 0) {
-        cachedHasAlphaChannel = true;
-        return true;
-      }
-    } else if (dibHeader instanceof BitmapV4Header) {
-      // This also covers BitmapV5Header since it extends BitmapV4Header
-      long alphaMask = ((BitmapV4Header) dibHeader).getAlphaMask();
-      if (alphaMask != 0) {
-        cachedHasAlphaChannel = true;
-        return true;
-      }
+      return ((BitmapV3InfoHeader) dibHeader).getAlphaMask() != 0;
     }
-
-    int[][] pixels = getPixels();
-    for (int[] pixel : pixels) {
-      for (int argb : pixel) {
-        int alpha = (argb >> 24) & BitmapConstants.BYTE_MASK;
-        if (alpha != BitmapConstants.OPAQUE_ALPHA) {
-          cachedHasAlphaChannel = true;
-          return true;
-        }
-      }
-    }
-
-    cachedHasAlphaChannel = false;
-    return false;
+    return dibHeader instanceof BitmapV4Header && ((BitmapV4Header) dibHeader).getAlphaMask() != 0;
   }
 
   /**
    * Reads and returns the pixel data as a 2D array of ARGB integers. Each integer represents a
    * pixel in AARRGGBB format.
    *
+   * <p>This is a convenience wrapper around {@link #decode()} that copies each row into its own
+   * array. Callers that can work with a flat array should prefer {@link #decode()}.
+   *
    * @return A 2D array (height x width) of pixel data
+   * @throws IllegalArgumentException if the image exceeds the {@linkplain DecodeOptions#DEFAULT
+   *     default} limits
    * @throws UnsupportedOperationException if the compression type is not supported
    */
   @Override
   public int[][] getPixels() {
+    return decode().toArray();
+  }
+
+  /**
+   * Decodes the pixel data into a headless {@link PixelBuffer} with the {@linkplain
+   * DecodeOptions#DEFAULT default options}. Each integer represents a pixel in AARRGGBB format.
+   *
+   * <p>Scanlines are stored in the order they appear in the file. For the usual bottom-up bitmaps
+   * the returned buffer is therefore a {@linkplain PixelBuffer#isPacked() non-packed} view whose
+   * row 0 is still the top row of the image; call {@link PixelBuffer#compact()} if a top-down array
+   * is needed.
+   *
+   * <p>If the pixel data is truncated, the rows decoded so far are kept and the remaining pixels
+   * are left transparent black.
+   *
+   * @return a {@code PixelBuffer} holding the decoded pixels
+   * @throws IllegalArgumentException if the image exceeds the default limits
+   * @throws UnsupportedOperationException if the compression type is not supported
+   */
+  public PixelBuffer decode() {
+    return decode(DecodeOptions.DEFAULT);
+  }
+
+  /**
+   * Decodes the pixel data into a headless {@link PixelBuffer}, as {@link #decode()} does, with the
+   * given limits, handling of corrupted data and output format. The limits are checked against the
+   * headers before the pixels are allocated. The deadline, the cancellation check and the interrupt
+   * status of the current thread are checked once per scanline.
+   *
+   * @param options the limits and output format to decode with
+   * @return a {@code PixelBuffer} holding the decoded pixels
+   * @throws IllegalArgumentException if the image exceeds a limit of {@code options}, if the
+   *     options are strict and the pixel data is corrupted, or if bitfield pixel data is truncated
+   * @throws DecodeCancelledException if the deadline passes, the decode is cancelled or the thread
+   *     is interrupted before the last scanline
+   * @throws UnsupportedOperationException if the compression type is not supported
+   */
+  public PixelBuffer decode(DecodeOptions options) {
+    return decode(options, false).getPixels();
+  }
+
+  /**
+   * Decodes the pixel data as {@link #decode(DecodeOptions)} does, but reports a decode that could
+   * not finish instead of logging or throwing it. If the pixel data is truncated or malformed, or
+   * the decode is cancelled, the result holds the pixels decoded so far and says how many scanlines
+   * they cover, where the problem is and what kind it is. A truncated upload can then be served as
+   * a partial image.
+   *
+   * <p>Strict options are still checked for run-length codes that leave the image, but a problem is
+   * reported in the result rather than thrown. Exceeding a limit and an unsupported format are
+   * still thrown, since nothing is decoded.
+   *
+   * @param options the limits, output format, cancellation and progress listener to decode with
+   * @return the decoded pixels and how far the decode got
+   * @throws IllegalArgumentException if the image exceeds a limit of {@code options}
+   * @throws UnsupportedOperationException if the compression type is not supported
+   */
+  public DecodeResult decodeWithResult(DecodeOptions options) {
+    return decode(options, true);
+  }
+
+  /**
+   * Checks the bitmap for structural problems without decoding it, for callers that only need to
+   * accept or reject a file. The headers are checked against each other and the file: the file
+   * size, dimensions, bit depth, compression, colour counts, masks, and that the palette and the
+   * scanlines fit in the file. Run-length encoded data is followed to check that it stays in the
+   * image and is complete, and colour indices are checked against the palette, but no pixels are
+   * written.
+   *
+   * <p>Every problem found is reported, not just the first. A file whose headers cannot be parsed
+   * at all is rejected by the constructor, so never reaches this method.
+   *
+   * @return the problems found, which is empty if the bitmap is valid
+   */
+  public List<ValidationProblem> validate() {
+    return new BitmapValidator(data, dibHeader, getActualOffset()).validate();
+  }
+
+  /**
+   * Decodes the pixel data.
+   *
+   * @param options the options to decode with
+   * @param isPartialResult {@code true} to return corruption and cancellation in the result, {@code
+   *     false} to log corruption, or throw it if the options are strict, and to throw cancellation
+   * @return the decoded pixels and how far the decode got
+   */
+  private DecodeResult decode(DecodeOptions options, boolean isPartialResult) {
+    Objects.requireNonNull(options, "Decode options cannot be null.");
     int displayHeight = Math.abs(dibHeader.getHeight());
     int width = dibHeader.getWidth();
     int compression = dibHeader.getCompression();
 
-    int[][] pixels = new int[displayHeight][width];
-
-    // Logical image row to which the current file row maps
-    // For bottom-up, fileRow 0 maps to displayHeight-1. For top-down, fileRow 0 maps to 0.
-    int displayRowMapMultiplier = dibHeader.getHeight() > 0 ? -1 : 1;
-    int displayRowMapOffset = dibHeader.getHeight() > 0 ? displayHeight - 1 : 0;
+    ImageDecodeEvent event = new ImageDecodeEvent();
+    event.begin();
+    long start = startStage(listener);
+    PixelBuffer buffer;
+    try {
+      options.checkLimits(
+          width, displayHeight, compression, Math.max(0, data.length - getActualOffset()));
+      // Scanlines are decoded in file order. A positive height means the file stores the bottom
+      // row first, which the buffer's layout maps back to display order without moving any pixels.
+      buffer =
+          dibHeader.getHeight() > 0
+              ? PixelBuffer.bottomUp(width, displayHeight)
+              : new PixelBuffer(width, displayHeight);
+    } catch (RuntimeException e) {
+      listener.failed(DecodeListener.Stage.PIXEL_DECODE, e);
+      throw e;
+    }
+    int[] pixels = buffer.getPixels();
 
+    DecodeProgress progress = new DecodeProgress(options, displayHeight);
+    DecodeResult.ErrorKind errorKind = DecodeResult.ErrorKind.NONE;
+    int firstBadOffset = -1;
+    String errorMessage = null;
     // Handle Compression
     try {
       if (compression == BitmapConstants.BI_RGB) {
-        readUncompressedPixels(pixels, displayRowMapMultiplier, displayRowMapOffset);
-      } else if (compression == BitmapConstants.BI_RLE8) {
-        readRLE8Pixels(pixels, displayRowMapMultiplier, displayRowMapOffset);
+        readUncompressedPixels(pixels, progress);
+      } else if (compression == BitmapConstants.BI_RLE8 || compression == BitmapConstants.BI_RLE4) {
+        readRLEPixels(pixels, progress);
       } else if (compression == BitmapConstants.BI_BITFIELDS) {
-        readBitfieldPixels(pixels, displayRowMapMultiplier, displayRowMapOffset);
-      } else if (compression == BitmapConstants.BI_RLE4) {
-        readRLE4Pixels(pixels, displayRowMapMultiplier, displayRowMapOffset);
+        readBitfieldPixels(pixels, progress);
       } else if (compression == BitmapConstants.BI_JPEG || compression == BitmapConstants.BI_PNG) {
         throw new UnsupportedOperationException(
             "JPEG or PNG embedded compression is not supported for direct pixel reading.");
       } else {
         throw new UnsupportedOperationException("Unsupported BMP compression type: " + compression);
       }
+      progress.finish();
     } catch (CorruptedImageException e) {
-      if (LOGGER.isLoggable(Level.SEVERE)) {
+      // decode() has always rejected truncated bitfield data rather than returning part of it
+      if (!isPartialResult && (options.isStrict() || compression == BitmapConstants.BI_BITFIELDS)) {
+        IllegalArgumentException rejected = new IllegalArgumentException(e.getMessage(), e);
+        listener.failed(DecodeListener.Stage.PIXEL_DECODE, rejected);
+        throw rejected;
+      }
+      errorKind =
+          e.isTruncated() ? DecodeResult.ErrorKind.TRUNCATED : DecodeResult.ErrorKind.MALFORMED;
+      firstBadOffset = e.getOffset();
+      errorMessage = e.getMessage();
+      if (!isPartialResult && LOGGER.isLoggable(Level.SEVERE)) {
         LOGGER.log(Level.SEVERE, "Failed to read pixel data: {0}", e.getMessage());
       }
+    } catch (DecodeCancelledException e) {
+      if (!isPartialResult) {
+        listener.failed(DecodeListener.Stage.PIXEL_DECODE, e);
+        throw e;
+      }
+      errorKind = DecodeResult.ErrorKind.CANCELLED;
+      errorMessage = e.getMessage();
+    } catch (RuntimeException e) {
+      listener.failed(DecodeListener.Stage.PIXEL_DECODE, e);
+      throw e;
     }
+    convert(pixels, width, displayHeight, options.getOutputFormat());
+
+    boolean isCorrupted =
+        errorKind == DecodeResult.ErrorKind.TRUNCATED
+            || errorKind == DecodeResult.ErrorKind.MALFORMED;
+    // only the rows decoded before a corruption or cancellation were produced
+    long pixelsProduced = (long) width * progress.getRowsCompleted();
+    endStage(listener, DecodeListener.Stage.PIXEL_DECODE, start);
+    if (event.shouldCommit()) {
+      describe(event);
+      event.setResult(pixelsProduced, isCorrupted);
+      event.commit();
+    }
+    listener.decoded(this, pixelsProduced, isCorrupted);
+    return new DecodeResult(
+        buffer,
+        progress.getRowsCompleted(),
+        dibHeader.getHeight() > 0,
+        errorKind,
+        firstBadOffset,
+        errorMessage);
+  }
 
-    return pixels;
+  /**
+   * Converts decoded ARGB pixels to the requested output format in place.
+   *
+   * @param pixels the decoded pixels, {@code width} by {@code height} in any row order
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param format the output format
+   */
+  private static void convert(
+      int[] pixels, int width, int height, DecodeOptions.OutputFormat format) {
+    if (format == DecodeOptions.OutputFormat.ARGB) {
+      return;
+    }
+    boolean isOpaque = format == DecodeOptions.OutputFormat.RGB;
+    RowBands.forEach(
+        width,
+        height,
+        (firstRow, endRow) -> {
+          for (int i = firstRow * width, end = endRow * width; i < end; i++) {
+            int argb = pixels[i];
+            int a = argb >>> 24;
+            if (isOpaque) {
+              pixels[i] = argb | 0xFF000000;
+            } else if (a != BitmapConstants.OPAQUE_ALPHA) {
+              // x * a / 255, rounded, without a division
+              int r = ((argb >> 16) & 0xFF) * a + 128;
+              int g = ((argb >> 8) & 0xFF) * a + 128;
+              int b = (argb & 0xFF) * a + 128;
+              pixels[i] =
+                  a << 24
+                      | (r + (r >> 8)) >> 8 << 16
+                      | (g + (g >> 8)) >> 8 << 8
+                      | (b + (b >> 8)) >> 8;
+            }
+          }
+        });
   }
 }
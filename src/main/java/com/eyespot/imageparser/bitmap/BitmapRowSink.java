@@ -0,0 +1,158 @@
+package com.eyespot.imageparser.bitmap;
+
+import com.eyespot.imageparser.pipeline.RowSink;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Writes rows to a BMP file as they arrive, in one of the direct-colour formats of {@link
+ * BitmapWriter}.
+ *
+ * <p>The file layout is fixed by the dimensions passed to {@link #begin(int, int, boolean)}, so the
+ * headers are written first and each chunk of encoded scanlines is written at its final position
+ * with a positional write. Memory use is one chunk of scanlines however large the image. Rows are
+ * stored in the order they arrive: bottom-up rows give the usual positive height, and top-down rows
+ * a negative height.
+ *
+ * @author Kevin Babu
+ * @see BitmapRowSource
+ */
+public final class BitmapRowSink implements RowSink {
+  /** Minimum size of the buffer that scanlines are encoded into before being written. */
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final FileChannel channel;
+  private final BitmapWriter writer;
+  private ByteBuffer chunk;
+  private int width;
+  private int rowSize;
+  private int rowsLeft = -1; // -1 until begin() is called
+  private long position; // file position of the first byte in the chunk
+
+  /**
+   * Creates the file, replacing it if it exists.
+   *
+   * @param path the file to write
+   * @param format the direct-colour format to write
+   * @throws IOException if an I/O error occurs creating the file
+   * @throws IllegalArgumentException if the format is {@linkplain BitmapWriter.Format#isIndexed()
+   *     indexed}
+   */
+  public BitmapRowSink(Path path, BitmapWriter.Format format) throws IOException {
+    Objects.requireNonNull(path, "Path cannot be null.");
+    this.writer = new BitmapWriter(format);
+    if (format.isIndexed()) {
+      throw new IllegalArgumentException("Format " + format + " cannot be written row by row");
+    }
+    this.channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IllegalArgumentException if the image is too large for the BMP format
+   * @throws IllegalStateException if an image has already been started
+   */
+  @Override
+  public void begin(int width, int height, boolean isBottomUp) throws IOException {
+    if (rowsLeft >= 0) {
+      throw new IllegalStateException("An image has already been started");
+    }
+    BitmapWriter.Format format = writer.getFormat();
+    int pixelOffset = writer.directPixelOffset();
+    int scanlineSize = DIBHeader.calculateScanlineSize(width, format.getBitsPerPixel());
+    long imageSize = (long) scanlineSize * height;
+    long fileSize = pixelOffset + imageSize;
+    if (width < 0 || height < 0 || scanlineSize < 0 || fileSize > 0xFFFFFFFFL) {
+      throw new IllegalArgumentException(
+          "Image too large for the BMP format: " + width + "x" + height);
+    }
+
+    int rowsPerChunk = Math.max(1, CHUNK_SIZE / Math.max(scanlineSize, 1));
+    chunk =
+        ByteBuffer.allocate(Math.max(pixelOffset, scanlineSize * rowsPerChunk))
+            .order(ByteOrder.LITTLE_ENDIAN);
+    writer.writeHeaders(
+        chunk,
+        width,
+        isBottomUp ? height : -height,
+        (int) imageSize,
+        (int) fileSize,
+        pixelOffset,
+        null);
+    chunk.limit(pixelOffset);
+    write(chunk, 0);
+    chunk.clear();
+
+    this.width = width;
+    this.rowSize = scanlineSize;
+    this.rowsLeft = height;
+    this.position = pixelOffset;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IllegalStateException if the image has not been started or already has every row
+   */
+  @Override
+  public void writeRow(int[] row) throws IOException {
+    if (rowsLeft <= 0) {
+      throw new IllegalStateException(
+          rowsLeft < 0 ? "begin() has not been called" : "Every row has already been written");
+    }
+    if (chunk.remaining() < rowSize) {
+      flush();
+    }
+    byte[] bytes = chunk.array();
+    int end = writer.encodeRow(row, width, bytes, chunk.position());
+    // zero the scanline padding, which may hold bytes from an earlier chunk
+    Arrays.fill(bytes, end, chunk.position() + rowSize, (byte) 0);
+    chunk.position(chunk.position() + rowSize);
+    rowsLeft--;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IllegalStateException if fewer rows were written than announced
+   */
+  @Override
+  public void end() throws IOException {
+    if (rowsLeft != 0) {
+      throw new IllegalStateException(
+          rowsLeft < 0 ? "begin() has not been called" : rowsLeft + " rows were not written");
+    }
+    flush();
+  }
+
+  private void flush() throws IOException {
+    chunk.flip();
+    int length = chunk.remaining();
+    write(chunk, position);
+    position += length;
+    chunk.clear();
+  }
+
+  private void write(ByteBuffer buffer, long start) throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer, start + buffer.position());
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
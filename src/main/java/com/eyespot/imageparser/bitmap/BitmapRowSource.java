@@ -0,0 +1,248 @@
+package com.eyespot.imageparser.bitmap;
+
+import com.eyespot.imageparser.exception.CorruptedImageException;
+import com.eyespot.imageparser.pipeline.RowSource;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Reads the rows of a BMP file one at a time, without loading the pixel data into memory.
+ *
+ * <p>Only the headers and colour palette are read up front. Uncompressed ({@code BI_RGB}) and
+ * bitfield ({@code BI_BITFIELDS}) scanlines are then fetched a chunk at a time with positional
+ * reads and decoded by {@link BitmapParser}'s scanline decoder. Run-length encoded ({@code BI_RLE8}
+ * and {@code BI_RLE4}) data is read a chunk at a time too, and fed to an {@link RleDecoder} that
+ * keeps its place in the stream from one row to the next. Either way memory use is a chunk and a
+ * scanline whatever the size of the file. Rows are delivered in file order.
+ *
+ * <p>As with {@link BitmapParser#decode()}, scanlines missing from a truncated file are delivered
+ * as transparent black, as are the pixels a run-length encoded stream skips.
+ *
+ * @author Kevin Babu
+ * @see BitmapRowSink
+ */
+public final class BitmapRowSource implements RowSource {
+  /** Size of the chunks scanlines and run-length encoded data are read in. */
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  /** Largest header and palette region accepted, to reject absurd pixel data offsets. */
+  private static final int MAX_HEADER_SIZE = 16 * 1024 * 1024;
+
+  private final FileChannel channel;
+  private final BitmapParser parser; // the headers and palette, without the pixel data
+  private final int width;
+  private final int height;
+  private final boolean isBottomUp;
+  private final long pixelDataOffset;
+  private final ByteBuffer chunk;
+
+  // uncompressed and bitfield data
+  private final int scanlineSize;
+  private int chunkFirstRow; // file row of the first scanline in the chunk
+  private int chunkRows; // number of scanlines in the chunk
+
+  // run-length encoded data
+  private final RleDecoder rle; // null for other compressions
+  private long chunkOffset; // file offset of the first byte in the chunk
+  private boolean isRleTruncated; // the stream ended part way through a code
+
+  private int nextRow;
+
+  private BitmapRowSource(FileChannel channel, BitmapParser parser) {
+    this.channel = channel;
+    this.parser = parser;
+    this.width = parser.getWidth();
+    this.height = parser.getHeight();
+    this.isBottomUp = parser.isBottomUp();
+    this.pixelDataOffset = parser.getPixelDataOffset();
+    int compression = parser.getCompression();
+    if (compression == BitmapConstants.BI_RLE8 || compression == BitmapConstants.BI_RLE4) {
+      this.rle = parser.newRleDecoder(new DecodeProgress(DecodeOptions.DEFAULT, height));
+      this.scanlineSize = 0;
+      this.chunk = ByteBuffer.allocate(CHUNK_SIZE);
+      this.chunkOffset = pixelDataOffset;
+      chunk.limit(0); // empty until the decoder asks for data
+      rle.setInput(chunk.array(), 0, 0, chunkOffset, false);
+    } else {
+      this.rle = null;
+      this.scanlineSize = DIBHeader.calculateScanlineSize(width, parser.getBitsPerPixel());
+      int rowsPerChunk = Math.max(1, CHUNK_SIZE / Math.max(scanlineSize, 1));
+      this.chunk = ByteBuffer.allocate(scanlineSize * rowsPerChunk);
+    }
+  }
+
+  /**
+   * Opens a BMP file for reading row by row. The caller must close the returned source.
+   *
+   * @param path the BMP file
+   * @return a source of the file's rows
+   * @throws IOException if an I/O error occurs reading the headers
+   * @throws IllegalArgumentException if the file is not a valid BMP image, or if the bits per pixel
+   *     do not suit the compression
+   * @throws UnsupportedOperationException if the compression type is not supported
+   */
+  public static BitmapRowSource open(Path path) throws IOException {
+    Objects.requireNonNull(path, "Path cannot be null.");
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+    try {
+      BitmapParser parser = BitmapParser.wrap(readHeaders(channel));
+      int compression = parser.getCompression();
+      if (compression != BitmapConstants.BI_RGB
+          && compression != BitmapConstants.BI_BITFIELDS
+          && compression != BitmapConstants.BI_RLE8
+          && compression != BitmapConstants.BI_RLE4) {
+        throw new UnsupportedOperationException("Unsupported BMP compression type: " + compression);
+      }
+      return new BitmapRowSource(channel, parser);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  // reads the file header, DIB header, bitfield masks and the largest possible palette
+  private static byte[] readHeaders(FileChannel channel) throws IOException {
+    ByteBuffer fixed =
+        ByteBuffer.allocate(BitmapConstants.FILE_HEADER_SIZE + Integer.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN);
+    readFully(channel, fixed, 0);
+    int pixelDataOffset = fixed.getInt(BitmapConstants.BF_OFFBITS_OFFSET);
+    int dibHeaderSize = fixed.getInt(BitmapConstants.FILE_HEADER_SIZE);
+    if (dibHeaderSize < 0 || dibHeaderSize > BitmapConstants.BITMAPV5HEADER_SIZE) {
+      throw new IllegalArgumentException(
+          "Unknown or unsupported DIB header size: " + dibHeaderSize);
+    }
+    long needed =
+        Math.max(
+            pixelDataOffset,
+            BitmapConstants.FILE_HEADER_SIZE
+                + dibHeaderSize
+                + BitmapConstants.BITFIELD_MASKS_SIZE_V4
+                + 256L * Integer.BYTES);
+    if (needed > MAX_HEADER_SIZE) {
+      throw new IllegalArgumentException("Pixel data offset out of range: " + pixelDataOffset);
+    }
+    ByteBuffer headers = ByteBuffer.allocate((int) Math.min(needed, channel.size()));
+    readFully(channel, headers, 0);
+    return headers.array();
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new EOFException("File too short to be a BMP image.");
+      }
+    }
+  }
+
+  /** @return the number of bits per pixel of the file */
+  public int getBitsPerPixel() {
+    return parser.getBitsPerPixel();
+  }
+
+  /** @return the compression method of the file, such as {@link BitmapConstants#BI_RGB} */
+  public int getCompression() {
+    return parser.getCompression();
+  }
+
+  /** @return the type of the file's DIB header */
+  public InfoHeaderType getDibHeaderType() {
+    return parser.getDibHeaderType();
+  }
+
+  @Override
+  public int width() {
+    return width;
+  }
+
+  @Override
+  public int height() {
+    return height;
+  }
+
+  @Override
+  public boolean isBottomUp() {
+    return isBottomUp;
+  }
+
+  @Override
+  public void readRow(int[] row) throws IOException {
+    if (nextRow >= height) {
+      throw new NoSuchElementException("All " + height + " rows have been read");
+    }
+    int fileRow = nextRow++;
+    if (rle != null) {
+      readRleRow(fileRow, row);
+      return;
+    }
+    if (fileRow >= chunkFirstRow + chunkRows) {
+      fillChunk(fileRow);
+    }
+    int start = (fileRow - chunkFirstRow) * scanlineSize;
+    if (start + scanlineSize > chunk.limit()) {
+      Arrays.fill(row, 0, width, 0); // truncated file
+      return;
+    }
+    parser.decodeScanline(chunk.array(), start, fileRow, row);
+  }
+
+  private void fillChunk(int firstRow) throws IOException {
+    chunk.clear();
+    int rows = Math.min(chunk.capacity() / Math.max(scanlineSize, 1), height - firstRow);
+    chunk.limit(rows * scanlineSize);
+    long position = pixelDataOffset + (long) firstRow * scanlineSize;
+    while (chunk.hasRemaining()) {
+      if (channel.read(chunk, position + chunk.position()) < 0) {
+        break;
+      }
+    }
+    chunk.flip();
+    chunkFirstRow = firstRow;
+    chunkRows = rows;
+  }
+
+  private void readRleRow(int fileRow, int[] row) throws IOException {
+    Arrays.fill(row, 0, width, 0);
+    if (isRleTruncated) {
+      return;
+    }
+    try {
+      while (!rle.decodeRow(fileRow, row, 0)) {
+        readMoreRle();
+      }
+    } catch (CorruptedImageException e) {
+      isRleTruncated = true; // keep what the row got, as decode() does
+    }
+  }
+
+  // moves the bytes the decoder has not used to the front of the chunk, and reads more after them
+  private void readMoreRle() throws IOException {
+    byte[] bytes = chunk.array();
+    int used = rle.getPosition();
+    int remaining = chunk.limit() - used;
+    System.arraycopy(bytes, used, bytes, 0, remaining);
+    chunkOffset += used;
+    chunk.clear();
+    chunk.position(remaining);
+    boolean isEndOfFile = false;
+    while (chunk.hasRemaining() && !isEndOfFile) {
+      isEndOfFile = channel.read(chunk, chunkOffset + chunk.position()) < 0;
+    }
+    chunk.flip();
+    rle.setInput(bytes, 0, chunk.limit(), chunkOffset, isEndOfFile);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+}
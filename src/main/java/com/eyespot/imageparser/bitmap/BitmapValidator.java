@@ -0,0 +1,592 @@
+package com.eyespot.imageparser.bitmap;
+
+import static com.eyespot.imageparser.util.ImageUtils.readInt;
+import static com.eyespot.imageparser.util.ImageUtils.readShort;
+
+import com.eyespot.imageparser.bitmap.ValidationProblem.Kind;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Checks a parsed bitmap for structural problems without decoding it, for {@link
+ * BitmapParser#validate()}.
+ *
+ * <p>The {@link DIBHeader} normalises some fields as it parses them, such as the sign of the width,
+ * so the checks read the raw fields from the file. Every check runs whatever the others found, so
+ * that the report lists every problem, except that the pixel data is only checked once the fields
+ * describing it are sound, and run-length encoded data is only followed up to its first structural
+ * error, after which the position in the image means nothing.
+ *
+ * @author Kevin Babu
+ */
+final class BitmapValidator {
+  /** Resolutions above this, about 25,000 dots per inch, are not plausible. */
+  private static final int MAX_PIXELS_PER_METRE = 1_000_000;
+
+  private static final int DIB = BitmapConstants.FILE_HEADER_SIZE;
+
+  private final byte[] data;
+  private final int headerSize;
+  private final boolean isCoreHeader;
+  private final int pixelDataOffset;
+  private final List<ValidationProblem> problems = new ArrayList<>();
+
+  // raw header fields
+  private final int width;
+  private final int height;
+  private final int bitsPerPixel;
+  private final int compression;
+
+  private int paletteEntries; // 0 if the image is not indexed
+
+  // pixels whose colour index is beyond the palette, reported as one problem
+  private int badIndexCount;
+  private int firstBadIndex;
+  private int firstBadIndexOffset;
+  private int firstBadIndexX;
+  private int firstBadIndexY;
+
+  /**
+   * @param data the bitmap file
+   * @param dibHeader the parsed DIB header
+   * @param pixelDataOffset the offset the parser decodes pixels from
+   */
+  BitmapValidator(byte[] data, DIBHeader dibHeader, int pixelDataOffset) {
+    this.data = data;
+    this.headerSize = dibHeader.getHeaderSize();
+    this.isCoreHeader = dibHeader.getType() == InfoHeaderType.BITMAPCOREHEADER;
+    this.pixelDataOffset = pixelDataOffset;
+    if (isCoreHeader) {
+      this.width = readShort(data, DIB + BitmapConstants.BI_CORE_WIDTH_OFFSET) & 0xFFFF;
+      this.height = readShort(data, DIB + BitmapConstants.BI_CORE_HEIGHT_OFFSET) & 0xFFFF;
+      this.bitsPerPixel = readShort(data, DIB + BitmapConstants.BI_CORE_BITCOUNT_OFFSET) & 0xFFFF;
+      this.compression = BitmapConstants.BI_RGB;
+    } else {
+      this.width = readInt(data, DIB + BitmapConstants.BI_WIDTH_OFFSET);
+      this.height = readInt(data, DIB + BitmapConstants.BI_HEIGHT_OFFSET);
+      this.bitsPerPixel = readShort(data, DIB + BitmapConstants.BI_BITCOUNT_OFFSET) & 0xFFFF;
+      this.compression = readInt(data, DIB + BitmapConstants.BI_COMPRESSION_OFFSET);
+    }
+  }
+
+  /**
+   * Runs every check.
+   *
+   * @return the problems found, in the order of the fields they concern
+   */
+  List<ValidationProblem> validate() {
+    checkFileSize();
+    boolean hasValidDimensions = checkDimensions();
+    checkColourPlanes();
+    boolean hasValidBitDepth = checkBitDepth();
+    boolean isDecodable = checkCompression() && hasValidBitDepth;
+    checkResolution();
+    long paletteEnd = checkPalette(hasValidBitDepth);
+    checkColourMasks();
+    boolean hasPixelData = checkPixelDataOffset(paletteEnd);
+
+    if (hasValidDimensions && isDecodable && hasPixelData) {
+      if (compression == BitmapConstants.BI_RLE8 || compression == BitmapConstants.BI_RLE4) {
+        checkRunLengthData();
+      } else {
+        checkScanlines();
+      }
+      if (badIndexCount > 0) {
+        add(
+            Kind.PALETTE_INDEX,
+            firstBadIndexOffset,
+            String.format(
+                "%d pixels use colours beyond the %d-entry palette, the first colour %d at (%d,%d)",
+                badIndexCount, paletteEntries, firstBadIndex, firstBadIndexX, firstBadIndexY));
+      }
+    }
+    return Collections.unmodifiableList(problems);
+  }
+
+  private void add(Kind kind, long offset, String message) {
+    problems.add(new ValidationProblem(kind, (int) Math.min(offset, Integer.MAX_VALUE), message));
+  }
+
+  // A size of 0 is common from encoders that stream and is harmless, so only a wrong one is flagged
+  private void checkFileSize() {
+    long size = Integer.toUnsignedLong(readInt(data, BitmapConstants.BF_SIZE_OFFSET));
+    if (size != 0 && size != data.length) {
+      add(
+          Kind.FILE_SIZE,
+          BitmapConstants.BF_SIZE_OFFSET,
+          "File header gives a size of " + size + " bytes, but the file has " + data.length);
+    }
+  }
+
+  private boolean checkDimensions() {
+    // the width is at the same offset in every header type; only the height moves
+    int widthOffset = DIB + BitmapConstants.BI_WIDTH_OFFSET;
+    int heightOffset =
+        DIB
+            + (isCoreHeader
+                ? BitmapConstants.BI_CORE_HEIGHT_OFFSET
+                : BitmapConstants.BI_HEIGHT_OFFSET);
+    boolean isValid = true;
+    if (width <= 0) {
+      add(Kind.DIMENSIONS, widthOffset, "Width must be positive: " + width);
+      isValid = false;
+    }
+    if (height == 0 || height == Integer.MIN_VALUE) {
+      add(Kind.DIMENSIONS, heightOffset, "Height must be non-zero: " + height);
+      isValid = false;
+    }
+    if (isValid) {
+      try {
+        DecodeOptions.DEFAULT.checkLimits(width, Math.abs(height), compression, 0);
+      } catch (IllegalArgumentException e) {
+        add(Kind.DIMENSIONS, widthOffset, e.getMessage());
+        isValid = false;
+      }
+    }
+    return isValid;
+  }
+
+  private void checkColourPlanes() {
+    int offset =
+        DIB
+            + (isCoreHeader
+                ? BitmapConstants.BI_CORE_PLANES_OFFSET
+                : BitmapConstants.BI_PLANES_OFFSET);
+    int planes = readShort(data, offset) & 0xFFFF;
+    if (planes != 1) {
+      add(Kind.COLOUR_PLANES, offset, "Number of colour planes must be 1: " + planes);
+    }
+  }
+
+  private boolean checkBitDepth() {
+    boolean isValid;
+    switch (bitsPerPixel) {
+      case 1:
+      case 4:
+      case 8:
+      case 24:
+        isValid = true;
+        break;
+      case 16:
+      case 32:
+        isValid = !isCoreHeader;
+        break;
+      case 0:
+        isValid = compression == BitmapConstants.BI_JPEG || compression == BitmapConstants.BI_PNG;
+        break;
+      default:
+        isValid = false;
+    }
+    if (!isValid) {
+      int offset =
+          DIB
+              + (isCoreHeader
+                  ? BitmapConstants.BI_CORE_BITCOUNT_OFFSET
+                  : BitmapConstants.BI_BITCOUNT_OFFSET);
+      add(Kind.BIT_DEPTH, offset, "Unsupported number of bits per pixel: " + bitsPerPixel);
+    }
+    return isValid;
+  }
+
+  /**
+   * @return {@code true} if the compression method fits the image and can be decoded, so that the
+   *     pixel data can be checked
+   */
+  private boolean checkCompression() {
+    int offset = DIB + BitmapConstants.BI_COMPRESSION_OFFSET;
+    switch (compression) {
+      case BitmapConstants.BI_RGB:
+        return true;
+      case BitmapConstants.BI_RLE8:
+      case BitmapConstants.BI_RLE4:
+        int expectedBits = compression == BitmapConstants.BI_RLE8 ? 8 : 4;
+        String name = compression == BitmapConstants.BI_RLE8 ? "BI_RLE8" : "BI_RLE4";
+        boolean isValid = true;
+        if (bitsPerPixel != expectedBits) {
+          add(
+              Kind.COMPRESSION,
+              offset,
+              name + " requires " + expectedBits + " bits per pixel, not " + bitsPerPixel);
+          isValid = false;
+        }
+        if (height < 0) {
+          add(Kind.COMPRESSION, offset, name + " bitmaps cannot be stored top-down");
+          isValid = false;
+        }
+        return isValid;
+      case BitmapConstants.BI_BITFIELDS:
+        if (bitsPerPixel != 16 && bitsPerPixel != 32) {
+          add(
+              Kind.COMPRESSION,
+              offset,
+              "BI_BITFIELDS requires 16 or 32 bits per pixel, not " + bitsPerPixel);
+          return false;
+        }
+        return true;
+      case BitmapConstants.BI_JPEG:
+      case BitmapConstants.BI_PNG:
+      case BitmapConstants.BI_ALPHABITFIELDS:
+        add(Kind.COMPRESSION, offset, "Compression method " + compression + " is not supported");
+        return false;
+      default:
+        add(Kind.COMPRESSION, offset, "Unknown compression method: " + compression);
+        return false;
+    }
+  }
+
+  private void checkResolution() {
+    if (isCoreHeader) {
+      return;
+    }
+    int[] offsets = {
+      DIB + BitmapConstants.BI_X_PELS_PER_METER_OFFSET,
+      DIB + BitmapConstants.BI_Y_PELS_PER_METER_OFFSET
+    };
+    for (int offset : offsets) {
+      int resolution = readInt(data, offset);
+      if (resolution < 0 || resolution > MAX_PIXELS_PER_METRE) {
+        add(Kind.RESOLUTION, offset, "Implausible resolution: " + resolution + " pixels per metre");
+      }
+    }
+  }
+
+  /**
+   * Checks the colour counts, and that the palette fits in the file.
+   *
+   * @param hasValidBitDepth {@code true} if the bit depth says whether there is a palette
+   * @return the offset at which the headers, masks and palette end
+   */
+  private long checkPalette(boolean hasValidBitDepth) {
+    int masksSize = 0;
+    if (headerSize == BitmapConstants.BITMAPINFOHEADER_SIZE) {
+      if (compression == BitmapConstants.BI_BITFIELDS) {
+        masksSize = BitmapConstants.BITFIELD_MASKS_SIZE_V3;
+      } else if (compression == BitmapConstants.BI_ALPHABITFIELDS) {
+        masksSize = BitmapConstants.BITFIELD_MASKS_SIZE_V4;
+      }
+    }
+    long paletteStart = (long) DIB + headerSize + masksSize;
+    int entrySize = isCoreHeader ? 3 : 4;
+    if (!hasValidBitDepth) {
+      return paletteStart;
+    }
+
+    long coloursUsed = 0;
+    if (!isCoreHeader) {
+      coloursUsed = Integer.toUnsignedLong(readInt(data, DIB + BitmapConstants.BI_CLR_USED_OFFSET));
+    }
+    long entries;
+    if (bitsPerPixel <= 8 && bitsPerPixel > 0) {
+      int maxEntries = 1 << bitsPerPixel;
+      if (coloursUsed > maxEntries) {
+        add(
+            Kind.PALETTE,
+            DIB + BitmapConstants.BI_CLR_USED_OFFSET,
+            "Colours used ("
+                + coloursUsed
+                + ") exceeds the "
+                + maxEntries
+                + " a "
+                + bitsPerPixel
+                + "-bit image can index");
+        // the size of the palette is unknown, so nothing after it can be checked against it
+        paletteEntries = maxEntries;
+        return paletteStart;
+      }
+      entries = coloursUsed == 0 ? maxEntries : coloursUsed;
+      paletteEntries = (int) entries;
+    } else {
+      // An optional palette, for displays with few colours; it only has to fit in the file
+      entries = coloursUsed;
+    }
+
+    if (!isCoreHeader) {
+      long important =
+          Integer.toUnsignedLong(readInt(data, DIB + BitmapConstants.BI_CLR_IMPORTANT_OFFSET));
+      if (important > entries) {
+        add(
+            Kind.PALETTE,
+            DIB + BitmapConstants.BI_CLR_IMPORTANT_OFFSET,
+            "Important colours (" + important + ") exceeds the " + entries + " palette entries");
+      }
+    }
+
+    long paletteEnd = paletteStart + entries * entrySize;
+    if (entries > 0 && paletteEnd > data.length) {
+      add(
+          Kind.PALETTE,
+          paletteStart,
+          "Palette of "
+              + entries
+              + " entries ends at offset "
+              + paletteEnd
+              + ", past the end of the file at "
+              + data.length);
+    }
+    return paletteEnd;
+  }
+
+  private void checkColourMasks() {
+    if ((compression != BitmapConstants.BI_BITFIELDS
+            && compression != BitmapConstants.BI_ALPHABITFIELDS)
+        || (bitsPerPixel != 16 && bitsPerPixel != 32)) {
+      return;
+    }
+    // Masks follow a BITMAPINFOHEADER, and are the first fields after it in the later headers
+    int offset = DIB + BitmapConstants.BITMAPINFOHEADER_SIZE;
+    boolean hasAlpha =
+        compression == BitmapConstants.BI_ALPHABITFIELDS
+            || headerSize >= BitmapConstants.BITMAPV3INFOHEADER_SIZE;
+    int count = hasAlpha ? 4 : 3;
+    if (offset + count * Integer.BYTES > data.length) {
+      add(Kind.COLOUR_MASKS, offset, "Colour masks are missing: the file ends at " + data.length);
+      return;
+    }
+
+    String[] names = {"red", "green", "blue", "alpha"};
+    long[] masks = new long[count];
+    long pixelBits = bitsPerPixel == 32 ? 0xFFFFFFFFL : 0xFFFFL;
+    for (int i = 0; i < count; i++) {
+      long mask = Integer.toUnsignedLong(readInt(data, offset + i * Integer.BYTES));
+      masks[i] = mask;
+      if (mask == 0) {
+        if (i < 3) {
+          add(Kind.COLOUR_MASKS, offset + i * Integer.BYTES, "The " + names[i] + " mask is empty");
+        }
+        continue;
+      }
+      if ((mask & ~pixelBits) != 0) {
+        add(
+            Kind.COLOUR_MASKS,
+            offset + i * Integer.BYTES,
+            String.format(
+                "The %s mask 0x%X has bits beyond the %d of a pixel",
+                names[i], mask, bitsPerPixel));
+      }
+      long bits = mask >>> Long.numberOfTrailingZeros(mask);
+      if ((bits & (bits + 1)) != 0) {
+        add(
+            Kind.COLOUR_MASKS,
+            offset + i * Integer.BYTES,
+            String.format("The %s mask 0x%X is not contiguous", names[i], mask));
+      }
+      for (int j = 0; j < i; j++) {
+        if ((masks[j] & mask) != 0) {
+          add(
+              Kind.COLOUR_MASKS,
+              offset + i * Integer.BYTES,
+              "The " + names[j] + " and " + names[i] + " masks overlap");
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks the offset to the pixel data in the file header.
+   *
+   * @param paletteEnd the offset at which the headers, masks and palette end
+   * @return {@code true} if there is pixel data to check
+   */
+  private boolean checkPixelDataOffset(long paletteEnd) {
+    int offset = readInt(data, BitmapConstants.BF_OFFBITS_OFFSET);
+    if (offset <= 0) {
+      add(
+          Kind.PIXEL_DATA_OFFSET,
+          BitmapConstants.BF_OFFBITS_OFFSET,
+          "Pixel data offset must be positive: " + offset);
+    } else if (offset < paletteEnd) {
+      add(
+          Kind.PIXEL_DATA_OFFSET,
+          BitmapConstants.BF_OFFBITS_OFFSET,
+          "Pixel data offset "
+              + offset
+              + " overlaps the headers and palette, which end at "
+              + paletteEnd);
+    }
+    if (pixelDataOffset >= data.length) {
+      add(
+          Kind.PIXEL_DATA_OFFSET,
+          BitmapConstants.BF_OFFBITS_OFFSET,
+          "Pixel data offset "
+              + pixelDataOffset
+              + " is at or past the end of the file at "
+              + data.length);
+      return false;
+    }
+    return true;
+  }
+
+  /** Checks that uncompressed pixel data covers every scanline, and its colour indices. */
+  private void checkScanlines() {
+    int rows = Math.abs(height);
+    int scanline = DIBHeader.calculateScanlineSize(width, bitsPerPixel);
+    long needed = (long) scanline * rows;
+    long available = (long) data.length - pixelDataOffset;
+    int rowsAvailable = (int) Math.min(rows, available / scanline);
+    if (needed > available) {
+      add(
+          Kind.PIXEL_DATA,
+          data.length,
+          String.format(
+              "Pixel data covers %d of %d scanlines: %d of %d bytes",
+              rowsAvailable, rows, available, needed));
+    } else {
+      checkImageSize(needed, available);
+    }
+
+    if (paletteEntries > 0 && paletteEntries < 1 << bitsPerPixel) {
+      for (int y = 0; y < rowsAvailable; y++) {
+        int rowOffset = pixelDataOffset + y * scanline;
+        for (int x = 0; x < width; x++) {
+          int byteOffset = rowOffset + (int) ((long) x * bitsPerPixel / 8);
+          int b = data[byteOffset] & BitmapConstants.BYTE_MASK;
+          int index;
+          if (bitsPerPixel == 8) {
+            index = b;
+          } else if (bitsPerPixel == 4) {
+            index = (x & 1) == 0 ? b >> 4 : b & 0x0F;
+          } else {
+            index = (b >> (7 - (x & 7))) & 1;
+          }
+          checkIndex(index, byteOffset, x, y);
+        }
+      }
+    }
+  }
+
+  /**
+   * Checks the image size field against the pixel data. A size of 0 is allowed for uncompressed
+   * bitmaps.
+   *
+   * @param needed the number of bytes the pixel data must have, or 0 if it is compressed
+   * @param available the number of bytes from the pixel data offset to the end of the file
+   */
+  private void checkImageSize(long needed, long available) {
+    if (isCoreHeader) {
+      return;
+    }
+    int offset = DIB + BitmapConstants.BI_SIZEIMAGE_OFFSET;
+    long imageSize = Integer.toUnsignedLong(readInt(data, offset));
+    if (imageSize == 0 && needed > 0) {
+      return;
+    }
+    if (imageSize < needed) {
+      add(
+          Kind.IMAGE_SIZE,
+          offset,
+          "Image size " + imageSize + " is less than the " + needed + " bytes of the scanlines");
+    } else if (imageSize > available) {
+      add(
+          Kind.IMAGE_SIZE,
+          offset,
+          "Image size "
+              + imageSize
+              + " is more than the "
+              + available
+              + " bytes after the pixel data offset");
+    }
+  }
+
+  // Counts a colour index beyond the palette, remembering the first
+  private void checkIndex(int index, int offset, int x, int y) {
+    if (index >= paletteEntries) {
+      if (badIndexCount++ == 0) {
+        firstBadIndex = index;
+        firstBadIndexOffset = offset;
+        firstBadIndexX = x;
+        firstBadIndexY = y;
+      }
+    }
+  }
+
+  /**
+   * Follows the run-length codes as the decoder does, without writing any pixels, and reports the
+   * first that is truncated or leaves the image, or a stream that ends before the last pixel.
+   */
+  private void checkRunLengthData() {
+    checkImageSize(0, (long) data.length - pixelDataOffset);
+    boolean isRle8 = compression == BitmapConstants.BI_RLE8;
+    String format = isRle8 ? "RLE8" : "RLE4";
+    int rows = Math.abs(height);
+    // a row of odd width may end with a run that includes the padding nibble
+    int rowWidth = isRle8 ? width : (width + 1) & ~1;
+    int x = 0;
+    int y = 0;
+    int pos = pixelDataOffset;
+
+    while (pos + 1 < data.length) {
+      int codeOffset = pos;
+      int first = data[pos++] & BitmapConstants.BYTE_MASK;
+      int second = data[pos++] & BitmapConstants.BYTE_MASK;
+      if (first != 0) {
+        if (y >= rows || x + first > rowWidth) {
+          add(Kind.RLE_STREAM, codeOffset, runOutside(format, first, x, y));
+          return;
+        }
+        if (isRle8) {
+          checkIndex(second, codeOffset + 1, x, y);
+        } else {
+          checkIndex(second >> 4, codeOffset + 1, x, y);
+          if (first > 1) {
+            checkIndex(second & 0x0F, codeOffset + 1, x + 1, y);
+          }
+        }
+        x += first;
+      } else if (second == 0) {
+        x = 0;
+        y++;
+      } else if (second == 1) {
+        return;
+      } else if (second == 2) {
+        if (pos + 2 > data.length) {
+          add(Kind.RLE_STREAM, codeOffset, format + " delta is missing its offsets");
+          return;
+        }
+        x += data[pos++] & BitmapConstants.BYTE_MASK;
+        y += data[pos++] & BitmapConstants.BYTE_MASK;
+        if (x > rowWidth || y > rows) {
+          add(
+              Kind.RLE_STREAM,
+              codeOffset,
+              String.format("%s delta moves to (%d,%d), outside the image", format, x, y));
+          return;
+        }
+      } else {
+        int bytes = isRle8 ? second : (second + 1) / 2;
+        if (pos + bytes > data.length) {
+          add(
+              Kind.RLE_STREAM,
+              codeOffset,
+              String.format(
+                  "%s absolute run of %d pixels is cut off by the end of the file",
+                  format, second));
+          return;
+        }
+        if (y >= rows || x + second > rowWidth) {
+          add(Kind.RLE_STREAM, codeOffset, runOutside(format, second, x, y));
+          return;
+        }
+        for (int i = 0; i < second; i++) {
+          int b = data[pos + (isRle8 ? i : i / 2)] & BitmapConstants.BYTE_MASK;
+          int index = isRle8 ? b : (i & 1) == 0 ? b >> 4 : b & 0x0F;
+          checkIndex(index, pos + (isRle8 ? i : i / 2), x + i, y);
+        }
+        x += second;
+        pos += bytes + (bytes & 1);
+      }
+    }
+
+    if (y < rows - 1 || (y == rows - 1 && x < rowWidth)) {
+      add(
+          Kind.RLE_STREAM,
+          Math.min(pos, data.length),
+          String.format("%s data ends at (%d,%d), before the end of the bitmap", format, x, y));
+    }
+  }
+
+  private static String runOutside(String format, int count, int x, int y) {
+    return String.format(
+        "%s run of %d pixels at (%d,%d) is outside the image", format, count, x, y);
+  }
+}
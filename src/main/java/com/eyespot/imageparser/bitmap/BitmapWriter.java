@@ -0,0 +1,623 @@
+package com.eyespot.imageparser.bitmap;
+
+import com.eyespot.imageparser.IndexedImage;
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.jfr.ImageEncodeEvent;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Encodes a {@link PixelBuffer} or an {@link IndexedImage} as a BMP file without going through
+ * ImageIO or AWT.
+ *
+ * <p>The headers are laid out with the offsets defined in {@link BitmapConstants}, and the
+ * scanlines are encoded straight from the image into a reusable byte buffer that is flushed to a
+ * channel in large chunks, so the image is never copied as a whole. Rows are written bottom-up, the
+ * layout every BMP reader supports.
+ *
+ * <p>Direct-colour formats are written from a {@code PixelBuffer}; the palette formats, including
+ * the run-length encoded {@link Format#RLE8} and {@link Format#RLE4}, are written from an {@code
+ * IndexedImage}. {@link #writeLossless(PixelBuffer, Path)} picks the smallest format that keeps
+ * every pixel, storing images with few colours as palette indices. Since the size of run-length
+ * encoded data is only known once every row has been encoded, the header sizes are patched
+ * afterwards on seekable channels such as files, and other channels receive the image once it has
+ * been encoded in memory.
+ *
+ * <p>Instances are immutable and may be shared between threads.
+ *
+ * @author Kevin Babu
+ * @see BitmapParser
+ */
+public final class BitmapWriter {
+
+  /** The pixel formats the writer can produce. */
+  public enum Format {
+    /** 24 bits per pixel, {@code BI_RGB}, {@code BITMAPINFOHEADER}. Alpha is discarded. */
+    RGB24(24, BitmapConstants.BI_RGB, BitmapConstants.BITMAPINFOHEADER_SIZE, 0),
+
+    /**
+     * 32 bits per pixel, {@code BI_RGB}, {@code BITMAPINFOHEADER}. The unused fourth byte is
+     * written as {@code 0xFF} so that readers which interpret it as alpha, including {@link
+     * BitmapParser}, see opaque pixels.
+     */
+    RGB32(32, BitmapConstants.BI_RGB, BitmapConstants.BITMAPINFOHEADER_SIZE, 0),
+
+    /**
+     * 16 bits per pixel, {@code BI_BITFIELDS} with RGB565 masks after a {@code BITMAPINFOHEADER}.
+     * Colours are truncated to 5, 6 and 5 bits and alpha is discarded.
+     */
+    RGB565(
+        16,
+        BitmapConstants.BI_BITFIELDS,
+        BitmapConstants.BITMAPINFOHEADER_SIZE,
+        BitmapConstants.BITFIELD_MASKS_SIZE_V3),
+
+    /** 32 bits per pixel, {@code BI_BITFIELDS}, {@code BITMAPV4HEADER} with an alpha mask. */
+    ARGB32_V4(32, BitmapConstants.BI_BITFIELDS, BitmapConstants.BITMAPV4HEADER_SIZE, 0),
+
+    /** 32 bits per pixel, {@code BI_BITFIELDS}, {@code BITMAPV5HEADER} with an alpha mask. */
+    ARGB32_V5(32, BitmapConstants.BI_BITFIELDS, BitmapConstants.BITMAPV5HEADER_SIZE, 0),
+
+    /**
+     * {@code BI_RLE8}: 8-bit palette indices, run-length encoded. Pixels whose palette colour is
+     * fully transparent are skipped with delta codes.
+     */
+    RLE8(8, BitmapConstants.BI_RLE8, BitmapConstants.BITMAPINFOHEADER_SIZE, 0),
+
+    /**
+     * {@code BI_RLE4}: 4-bit palette indices, run-length encoded, for palettes of up to 16 colours.
+     * Pixels whose palette colour is fully transparent are skipped with delta codes.
+     */
+    RLE4(4, BitmapConstants.BI_RLE4, BitmapConstants.BITMAPINFOHEADER_SIZE, 0),
+
+    /** 8-bit palette indices, {@code BI_RGB}, for palettes of up to 256 colours. */
+    INDEXED8(8, BitmapConstants.BI_RGB, BitmapConstants.BITMAPINFOHEADER_SIZE, 0),
+
+    /** 4-bit palette indices, {@code BI_RGB}, for palettes of up to 16 colours. */
+    INDEXED4(4, BitmapConstants.BI_RGB, BitmapConstants.BITMAPINFOHEADER_SIZE, 0),
+
+    /** 1-bit palette indices, {@code BI_RGB}, for palettes of up to 2 colours. */
+    INDEXED1(1, BitmapConstants.BI_RGB, BitmapConstants.BITMAPINFOHEADER_SIZE, 0);
+
+    private final int bitsPerPixel;
+    private final int compression;
+    private final int dibHeaderSize;
+    private final int masksSize; // bitfield masks stored after the DIB header
+
+    Format(int bitsPerPixel, int compression, int dibHeaderSize, int masksSize) {
+      this.bitsPerPixel = bitsPerPixel;
+      this.compression = compression;
+      this.dibHeaderSize = dibHeaderSize;
+      this.masksSize = masksSize;
+    }
+
+    /** @return the number of bits per pixel */
+    public int getBitsPerPixel() {
+      return bitsPerPixel;
+    }
+
+    /** @return the compression method written to the header */
+    public int getCompression() {
+      return compression;
+    }
+
+    /** @return {@code true} if the format keeps the alpha channel */
+    public boolean hasAlpha() {
+      return this == ARGB32_V4 || this == ARGB32_V5;
+    }
+
+    /**
+     * @return {@code true} if the format stores palette indices and is written from an {@link
+     *     IndexedImage}
+     */
+    public boolean isIndexed() {
+      return bitsPerPixel <= 8;
+    }
+
+    /** @return the largest palette the format can reference, or 0 if it has no palette */
+    public int getMaxPaletteSize() {
+      return isIndexed() ? 1 << bitsPerPixel : 0;
+    }
+  }
+
+  /** Minimum size of the buffer that scanlines are encoded into before being written. */
+  private static final int CHUNK_SIZE = 64 * 1024;
+
+  private final Format format;
+
+  /**
+   * Creates a writer for the given format.
+   *
+   * @param format the pixel format to write
+   */
+  public BitmapWriter(Format format) {
+    this.format = Objects.requireNonNull(format, "Format cannot be null.");
+  }
+
+  /**
+   * Returns the direct-colour format that keeps every pixel exactly: {@link Format#ARGB32_V5} if
+   * any pixel is not fully opaque, {@link Format#RGB24} otherwise.
+   *
+   * @param pixels the pixels to be written
+   * @return the smallest lossless direct-colour format
+   * @see #writeLossless(PixelBuffer, Path)
+   */
+  public static Format losslessFormat(PixelBuffer pixels) {
+    return pixels.hasTransparentPixel() ? Format.ARGB32_V5 : Format.RGB24;
+  }
+
+  /**
+   * Writes the pixels to a file in the smallest format that keeps every pixel, replacing the file
+   * if it exists.
+   *
+   * @param pixels the pixels to write
+   * @param path the file to write
+   * @return the format the file was written in
+   * @throws IOException if an I/O error occurs writing the file
+   * @throws IllegalArgumentException if the image is too large for the BMP format
+   * @see #writeLossless(PixelBuffer, WritableByteChannel)
+   */
+  public static Format writeLossless(PixelBuffer pixels, Path path) throws IOException {
+    Objects.requireNonNull(path, "Path cannot be null.");
+    try (FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      return writeLossless(pixels, channel);
+    }
+  }
+
+  /**
+   * Writes the pixels as a complete BMP file to the channel, in the smallest format that keeps
+   * every pixel. The channel is left open.
+   *
+   * <p>Opaque images with at most 256 distinct colours are written as uncompressed palette indices
+   * of 1, 4 or 8 bits, which every BMP reader supports. Other opaque images are written with 24
+   * bits per pixel, and images with transparency with 32 bits per pixel and an alpha mask: palette
+   * entries have no alpha that readers agree on.
+   *
+   * @param pixels the pixels to write
+   * @param channel the channel to write to
+   * @return the format the image was written in
+   * @throws IOException if an I/O error occurs writing to the channel
+   * @throws IllegalArgumentException if the image is too large for the BMP format
+   */
+  public static Format writeLossless(PixelBuffer pixels, WritableByteChannel channel)
+      throws IOException {
+    Objects.requireNonNull(channel, "Channel cannot be null.");
+    IndexedImage indexed = IndexedImage.fromPixels(pixels);
+    int[] palette = indexed != null ? indexed.getPalette() : null;
+    if (palette != null && isOpaque(palette)) {
+      int colours = palette.length;
+      Format format =
+          colours <= 2 ? Format.INDEXED1 : colours <= 16 ? Format.INDEXED4 : Format.INDEXED8;
+      new BitmapWriter(format).write(indexed, channel);
+      return format;
+    }
+    Format format = losslessFormat(pixels);
+    new BitmapWriter(format).write(pixels, channel);
+    return format;
+  }
+
+  private static boolean isOpaque(int[] palette) {
+    for (int argb : palette) {
+      if ((argb >>> 24) != BitmapConstants.OPAQUE_ALPHA) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return the pixel format this writer produces */
+  public Format getFormat() {
+    return format;
+  }
+
+  /**
+   * Writes the pixels to a file, replacing it if it exists.
+   *
+   * @param pixels the pixels to write
+   * @param path the file to write
+   * @throws IOException if an I/O error occurs writing the file
+   * @throws IllegalArgumentException if the image is too large for the BMP format, or if the format
+   *     is {@linkplain Format#isIndexed() indexed}
+   */
+  public void write(PixelBuffer pixels, Path path) throws IOException {
+    Objects.requireNonNull(path, "Path cannot be null.");
+    try (FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      write(pixels, channel);
+    }
+  }
+
+  /**
+   * Writes the pixels as a complete BMP file to the channel, which is left open.
+   *
+   * @param pixels the pixels to write
+   * @param channel the channel to write to
+   * @throws IOException if an I/O error occurs writing to the channel
+   * @throws IllegalArgumentException if the image is too large for the BMP format, or if the format
+   *     is {@linkplain Format#isIndexed() indexed}
+   */
+  public void write(PixelBuffer pixels, WritableByteChannel channel) throws IOException {
+    Objects.requireNonNull(pixels, "Pixels cannot be null.");
+    Objects.requireNonNull(channel, "Channel cannot be null.");
+    if (format.isIndexed()) {
+      throw new IllegalArgumentException("Format " + format + " is written from an IndexedImage");
+    }
+    ImageEncodeEvent event = new ImageEncodeEvent();
+    event.begin();
+
+    int width = pixels.width();
+    int height = pixels.height();
+    int rowSize = DIBHeader.calculateScanlineSize(width, format.bitsPerPixel);
+    int pixelOffset = directPixelOffset();
+    long imageSize = (long) rowSize * height;
+    long fileSize = pixelOffset + imageSize;
+    if (rowSize < 0 || fileSize > 0xFFFFFFFFL) {
+      throw new IllegalArgumentException(
+          "Image too large for the BMP format: " + width + "x" + height);
+    }
+
+    int rowsPerChunk = Math.max(1, CHUNK_SIZE / Math.max(rowSize, 1));
+    ByteBuffer out =
+        ByteBuffer.allocate(Math.max(pixelOffset, rowSize * rowsPerChunk))
+            .order(ByteOrder.LITTLE_ENDIAN);
+    writeHeaders(out, width, height, (int) imageSize, (int) fileSize, pixelOffset, null);
+    out.position(pixelOffset);
+
+    byte[] bytes = out.array();
+    int[] row = new int[width];
+    int bottomRow = pixels.isOriginUpperLeft() ? height - 1 : 0;
+    int step = pixels.isOriginUpperLeft() ? -1 : 1;
+    for (int i = 0, y = bottomRow; i < height; i++, y += step) {
+      if (out.remaining() < rowSize) {
+        flush(out, channel);
+      }
+      pixels.getARGB(0, y, width, 1, row, 0, width);
+      int end = encodeRow(row, width, bytes, out.position());
+      // zero the scanline padding, which may hold bytes from an earlier chunk
+      Arrays.fill(bytes, end, out.position() + rowSize, (byte) 0);
+      out.position(out.position() + rowSize);
+    }
+    flush(out, channel);
+    commit(event, width, height, fileSize);
+  }
+
+  /**
+   * Writes the indexed image to a file, replacing it if it exists.
+   *
+   * @param image the image to write
+   * @param path the file to write
+   * @throws IOException if an I/O error occurs writing the file
+   * @throws IllegalArgumentException if the format is not {@linkplain Format#isIndexed() indexed},
+   *     if the palette is too large for it, or if the image is too large for the BMP format
+   */
+  public void write(IndexedImage image, Path path) throws IOException {
+    Objects.requireNonNull(path, "Path cannot be null.");
+    try (FileChannel channel =
+        FileChannel.open(
+            path,
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      write(image, channel);
+    }
+  }
+
+  /**
+   * Writes the indexed image as a complete BMP file to the channel, which is left open. Scanlines
+   * are encoded and written one chunk at a time; if the channel is a {@link SeekableByteChannel}
+   * the header is written first and its size fields are patched at the end, otherwise the encoded
+   * data is collected in memory and written after the header.
+   *
+   * @param image the image to write
+   * @param channel the channel to write to
+   * @throws IOException if an I/O error occurs writing to the channel
+   * @throws IllegalArgumentException if the format is not {@linkplain Format#isIndexed() indexed},
+   *     if the palette is too large for it, or if the image is too large for the BMP format
+   */
+  public void write(IndexedImage image, WritableByteChannel channel) throws IOException {
+    Objects.requireNonNull(image, "Image cannot be null.");
+    Objects.requireNonNull(channel, "Channel cannot be null.");
+    if (!format.isIndexed()) {
+      throw new IllegalArgumentException("Format " + format + " is written from a PixelBuffer");
+    }
+    int[] palette = image.getPalette();
+    if (palette.length > format.getMaxPaletteSize()) {
+      throw new IllegalArgumentException(
+          "Format " + format + " supports at most " + format.getMaxPaletteSize() + " colours");
+    }
+    ImageEncodeEvent event = new ImageEncodeEvent();
+    event.begin();
+
+    int width = image.width();
+    int height = image.height();
+    int pixelOffset =
+        BitmapConstants.FILE_HEADER_SIZE + format.dibHeaderSize + palette.length * Integer.BYTES;
+    if (format.compression == BitmapConstants.BI_RGB) {
+      long fileSize = writePacked(image, channel, pixelOffset);
+      commit(event, width, height, fileSize);
+      return;
+    }
+    int maxRowSize = RleEncoder.maxRowSize(width);
+    ByteBuffer out =
+        ByteBuffer.allocate(Math.max(pixelOffset, Math.max(CHUNK_SIZE, maxRowSize)))
+            .order(ByteOrder.LITTLE_ENDIAN);
+    writeHeaders(out, width, height, 0, 0, pixelOffset, palette);
+    out.position(pixelOffset);
+
+    SeekableByteChannel seekable =
+        channel instanceof SeekableByteChannel ? (SeekableByteChannel) channel : null;
+    long start = seekable != null ? seekable.position() : 0;
+    ByteArrayOutputStream pending = seekable != null ? null : new ByteArrayOutputStream();
+    if (pending != null) {
+      out.clear(); // the header is written separately once the sizes are known
+    }
+
+    RleEncoder encoder = new RleEncoder(format == Format.RLE4, palette);
+    byte[] indices = image.getIndices();
+    long imageSize = 0;
+    for (int y = height - 1; y >= 0; y--) {
+      if (out.remaining() < maxRowSize) {
+        imageSize += flushEncoded(out, channel, pending);
+      }
+      int end = encoder.encodeRow(indices, y * width, width, out.array(), out.position(), y == 0);
+      out.position(end);
+    }
+    if (height == 0) {
+      out.put((byte) 0).put((byte) 1); // end of bitmap
+    }
+    imageSize += flushEncoded(out, channel, pending);
+    if (seekable != null) {
+      imageSize -= pixelOffset; // the first chunk also held the header
+    }
+
+    long fileSize = pixelOffset + imageSize;
+    if (fileSize > 0xFFFFFFFFL) {
+      throw new IllegalArgumentException(
+          "Image too large for the BMP format: " + width + "x" + height);
+    }
+    ByteBuffer sizes = ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    if (seekable != null) {
+      long end = seekable.position();
+      patchInt(seekable, start + BitmapConstants.BF_SIZE_OFFSET, (int) fileSize, sizes);
+      patchInt(
+          seekable,
+          start + BitmapConstants.FILE_HEADER_SIZE + BitmapConstants.BI_SIZEIMAGE_OFFSET,
+          (int) imageSize,
+          sizes);
+      seekable.position(end);
+    } else {
+      ByteBuffer header = ByteBuffer.allocate(pixelOffset).order(ByteOrder.LITTLE_ENDIAN);
+      writeHeaders(header, width, height, (int) imageSize, (int) fileSize, pixelOffset, palette);
+      writeFully(header, channel);
+      writeFully(ByteBuffer.wrap(pending.toByteArray()), channel);
+    }
+    commit(event, width, height, fileSize);
+  }
+
+  // writes uncompressed palette indices, packed most significant bits first; returns the file size
+  private long writePacked(IndexedImage image, WritableByteChannel channel, int pixelOffset)
+      throws IOException {
+    int width = image.width();
+    int height = image.height();
+    int rowSize = DIBHeader.calculateScanlineSize(width, format.bitsPerPixel);
+    long imageSize = (long) rowSize * height;
+    long fileSize = pixelOffset + imageSize;
+    if (rowSize < 0 || fileSize > 0xFFFFFFFFL) {
+      throw new IllegalArgumentException(
+          "Image too large for the BMP format: " + width + "x" + height);
+    }
+
+    int rowsPerChunk = Math.max(1, CHUNK_SIZE / Math.max(rowSize, 1));
+    ByteBuffer out =
+        ByteBuffer.allocate(Math.max(pixelOffset, rowSize * rowsPerChunk))
+            .order(ByteOrder.LITTLE_ENDIAN);
+    writeHeaders(
+        out, width, height, (int) imageSize, (int) fileSize, pixelOffset, image.getPalette());
+    out.position(pixelOffset);
+
+    byte[] bytes = out.array();
+    byte[] indices = image.getIndices();
+    int bits = format.bitsPerPixel;
+    int pixelsPerByte = 8 / bits;
+    for (int y = height - 1; y >= 0; y--) {
+      if (out.remaining() < rowSize) {
+        flush(out, channel);
+      }
+      int pos = out.position();
+      int rowStart = y * width;
+      if (bits == 8) {
+        System.arraycopy(indices, rowStart, bytes, pos, width);
+        pos += width;
+      } else {
+        for (int x = 0; x < width; x += pixelsPerByte) {
+          int packed = 0;
+          int count = Math.min(pixelsPerByte, width - x);
+          for (int k = 0; k < count; k++) {
+            packed |= (indices[rowStart + x + k] & 0xFF) << (8 - bits * (k + 1));
+          }
+          bytes[pos++] = (byte) packed;
+        }
+      }
+      Arrays.fill(bytes, pos, out.position() + rowSize, (byte) 0);
+      out.position(out.position() + rowSize);
+    }
+    flush(out, channel);
+    return fileSize;
+  }
+
+  // records a completed write with the flight recorder, if it is listening
+  private void commit(ImageEncodeEvent event, int width, int height, long fileSize) {
+    if (event.shouldCommit()) {
+      event.setImage(
+          width,
+          height,
+          format.bitsPerPixel,
+          format.compression,
+          String.valueOf(InfoHeaderType.fromSize(format.dibHeaderSize)),
+          fileSize);
+      event.commit();
+    }
+  }
+
+  // writes the buffered bytes to the channel, or to pending if the header must come first
+  private static long flushEncoded(
+      ByteBuffer out, WritableByteChannel channel, ByteArrayOutputStream pending)
+      throws IOException {
+    int length = out.position();
+    if (pending != null) {
+      pending.write(out.array(), 0, length);
+      out.clear();
+    } else {
+      flush(out, channel);
+    }
+    return length;
+  }
+
+  private static void patchInt(
+      SeekableByteChannel channel, long position, int value, ByteBuffer scratch)
+      throws IOException {
+    scratch.clear();
+    scratch.putInt(0, value);
+    channel.position(position);
+    writeFully(scratch, channel);
+  }
+
+  // offset of the pixel data in files of a direct-colour format
+  int directPixelOffset() {
+    return BitmapConstants.FILE_HEADER_SIZE + format.dibHeaderSize + format.masksSize;
+  }
+
+  // writes the headers and palette at the start of out; a negative height makes rows run top-down
+  void writeHeaders(
+      ByteBuffer out,
+      int width,
+      int height,
+      int imageSize,
+      int fileSize,
+      int pixelOffset,
+      int[] palette) {
+    out.putShort(BitmapConstants.BF_TYPE_OFFSET, (short) BitmapConstants.BM_SIGNATURE);
+    out.putInt(BitmapConstants.BF_SIZE_OFFSET, fileSize);
+    out.putInt(BitmapConstants.BF_RESERVED1_OFFSET, 0);
+    out.putInt(BitmapConstants.BF_OFFBITS_OFFSET, pixelOffset);
+
+    int dib = BitmapConstants.FILE_HEADER_SIZE;
+    out.putInt(dib + BitmapConstants.BI_SIZE_OFFSET, format.dibHeaderSize);
+    out.putInt(dib + BitmapConstants.BI_WIDTH_OFFSET, width);
+    out.putInt(dib + BitmapConstants.BI_HEIGHT_OFFSET, height);
+    out.putShort(dib + BitmapConstants.BI_PLANES_OFFSET, (short) 1);
+    out.putShort(dib + BitmapConstants.BI_BITCOUNT_OFFSET, (short) format.bitsPerPixel);
+    out.putInt(dib + BitmapConstants.BI_COMPRESSION_OFFSET, format.compression);
+    out.putInt(dib + BitmapConstants.BI_SIZEIMAGE_OFFSET, imageSize);
+    out.putInt(
+        dib + BitmapConstants.BI_X_PELS_PER_METER_OFFSET, BitmapConstants.DEFAULT_PELS_PER_METER);
+    out.putInt(
+        dib + BitmapConstants.BI_Y_PELS_PER_METER_OFFSET, BitmapConstants.DEFAULT_PELS_PER_METER);
+    // every palette entry is marked important; some readers ignore biClrUsed otherwise
+    int colours = palette != null ? palette.length : 0;
+    out.putInt(dib + BitmapConstants.BI_CLR_USED_OFFSET, colours);
+    out.putInt(dib + BitmapConstants.BI_CLR_IMPORTANT_OFFSET, colours);
+
+    if (palette != null) {
+      // RGBQUAD entries: blue, green, red, reserved
+      int entry = dib + format.dibHeaderSize;
+      for (int argb : palette) {
+        out.putInt(entry, argb & 0x00FFFFFF);
+        entry += Integer.BYTES;
+      }
+    }
+
+    if (format == Format.RGB565) {
+      int masks = dib + BitmapConstants.BITMAPINFOHEADER_SIZE;
+      out.putInt(masks, BitmapConstants.RGB565_RED_MASK);
+      out.putInt(masks + 4, BitmapConstants.RGB565_GREEN_MASK);
+      out.putInt(masks + 8, BitmapConstants.RGB565_BLUE_MASK);
+    } else if (format.hasAlpha()) {
+      out.putInt(dib + BitmapConstants.BV4_RED_MASK_OFFSET, (int) BitmapConstants.RGB8_RED_MASK);
+      out.putInt(
+          dib + BitmapConstants.BV4_GREEN_MASK_OFFSET, (int) BitmapConstants.RGB8_GREEN_MASK);
+      out.putInt(dib + BitmapConstants.BV4_BLUE_MASK_OFFSET, (int) BitmapConstants.RGB8_BLUE_MASK);
+      out.putInt(
+          dib + BitmapConstants.BV4_ALPHA_MASK_OFFSET, (int) BitmapConstants.RGB8_ALPHA_MASK);
+      out.putInt(dib + BitmapConstants.BV4_CS_TYPE_OFFSET, BitmapConstants.LCS_SRGB);
+      // endpoints and gamma are ignored for LCS_sRGB and stay zero
+      if (format == Format.ARGB32_V5) {
+        out.putInt(dib + BitmapConstants.BV5_INTENT_OFFSET, BitmapConstants.LCS_GM_IMAGES);
+      }
+    }
+  }
+
+  // encodes width ARGB pixels at bytes[pos..], returning the index after the last pixel
+  int encodeRow(int[] row, int width, byte[] bytes, int pos) {
+    switch (format) {
+      case RGB24:
+        for (int x = 0; x < width; x++) {
+          int argb = row[x];
+          bytes[pos++] = (byte) argb;
+          bytes[pos++] = (byte) (argb >>> 8);
+          bytes[pos++] = (byte) (argb >>> 16);
+        }
+        return pos;
+      case RGB32:
+        for (int x = 0; x < width; x++) {
+          int argb = row[x];
+          bytes[pos++] = (byte) argb;
+          bytes[pos++] = (byte) (argb >>> 8);
+          bytes[pos++] = (byte) (argb >>> 16);
+          bytes[pos++] = (byte) BitmapConstants.OPAQUE_ALPHA;
+        }
+        return pos;
+      case RGB565:
+        for (int x = 0; x < width; x++) {
+          int argb = row[x];
+          int rgb565 =
+              ((argb >>> 8) & BitmapConstants.RGB565_RED_MASK)
+                  | ((argb >>> 5) & BitmapConstants.RGB565_GREEN_MASK)
+                  | ((argb >>> 3) & BitmapConstants.RGB565_BLUE_MASK);
+          bytes[pos++] = (byte) rgb565;
+          bytes[pos++] = (byte) (rgb565 >>> 8);
+        }
+        return pos;
+      default:
+        for (int x = 0; x < width; x++) {
+          int argb = row[x];
+          bytes[pos++] = (byte) argb;
+          bytes[pos++] = (byte) (argb >>> 8);
+          bytes[pos++] = (byte) (argb >>> 16);
+          bytes[pos++] = (byte) (argb >>> 24);
+        }
+        return pos;
+    }
+  }
+
+  private static void flush(ByteBuffer out, WritableByteChannel channel) throws IOException {
+    out.flip();
+    writeFully(out, channel);
+    out.clear();
+  }
+
+  private static void writeFully(ByteBuffer buffer, WritableByteChannel channel)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+}
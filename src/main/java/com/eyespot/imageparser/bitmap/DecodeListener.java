@@ -0,0 +1,76 @@
+package com.eyespot.imageparser.bitmap;
+
+/**
+ * Receives timings and counters from a {@link BitmapParser}, for attributing decode latency to
+ * image formats.
+ *
+ * <p>For each image, {@link #stageCompleted(Stage, long)} is called as the file is read and each
+ * header is parsed, then {@link #parsed(BitmapParser, long)} once the parser is complete. Every
+ * {@link BitmapParser#decode()} then reports {@link Stage#PIXEL_DECODE} followed by {@link
+ * #decoded(BitmapParser, long, boolean)}. A stage that throws is reported to {@link #failed(Stage,
+ * Exception)} instead, before the exception propagates. The calls for one image are made in that
+ * order on the thread doing the work, so a listener shared between threads must be thread-safe.
+ *
+ * <p>All methods do nothing by default. Parsers created without a listener use the {@linkplain
+ * BitmapParser#setDefaultListener(DecodeListener) default listener}, which is {@link #NONE} unless
+ * changed; with {@code NONE} they do not read the clock at all. Listeners should return quickly and
+ * must not throw.
+ *
+ * @author Kevin Babu
+ * @see BitmapParser#BitmapParser(java.nio.file.Path, DecodeListener)
+ * @see BitmapParser#BitmapParser(byte[], DecodeListener)
+ */
+public interface DecodeListener {
+
+  /** The listener that ignores everything, used when none is given. */
+  DecodeListener NONE = new DecodeListener() {};
+
+  /** The steps that turn a file into pixels, in the order they run. */
+  enum Stage {
+    /** Reading the file into memory; only reported for parsers created from a path. */
+    FILE_READ,
+    /** Parsing the 14-byte {@code BITMAPFILEHEADER}. */
+    HEADER,
+    /** Parsing the {@link DIBHeader}, whatever its version. */
+    DIB_HEADER,
+    /** Parsing the {@link ColourPalette}; only reported for images that have one. */
+    COLOUR_PALETTE,
+    /** Decoding the scanlines into pixels. */
+    PIXEL_DECODE
+  }
+
+  /**
+   * Called when a stage completes.
+   *
+   * @param stage the stage
+   * @param nanos how long the stage took, in nanoseconds
+   */
+  default void stageCompleted(Stage stage, long nanos) {}
+
+  /**
+   * Called once the headers of an image are parsed.
+   *
+   * @param parser the parser, from which the dimensions, bit depth and compression can be read
+   * @param bytesRead the size of the image data the parser holds
+   */
+  default void parsed(BitmapParser parser, long bytesRead) {}
+
+  /**
+   * Called after the pixels of an image are decoded.
+   *
+   * @param parser the parser that decoded the image
+   * @param pixels the number of pixels produced: the width times the number of rows decoded, which
+   *     is less than the whole image if decoding stopped early
+   * @param isCorrupted {@code true} if the pixel data was truncated or malformed, so that only the
+   *     pixels decoded before the problem are set
+   */
+  default void decoded(BitmapParser parser, long pixels, boolean isCorrupted) {}
+
+  /**
+   * Called when a stage fails, before the exception is thrown to the caller.
+   *
+   * @param stage the stage that failed
+   * @param e the exception
+   */
+  default void failed(Stage stage, Exception e) {}
+}
@@ -0,0 +1,445 @@
+package com.eyespot.imageparser.bitmap;
+
+import com.eyespot.imageparser.exception.DecodeCancelledException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Limits and choices for {@link BitmapParser#decode(DecodeOptions)}.
+ *
+ * <p>The limits protect against decompression bombs: a BMP header of a few dozen bytes can declare
+ * an image of billions of pixels, and a run-length encoded file of a few kilobytes can legitimately
+ * expand to a huge one. They are checked against the header fields before any pixel memory is
+ * allocated, and an image that exceeds one is rejected with an {@link IllegalArgumentException}.
+ *
+ * <p>A decode can also be given a deadline and a cancellation check. Both, and the interrupt status
+ * of the decoding thread, are checked once per scanline; a decode that is stopped throws a {@link
+ * DecodeCancelledException}.
+ *
+ * <p>Options are immutable; each {@code with} method returns a copy with one setting changed, so
+ * they can be built once and shared between threads:
+ *
+ * <pre>{@code
+ * DecodeOptions options = DecodeOptions.DEFAULT.withMaxPixels(50_000_000).withStrict(true);
+ * PixelBuffer pixels = new BitmapParser(upload).decode(options);
+ * }</pre>
+ *
+ * @author Kevin Babu
+ */
+public final class DecodeOptions {
+
+  /** The pixel layout of the decoded image. */
+  public enum OutputFormat {
+    /** Non-premultiplied ARGB, as stored in the file. */
+    ARGB,
+    /** RGB with the alpha of every pixel set to 255, for images whose alpha byte is padding. */
+    RGB,
+    /** ARGB with the colour channels premultiplied by alpha. */
+    ARGB_PRE
+  }
+
+  /** Receives the progress of a decode. */
+  @FunctionalInterface
+  public interface ProgressListener {
+    /**
+     * Called on the decoding thread every {@linkplain #getProgressInterval() interval} of
+     * scanlines, and once more when the last one is decoded.
+     *
+     * @param rowsCompleted the number of scanlines decoded, in file order
+     * @param height the number of scanlines in the image
+     */
+    void progress(int rowsCompleted, int height);
+  }
+
+  /** Default limit on the number of pixels: 2^28, a 16384 by 16384 image. */
+  public static final long DEFAULT_MAX_PIXELS = 1L << 28;
+
+  /** Default limit on the size of the decoded pixels: 1 GiB. */
+  public static final long DEFAULT_MAX_DECODED_BYTES = 1L << 30;
+
+  /**
+   * The options {@link BitmapParser#decode()} uses: the default limits, no limit on run-length
+   * expansion, lenient handling of corrupted pixel data, {@link OutputFormat#ARGB} output, and no
+   * deadline or cancellation check.
+   */
+  public static final DecodeOptions DEFAULT =
+      new DecodeOptions(
+          DEFAULT_MAX_PIXELS,
+          DEFAULT_MAX_DECODED_BYTES,
+          Double.POSITIVE_INFINITY,
+          false,
+          OutputFormat.ARGB,
+          false,
+          0,
+          null,
+          Integer.MAX_VALUE,
+          null);
+
+  private final long maxPixels;
+  private final long maxDecodedBytes;
+  private final double maxRleExpansion; // pixels per byte of run-length encoded data
+  private final boolean isStrict;
+  private final OutputFormat outputFormat;
+  private final boolean hasDeadline;
+  private final long deadline; // a System.nanoTime() value, only meaningful if hasDeadline
+  private final BooleanSupplier cancellation; // null if there is none
+  private final int progressInterval;
+  private final ProgressListener progressListener; // null if there is none
+
+  private DecodeOptions(
+      long maxPixels,
+      long maxDecodedBytes,
+      double maxRleExpansion,
+      boolean isStrict,
+      OutputFormat outputFormat,
+      boolean hasDeadline,
+      long deadline,
+      BooleanSupplier cancellation,
+      int progressInterval,
+      ProgressListener progressListener) {
+    this.maxPixels = maxPixels;
+    this.maxDecodedBytes = maxDecodedBytes;
+    this.maxRleExpansion = maxRleExpansion;
+    this.isStrict = isStrict;
+    this.outputFormat = outputFormat;
+    this.hasDeadline = hasDeadline;
+    this.deadline = deadline;
+    this.cancellation = cancellation;
+    this.progressInterval = progressInterval;
+    this.progressListener = progressListener;
+  }
+
+  /**
+   * Returns options that reject images with more than {@code maxPixels} pixels.
+   *
+   * @param maxPixels the largest width times height to decode
+   * @return the new options
+   * @throws IllegalArgumentException if {@code maxPixels} is negative
+   */
+  public DecodeOptions withMaxPixels(long maxPixels) {
+    if (maxPixels < 0) {
+      throw new IllegalArgumentException("Maximum pixel count cannot be negative: " + maxPixels);
+    }
+    return new DecodeOptions(
+        maxPixels,
+        maxDecodedBytes,
+        maxRleExpansion,
+        isStrict,
+        outputFormat,
+        hasDeadline,
+        deadline,
+        cancellation,
+        progressInterval,
+        progressListener);
+  }
+
+  /**
+   * Returns options that reject images whose decoded pixels would take more than {@code
+   * maxDecodedBytes} bytes, at four bytes per pixel.
+   *
+   * @param maxDecodedBytes the largest decoded size in bytes
+   * @return the new options
+   * @throws IllegalArgumentException if {@code maxDecodedBytes} is negative
+   */
+  public DecodeOptions withMaxDecodedBytes(long maxDecodedBytes) {
+    if (maxDecodedBytes < 0) {
+      throw new IllegalArgumentException(
+          "Maximum decoded size cannot be negative: " + maxDecodedBytes);
+    }
+    return new DecodeOptions(
+        maxPixels,
+        maxDecodedBytes,
+        maxRleExpansion,
+        isStrict,
+        outputFormat,
+        hasDeadline,
+        deadline,
+        cancellation,
+        progressInterval,
+        progressListener);
+  }
+
+  /**
+   * Returns options that reject run-length encoded images declaring more than {@code
+   * maxRleExpansion} pixels per byte of encoded data. An encoded run covers at most 255 pixels with
+   * two bytes, but end-of-line and delta codes can skip whole rows, so without a limit a tiny file
+   * may declare an enormous image.
+   *
+   * @param maxRleExpansion the largest ratio of pixels to encoded bytes, or {@link
+   *     Double#POSITIVE_INFINITY} for no limit
+   * @return the new options
+   * @throws IllegalArgumentException if {@code maxRleExpansion} is not positive
+   */
+  public DecodeOptions withMaxRleExpansion(double maxRleExpansion) {
+    if (!(maxRleExpansion > 0)) {
+      throw new IllegalArgumentException(
+          "Maximum run-length expansion must be positive: " + maxRleExpansion);
+    }
+    return new DecodeOptions(
+        maxPixels,
+        maxDecodedBytes,
+        maxRleExpansion,
+        isStrict,
+        outputFormat,
+        hasDeadline,
+        deadline,
+        cancellation,
+        progressInterval,
+        progressListener);
+  }
+
+  /**
+   * Returns options that treat corrupted pixel data as an error or not. Leniently, truncated or
+   * malformed pixel data is logged and the pixels decoded before the problem are returned, with the
+   * rest left transparent black. Strictly, it throws an {@link IllegalArgumentException} whose
+   * cause is the {@link com.eyespot.imageparser.exception.CorruptedImageException}, and so do
+   * run-length codes that move outside the image.
+   *
+   * @param isStrict {@code true} to reject corrupted pixel data
+   * @return the new options
+   */
+  public DecodeOptions withStrict(boolean isStrict) {
+    return new DecodeOptions(
+        maxPixels,
+        maxDecodedBytes,
+        maxRleExpansion,
+        isStrict,
+        outputFormat,
+        hasDeadline,
+        deadline,
+        cancellation,
+        progressInterval,
+        progressListener);
+  }
+
+  /**
+   * Returns options that produce pixels in the given format.
+   *
+   * @param outputFormat the pixel format of the decoded image
+   * @return the new options
+   */
+  public DecodeOptions withOutputFormat(OutputFormat outputFormat) {
+    Objects.requireNonNull(outputFormat, "Output format cannot be null.");
+    return new DecodeOptions(
+        maxPixels,
+        maxDecodedBytes,
+        maxRleExpansion,
+        isStrict,
+        outputFormat,
+        hasDeadline,
+        deadline,
+        cancellation,
+        progressInterval,
+        progressListener);
+  }
+
+  /**
+   * Returns options that stop decoding once {@link System#nanoTime()} reaches {@code deadline}.
+   * Unlike the other settings, a deadline belongs to one request, so options carrying one should
+   * not be kept for later decodes.
+   *
+   * @param deadline the {@link System#nanoTime()} value at which to stop
+   * @return the new options
+   */
+  public DecodeOptions withDeadline(long deadline) {
+    return new DecodeOptions(
+        maxPixels,
+        maxDecodedBytes,
+        maxRleExpansion,
+        isStrict,
+        outputFormat,
+        true,
+        deadline,
+        cancellation,
+        progressInterval,
+        progressListener);
+  }
+
+  /**
+   * Returns options that stop decoding once {@code timeout} has passed from now. This is {@link
+   * #withDeadline(long)} with the deadline computed when it is called, not when decoding starts.
+   *
+   * @param timeout how long from now decoding may run
+   * @return the new options
+   * @throws IllegalArgumentException if {@code timeout} is negative
+   */
+  public DecodeOptions withTimeout(Duration timeout) {
+    Objects.requireNonNull(timeout, "Timeout cannot be null.");
+    if (timeout.isNegative()) {
+      throw new IllegalArgumentException("Timeout cannot be negative: " + timeout);
+    }
+    // Deadlines are compared by subtraction, which is only correct within 2^63 nanoseconds
+    long nanos =
+        timeout.getSeconds() < Long.MAX_VALUE / 2_000_000_000L
+            ? timeout.toNanos()
+            : Long.MAX_VALUE / 2;
+    return withDeadline(System.nanoTime() + nanos);
+  }
+
+  /**
+   * Returns options that stop decoding once {@code isCancelled} returns {@code true}, such as
+   * {@code future::isCancelled} or an {@code AtomicBoolean}'s {@code get}. It is called once per
+   * scanline on the decoding thread, so it must be cheap and thread-safe.
+   *
+   * @param isCancelled the cancellation check
+   * @return the new options
+   */
+  public DecodeOptions withCancellation(BooleanSupplier isCancelled) {
+    Objects.requireNonNull(isCancelled, "Cancellation check cannot be null.");
+    return new DecodeOptions(
+        maxPixels,
+        maxDecodedBytes,
+        maxRleExpansion,
+        isStrict,
+        outputFormat,
+        hasDeadline,
+        deadline,
+        isCancelled,
+        progressInterval,
+        progressListener);
+  }
+
+  /**
+   * Returns options that report progress to {@code listener} every {@code interval} scanlines,
+   * counted in file order, and when decoding completes. A decode that stops early does not report
+   * completion.
+   *
+   * @param interval the number of scanlines between reports
+   * @param listener the listener to report to, called on the decoding thread
+   * @return the new options
+   * @throws IllegalArgumentException if {@code interval} is not positive
+   */
+  public DecodeOptions withProgress(int interval, ProgressListener listener) {
+    if (interval < 1) {
+      throw new IllegalArgumentException("Progress interval must be positive: " + interval);
+    }
+    Objects.requireNonNull(listener, "Progress listener cannot be null.");
+    return new DecodeOptions(
+        maxPixels,
+        maxDecodedBytes,
+        maxRleExpansion,
+        isStrict,
+        outputFormat,
+        hasDeadline,
+        deadline,
+        cancellation,
+        interval,
+        listener);
+  }
+
+  /** @return the largest number of pixels to decode */
+  public long getMaxPixels() {
+    return maxPixels;
+  }
+
+  /** @return the largest decoded size in bytes */
+  public long getMaxDecodedBytes() {
+    return maxDecodedBytes;
+  }
+
+  /** @return the largest ratio of pixels to run-length encoded bytes */
+  public double getMaxRleExpansion() {
+    return maxRleExpansion;
+  }
+
+  /** @return {@code true} if corrupted pixel data is rejected rather than partially decoded */
+  public boolean isStrict() {
+    return isStrict;
+  }
+
+  /** @return the pixel format of the decoded image */
+  public OutputFormat getOutputFormat() {
+    return outputFormat;
+  }
+
+  /** @return {@code true} if decoding stops at {@link #getDeadline()} */
+  public boolean hasDeadline() {
+    return hasDeadline;
+  }
+
+  /** @return the {@link System#nanoTime()} value at which decoding stops, if it has a deadline */
+  public long getDeadline() {
+    return deadline;
+  }
+
+  /** @return the number of scanlines between progress reports */
+  public int getProgressInterval() {
+    return progressInterval;
+  }
+
+  /**
+   * Reports progress to the listener, if there is one.
+   *
+   * @param rowsCompleted the number of scanlines decoded
+   * @param height the number of scanlines in the image
+   */
+  void reportProgress(int rowsCompleted, int height) {
+    if (progressListener != null) {
+      progressListener.progress(rowsCompleted, height);
+    }
+  }
+
+  /**
+   * Stops the decode if the thread was interrupted, the deadline has passed or the cancellation
+   * check says so. Called once per scanline.
+   *
+   * @param rowsCompleted the number of scanlines decoded so far, for the exception
+   * @throws DecodeCancelledException if the decode should stop
+   */
+  void checkCancelled(int rowsCompleted) {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new DecodeCancelledException(
+          DecodeCancelledException.Reason.INTERRUPTED, rowsCompleted);
+    }
+    if (hasDeadline && System.nanoTime() - deadline >= 0) {
+      throw new DecodeCancelledException(
+          DecodeCancelledException.Reason.DEADLINE_EXCEEDED, rowsCompleted);
+    }
+    if (cancellation != null && cancellation.getAsBoolean()) {
+      throw new DecodeCancelledException(DecodeCancelledException.Reason.CANCELLED, rowsCompleted);
+    }
+  }
+
+  /**
+   * Checks an image against the limits before it is decoded.
+   *
+   * @param width the width from the DIB header
+   * @param height the height from the DIB header, without its sign
+   * @param compression the compression method
+   * @param encodedBytes the number of bytes of pixel data available
+   * @throws IllegalArgumentException if the image exceeds a limit
+   */
+  void checkLimits(int width, int height, int compression, long encodedBytes) {
+    long pixels = (long) width * height;
+    if (pixels > maxPixels) {
+      throw new IllegalArgumentException(
+          "Image of " + width + "x" + height + " pixels exceeds the limit of " + maxPixels);
+    }
+    long decodedBytes = pixels * Integer.BYTES;
+    if (decodedBytes > maxDecodedBytes) {
+      throw new IllegalArgumentException(
+          "Image of "
+              + width
+              + "x"
+              + height
+              + " pixels needs "
+              + decodedBytes
+              + " bytes, more than the limit of "
+              + maxDecodedBytes);
+    }
+    boolean isRunLengthEncoded =
+        compression == BitmapConstants.BI_RLE8 || compression == BitmapConstants.BI_RLE4;
+    if (isRunLengthEncoded && pixels > maxRleExpansion * Math.max(encodedBytes, 1)) {
+      throw new IllegalArgumentException(
+          "Run-length encoded image of "
+              + width
+              + "x"
+              + height
+              + " pixels from "
+              + encodedBytes
+              + " bytes exceeds the expansion limit of "
+              + maxRleExpansion);
+    }
+  }
+}
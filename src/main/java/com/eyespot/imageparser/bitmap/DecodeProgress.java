@@ -0,0 +1,58 @@
+package com.eyespot.imageparser.bitmap;
+
+/**
+ * Tracks how far one decode has got, in scanlines of the file. The decoders call {@link
+ * #startRow(int)} before each scanline, which is where cancellation is checked and progress is
+ * reported, so that neither costs anything per pixel.
+ *
+ * @author Kevin Babu
+ */
+final class DecodeProgress {
+  private final DecodeOptions options;
+  private final int height;
+  private int rowsCompleted;
+  private long nextReport; // the scanline count at which progress is next reported
+
+  /**
+   * @param options the options of the decode
+   * @param height the number of scanlines in the image
+   */
+  DecodeProgress(DecodeOptions options, int height) {
+    this.options = options;
+    this.height = height;
+    this.nextReport = options.getProgressInterval();
+  }
+
+  /** @return the options of the decode */
+  DecodeOptions getOptions() {
+    return options;
+  }
+
+  /** @return the number of scanlines completed so far */
+  int getRowsCompleted() {
+    return rowsCompleted;
+  }
+
+  /**
+   * Records that every scanline before {@code row} is complete, reports progress if another
+   * interval has passed, and stops the decode if it has been cancelled.
+   *
+   * @param row the scanline about to be decoded, which may be past the last one
+   * @throws com.eyespot.imageparser.exception.DecodeCancelledException if the decode should stop
+   */
+  void startRow(int row) {
+    rowsCompleted = Math.min(row, height);
+    if (rowsCompleted >= nextReport && rowsCompleted < height) {
+      int interval = options.getProgressInterval();
+      options.reportProgress(rowsCompleted, height);
+      nextReport = (rowsCompleted / interval + 1L) * interval;
+    }
+    options.checkCancelled(rowsCompleted);
+  }
+
+  /** Records that every scanline is complete and reports it. */
+  void finish() {
+    rowsCompleted = height;
+    options.reportProgress(height, height);
+  }
+}
@@ -0,0 +1,105 @@
+package com.eyespot.imageparser.bitmap;
+
+import com.eyespot.imageparser.PixelBuffer;
+
+/**
+ * The outcome of {@link BitmapParser#decodeWithResult(DecodeOptions)}: the pixels, and how many of
+ * them can be trusted when the decode did not finish.
+ *
+ * <p>Scanlines are decoded in file order, so for a bottom-up bitmap (positive height) the rows
+ * completed are the bottom rows of the image. {@link #isRowDecoded(int)} answers in display order,
+ * which is what serving a partial image needs. Rows that were not completed are transparent black,
+ * except for the row in progress when decoding stopped, which may be partly written.
+ *
+ * @author Kevin Babu
+ */
+public final class DecodeResult {
+
+  /** Why a decode did not complete. */
+  public enum ErrorKind {
+    /** The decode completed. */
+    NONE,
+    /** The pixel data ends before the last scanline. */
+    TRUNCATED,
+    /** The pixel data is invalid, such as a run-length code that leaves the image. */
+    MALFORMED,
+    /** The deadline passed, the decode was cancelled or the thread was interrupted. */
+    CANCELLED
+  }
+
+  private final PixelBuffer pixels;
+  private final int rowsCompleted;
+  private final boolean isBottomUp;
+  private final ErrorKind errorKind;
+  private final int firstBadOffset;
+  private final String errorMessage;
+
+  DecodeResult(
+      PixelBuffer pixels,
+      int rowsCompleted,
+      boolean isBottomUp,
+      ErrorKind errorKind,
+      int firstBadOffset,
+      String errorMessage) {
+    this.pixels = pixels;
+    this.rowsCompleted = rowsCompleted;
+    this.isBottomUp = isBottomUp;
+    this.errorKind = errorKind;
+    this.firstBadOffset = firstBadOffset;
+    this.errorMessage = errorMessage;
+  }
+
+  /**
+   * Returns the decoded pixels, including any rows that were not completed. The result hands over
+   * the buffer the decode wrote into rather than a copy, since it is the caller's image.
+   *
+   * @return the decoded pixels
+   */
+  public PixelBuffer getPixels() {
+    return pixels;
+  }
+
+  /** @return {@code true} if every scanline was decoded */
+  public boolean isComplete() {
+    return errorKind == ErrorKind.NONE;
+  }
+
+  /** @return the number of scanlines decoded, in file order */
+  public int getRowsCompleted() {
+    return rowsCompleted;
+  }
+
+  /**
+   * Returns whether a row of the image was completely decoded.
+   *
+   * @param row the row, counted from the top of the image
+   * @return {@code true} if every pixel of the row was decoded
+   * @throws IndexOutOfBoundsException if {@code row} is outside the image
+   */
+  public boolean isRowDecoded(int row) {
+    int height = pixels.height();
+    if (row < 0 || row >= height) {
+      throw new IndexOutOfBoundsException(
+          "Row " + row + " is outside an image of height " + height);
+    }
+    return isBottomUp ? row >= height - rowsCompleted : row < rowsCompleted;
+  }
+
+  /** @return why the decode did not complete, or {@link ErrorKind#NONE} */
+  public ErrorKind getErrorKind() {
+    return errorKind;
+  }
+
+  /**
+   * @return the offset in the file of the first byte that could not be decoded, or -1 if the decode
+   *     completed, was cancelled or the offset is not known
+   */
+  public int getFirstBadOffset() {
+    return firstBadOffset;
+  }
+
+  /** @return a description of the problem, or {@code null} if the decode completed */
+  public String getErrorMessage() {
+    return errorMessage;
+  }
+}
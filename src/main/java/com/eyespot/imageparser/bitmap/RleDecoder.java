@@ -0,0 +1,289 @@
+package com.eyespot.imageparser.bitmap;
+
+import com.eyespot.imageparser.exception.CorruptedImageException;
+import com.eyespot.imageparser.util.ImageUtils;
+
+/**
+ * Decodes {@code BI_RLE8} and {@code BI_RLE4} pixel data one scanline at a time, in file order.
+ *
+ * <p>Run-length encoded scanlines cannot be found without decoding everything before them, but
+ * every code only ever moves forward through the image, delta escapes included. The decoder
+ * therefore keeps its place in the stream and in the image between calls to {@link #decodeRow(int,
+ * int[], int)}, and the data can be fed to it in pieces: {@link BitmapParser} hands over the whole
+ * file at once, while {@link BitmapRowSource} reads it a chunk at a time.
+ *
+ * <p>Pixels that no code sets, such as those skipped by a delta or an early end of line, are left
+ * as they are in the destination. Runs are clipped to the image; in strict mode a run or delta that
+ * leaves the image is an error instead.
+ *
+ * @author Kevin Babu
+ */
+final class RleDecoder {
+  private static final int END_OF_LINE = 0x00;
+  private static final int END_OF_BITMAP = 0x01;
+  private static final int DELTA = 0x02;
+  // codes decoded between cancellation checks when they make no progress across the image
+  private static final int CODES_PER_CHECK = 4096;
+
+  private final ColourPalette palette;
+  private final boolean isFourBit;
+  private final String format;
+  // built once, so that checks which pass do not build strings
+  private final String missingDeltaMessage;
+  private final String shortAbsoluteRunTemplate;
+  private final int width;
+  // Encoders write whole bytes, so a row of odd width may end with an RLE4 run that includes the
+  // padding nibble; strict mode accepts it rather than rejecting most odd-width files.
+  private final int runWidth;
+  private final int height;
+  private final boolean isStrict; // runs and deltas that leave the image are errors
+  private final DecodeProgress progress;
+
+  private byte[] data = new byte[0];
+  private int position; // index in data of the next code
+  private int limit; // end of the valid bytes in data
+  private long dataOffset; // file offset of data[0]
+  private boolean isLastInput; // no data follows data[limit - 1]
+
+  private int codeOffset; // file offset of the code being decoded
+  private int x;
+  private int y;
+  private boolean endOfBitmap;
+  private boolean isExhausted; // the data ended before the end-of-bitmap code
+  private int checkedX;
+  private int checkedY;
+  private int codesSinceCheck;
+
+  /**
+   * @param compression {@link BitmapConstants#BI_RLE8} or {@link BitmapConstants#BI_RLE4}
+   * @param bitsPerPixel the bits per pixel in the DIB header
+   * @param width the width of the image
+   * @param height the number of scanlines in the image
+   * @param palette the colour palette the indices refer to
+   * @param progress the progress of the decode, which also says whether it is strict
+   * @throws IllegalArgumentException if the bits per pixel do not match the compression
+   */
+  RleDecoder(
+      int compression,
+      int bitsPerPixel,
+      int width,
+      int height,
+      ColourPalette palette,
+      DecodeProgress progress) {
+    this.isFourBit = compression == BitmapConstants.BI_RLE4;
+    this.format = isFourBit ? "RLE4" : "RLE8";
+    if (bitsPerPixel != (isFourBit ? 4 : 8)) {
+      throw new IllegalArgumentException(
+          String.format(
+              "BI_%s compression is only valid for %d bits per pixel.", format, isFourBit ? 4 : 8));
+    }
+    this.missingDeltaMessage = format + " decoding error: Missing delta offsets.";
+    this.shortAbsoluteRunTemplate =
+        format + " decoding error: Not enough data for absolute run of %d pixels.";
+    this.palette = palette;
+    this.width = width;
+    this.runWidth = isFourBit ? (width + 1) & ~1 : width;
+    this.height = height;
+    this.isStrict = progress.getOptions().isStrict();
+    this.progress = progress;
+  }
+
+  /**
+   * Gives the decoder more of the stream. The bytes from {@link #getPosition()} on that it has not
+   * decoded yet must be passed again at the start of the new data.
+   *
+   * @param data the bytes of the stream
+   * @param position the index in {@code data} of the next code
+   * @param limit the end of the valid bytes in {@code data}
+   * @param dataOffset the file offset of {@code data[0]}, for error reports
+   * @param isLastInput {@code true} if the stream ends at {@code limit}
+   */
+  void setInput(byte[] data, int position, int limit, long dataOffset, boolean isLastInput) {
+    this.data = data;
+    this.position = position;
+    this.limit = limit;
+    this.dataOffset = dataOffset;
+    this.isLastInput = isLastInput;
+  }
+
+  /** @return the index in the current input of the first byte not yet decoded */
+  int getPosition() {
+    return position;
+  }
+
+  /** @return {@code true} once the end-of-bitmap code or the end of the stream is reached */
+  boolean isFinished() {
+    return endOfBitmap || isExhausted;
+  }
+
+  /**
+   * Decodes the codes for one scanline, writing its pixels from {@code dst[dstStart]}. Scanlines
+   * must be asked for in file order; one that the stream skips over is left untouched.
+   *
+   * @param row the scanline, counted in file order
+   * @param dst the destination, or {@code null} to follow the stream without writing pixels
+   * @param dstStart the index in {@code dst} of the first pixel of the scanline
+   * @return {@code true} if the scanline is complete, {@code false} if the decoder needs more input
+   *     to finish it
+   * @throws CorruptedImageException if the stream ends part way through a code, or in strict mode
+   *     if a run or delta leaves the image
+   */
+  boolean decodeRow(int row, int[] dst, int dstStart) throws CorruptedImageException {
+    while (y == row && !isFinished()) {
+      if (!decodeCode(dst, dstStart) && !isExhausted) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Follows the codes after the last scanline, and then checks that the stream was complete. The
+   * last of the input must have been given.
+   *
+   * @throws CorruptedImageException if the stream ends before its end-of-bitmap code and before the
+   *     last pixel, or as for {@link #decodeRow(int, int[], int)}
+   * @throws IllegalStateException if the last of the input has not been given
+   */
+  void finish() throws CorruptedImageException {
+    if (!isLastInput) {
+      throw new IllegalStateException("The rest of the stream has not been given");
+    }
+    while (!isFinished()) {
+      decodeCode(null, 0);
+    }
+    if (!endOfBitmap && (y < height - 1 || (y == height - 1 && x < runWidth))) {
+      throw new CorruptedImageException(
+          String.format(
+              "%s decoding error: Pixel data ends at (%d,%d), before the end of the bitmap.",
+              format, x, y),
+          fileOffset(Math.min(position, limit)),
+          true);
+    }
+  }
+
+  // decodes the next code, or returns false if it is not all in the input yet
+  private boolean decodeCode(int[] dst, int dstStart) throws CorruptedImageException {
+    if (limit - position < 2) {
+      isExhausted = isLastInput;
+      return false;
+    }
+    int first = data[position] & BitmapConstants.BYTE_MASK;
+    int second = data[position + 1] & BitmapConstants.BYTE_MASK;
+    if (first != 0) {
+      codeOffset = fileOffset(position);
+      position += 2;
+      checkRun(first);
+      writeEncodedRun(dst, dstStart, first, second);
+    } else if (second == END_OF_LINE) {
+      codeOffset = fileOffset(position);
+      position += 2;
+      x = 0;
+      y++;
+    } else if (second == END_OF_BITMAP) {
+      codeOffset = fileOffset(position);
+      position += 2;
+      endOfBitmap = true;
+    } else if (second == DELTA) {
+      if (limit - position < 4 && !isLastInput) {
+        return false;
+      }
+      codeOffset = fileOffset(position);
+      position += 2;
+      ImageUtils.ensureBytesAvailable(
+          fileOffset(position), 2, missingDeltaMessage, fileOffset(limit), true);
+      x += data[position++] & BitmapConstants.BYTE_MASK;
+      y += data[position++] & BitmapConstants.BYTE_MASK;
+      if (isStrict && (x > runWidth || y > height)) {
+        throw new CorruptedImageException(
+            String.format(
+                "%s decoding error: Delta moves to (%d,%d), outside the image.", format, x, y),
+            codeOffset,
+            false);
+      }
+    } else {
+      // absolute run of `second` pixels, padded to a whole number of 16-bit words
+      int bytes = isFourBit ? (second + 1) / 2 : second;
+      int padded = bytes + (bytes & 1);
+      if (limit - position < 2 + padded && !isLastInput) {
+        return false;
+      }
+      codeOffset = fileOffset(position);
+      position += 2;
+      ImageUtils.ensureBytesAvailable(
+          fileOffset(position), bytes, shortAbsoluteRunTemplate, fileOffset(limit), true, second);
+      checkRun(second);
+      writeAbsoluteRun(dst, dstStart, second);
+      position += padded;
+    }
+    checkpoint();
+    return true;
+  }
+
+  /** In strict mode, rejects a run of {@code count} pixels that does not fit in the current row. */
+  private void checkRun(int count) throws CorruptedImageException {
+    if (isStrict && (y >= height || x + count > runWidth)) {
+      throw new CorruptedImageException(
+          String.format(
+              "%s decoding error: Run of %d pixels at (%d,%d) is outside the image.",
+              format, count, x, y),
+          codeOffset,
+          false);
+    }
+  }
+
+  // writes `count` pixels alternating between the indices in the two nibbles of `indices` for
+  // RLE4, or all of the index `indices` for RLE8
+  private void writeEncodedRun(int[] dst, int dstStart, int count, int indices) {
+    int end = Math.min(x + count, width);
+    if (dst != null && x < end) {
+      if (isFourBit) {
+        int even = palette.getColour(indices >> 4);
+        int odd = end - x > 1 ? palette.getColour(indices & 0x0F) : even;
+        for (int i = x; i < end; i++) {
+          dst[dstStart + i] = ((i - x) & 1) == 0 ? even : odd;
+        }
+      } else {
+        int colour = palette.getColour(indices);
+        for (int i = x; i < end; i++) {
+          dst[dstStart + i] = colour;
+        }
+      }
+    }
+    x += count;
+  }
+
+  // writes `count` pixels whose indices follow the code
+  private void writeAbsoluteRun(int[] dst, int dstStart, int count) {
+    int end = Math.min(x + count, width);
+    if (dst != null) {
+      for (int i = x; i < end; i++) {
+        int n = i - x;
+        int index =
+            isFourBit
+                ? (data[position + n / 2] >> ((n & 1) == 0 ? 4 : 0)) & 0x0F
+                : data[position + n] & BitmapConstants.BYTE_MASK;
+        dst[dstStart + i] = palette.getColour(index);
+      }
+    }
+    x += count;
+  }
+
+  /**
+   * Checks for cancellation after each code once the position has moved to another scanline, or
+   * advanced more than a scanline's width along the same one, or after many codes that did neither.
+   * A stream that never ends its lines therefore cannot run unchecked.
+   */
+  private void checkpoint() {
+    if (y != checkedY || x - checkedX > runWidth || ++codesSinceCheck >= CODES_PER_CHECK) {
+      progress.startRow(y);
+      checkedX = x;
+      checkedY = y;
+      codesSinceCheck = 0;
+    }
+  }
+
+  private int fileOffset(int index) {
+    return (int) Math.min(dataOffset + index, Integer.MAX_VALUE);
+  }
+}
@@ -0,0 +1,240 @@
+package com.eyespot.imageparser.bitmap;
+
+/**
+ * Encodes scanlines of palette indices as {@code BI_RLE8} or {@code BI_RLE4} data.
+ *
+ * <p>Each scanline is split into encoded runs (a count and a colour, or for RLE4 a pair of
+ * alternating colours) and absolute runs (3 to 255 literal indices, padded to a 16-bit boundary).
+ * The split is chosen by dynamic programming over the scanline so that the encoded row is as short
+ * as possible. Because the encoded size of a suffix never grows when pixels are removed from its
+ * front, an encoded run is always best taken at full length, and the best absolute run is found
+ * with a sliding-window minimum per length residue, keeping the whole search linear in the width.
+ *
+ * <p>Pixels whose palette colour is fully transparent are not written at all: they are skipped with
+ * delta codes, or simply left out at the end of a line, and decoders leave them transparent black.
+ *
+ * <p>Instances keep scratch arrays between rows and are not thread-safe.
+ *
+ * @author Kevin Babu
+ * @see BitmapParser
+ */
+final class RleEncoder {
+  private static final int ESCAPE = 0x00;
+  private static final int END_OF_LINE = 0x00;
+  private static final int END_OF_BITMAP = 0x01;
+  private static final int DELTA = 0x02;
+  private static final int MAX_RUN = 255;
+  private static final int MIN_ABSOLUTE_RUN = 3;
+  private static final int WINDOW_CAPACITY = 256; // holds every absolute run end in a window
+
+  private final boolean isFourBit;
+  private final int period; // absolute runs whose lengths differ by this cost 2 bytes more
+  private final int periodShift;
+  private final boolean[] isSkipped; // palette entries that are fully transparent
+
+  private int[] cost = new int[0]; // bytes needed to encode the segment from a pixel to its end
+  private int[] choice = new int[0]; // > 0: encoded run length, < 0: minus absolute run length
+  private int[] run = new int[0]; // length of the encodable run starting at a pixel
+  private final int[][] window = new int[4][WINDOW_CAPACITY];
+  private final int[] windowHead = new int[4];
+  private final int[] windowCount = new int[4];
+
+  /**
+   * Creates an encoder.
+   *
+   * @param isFourBit {@code true} for {@code BI_RLE4}, {@code false} for {@code BI_RLE8}
+   * @param palette the palette the indices refer to
+   */
+  RleEncoder(boolean isFourBit, int[] palette) {
+    this.isFourBit = isFourBit;
+    this.period = isFourBit ? 4 : 2;
+    this.periodShift = isFourBit ? 2 : 1;
+    this.isSkipped = new boolean[palette.length];
+    for (int i = 0; i < palette.length; i++) {
+      isSkipped[i] = (palette[i] >>> 24) == 0;
+    }
+  }
+
+  /**
+   * Returns an upper bound on the number of bytes {@link #encodeRow} writes for one scanline.
+   *
+   * @param width the number of pixels in the scanline
+   * @return the maximum encoded size in bytes
+   */
+  static int maxRowSize(int width) {
+    // every visible pixel may need a 2-byte run and every gap a 4-byte delta, plus EOL or EOB
+    return 4 * width + 4;
+  }
+
+  /**
+   * Encodes one scanline followed by an end-of-line code, or an end-of-bitmap code if it is the
+   * last scanline in the file.
+   *
+   * @param indices the palette indices
+   * @param start the index in {@code indices} of the first pixel of the scanline
+   * @param width the number of pixels in the scanline
+   * @param out where to write the encoded bytes
+   * @param pos the index in {@code out} to start writing at
+   * @param isLastRow whether to end with end-of-bitmap instead of end-of-line
+   * @return the index in {@code out} after the last byte written
+   */
+  int encodeRow(byte[] indices, int start, int width, byte[] out, int pos, boolean isLastRow) {
+    ensureCapacity(width);
+    int cursor = 0; // where a decoder would write the next pixel
+    int x = 0;
+    while (x < width) {
+      if (isSkipped[indices[start + x] & 0xFF]) {
+        x++;
+        continue;
+      }
+      int end = x + 1;
+      while (end < width && !isSkipped[indices[start + end] & 0xFF]) {
+        end++;
+      }
+      for (int gap = x - cursor; gap > 0; gap -= MAX_RUN) {
+        out[pos++] = ESCAPE;
+        out[pos++] = DELTA;
+        out[pos++] = (byte) Math.min(gap, MAX_RUN);
+        out[pos++] = 0;
+      }
+      pos = encodeSegment(indices, start, x, end, out, pos);
+      cursor = end;
+      x = end;
+    }
+    out[pos++] = ESCAPE;
+    out[pos++] = (byte) (isLastRow ? END_OF_BITMAP : END_OF_LINE);
+    return pos;
+  }
+
+  private void ensureCapacity(int width) {
+    if (cost.length < width + 1) {
+      cost = new int[width + 1];
+      choice = new int[width + 1];
+      run = new int[width + 1];
+    }
+  }
+
+  // encodes the visible pixels [from, to) of the scanline starting at indices[start]
+  private int encodeSegment(byte[] indices, int start, int from, int to, byte[] out, int pos) {
+    computeRuns(indices, start, from, to);
+    computeChoices(from, to);
+
+    int i = from;
+    while (i < to) {
+      int length = choice[i];
+      if (length > 0) {
+        out[pos++] = (byte) length;
+        int first = indices[start + i] & 0xFF;
+        if (isFourBit) {
+          int second = length > 1 ? indices[start + i + 1] & 0xFF : first;
+          out[pos++] = (byte) ((first << 4) | second);
+        } else {
+          out[pos++] = (byte) first;
+        }
+        i += length;
+      } else {
+        length = -length;
+        out[pos++] = ESCAPE;
+        out[pos++] = (byte) length;
+        int bytes;
+        if (isFourBit) {
+          bytes = (length + 1) / 2;
+          for (int k = 0; k < length; k += 2) {
+            int high = indices[start + i + k] & 0xFF;
+            int low = k + 1 < length ? indices[start + i + k + 1] & 0xFF : 0;
+            out[pos++] = (byte) ((high << 4) | low);
+          }
+        } else {
+          bytes = length;
+          System.arraycopy(indices, start + i, out, pos, length);
+          pos += length;
+        }
+        if (bytes % 2 != 0) {
+          out[pos++] = 0;
+        }
+        i += length;
+      }
+    }
+    return pos;
+  }
+
+  // run[i] = length of the longest encoded run starting at i: equal indices for RLE8, two
+  // alternating indices for RLE4
+  private void computeRuns(byte[] indices, int start, int from, int to) {
+    run[to - 1] = 1;
+    for (int i = to - 2; i >= from; i--) {
+      int current = indices[start + i];
+      if (isFourBit) {
+        run[i] = i + 2 < to && indices[start + i + 2] == current ? run[i + 1] + 1 : 2;
+      } else {
+        run[i] = indices[start + i + 1] == current ? run[i + 1] + 1 : 1;
+      }
+    }
+  }
+
+  private void computeChoices(int from, int to) {
+    // An absolute run of n pixels from i to j = i + n costs 2 + 2 * ceil(n / period) bytes. With
+    // j = period * a + c and i = period * b + d this is 2 + 2 * (a - b) + (c > d ? 2 : 0), so for
+    // each residue c of j the best end is the one with the smallest 2 * a + cost[j].
+    for (int c = 0; c < period; c++) {
+      windowCount[c] = 0;
+    }
+    cost[to] = 0;
+    for (int i = to - 1; i >= from; i--) {
+      int length = Math.min(run[i], MAX_RUN);
+      int best = 2 + cost[i + length];
+      int bestChoice = length;
+
+      int newEnd = i + MIN_ABSOLUTE_RUN;
+      if (newEnd <= to) {
+        pushWindow(newEnd);
+      }
+      int b = i >> periodShift;
+      int d = i & (period - 1);
+      for (int c = 0; c < period; c++) {
+        expireWindow(c, i + MAX_RUN);
+        if (windowCount[c] == 0) {
+          continue;
+        }
+        int end = oldest(c);
+        int candidate = 2 + key(end) - 2 * b + (c > d ? 2 : 0);
+        if (candidate < best) {
+          best = candidate;
+          bestChoice = i - end;
+        }
+      }
+      cost[i] = best;
+      choice[i] = bestChoice;
+    }
+  }
+
+  private int key(int end) {
+    return 2 * (end >> periodShift) + cost[end];
+  }
+
+  // adds a run end; ends already in the window with no smaller key can never be the best again,
+  // because the new end stays in the window longer
+  private void pushWindow(int end) {
+    int c = end & (period - 1);
+    int[] ends = window[c];
+    int k = key(end);
+    while (windowCount[c] > 0 && key(ends[windowHead[c]]) >= k) {
+      windowHead[c] = (windowHead[c] + 1) & (WINDOW_CAPACITY - 1);
+      windowCount[c]--;
+    }
+    windowHead[c] = (windowHead[c] - 1) & (WINDOW_CAPACITY - 1);
+    ends[windowHead[c]] = end;
+    windowCount[c]++;
+  }
+
+  private void expireWindow(int c, int maxEnd) {
+    while (windowCount[c] > 0 && oldest(c) > maxEnd) {
+      windowCount[c]--;
+    }
+  }
+
+  // the end with the smallest key in the window of residue c
+  private int oldest(int c) {
+    return window[c][(windowHead[c] + windowCount[c] - 1) & (WINDOW_CAPACITY - 1)];
+  }
+}
@@ -0,0 +1,69 @@
+package com.eyespot.imageparser.bitmap;
+
+/**
+ * One problem found by {@link BitmapParser#validate()}.
+ *
+ * @author Kevin Babu
+ */
+public final class ValidationProblem {
+
+  /** The part of the file a problem is in. */
+  public enum Kind {
+    /** The file size in the file header does not match the file. */
+    FILE_SIZE,
+    /** The offset to the pixel data is outside the file or overlaps the headers or palette. */
+    PIXEL_DATA_OFFSET,
+    /** The width or height is zero, negative, or beyond the default decode limits. */
+    DIMENSIONS,
+    /** The number of colour planes is not 1. */
+    COLOUR_PLANES,
+    /** The number of bits per pixel is not one a bitmap can have. */
+    BIT_DEPTH,
+    /** The compression method is unknown or does not fit the bit depth or row order. */
+    COMPRESSION,
+    /** The image size in the DIB header does not fit the pixel data. */
+    IMAGE_SIZE,
+    /** The resolution is negative or implausibly large. */
+    RESOLUTION,
+    /** The colour counts are out of range, or the palette does not fit in the file. */
+    PALETTE,
+    /** A pixel refers to a colour beyond the end of the palette. */
+    PALETTE_INDEX,
+    /** The bitfield colour masks are missing, empty or overlapping. */
+    COLOUR_MASKS,
+    /** The uncompressed pixel data does not cover every scanline. */
+    PIXEL_DATA,
+    /** The run-length encoded pixel data is truncated or leaves the image. */
+    RLE_STREAM
+  }
+
+  private final Kind kind;
+  private final int offset;
+  private final String message;
+
+  ValidationProblem(Kind kind, int offset, String message) {
+    this.kind = kind;
+    this.offset = offset;
+    this.message = message;
+  }
+
+  /** @return the part of the file the problem is in */
+  public Kind getKind() {
+    return kind;
+  }
+
+  /** @return the offset in the file of the field or byte at fault, or -1 if there is none */
+  public int getOffset() {
+    return offset;
+  }
+
+  /** @return a description of the problem */
+  public String getMessage() {
+    return message;
+  }
+
+  @Override
+  public String toString() {
+    return kind + (offset >= 0 ? " at offset " + offset : "") + ": " + message;
+  }
+}
@@ -2,12 +2,39 @@ package com.eyespot.imageparser.exception;
 
 /** Exception thrown to indicate that an image file is corrupted or unreadable during parsing. */
 public class CorruptedImageException extends Exception {
+  private final int offset;
+  private final boolean isTruncated;
+
   /**
    * Constructs a new {@code CorruptedImageException} with the specified detail message.
    *
    * @param message the detail message
    */
   public CorruptedImageException(String message) {
+    this(message, -1, false);
+  }
+
+  /**
+   * Constructs a new {@code CorruptedImageException} for a problem at a known place in the file.
+   *
+   * @param message the detail message
+   * @param offset the offset in the file of the first byte that could not be decoded
+   * @param isTruncated {@code true} if the file ends too soon, {@code false} if its content is
+   *     invalid
+   */
+  public CorruptedImageException(String message, int offset, boolean isTruncated) {
     super(message);
+    this.offset = offset;
+    this.isTruncated = isTruncated;
+  }
+
+  /** @return the offset in the file of the first byte that could not be decoded, or -1 */
+  public int getOffset() {
+    return offset;
+  }
+
+  /** @return {@code true} if the file ends too soon, {@code false} if its content is invalid */
+  public boolean isTruncated() {
+    return isTruncated;
   }
 }
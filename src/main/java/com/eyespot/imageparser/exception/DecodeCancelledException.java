@@ -0,0 +1,47 @@
+package com.eyespot.imageparser.exception;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Exception thrown when a decode stops before finishing because its deadline passed, it was
+ * cancelled, or its thread was interrupted.
+ */
+public class DecodeCancelledException extends CancellationException {
+
+  private static final long serialVersionUID = 1L;
+
+  /** Why a decode was stopped. */
+  public enum Reason {
+    /** The deadline passed. */
+    DEADLINE_EXCEEDED,
+    /** The cancellation check returned {@code true}. */
+    CANCELLED,
+    /** The decoding thread was interrupted; its interrupt status is left set. */
+    INTERRUPTED
+  }
+
+  private final Reason reason;
+  private final int rowsCompleted;
+
+  /**
+   * Constructs a new {@code DecodeCancelledException}.
+   *
+   * @param reason why the decode was stopped
+   * @param rowsCompleted the number of scanlines decoded before it was stopped
+   */
+  public DecodeCancelledException(Reason reason, int rowsCompleted) {
+    super("Decode stopped (" + reason + ") after " + rowsCompleted + " scanlines.");
+    this.reason = reason;
+    this.rowsCompleted = rowsCompleted;
+  }
+
+  /** @return why the decode was stopped */
+  public Reason getReason() {
+    return reason;
+  }
+
+  /** @return the number of scanlines decoded before the decode was stopped */
+  public int getRowsCompleted() {
+    return rowsCompleted;
+  }
+}
@@ -0,0 +1,55 @@
+package com.eyespot.imageparser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Emitted when the pixels of an image are scanned for transparency because neither the palette nor
+ * the headers could tell. Answers taken from the headers are not reported.
+ *
+ * @author Kevin Babu
+ */
+@Name(AlphaScanEvent.NAME)
+@Label("Alpha Scan")
+@Description("Scan of the pixels of an image for transparency")
+@Category({"EyeSpot", "Image"})
+@StackTrace(false)
+public final class AlphaScanEvent extends Event {
+  /** The name of the event, for JFR settings and queries. */
+  public static final String NAME = "com.eyespot.AlphaScan";
+
+  @Label("Width")
+  @Description("Width of the image in pixels")
+  private int width;
+
+  @Label("Height")
+  @Description("Height of the image in pixels")
+  private int height;
+
+  @Label("Decoded")
+  @Description("Whether the pixels had to be decoded for the scan, which is then included")
+  private boolean decoded;
+
+  @Label("Transparent")
+  @Description("Whether a pixel that is not fully opaque was found")
+  private boolean transparent;
+
+  /**
+   * Records the image and the outcome of the scan.
+   *
+   * @param width the width in pixels
+   * @param height the height in pixels
+   * @param isDecoded whether the pixels had to be decoded for the scan
+   * @param isTransparent whether a pixel that is not fully opaque was found
+   */
+  public void setResult(int width, int height, boolean isDecoded, boolean isTransparent) {
+    this.width = width;
+    this.height = height;
+    this.decoded = isDecoded;
+    this.transparent = isTransparent;
+  }
+}
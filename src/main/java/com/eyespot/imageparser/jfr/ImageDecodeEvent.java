@@ -0,0 +1,37 @@
+package com.eyespot.imageparser.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted when a {@code BitmapParser} decodes the pixels of an image.
+ *
+ * @author Kevin Babu
+ */
+@Name(ImageDecodeEvent.NAME)
+@Label("Image Decode")
+@Description("Decoding of the pixels of a BMP image")
+public final class ImageDecodeEvent extends ImageEvent {
+  /** The name of the event, for JFR settings and queries. */
+  public static final String NAME = "com.eyespot.ImageDecode";
+
+  @Label("Pixels")
+  @Description("Number of pixels produced")
+  private long pixels;
+
+  @Label("Corrupted")
+  @Description("Whether the pixel data was truncated or malformed")
+  private boolean corrupted;
+
+  /**
+   * Records the outcome of the decode.
+   *
+   * @param pixels the number of pixels produced
+   * @param isCorrupted whether the pixel data was truncated or malformed
+   */
+  public void setResult(long pixels, boolean isCorrupted) {
+    this.pixels = pixels;
+    this.corrupted = isCorrupted;
+  }
+}
@@ -0,0 +1,19 @@
+package com.eyespot.imageparser.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted when a {@code BitmapWriter} encodes an image, including the images {@code Picture} saves
+ * as BMP. The duration includes writing to the channel.
+ *
+ * @author Kevin Babu
+ */
+@Name(ImageEncodeEvent.NAME)
+@Label("Image Encode")
+@Description("Encoding of an image as a BMP file")
+public final class ImageEncodeEvent extends ImageEvent {
+  /** The name of the event, for JFR settings and queries. */
+  public static final String NAME = "com.eyespot.ImageEncode";
+}
@@ -0,0 +1,64 @@
+package com.eyespot.imageparser.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.StackTrace;
+
+/**
+ * The fields shared by the events that describe a whole BMP image. The duration of the event is the
+ * time the operation took.
+ *
+ * @author Kevin Babu
+ */
+@Category({"EyeSpot", "Image"})
+@StackTrace(false)
+public abstract class ImageEvent extends Event {
+  // The fields are protected because JFR leaves private fields of superclasses out of the event
+
+  @Label("Width")
+  @Description("Width of the image in pixels")
+  protected int width;
+
+  @Label("Height")
+  @Description("Height of the image in pixels; negative for top-down bitmaps")
+  protected int height;
+
+  @Label("Bits Per Pixel")
+  protected int bitsPerPixel;
+
+  @Label("Compression")
+  @Description("The biCompression value, such as 0 for BI_RGB or 1 for BI_RLE8")
+  protected int compression;
+
+  @Label("Header Type")
+  @Description("The InfoHeaderType of the DIB header")
+  protected String headerType;
+
+  @Label("Bytes")
+  @Description("Size of the BMP data read or written")
+  @DataAmount
+  protected long bytes;
+
+  /**
+   * Describes the image the event is about.
+   *
+   * @param width the width in pixels
+   * @param height the height in pixels, as stored in the header
+   * @param bitsPerPixel the number of bits per pixel
+   * @param compression the compression method
+   * @param headerType the name of the DIB header type
+   * @param bytes the size of the BMP data
+   */
+  public void setImage(
+      int width, int height, int bitsPerPixel, int compression, String headerType, long bytes) {
+    this.width = width;
+    this.height = height;
+    this.bitsPerPixel = bitsPerPixel;
+    this.compression = compression;
+    this.headerType = headerType;
+    this.bytes = bytes;
+  }
+}
@@ -0,0 +1,19 @@
+package com.eyespot.imageparser.jfr;
+
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Emitted when a {@code BitmapParser} parses the headers and colour palette of an image. Reading
+ * the file, for parsers created from a path, is not included.
+ *
+ * @author Kevin Babu
+ */
+@Name(ImageParseEvent.NAME)
+@Label("Image Parse")
+@Description("Parsing of the headers and colour palette of a BMP image")
+public final class ImageParseEvent extends ImageEvent {
+  /** The name of the event, for JFR settings and queries. */
+  public static final String NAME = "com.eyespot.ImageParse";
+}
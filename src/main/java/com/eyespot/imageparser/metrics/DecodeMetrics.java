@@ -0,0 +1,214 @@
+package com.eyespot.imageparser.metrics;
+
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import com.eyespot.imageparser.bitmap.DecodeListener;
+import com.eyespot.imageparser.util.LogLinearHistogram;
+import com.eyespot.imageparser.util.WindowedRate;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Aggregates the decodes reported to it as a {@link DecodeListener} into counts, rates and latency
+ * percentiles, and exposes them over JMX.
+ *
+ * <p>{@link #register()} installs a shared instance as the platform MBean {@value #OBJECT_NAME} and
+ * as the {@linkplain BitmapParser#setDefaultListener(DecodeListener) default listener}, so that
+ * every parser created without a listener of its own is counted. Instances can also be created and
+ * passed to parsers directly.
+ *
+ * <p>Recording takes no locks: counters are {@link LongAdder}s and latencies go to a {@link
+ * LogLinearHistogram}, both striped so that many threads decoding at once do not contend. Rates are
+ * kept by {@link WindowedRate}s over the last minute, which lock only to start a new five-second
+ * bucket.
+ *
+ * @author Kevin Babu
+ */
+public final class DecodeMetrics implements DecodeListener, DecodeMetricsMXBean {
+
+  /** The name the shared instance is registered under. */
+  public static final String OBJECT_NAME = "com.eyespot:type=DecodeMetrics";
+
+  private static final double NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private static DecodeMetrics registered; // the shared instance, guarded by the class
+
+  private final LongAdder decodes = new LongAdder();
+  private final LongAdder bytesRead = new LongAdder();
+  private final LongAdder pixels = new LongAdder();
+  private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+  private final LogLinearHistogram latency = new LogLinearHistogram();
+  private final WindowedRate bytesRate = new WindowedRate();
+  private final WindowedRate pixelsRate = new WindowedRate();
+
+  /**
+   * Registers a shared instance with the platform MBean server and makes it the default listener of
+   * {@link BitmapParser}. Calling this again returns the same instance.
+   *
+   * @return the shared instance
+   * @throws IllegalStateException if another MBean is already registered as {@value #OBJECT_NAME}
+   */
+  public static synchronized DecodeMetrics register() {
+    if (registered == null) {
+      DecodeMetrics metrics = new DecodeMetrics();
+      try {
+        platformServer().registerMBean(metrics, new ObjectName(OBJECT_NAME));
+      } catch (InstanceAlreadyExistsException e) {
+        throw new IllegalStateException("An MBean is already registered as " + OBJECT_NAME, e);
+      } catch (JMException e) {
+        throw new IllegalStateException("Could not register " + OBJECT_NAME, e);
+      }
+      registered = metrics;
+    }
+    BitmapParser.setDefaultListener(registered);
+    return registered;
+  }
+
+  /**
+   * Removes the shared instance from the platform MBean server and restores {@link
+   * DecodeListener#NONE} as the default listener of {@link BitmapParser}. Does nothing if {@link
+   * #register()} was not called.
+   */
+  public static synchronized void unregister() {
+    if (registered == null) {
+      return;
+    }
+    if (BitmapParser.getDefaultListener() == registered) {
+      BitmapParser.setDefaultListener(DecodeListener.NONE);
+    }
+    try {
+      platformServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+    } catch (InstanceNotFoundException e) {
+      // already removed through the server
+    } catch (JMException e) {
+      throw new IllegalStateException("Could not unregister " + OBJECT_NAME, e);
+    }
+    registered = null;
+  }
+
+  private static MBeanServer platformServer() {
+    return ManagementFactory.getPlatformMBeanServer();
+  }
+
+  @Override
+  public void stageCompleted(Stage stage, long nanos) {
+    if (stage == Stage.PIXEL_DECODE) {
+      latency.record(nanos);
+    }
+  }
+
+  @Override
+  public void parsed(BitmapParser parser, long bytesRead) {
+    this.bytesRead.add(bytesRead);
+    bytesRate.add(bytesRead);
+  }
+
+  @Override
+  public void decoded(BitmapParser parser, long pixels, boolean isCorrupted) {
+    decodes.increment();
+    this.pixels.add(pixels);
+    pixelsRate.add(pixels);
+    if (isCorrupted) {
+      countError("CorruptedImageException");
+    }
+  }
+
+  @Override
+  public void failed(Stage stage, Exception e) {
+    countError(e.getClass().getSimpleName());
+  }
+
+  private void countError(String type) {
+    errors.computeIfAbsent(type, key -> new LongAdder()).increment();
+  }
+
+  @Override
+  public long getDecodeCount() {
+    return decodes.sum();
+  }
+
+  @Override
+  public long getBytesRead() {
+    return bytesRead.sum();
+  }
+
+  @Override
+  public long getPixelsDecoded() {
+    return pixels.sum();
+  }
+
+  @Override
+  public double getBytesPerSecond() {
+    return bytesRate.getPerSecond();
+  }
+
+  @Override
+  public double getPixelsPerSecond() {
+    return pixelsRate.getPerSecond();
+  }
+
+  @Override
+  public long getErrorCount() {
+    long count = 0;
+    for (LongAdder adder : errors.values()) {
+      count += adder.sum();
+    }
+    return count;
+  }
+
+  @Override
+  public Map<String, Long> getErrorCounts() {
+    Map<String, Long> counts = new TreeMap<>();
+    errors.forEach((type, adder) -> counts.put(type, adder.sum()));
+    return counts;
+  }
+
+  @Override
+  public double getLatencyMeanMillis() {
+    return latency.getMean() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getLatency50thPercentileMillis() {
+    return latency.getValueAtPercentile(50) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getLatency90thPercentileMillis() {
+    return latency.getValueAtPercentile(90) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getLatency99thPercentileMillis() {
+    return latency.getValueAtPercentile(99) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getLatency999thPercentileMillis() {
+    return latency.getValueAtPercentile(99.9) / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public double getLatencyMaxMillis() {
+    return latency.getMax() / NANOS_PER_MILLI;
+  }
+
+  @Override
+  public void reset() {
+    decodes.reset();
+    bytesRead.reset();
+    pixels.reset();
+    errors.clear();
+    latency.reset();
+    bytesRate.reset();
+    pixelsRate.reset();
+  }
+}
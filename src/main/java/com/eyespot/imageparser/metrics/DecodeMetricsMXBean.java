@@ -0,0 +1,61 @@
+package com.eyespot.imageparser.metrics;
+
+import java.util.Map;
+
+/**
+ * The management interface of {@link DecodeMetrics}, registered as {@value
+ * DecodeMetrics#OBJECT_NAME}. Counts are totals since the metrics were created or last reset; rates
+ * are over the last minute, or over the time since then if that is shorter.
+ *
+ * @author Kevin Babu
+ */
+public interface DecodeMetricsMXBean {
+
+  /** @return the number of images decoded, including those with corrupted pixel data */
+  long getDecodeCount();
+
+  /** @return the number of bytes of BMP data parsed */
+  long getBytesRead();
+
+  /** @return the number of pixels decoded, counting only the rows decoded of corrupted images */
+  long getPixelsDecoded();
+
+  /** @return the bytes of BMP data parsed per second over the last minute */
+  double getBytesPerSecond();
+
+  /** @return the pixels decoded per second over the last minute */
+  double getPixelsPerSecond();
+
+  /** @return the number of failed parses and decodes, and decodes of corrupted pixel data */
+  long getErrorCount();
+
+  /**
+   * Counts errors by the simple name of their exception, such as {@code CorruptedImageException}
+   * for truncated or malformed pixel data and {@code UnsupportedOperationException} for embedded
+   * JPEG or PNG data.
+   *
+   * @return the number of errors of each type
+   */
+  Map<String, Long> getErrorCounts();
+
+  /** @return the mean time taken to decode the pixels of an image, in milliseconds */
+  double getLatencyMeanMillis();
+
+  /** @return the median time taken to decode the pixels of an image, in milliseconds */
+  double getLatency50thPercentileMillis();
+
+  /** @return the 90th percentile of the time taken to decode an image, in milliseconds */
+  double getLatency90thPercentileMillis();
+
+  /** @return the 99th percentile of the time taken to decode an image, in milliseconds */
+  double getLatency99thPercentileMillis();
+
+  /** @return the 99.9th percentile of the time taken to decode an image, in milliseconds */
+  double getLatency999thPercentileMillis();
+
+  /** @return the longest time taken to decode an image, in milliseconds */
+  double getLatencyMaxMillis();
+
+  /** Discards every count and latency and restarts the rates. */
+  void reset();
+}
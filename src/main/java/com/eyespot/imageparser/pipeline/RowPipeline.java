@@ -0,0 +1,85 @@
+package com.eyespot.imageparser.pipeline;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Streams an image from a {@link RowSource} through {@link RowTransform}s to a {@link RowSink}, one
+ * row at a time.
+ *
+ * <p>Only a single row buffer is allocated, so the memory used by the pipeline itself does not
+ * depend on the height of the image, and images far larger than the heap can be converted:
+ *
+ * <pre>{@code
+ * try (RowSource source = BitmapRowSource.open(input);
+ *     RowSink sink = new BitmapRowSink(output, BitmapWriter.Format.RGB24)) {
+ *   new RowPipeline(source).then(RowTransform.grayscale()).flipVertically().run(sink);
+ * }
+ * }</pre>
+ *
+ * <p>A vertical flip moves no pixels: rows are passed on in the same order, and the sink is told
+ * that they run in the opposite direction. Bitmap sinks record that in the sign of the height.
+ *
+ * <p>Pipelines are configured by chaining calls and are not thread-safe. The source and sink are
+ * not closed by the pipeline.
+ *
+ * @author Kevin Babu
+ */
+public final class RowPipeline {
+  private final RowSource source;
+  private RowTransform transform; // null if rows are passed on unchanged
+  private boolean isFlipped;
+
+  /**
+   * Creates a pipeline that reads rows from {@code source}.
+   *
+   * @param source the source of the rows
+   */
+  public RowPipeline(RowSource source) {
+    this.source = Objects.requireNonNull(source, "Source cannot be null.");
+  }
+
+  /**
+   * Adds a transform, applied to each row after those already added.
+   *
+   * @param next the transform to add
+   * @return this pipeline
+   */
+  public RowPipeline then(RowTransform next) {
+    Objects.requireNonNull(next, "Transform cannot be null.");
+    transform = transform == null ? next : transform.andThen(next);
+    return this;
+  }
+
+  /**
+   * Flips the image upside down. Calling this twice restores the original orientation.
+   *
+   * @return this pipeline
+   */
+  public RowPipeline flipVertically() {
+    isFlipped = !isFlipped;
+    return this;
+  }
+
+  /**
+   * Reads every row from the source, transforms it and writes it to the sink.
+   *
+   * @param sink the destination of the rows
+   * @throws IOException if an I/O error occurs reading from the source or writing to the sink
+   */
+  public void run(RowSink sink) throws IOException {
+    Objects.requireNonNull(sink, "Sink cannot be null.");
+    int width = source.width();
+    int height = source.height();
+    int[] row = new int[width];
+    sink.begin(width, height, source.isBottomUp() != isFlipped);
+    for (int y = 0; y < height; y++) {
+      source.readRow(row);
+      if (transform != null) {
+        transform.apply(row, width);
+      }
+      sink.writeRow(row);
+    }
+    sink.end();
+  }
+}
@@ -0,0 +1,41 @@
+package com.eyespot.imageparser.pipeline;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A destination for image rows, written one at a time.
+ *
+ * <p>{@link #begin(int, int, boolean)} is called once with the image dimensions and row order, then
+ * {@link #writeRow(int[])} once per row, then {@link #end()}. {@link #close()} releases the sink's
+ * resources whether or not the image was completed.
+ *
+ * @author Kevin Babu
+ * @see RowPipeline
+ */
+public interface RowSink extends Closeable {
+  /**
+   * Starts an image.
+   *
+   * @param width the width of the image in pixels
+   * @param height the number of rows that will be written
+   * @param isBottomUp {@code true} if the first row written is the bottom row of the image
+   * @throws IOException if an I/O error occurs
+   */
+  void begin(int width, int height, boolean isBottomUp) throws IOException;
+
+  /**
+   * Writes the next row.
+   *
+   * @param row the ARGB pixels of the row; only the first {@code width} are used
+   * @throws IOException if an I/O error occurs
+   */
+  void writeRow(int[] row) throws IOException;
+
+  /**
+   * Completes the image after the last row.
+   *
+   * @throws IOException if an I/O error occurs
+   */
+  void end() throws IOException;
+}
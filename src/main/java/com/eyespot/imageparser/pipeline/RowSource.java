@@ -0,0 +1,37 @@
+package com.eyespot.imageparser.pipeline;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A source of image rows, read one at a time so that the whole image never has to be in memory.
+ *
+ * <p>Rows are delivered in the order the source stores them, which for bitmaps is usually the
+ * bottom row first; {@link #isBottomUp()} says which. Each call to {@link #readRow(int[])} fills
+ * the next row with {@link #width()} ARGB pixels, {@link #height()} times in all.
+ *
+ * @author Kevin Babu
+ * @see RowPipeline
+ */
+public interface RowSource extends Closeable {
+  /** @return the width of the image in pixels */
+  int width();
+
+  /** @return the height of the image in pixels */
+  int height();
+
+  /**
+   * @return {@code true} if the first row read is the bottom row of the image, {@code false} if it
+   *     is the top row
+   */
+  boolean isBottomUp();
+
+  /**
+   * Reads the next row.
+   *
+   * @param row receives the ARGB pixels of the row; at least {@link #width()} long
+   * @throws IOException if an I/O error occurs reading the row
+   * @throws java.util.NoSuchElementException if every row has already been read
+   */
+  void readRow(int[] row) throws IOException;
+}
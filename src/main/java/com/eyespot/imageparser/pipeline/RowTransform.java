@@ -0,0 +1,88 @@
+package com.eyespot.imageparser.pipeline;
+
+import java.util.Objects;
+
+/**
+ * An operation applied to each row of an image in place, such as a colour conversion or a channel
+ * operation.
+ *
+ * <p>Transforms see one row at a time and must not keep a reference to it. Operations that move
+ * pixels between rows are not row transforms; a vertical flip is handled by {@link
+ * RowPipeline#flipVertically()} instead.
+ *
+ * @author Kevin Babu
+ * @see RowPipeline
+ */
+@FunctionalInterface
+public interface RowTransform {
+  /**
+   * Transforms a row in place.
+   *
+   * @param row the ARGB pixels of the row
+   * @param width the number of pixels in the row, which may be shorter than the array
+   */
+  void apply(int[] row, int width);
+
+  /**
+   * Returns a transform that applies this transform and then {@code next}.
+   *
+   * @param next the transform to apply second
+   * @return the combined transform
+   */
+  default RowTransform andThen(RowTransform next) {
+    Objects.requireNonNull(next, "Transform cannot be null.");
+    return (row, width) -> {
+      apply(row, width);
+      next.apply(row, width);
+    };
+  }
+
+  /** @return a transform that reverses the order of the pixels in each row */
+  static RowTransform flipHorizontal() {
+    return (row, width) -> {
+      for (int i = 0, j = width - 1; i < j; i++, j--) {
+        int swap = row[i];
+        row[i] = row[j];
+        row[j] = swap;
+      }
+    };
+  }
+
+  /**
+   * Returns a transform that converts colours to grey using the Rec. 601 luma weights, keeping
+   * alpha.
+   *
+   * @return the grayscale transform
+   */
+  static RowTransform grayscale() {
+    return (row, width) -> {
+      for (int x = 0; x < width; x++) {
+        int argb = row[x];
+        // 77, 150 and 29 are 0.299, 0.587 and 0.114 in 8-bit fixed point
+        int luma =
+            (77 * ((argb >>> 16) & 0xFF) + 150 * ((argb >>> 8) & 0xFF) + 29 * (argb & 0xFF) + 128)
+                >>> 8;
+        row[x] = (argb & 0xFF000000) | luma << 16 | luma << 8 | luma;
+      }
+    };
+  }
+
+  /** @return a transform that swaps the red and blue channels, converting ARGB to ABGR */
+  static RowTransform swapRedBlue() {
+    return (row, width) -> {
+      for (int x = 0; x < width; x++) {
+        int argb = row[x];
+        row[x] = (argb & 0xFF00FF00) | (argb >>> 16) & 0xFF | (argb & 0xFF) << 16;
+      }
+    };
+  }
+
+  /** @return a transform that makes every pixel fully opaque */
+  static RowTransform opaque() {
+    return (row, width) -> {
+      for (int x = 0; x < width; x++) {
+        row[x] |= 0xFF000000;
+      }
+    };
+  }
+}
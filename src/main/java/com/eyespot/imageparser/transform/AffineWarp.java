@@ -0,0 +1,384 @@
+package com.eyespot.imageparser.transform;
+
+import com.eyespot.imageparser.IndexedImage;
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.util.RowBands;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Rotates, shears, scales and translates images by an arbitrary affine transform.
+ *
+ * <p>A warp is built by chaining operations, each applied after the ones before it, and maps source
+ * coordinates to target coordinates with pixel centres at half-integers. To deskew a scan by a
+ * small angle about its centre:
+ *
+ * <pre>{@code
+ * AffineWarp deskew = AffineWarp.rotation(Math.toRadians(-1.5), width / 2.0, height / 2.0);
+ * PixelBuffer straight = deskew.apply(parser.decode(), width, height, Sampling.BILINEAR, WHITE);
+ * }</pre>
+ *
+ * <p>Each target pixel is filled by mapping its centre back into the source. The inverse transform
+ * is evaluated once per row; across the row the source position only advances by a constant step,
+ * which is added in fixed point so that it never drifts. The stretch of the row that lands inside
+ * the source is worked out once, from that step, so the loop over it needs no bounds checks, and
+ * the pixels either side are filled with the background. Bands of rows run in parallel for large
+ * images.
+ *
+ * <p>{@link IndexedImage}s, such as 1 bpp and 8 bpp scans from {@link IndexedImage#fromPixels}, are
+ * warped with nearest-neighbour sampling so that every pixel keeps an index into the same palette.
+ *
+ * <p>Instances are immutable and may be shared between threads.
+ *
+ * @author Kevin Babu
+ */
+public final class AffineWarp {
+
+  /** How a source position between pixel centres is turned into a colour. */
+  public enum Sampling {
+    /** The colour of the pixel the position falls in. */
+    NEAREST,
+    /** A blend of the four pixels around the position, weighted by distance. */
+    BILINEAR
+  }
+
+  // bits after the binary point of the fixed-point source coordinates
+  private static final int FRACTION_BITS = 24;
+  private static final long ONE = 1L << FRACTION_BITS;
+  private static final long HALF = ONE / 2;
+
+  private static final AffineWarp IDENTITY = new AffineWarp(1, 0, 0, 0, 1, 0);
+
+  // target = (m00 * x + m01 * y + m02, m10 * x + m11 * y + m12) for source (x, y)
+  private final double m00;
+  private final double m01;
+  private final double m02;
+  private final double m10;
+  private final double m11;
+  private final double m12;
+
+  private AffineWarp(double m00, double m01, double m02, double m10, double m11, double m12) {
+    this.m00 = m00;
+    this.m01 = m01;
+    this.m02 = m02;
+    this.m10 = m10;
+    this.m11 = m11;
+    this.m12 = m12;
+  }
+
+  /** @return the warp that leaves images unchanged */
+  public static AffineWarp identity() {
+    return IDENTITY;
+  }
+
+  /**
+   * Creates a rotation about a point.
+   *
+   * @param radians the angle, clockwise on screen since rows run downwards
+   * @param x the column of the centre of rotation
+   * @param y the row of the centre of rotation
+   * @return the rotation
+   */
+  public static AffineWarp rotation(double radians, double x, double y) {
+    return IDENTITY.translate(-x, -y).rotate(radians).translate(x, y);
+  }
+
+  /**
+   * Appends a translation.
+   *
+   * @param dx the distance to move right
+   * @param dy the distance to move down
+   * @return the longer warp
+   */
+  public AffineWarp translate(double dx, double dy) {
+    return then(1, 0, dx, 0, 1, dy);
+  }
+
+  /**
+   * Appends a scale about the origin.
+   *
+   * @param sx the horizontal scale factor
+   * @param sy the vertical scale factor
+   * @return the longer warp
+   */
+  public AffineWarp scale(double sx, double sy) {
+    return then(sx, 0, 0, 0, sy, 0);
+  }
+
+  /**
+   * Appends a shear about the origin, moving each point right by {@code shx} times its row and down
+   * by {@code shy} times its column.
+   *
+   * @param shx the horizontal shear factor
+   * @param shy the vertical shear factor
+   * @return the longer warp
+   */
+  public AffineWarp shear(double shx, double shy) {
+    return then(1, shx, 0, shy, 1, 0);
+  }
+
+  /**
+   * Appends a rotation about the origin.
+   *
+   * @param radians the angle, clockwise on screen since rows run downwards
+   * @return the longer warp
+   */
+  public AffineWarp rotate(double radians) {
+    double cos = Math.cos(radians);
+    double sin = Math.sin(radians);
+    return then(cos, -sin, 0, sin, cos, 0);
+  }
+
+  // the warp that applies this one and then the given matrix
+  private AffineWarp then(double a00, double a01, double a02, double a10, double a11, double a12) {
+    return new AffineWarp(
+        a00 * m00 + a01 * m10,
+        a00 * m01 + a01 * m11,
+        a00 * m02 + a01 * m12 + a02,
+        a10 * m00 + a11 * m10,
+        a10 * m01 + a11 * m11,
+        a10 * m02 + a11 * m12 + a12);
+  }
+
+  /**
+   * Maps a source position to the target.
+   *
+   * @param x the source column
+   * @param y the source row
+   * @return the target column and row
+   */
+  public double[] map(double x, double y) {
+    return new double[] {m00 * x + m01 * y + m02, m10 * x + m11 * y + m12};
+  }
+
+  /**
+   * Warps an ARGB image. The source is not modified and may be any view.
+   *
+   * @param source the image to warp
+   * @param width the width of the result in pixels
+   * @param height the height of the result in pixels
+   * @param sampling how to sample the source between pixel centres
+   * @param background the ARGB colour of target pixels that map outside the source
+   * @return a new packed buffer holding the warped image
+   * @throws IllegalArgumentException if a dimension is negative
+   * @throws IllegalStateException if the warp cannot be inverted, such as a scale by 0
+   */
+  public PixelBuffer apply(
+      PixelBuffer source, int width, int height, Sampling sampling, int background) {
+    Objects.requireNonNull(source, "Source cannot be null.");
+    Objects.requireNonNull(sampling, "Sampling cannot be null.");
+    Inverse inverse = new Inverse(source.width(), source.height());
+    int[] pixels = source.compact().getPixels();
+    PixelBuffer target = new PixelBuffer(width, height);
+    int[] out = target.getPixels();
+    int sourceWidth = source.width();
+    int sourceHeight = source.height();
+    RowBands.forEach(
+        width,
+        height,
+        (first, end) -> {
+          long[] span = new long[4];
+          for (int y = first; y < end; y++) {
+            int row = y * width;
+            inverse.row(y, width, span);
+            int start = (int) span[2];
+            int stop = (int) span[3];
+            Arrays.fill(out, row, row + start, background);
+            Arrays.fill(out, row + stop, row + width, background);
+            long sx = span[0] + start * inverse.dx;
+            long sy = span[1] + start * inverse.dy;
+            if (sampling == Sampling.NEAREST) {
+              for (int x = start; x < stop; x++, sx += inverse.dx, sy += inverse.dy) {
+                out[row + x] =
+                    pixels[(int) (sy >> FRACTION_BITS) * sourceWidth + (int) (sx >> FRACTION_BITS)];
+              }
+            } else {
+              for (int x = start; x < stop; x++, sx += inverse.dx, sy += inverse.dy) {
+                out[row + x] = bilinear(pixels, sourceWidth, sourceHeight, sx - HALF, sy - HALF);
+              }
+            }
+          }
+        });
+    return target;
+  }
+
+  /**
+   * Warps an indexed image with nearest-neighbour sampling, so that the result shares its palette.
+   *
+   * @param source the image to warp
+   * @param width the width of the result in pixels
+   * @param height the height of the result in pixels
+   * @param background the palette index of target pixels that map outside the source
+   * @return a new indexed image with the same palette
+   * @throws IllegalArgumentException if a dimension is negative or {@code background} is not in the
+   *     palette
+   * @throws IllegalStateException if the warp cannot be inverted, such as a scale by 0
+   */
+  public IndexedImage apply(IndexedImage source, int width, int height, int background) {
+    Objects.requireNonNull(source, "Source cannot be null.");
+    int[] palette = source.getPalette();
+    if (background < 0 || background >= palette.length) {
+      throw new IllegalArgumentException("Background index is outside the palette: " + background);
+    }
+    if (width < 0 || height < 0) {
+      throw new IllegalArgumentException(
+          "Dimensions must be non-negative: " + width + "x" + height);
+    }
+    Inverse inverse = new Inverse(source.width(), source.height());
+    byte[] indices = source.getIndices();
+    byte[] out = new byte[Math.multiplyExact(width, height)];
+    int sourceWidth = source.width();
+    RowBands.forEach(
+        width,
+        height,
+        (first, end) -> {
+          long[] span = new long[4];
+          for (int y = first; y < end; y++) {
+            int row = y * width;
+            inverse.row(y, width, span);
+            int start = (int) span[2];
+            int stop = (int) span[3];
+            Arrays.fill(out, row, row + start, (byte) background);
+            Arrays.fill(out, row + stop, row + width, (byte) background);
+            long sx = span[0] + start * inverse.dx;
+            long sy = span[1] + start * inverse.dy;
+            for (int x = start; x < stop; x++, sx += inverse.dx, sy += inverse.dy) {
+              out[row + x] =
+                  indices[(int) (sy >> FRACTION_BITS) * sourceWidth + (int) (sx >> FRACTION_BITS)];
+            }
+          }
+        });
+    return new IndexedImage(width, height, palette, out);
+  }
+
+  // blends the four pixels around fixed-point position (u, v), measured from pixel centres
+  private static int bilinear(int[] pixels, int width, int height, long u, long v) {
+    int x0 = (int) (u >> FRACTION_BITS); // -1 within half a pixel of the left edge
+    int y0 = (int) (v >> FRACTION_BITS);
+    int fx = (int) (u >> (FRACTION_BITS - 8)) & 0xFF;
+    int fy = (int) (v >> (FRACTION_BITS - 8)) & 0xFF;
+    int left = Math.max(x0, 0);
+    int right = Math.min(x0 + 1, width - 1);
+    int top = Math.max(y0, 0) * width;
+    int bottom = Math.min(y0 + 1, height - 1) * width;
+    int p00 = pixels[top + left];
+    int p01 = pixels[top + right];
+    int p10 = pixels[bottom + left];
+    int p11 = pixels[bottom + right];
+    int w00 = (256 - fx) * (256 - fy);
+    int w01 = fx * (256 - fy);
+    int w10 = (256 - fx) * fy;
+    int w11 = fx * fy;
+    if ((p00 ^ p01 | p00 ^ p10 | p00 ^ p11) >>> 24 == 0) {
+      // equal alphas, as in any opaque image, need no premultiplying
+      return p00 & 0xFF000000
+          | blend(p00, p01, p10, p11, w00, w01, w10, w11, 16) << 16
+          | blend(p00, p01, p10, p11, w00, w01, w10, w11, 8) << 8
+          | blend(p00, p01, p10, p11, w00, w01, w10, w11, 0);
+    }
+    // weight each colour by its alpha so transparent pixels do not bleed into opaque ones
+    long a00 = (long) w00 * (p00 >>> 24);
+    long a01 = (long) w01 * (p01 >>> 24);
+    long a10 = (long) w10 * (p10 >>> 24);
+    long a11 = (long) w11 * (p11 >>> 24);
+    long alpha = a00 + a01 + a10 + a11;
+    if (alpha == 0) {
+      return 0;
+    }
+    int argb = (int) ((alpha + (1 << 15)) >>> 16) << 24;
+    for (int shift = 0; shift <= 16; shift += 8) {
+      long sum =
+          a00 * ((p00 >>> shift) & 0xFF)
+              + a01 * ((p01 >>> shift) & 0xFF)
+              + a10 * ((p10 >>> shift) & 0xFF)
+              + a11 * ((p11 >>> shift) & 0xFF);
+      argb |= (int) ((sum + alpha / 2) / alpha) << shift;
+    }
+    return argb;
+  }
+
+  private static int blend(
+      int p00, int p01, int p10, int p11, int w00, int w01, int w10, int w11, int shift) {
+    int sum =
+        w00 * ((p00 >>> shift) & 0xFF)
+            + w01 * ((p01 >>> shift) & 0xFF)
+            + w10 * ((p10 >>> shift) & 0xFF)
+            + w11 * ((p11 >>> shift) & 0xFF);
+    return (sum + (1 << 15)) >>> 16;
+  }
+
+  // the inverse warp in fixed point, with the per-row clipping against the source bounds
+  private final class Inverse {
+    final long dx; // source step per target column
+    final long dy;
+    private final double i00;
+    private final double i01;
+    private final double i02;
+    private final double i10;
+    private final double i11;
+    private final double i12;
+    private final long limitX; // source width in fixed point
+    private final long limitY;
+
+    Inverse(int sourceWidth, int sourceHeight) {
+      double determinant = m00 * m11 - m01 * m10;
+      if (determinant == 0 || !Double.isFinite(determinant)) {
+        throw new IllegalStateException("The warp cannot be inverted");
+      }
+      i00 = m11 / determinant;
+      i01 = -m01 / determinant;
+      i10 = -m10 / determinant;
+      i11 = m00 / determinant;
+      i02 = -(i00 * m02 + i01 * m12);
+      i12 = -(i10 * m02 + i11 * m12);
+      dx = Math.round(i00 * ONE);
+      dy = Math.round(i10 * ONE);
+      limitX = sourceWidth * ONE;
+      limitY = sourceHeight * ONE;
+    }
+
+    // fills span with the fixed-point source position of target column 0 in row y, and the
+    // columns [start, stop) whose positions fall inside the source
+    void row(int y, int width, long[] span) {
+      double centre = y + 0.5;
+      long sx = Math.round((i01 * centre + i02 + 0.5 * i00) * ONE);
+      long sy = Math.round((i11 * centre + i12 + 0.5 * i10) * ONE);
+      span[0] = sx;
+      span[1] = sy;
+      span[2] = 0;
+      span[3] = width;
+      clip(sx, dx, limitX, span);
+      clip(sy, dy, limitY, span);
+      if (span[2] >= span[3]) {
+        // the whole row is background
+        span[2] = 0;
+        span[3] = 0;
+      }
+    }
+
+    // narrows span[2] to span[3] to the columns x with 0 <= position + x * step < limit
+    private void clip(long position, long step, long limit, long[] span) {
+      if (step == 0) {
+        if (position < 0 || position >= limit) {
+          span[3] = span[2];
+        }
+        return;
+      }
+      long first;
+      long end;
+      if (step > 0) {
+        first = ceilDiv(-position, step);
+        end = ceilDiv(limit - position, step);
+      } else {
+        first = Math.floorDiv(position - limit, -step) + 1;
+        end = Math.floorDiv(position, -step) + 1;
+      }
+      span[2] = Math.max(span[2], first);
+      span[3] = Math.min(span[3], end);
+    }
+  }
+
+  private static long ceilDiv(long a, long b) {
+    return -Math.floorDiv(-a, b);
+  }
+}
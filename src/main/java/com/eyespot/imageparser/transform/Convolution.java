@@ -0,0 +1,351 @@
+package com.eyespot.imageparser.transform;
+
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.util.RowBands;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Convolves ARGB images with a {@link Kernel}, such as a blur, a sharpen or an edge detector.
+ *
+ * <p>Separable kernels are applied as a horizontal pass followed by a vertical pass, and box
+ * kernels with running sums; other kernels are applied directly. The image is processed in tiles of
+ * {@value #TILE_COLUMNS} by {@value #TILE_ROWS} pixels, small enough for the intermediate results
+ * of a tile to stay in cache, and bands of tiles run in parallel on the common {@link
+ * java.util.concurrent.ForkJoinPool}:
+ *
+ * <pre>{@code
+ * PixelBuffer blurred = new Convolution(Kernel.gaussian(2), EdgeMode.REFLECT).apply(pixels);
+ * }</pre>
+ *
+ * <p>The kernel is applied as in {@link java.awt.image.ConvolveOp}, without flipping it. Each
+ * channel is convolved separately and rounded and clamped to 0..255. Alpha is convolved too when
+ * the weights sum to 1, as they do for blurs and sharpens, and the colours are then weighted by
+ * alpha, so that transparent pixels do not darken the edges of what they surround; for other
+ * kernels, such as edge detectors, the alpha of each source pixel is kept.
+ *
+ * <p>Instances are immutable and may be shared between threads.
+ *
+ * @author Kevin Babu
+ */
+public final class Convolution {
+  /** Width of the tiles the image is processed in. */
+  static final int TILE_COLUMNS = 256;
+
+  /** Height of the tiles the image is processed in. */
+  static final int TILE_ROWS = 64;
+
+  /** How pixels beyond the edges of the image are chosen when the kernel overlaps them. */
+  public enum EdgeMode {
+    /** Repeats the nearest edge pixel: {@code aaa|abcd|ddd}. */
+    CLAMP,
+    /** Mirrors the image without repeating the edge pixel: {@code dcb|abcd|cba}. */
+    REFLECT,
+    /** Wraps around to the opposite edge: {@code bcd|abcd|abc}. */
+    WRAP,
+    /** Treats pixels outside the image as transparent black: {@code 000|abcd|000}. */
+    ZERO;
+
+    // the index inside 0..size-1 that stands in for index, or -1 for zero
+    int map(int index, int size) {
+      if (index >= 0 && index < size) {
+        return index;
+      }
+      switch (this) {
+        case CLAMP:
+          return index < 0 ? 0 : size - 1;
+        case REFLECT:
+          if (size == 1) {
+            return 0;
+          }
+          int period = 2 * (size - 1);
+          int folded = Math.floorMod(index, period);
+          return folded < size ? folded : period - folded;
+        case WRAP:
+          return Math.floorMod(index, size);
+        default:
+          return -1;
+      }
+    }
+  }
+
+  private static final float ROUNDING_TOLERANCE = 1e-4f;
+
+  private final Kernel kernel;
+  private final EdgeMode edgeMode;
+
+  /**
+   * Creates a convolution.
+   *
+   * @param kernel the kernel to apply
+   * @param edgeMode how to treat pixels beyond the edges of the image
+   */
+  public Convolution(Kernel kernel, EdgeMode edgeMode) {
+    this.kernel = Objects.requireNonNull(kernel, "Kernel cannot be null.");
+    this.edgeMode = Objects.requireNonNull(edgeMode, "Edge mode cannot be null.");
+  }
+
+  /** @return the kernel */
+  public Kernel getKernel() {
+    return kernel;
+  }
+
+  /** @return how pixels beyond the edges of the image are treated */
+  public EdgeMode getEdgeMode() {
+    return edgeMode;
+  }
+
+  /**
+   * Convolves the image. The source is not modified and may be any view.
+   *
+   * @param source the image to convolve
+   * @return a new packed buffer of the same size holding the result
+   */
+  public PixelBuffer apply(PixelBuffer source) {
+    Objects.requireNonNull(source, "Source cannot be null.");
+    PixelBuffer target = new PixelBuffer(source.width(), source.height());
+    RowBands.forEachBand(
+        source.height(),
+        TILE_ROWS,
+        (first, end) -> {
+          Tile tile = new Tile(source, target);
+          for (int x = 0; x < source.width(); x += TILE_COLUMNS) {
+            tile.convolve(x, first, Math.min(TILE_COLUMNS, source.width() - x), end - first);
+          }
+        });
+    return target;
+  }
+
+  // scratch space for one band of tiles, reused from tile to tile
+  private final class Tile {
+    private final PixelBuffer source;
+    private final PixelBuffer target;
+    private final boolean isAlphaConvolved = Math.abs(kernel.sum() - 1) < ROUNDING_TOLERANCE;
+    private final int firstChannel = isAlphaConvolved ? 0 : 1;
+    private final int radiusX = kernel.width() / 2;
+    private final int radiusY = kernel.height() / 2;
+    private final int[] row = new int[TILE_COLUMNS + kernel.width() - 1];
+    private final float[][] planes = new float[4][row.length]; // row split into channels
+    private final float[][] sums = new float[4][TILE_COLUMNS]; // output row before rounding
+    private final float[][] passes; // horizontal pass, one row of TILE_COLUMNS per source row
+
+    Tile(PixelBuffer source, PixelBuffer target) {
+      this.source = source;
+      this.target = target;
+      this.passes =
+          kernel.isSeparable()
+              ? new float[4][(TILE_ROWS + kernel.height() - 1) * TILE_COLUMNS]
+              : null;
+    }
+
+    void convolve(int x0, int y0, int columns, int rows) {
+      if (kernel.isSeparable()) {
+        for (int j = 0; j < rows + kernel.height() - 1; j++) {
+          load(y0 + j - radiusY, x0, columns);
+          horizontalPass(j * TILE_COLUMNS, columns);
+        }
+        if (kernel.isBox()) {
+          boxVerticalPass(x0, y0, columns, rows);
+        } else {
+          for (int y = 0; y < rows; y++) {
+            verticalPass(y, columns);
+            store(x0, y0 + y, columns);
+          }
+        }
+      } else {
+        for (int y = 0; y < rows; y++) {
+          direct(y0 + y, x0, columns);
+          store(x0, y0 + y, columns);
+        }
+      }
+    }
+
+    // reads the source pixels a row of output needs, columns x0 - radiusX on, into planes
+    private void load(int sourceRow, int x0, int columns) {
+      int count = columns + kernel.width() - 1;
+      int y = edgeMode.map(sourceRow, source.height());
+      if (y < 0) {
+        for (int c = firstChannel; c < 4; c++) {
+          Arrays.fill(planes[c], 0, count, 0);
+        }
+        return;
+      }
+      int from = x0 - radiusX;
+      int low = Math.max(from, 0);
+      int high = Math.min(from + count, source.width());
+      source.getARGB(low, y, high - low, 1, row, low - from, count);
+      for (int i = 0; i < low - from; i++) {
+        row[i] = edgePixel(from + i, y);
+      }
+      for (int i = high - from; i < count; i++) {
+        row[i] = edgePixel(from + i, y);
+      }
+      for (int c = firstChannel; c < 4; c++) {
+        float[] plane = planes[c];
+        int shift = 24 - 8 * c;
+        if (isAlphaConvolved && c > 0) {
+          // premultiplied, so that transparent pixels do not pull the colours of their neighbours
+          float[] alpha = planes[0];
+          for (int i = 0; i < count; i++) {
+            plane[i] = ((row[i] >>> shift) & 0xFF) * alpha[i] / 255f;
+          }
+        } else {
+          for (int i = 0; i < count; i++) {
+            plane[i] = (row[i] >>> shift) & 0xFF;
+          }
+        }
+      }
+    }
+
+    private int edgePixel(int col, int y) {
+      int x = edgeMode.map(col, source.width());
+      return x < 0 ? 0 : source.getARGB(x, y);
+    }
+
+    // convolves the loaded row with the horizontal factor into passes at offset
+    private void horizontalPass(int offset, int columns) {
+      float[] weights = kernel.horizontal();
+      for (int c = firstChannel; c < 4; c++) {
+        float[] plane = planes[c];
+        float[] pass = passes[c];
+        if (kernel.isBox()) {
+          // the weights are applied once, after the vertical pass
+          float sum = 0;
+          for (int i = 0; i < weights.length; i++) {
+            sum += plane[i];
+          }
+          pass[offset] = sum;
+          for (int x = 1; x < columns; x++) {
+            sum += plane[x + weights.length - 1] - plane[x - 1];
+            pass[offset + x] = sum;
+          }
+        } else {
+          Arrays.fill(pass, offset, offset + columns, 0);
+          for (int i = 0; i < weights.length; i++) {
+            float weight = weights[i];
+            if (weight != 0) {
+              for (int x = 0; x < columns; x++) {
+                pass[offset + x] += weight * plane[x + i];
+              }
+            }
+          }
+        }
+      }
+    }
+
+    // convolves the horizontal pass with the vertical factor for output row y of the tile
+    private void verticalPass(int y, int columns) {
+      float[] weights = kernel.vertical();
+      for (int c = firstChannel; c < 4; c++) {
+        float[] pass = passes[c];
+        float[] sum = sums[c];
+        Arrays.fill(sum, 0, columns, 0);
+        for (int j = 0; j < weights.length; j++) {
+          float weight = weights[j];
+          if (weight != 0) {
+            int offset = (y + j) * TILE_COLUMNS;
+            for (int x = 0; x < columns; x++) {
+              sum[x] += weight * pass[offset + x];
+            }
+          }
+        }
+      }
+    }
+
+    // slides a window of kernel.height() rows down the horizontal sums of a box kernel
+    private void boxVerticalPass(int x0, int y0, int columns, int rows) {
+      int size = kernel.height();
+      float weight = kernel.weight(0, 0);
+      for (int c = firstChannel; c < 4; c++) {
+        float[] pass = passes[c];
+        float[] sum = sums[c];
+        Arrays.fill(sum, 0, columns, 0);
+        for (int j = 0; j < size; j++) {
+          for (int x = 0; x < columns; x++) {
+            sum[x] += pass[j * TILE_COLUMNS + x];
+          }
+        }
+      }
+      for (int y = 0; y < rows; y++) {
+        for (int c = firstChannel; c < 4; c++) {
+          float[] pass = passes[c];
+          float[] sum = sums[c];
+          float[] scaled = planes[c];
+          int leaving = y * TILE_COLUMNS;
+          int entering = (y + size) * TILE_COLUMNS;
+          for (int x = 0; x < columns; x++) {
+            scaled[x] = sum[x] * weight;
+            if (y + 1 < rows) {
+              sum[x] += pass[entering + x] - pass[leaving + x];
+            }
+          }
+        }
+        store(planes, x0, y0 + y, columns);
+      }
+    }
+
+    // convolves every kernel row for output row y without separating the kernel
+    private void direct(int y, int x0, int columns) {
+      for (int c = firstChannel; c < 4; c++) {
+        Arrays.fill(sums[c], 0, columns, 0);
+      }
+      for (int j = 0; j < kernel.height(); j++) {
+        load(y + j - radiusY, x0, columns);
+        for (int i = 0; i < kernel.width(); i++) {
+          float weight = kernel.weight(i, j);
+          if (weight == 0) {
+            continue;
+          }
+          for (int c = firstChannel; c < 4; c++) {
+            float[] plane = planes[c];
+            float[] sum = sums[c];
+            for (int x = 0; x < columns; x++) {
+              sum[x] += weight * plane[x + i];
+            }
+          }
+        }
+      }
+    }
+
+    private void store(int x0, int y, int columns) {
+      store(sums, x0, y, columns);
+    }
+
+    // rounds and packs channels into row, unpremultiplying them if alpha was convolved, and
+    // writes it to the target
+    private void store(float[][] channels, int x0, int y, int columns) {
+      if (!isAlphaConvolved) {
+        source.getARGB(x0, y, columns, 1, row, 0, columns);
+        for (int x = 0; x < columns; x++) {
+          row[x] =
+              row[x] & 0xFF000000
+                  | clamp(channels[1][x]) << 16
+                  | clamp(channels[2][x]) << 8
+                  | clamp(channels[3][x]);
+        }
+      } else {
+        for (int x = 0; x < columns; x++) {
+          int alpha = clamp(channels[0][x]);
+          if (alpha == 0) {
+            row[x] = 0;
+            continue;
+          }
+          float scale = 255f / Math.min(channels[0][x], 255f);
+          row[x] =
+              alpha << 24
+                  | clamp(channels[1][x] * scale) << 16
+                  | clamp(channels[2][x] * scale) << 8
+                  | clamp(channels[3][x] * scale);
+        }
+      }
+      target.setARGB(x0, y, columns, 1, row, 0, columns);
+    }
+  }
+
+  private static int clamp(float value) {
+    if (value <= 0) {
+      return 0;
+    }
+    return value >= 255 ? 255 : (int) (value + 0.5f);
+  }
+}
@@ -0,0 +1,204 @@
+package com.eyespot.imageparser.transform;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A convolution kernel: an odd-sized grid of weights, anchored at its centre.
+ *
+ * <p>When a kernel is created its weights are checked for separability, that is, whether the grid
+ * is the product of a column vector and a row vector. Gaussian, box and Sobel kernels are all
+ * separable, and {@link Convolution} applies them as two one-dimensional passes, which costs
+ * <em>w</em> + <em>h</em> multiplications per channel instead of <em>w</em> &times; <em>h</em>.
+ * Kernels whose weights are all equal are recognised as box filters and are applied with running
+ * sums, whose cost does not depend on the size of the kernel at all.
+ *
+ * <p>Kernels are immutable.
+ *
+ * @author Kevin Babu
+ */
+public final class Kernel {
+  // relative tolerance when testing whether the weights factor into two vectors
+  private static final float SEPARABLE_TOLERANCE = 1e-5f;
+
+  private final int width;
+  private final int height;
+  private final float[] weights; // row-major
+  private final float[] horizontal; // row factor, null if the kernel is not separable
+  private final float[] vertical; // column factor, null if the kernel is not separable
+  private final boolean isBox;
+  private final float sum;
+
+  private Kernel(int width, int height, float[] weights) {
+    this.width = width;
+    this.height = height;
+    this.weights = weights;
+
+    float total = 0;
+    float largest = 0;
+    int pivot = 0;
+    boolean isUniform = true;
+    for (int i = 0; i < weights.length; i++) {
+      total += weights[i];
+      if (Math.abs(weights[i]) > largest) {
+        largest = Math.abs(weights[i]);
+        pivot = i;
+      }
+      isUniform &= weights[i] == weights[0];
+    }
+    this.sum = total;
+    this.isBox = isUniform && weights[0] != 0;
+
+    // if the kernel is separable, its largest row and column factor it
+    float[] row = Arrays.copyOfRange(weights, pivot - pivot % width, pivot - pivot % width + width);
+    float[] column = new float[height];
+    for (int y = 0; y < height; y++) {
+      column[y] = largest == 0 ? 0 : weights[y * width + pivot % width] / weights[pivot];
+    }
+    boolean isSeparable = true;
+    for (int y = 0; y < height && isSeparable; y++) {
+      for (int x = 0; x < width && isSeparable; x++) {
+        float error = Math.abs(weights[y * width + x] - column[y] * row[x]);
+        isSeparable = error <= SEPARABLE_TOLERANCE * largest;
+      }
+    }
+    this.horizontal = isSeparable ? row : null;
+    this.vertical = isSeparable ? column : null;
+  }
+
+  /**
+   * Creates a kernel from its weights.
+   *
+   * @param width the number of columns, which must be odd
+   * @param height the number of rows, which must be odd
+   * @param weights the weights in row-major order, top row first
+   * @return the kernel
+   * @throws IllegalArgumentException if a dimension is not a positive odd number, or there are not
+   *     {@code width * height} weights
+   */
+  public static Kernel of(int width, int height, float... weights) {
+    if (width <= 0 || height <= 0 || width % 2 == 0 || height % 2 == 0) {
+      throw new IllegalArgumentException(
+          "Kernel dimensions must be positive odd numbers: " + width + "x" + height);
+    }
+    if (weights.length != width * height) {
+      throw new IllegalArgumentException(
+          "Expected " + width * height + " weights but got " + weights.length);
+    }
+    for (float weight : weights) {
+      if (!Float.isFinite(weight)) {
+        throw new IllegalArgumentException("Kernel weights must be finite: " + weight);
+      }
+    }
+    return new Kernel(width, height, weights.clone());
+  }
+
+  /**
+   * Creates a normalized Gaussian blur with a radius of three standard deviations.
+   *
+   * @param sigma the standard deviation in pixels
+   * @return the kernel
+   * @throws IllegalArgumentException if {@code sigma} is not positive and finite
+   */
+  public static Kernel gaussian(double sigma) {
+    if (!(sigma > 0) || Double.isInfinite(sigma)) {
+      throw new IllegalArgumentException("Sigma must be a positive number: " + sigma);
+    }
+    int radius = (int) Math.ceil(3 * sigma);
+    int size = 2 * radius + 1;
+    double[] factor = new double[size];
+    double total = 0;
+    for (int i = 0; i < size; i++) {
+      factor[i] = Math.exp(-(i - radius) * (i - radius) / (2 * sigma * sigma));
+      total += factor[i];
+    }
+    float[] weights = new float[size * size];
+    for (int y = 0; y < size; y++) {
+      for (int x = 0; x < size; x++) {
+        weights[y * size + x] = (float) (factor[y] * factor[x] / (total * total));
+      }
+    }
+    return new Kernel(size, size, weights);
+  }
+
+  /**
+   * Creates a normalized box blur, which averages the square of pixels within {@code radius}.
+   *
+   * @param radius the distance from the centre to the edge of the square
+   * @return the kernel
+   * @throws IllegalArgumentException if {@code radius} is negative
+   */
+  public static Kernel box(int radius) {
+    if (radius < 0) {
+      throw new IllegalArgumentException("Radius cannot be negative: " + radius);
+    }
+    int size = 2 * radius + 1;
+    float[] weights = new float[size * size];
+    Arrays.fill(weights, 1f / (size * size));
+    return new Kernel(size, size, weights);
+  }
+
+  /** @return the Sobel operator for horizontal gradients, which responds to vertical edges */
+  public static Kernel sobelX() {
+    return new Kernel(3, 3, new float[] {-1, 0, 1, -2, 0, 2, -1, 0, 1});
+  }
+
+  /** @return the Sobel operator for vertical gradients, which responds to horizontal edges */
+  public static Kernel sobelY() {
+    return new Kernel(3, 3, new float[] {-1, -2, -1, 0, 0, 0, 1, 2, 1});
+  }
+
+  /** @return a 3x3 sharpening kernel, which adds the Laplacian of the image to it */
+  public static Kernel sharpen() {
+    return new Kernel(3, 3, new float[] {0, -1, 0, -1, 5, -1, 0, -1, 0});
+  }
+
+  /** @return the number of columns */
+  public int width() {
+    return width;
+  }
+
+  /** @return the number of rows */
+  public int height() {
+    return height;
+  }
+
+  /**
+   * Returns the weight at column {@code col} and row {@code row}, which multiplies the source pixel
+   * {@code col - width() / 2} columns right and {@code row - height() / 2} rows below the target
+   * pixel.
+   *
+   * @param col the column
+   * @param row the row
+   * @return the weight
+   * @throws IndexOutOfBoundsException if the position is outside the kernel
+   */
+  public float weight(int col, int row) {
+    Objects.checkIndex(col, width);
+    Objects.checkIndex(row, height);
+    return weights[row * width + col];
+  }
+
+  /** @return the sum of the weights, which is 1 for kernels that preserve brightness */
+  public float sum() {
+    return sum;
+  }
+
+  /** @return {@code true} if the kernel is the product of a column vector and a row vector */
+  public boolean isSeparable() {
+    return horizontal != null;
+  }
+
+  /** @return {@code true} if every weight is the same non-zero value */
+  public boolean isBox() {
+    return isBox;
+  }
+
+  float[] horizontal() {
+    return horizontal;
+  }
+
+  float[] vertical() {
+    return vertical;
+  }
+}
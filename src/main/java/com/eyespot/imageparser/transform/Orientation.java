@@ -0,0 +1,163 @@
+package com.eyespot.imageparser.transform;
+
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.util.RowBands;
+import java.util.Objects;
+
+/**
+ * Rotates, transposes and flips images by moving their pixels.
+ *
+ * <p>The views returned by {@link PixelBuffer#rotate90()} and its siblings cost nothing to create
+ * but leave every later read strided. The methods here are their materialized counterparts. Copies
+ * are made with {@link PixelBuffer#compact()}, which walks rotated and transposed layouts in
+ * cache-sized square tiles instead of writing down whole columns. 180-degree rotations and flips
+ * need no second buffer and are also available in place. Large images are processed in parallel
+ * bands of rows:
+ *
+ * <pre>{@code
+ * PixelBuffer upright = Orientation.rotate90(pixels);
+ * Orientation.rotate180InPlace(pixels);
+ * }</pre>
+ *
+ * @author Kevin Babu
+ */
+public final class Orientation {
+
+  private Orientation() {}
+
+  /**
+   * Returns a packed copy of the image rotated 90 degrees clockwise.
+   *
+   * @param pixels the image to rotate
+   * @return the rotated copy
+   */
+  public static PixelBuffer rotate90(PixelBuffer pixels) {
+    return copy(pixels.rotate90());
+  }
+
+  /**
+   * Returns a packed copy of the image rotated 180 degrees.
+   *
+   * @param pixels the image to rotate
+   * @return the rotated copy
+   */
+  public static PixelBuffer rotate180(PixelBuffer pixels) {
+    return copy(pixels.rotate180());
+  }
+
+  /**
+   * Returns a packed copy of the image rotated 90 degrees counterclockwise.
+   *
+   * @param pixels the image to rotate
+   * @return the rotated copy
+   */
+  public static PixelBuffer rotate270(PixelBuffer pixels) {
+    return copy(pixels.rotate270());
+  }
+
+  /**
+   * Returns a packed copy of the image mirrored along its main diagonal, so rows become columns.
+   *
+   * @param pixels the image to transpose
+   * @return the transposed copy
+   */
+  public static PixelBuffer transpose(PixelBuffer pixels) {
+    return copy(pixels.transpose());
+  }
+
+  // a packed copy that never shares the source's array
+  private static PixelBuffer copy(PixelBuffer view) {
+    PixelBuffer packed = view.compact();
+    if (packed != view) {
+      return packed;
+    }
+    PixelBuffer copy = new PixelBuffer(view.width(), view.height(), view.getPixels().clone());
+    if (!view.isOriginUpperLeft()) {
+      copy.setOriginLowerLeft();
+    }
+    return copy;
+  }
+
+  /**
+   * Rotates the image 180 degrees in place. Views are supported; only their pixels move.
+   *
+   * @param pixels the image to rotate
+   */
+  public static void rotate180InPlace(PixelBuffer pixels) {
+    Objects.requireNonNull(pixels, "Pixels cannot be null.");
+    int height = pixels.height();
+    // each pair of rows swaps reversed, and an odd middle row is reversed on its own
+    RowBands.forEach(
+        pixels.width(),
+        (height + 1) / 2,
+        (first, end) -> {
+          for (int row = first; row < end; row++) {
+            swapReversed(pixels, row, height - 1 - row);
+          }
+        });
+  }
+
+  /**
+   * Mirrors the image left to right in place. Views are supported; only their pixels move.
+   *
+   * @param pixels the image to flip
+   */
+  public static void flipHorizontalInPlace(PixelBuffer pixels) {
+    Objects.requireNonNull(pixels, "Pixels cannot be null.");
+    RowBands.forEach(
+        pixels.width(),
+        pixels.height(),
+        (first, end) -> {
+          for (int row = first; row < end; row++) {
+            swapReversed(pixels, row, row);
+          }
+        });
+  }
+
+  /**
+   * Mirrors the image top to bottom in place. Views are supported; only their pixels move.
+   *
+   * @param pixels the image to flip
+   */
+  public static void flipVerticalInPlace(PixelBuffer pixels) {
+    Objects.requireNonNull(pixels, "Pixels cannot be null.");
+    int height = pixels.height();
+    int width = pixels.width();
+    int[] data = pixels.getPixels();
+    int colStride = pixels.colStride();
+    RowBands.forEach(
+        width,
+        height / 2,
+        (first, end) -> {
+          for (int row = first; row < end; row++) {
+            int top = rowStart(pixels, row);
+            int bottom = rowStart(pixels, height - 1 - row);
+            for (int col = 0; col < width; col++, top += colStride, bottom += colStride) {
+              int pixel = data[top];
+              data[top] = data[bottom];
+              data[bottom] = pixel;
+            }
+          }
+        });
+  }
+
+  // swaps row a with row b reversed; when a == b, reverses the row
+  private static void swapReversed(PixelBuffer pixels, int a, int b) {
+    int[] data = pixels.getPixels();
+    int colStride = pixels.colStride();
+    int width = pixels.width();
+    int left = rowStart(pixels, a);
+    int right = rowStart(pixels, b) + (width - 1) * colStride;
+    int count = a == b ? width / 2 : width;
+    for (int i = 0; i < count; i++, left += colStride, right -= colStride) {
+      int pixel = data[left];
+      data[left] = data[right];
+      data[right] = pixel;
+    }
+  }
+
+  // index of the leftmost pixel of a row, counting rows from the top whatever the origin
+  private static int rowStart(PixelBuffer pixels, int row) {
+    return pixels.offset() + row * pixels.rowStride();
+  }
+}
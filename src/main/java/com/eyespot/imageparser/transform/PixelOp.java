@@ -0,0 +1,510 @@
+package com.eyespot.imageparser.transform;
+
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.pipeline.RowTransform;
+import com.eyespot.imageparser.util.RowBands;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A chain of point operations on ARGB pixels, such as grayscale, brightness, contrast, gamma,
+ * channel swizzles, thresholds and inversion, that is executed in a single pass.
+ *
+ * <p>Chains are built lazily: each method returns a new, longer chain and nothing is computed until
+ * the chain is first applied. It is then compiled once. Every operation that maps each channel on
+ * its own is a 256-entry lookup table, and adjacent tables, including channel swizzles, are
+ * composed into one. A grayscale conversion absorbs the tables before it into its channel weights
+ * and the tables after it into its output, so a chain such as "gamma, contrast, grayscale,
+ * threshold" costs a handful of table lookups per pixel however long it is:
+ *
+ * <pre>{@code
+ * PixelOp.identity().gamma(0.8).contrast(1.2).grayscale().threshold(128).applyTo(pixels);
+ * }</pre>
+ *
+ * <p>{@link #applyTo(PixelBuffer)} runs over bands of rows in parallel for large images, touching
+ * each pixel once. No objects are allocated per pixel.
+ *
+ * <p>Alpha is left unchanged by every operation except {@link #swizzle}.
+ *
+ * <p>Instances are immutable and may be shared between threads.
+ *
+ * @author Kevin Babu
+ */
+public final class PixelOp {
+
+  /** The four channels of an ARGB pixel. */
+  public enum Channel {
+    /** The alpha channel, bits 24 to 31. */
+    ALPHA,
+    /** The red channel, bits 16 to 23. */
+    RED,
+    /** The green channel, bits 8 to 15. */
+    GREEN,
+    /** The blue channel, bits 0 to 7. */
+    BLUE;
+
+    int shift() {
+      return 24 - 8 * ordinal();
+    }
+  }
+
+  private static final int ALPHA = 0;
+  private static final int LEVELS = 256;
+  private static final int MAX = LEVELS - 1;
+
+  // Rec. 601 luma weights in 8-bit fixed point: 0.299, 0.587 and 0.114
+  private static final int RED_WEIGHT = 77;
+  private static final int GREEN_WEIGHT = 150;
+  private static final int BLUE_WEIGHT = 29;
+
+  private static final PixelOp IDENTITY = new PixelOp(null, null);
+
+  private final PixelOp previous; // the chain before the last operation, null for the identity
+  private final Lut lut; // the last operation, or null if it is a grayscale conversion
+  private volatile Step[] compiled;
+
+  private PixelOp(PixelOp previous, Lut lut) {
+    this.previous = previous;
+    this.lut = lut;
+  }
+
+  /** @return the empty chain, which leaves pixels unchanged */
+  public static PixelOp identity() {
+    return IDENTITY;
+  }
+
+  /**
+   * Converts to gray using the Rec. 601 luma weights, <em>Y</em> = 0.299<em>r</em> +
+   * 0.587<em>g</em> + 0.114<em>b</em>.
+   *
+   * @return the longer chain
+   */
+  public PixelOp grayscale() {
+    return new PixelOp(this, null);
+  }
+
+  /**
+   * Adds {@code delta} to the red, green and blue channels, clamping to 0..255.
+   *
+   * @param delta the amount to add, between -255 and 255
+   * @return the longer chain
+   * @throws IllegalArgumentException if {@code delta} is out of range
+   */
+  public PixelOp brightness(int delta) {
+    if (delta < -MAX || delta > MAX) {
+      throw new IllegalArgumentException("Brightness must be between -255 and 255: " + delta);
+    }
+    return colour(v -> v + delta);
+  }
+
+  /**
+   * Scales the distance of the red, green and blue channels from mid-gray, clamping to 0..255.
+   *
+   * @param factor the scale; above 1 increases contrast, below 1 reduces it
+   * @return the longer chain
+   * @throws IllegalArgumentException if {@code factor} is negative or not finite
+   */
+  public PixelOp contrast(double factor) {
+    if (!(factor >= 0) || Double.isInfinite(factor)) {
+      throw new IllegalArgumentException("Contrast must be a non-negative number: " + factor);
+    }
+    return colour(v -> (int) Math.round((v - MAX / 2.0) * factor + MAX / 2.0));
+  }
+
+  /**
+   * Raises the red, green and blue channels, as fractions of 255, to the power {@code exponent}.
+   * Exponents below 1 brighten the mid-tones and exponents above 1 darken them.
+   *
+   * @param exponent the exponent
+   * @return the longer chain
+   * @throws IllegalArgumentException if {@code exponent} is not positive and finite
+   */
+  public PixelOp gamma(double exponent) {
+    if (!(exponent > 0) || Double.isInfinite(exponent)) {
+      throw new IllegalArgumentException("Gamma must be a positive number: " + exponent);
+    }
+    return colour(v -> (int) Math.round(MAX * Math.pow(v / (double) MAX, exponent)));
+  }
+
+  /**
+   * Inverts the red, green and blue channels.
+   *
+   * @return the longer chain
+   */
+  public PixelOp invert() {
+    return colour(v -> MAX - v);
+  }
+
+  /**
+   * Converts to black and white: pixels whose luma is at least {@code level} become white, and the
+   * others black.
+   *
+   * @param level the threshold, between 0 and 255
+   * @return the longer chain
+   * @throws IllegalArgumentException if {@code level} is out of range
+   */
+  public PixelOp threshold(int level) {
+    if (level < 0 || level > MAX) {
+      throw new IllegalArgumentException("Threshold must be between 0 and 255: " + level);
+    }
+    return grayscale().colour(v -> v >= level ? MAX : 0);
+  }
+
+  /**
+   * Rearranges the channels: each output channel takes its value from the given input channel. For
+   * example, {@code swizzle(ALPHA, BLUE, GREEN, RED)} swaps red and blue.
+   *
+   * @param alpha the channel the output alpha is taken from
+   * @param red the channel the output red is taken from
+   * @param green the channel the output green is taken from
+   * @param blue the channel the output blue is taken from
+   * @return the longer chain
+   */
+  public PixelOp swizzle(Channel alpha, Channel red, Channel green, Channel blue) {
+    Lut swizzle = Lut.identity();
+    swizzle.sources[0] = Objects.requireNonNull(alpha, "Channel cannot be null.").ordinal();
+    swizzle.sources[1] = Objects.requireNonNull(red, "Channel cannot be null.").ordinal();
+    swizzle.sources[2] = Objects.requireNonNull(green, "Channel cannot be null.").ordinal();
+    swizzle.sources[3] = Objects.requireNonNull(blue, "Channel cannot be null.").ordinal();
+    return new PixelOp(this, swizzle);
+  }
+
+  /**
+   * Appends another chain, applied after this one.
+   *
+   * @param next the chain to apply second
+   * @return the combined chain
+   */
+  public PixelOp then(PixelOp next) {
+    Objects.requireNonNull(next, "Operation cannot be null.");
+    PixelOp result = this;
+    for (PixelOp op : next.operations()) {
+      result = new PixelOp(result, op.lut);
+    }
+    return result;
+  }
+
+  private interface LevelMap {
+    int map(int value);
+  }
+
+  // a per-channel operation on red, green and blue
+  private PixelOp colour(LevelMap map) {
+    Lut colour = Lut.identity();
+    for (int c = 1; c < 4; c++) {
+      for (int v = 0; v < LEVELS; v++) {
+        colour.tables[c][v] = Math.max(0, Math.min(MAX, map.map(v)));
+      }
+    }
+    return new PixelOp(this, colour);
+  }
+
+  /**
+   * Applies the chain to one pixel.
+   *
+   * @param argb the pixel
+   * @return the transformed pixel
+   */
+  public int apply(int argb) {
+    int pixel = argb;
+    for (Step step : steps()) {
+      pixel = step.apply(pixel);
+    }
+    return pixel;
+  }
+
+  /**
+   * Applies the chain in place to {@code argb[from]} to {@code argb[to - 1]}, on the calling
+   * thread.
+   *
+   * @param argb the pixels
+   * @param from the index of the first pixel
+   * @param to the index after the last pixel
+   * @throws IndexOutOfBoundsException if the range is outside the array
+   */
+  public void apply(int[] argb, int from, int to) {
+    Objects.checkFromToIndex(from, to, argb.length);
+    for (Step step : steps()) {
+      step.apply(argb, from, to);
+    }
+  }
+
+  /**
+   * Applies the chain in place to every pixel of the buffer, in parallel bands of rows for large
+   * buffers. Views are supported; only the pixels inside the view are changed.
+   *
+   * @param pixels the pixels to transform
+   */
+  public void applyTo(PixelBuffer pixels) {
+    Objects.requireNonNull(pixels, "Pixels cannot be null.");
+    Step[] steps = steps();
+    if (steps.length == 0) {
+      return;
+    }
+    int width = pixels.width();
+    int[] data = pixels.getPixels();
+    int colStride = pixels.colStride();
+    RowBands.forEach(
+        width,
+        pixels.height(),
+        (first, last) -> {
+          int[] row = colStride == 1 || colStride == -1 ? null : new int[width];
+          for (int y = first; y < last; y++) {
+            int from;
+            int[] target;
+            if (row == null) {
+              // the row is contiguous in the array, whichever way it runs
+              int start = pixels.offset() + y * pixels.rowStride();
+              from = colStride == 1 ? start : start - width + 1;
+              target = data;
+            } else {
+              pixels.getARGB(0, y, width, 1, row, 0, width);
+              from = 0;
+              target = row;
+            }
+            for (Step step : steps) {
+              step.apply(target, from, from + width);
+            }
+            if (row != null) {
+              pixels.setARGB(0, y, width, 1, row, 0, width);
+            }
+          }
+        });
+  }
+
+  /**
+   * Returns the chain as a transform for a streaming {@link
+   * com.eyespot.imageparser.pipeline.RowPipeline}.
+   *
+   * @return a row transform applying this chain
+   */
+  public RowTransform asRowTransform() {
+    return (row, width) -> apply(row, 0, width);
+  }
+
+  // the operations of the chain, first to last
+  private List<PixelOp> operations() {
+    List<PixelOp> ops = new ArrayList<>();
+    for (PixelOp op = this; op.previous != null; op = op.previous) {
+      ops.add(0, op);
+    }
+    return ops;
+  }
+
+  private Step[] steps() {
+    Step[] steps = compiled;
+    if (steps == null) {
+      steps = compile();
+      compiled = steps;
+    }
+    return steps;
+  }
+
+  // fuses the operations into as few steps as possible
+  private Step[] compile() {
+    List<Step> steps = new ArrayList<>();
+    Lut pending = Lut.identity(); // tables not yet attached to a step
+    GrayStep gray = null; // the last gray step, while it can still absorb tables
+    for (PixelOp op : operations()) {
+      if (op.lut == null) {
+        if (gray != null) {
+          steps.add(gray);
+        }
+        gray = new GrayStep(pending, Lut.identity());
+        pending = Lut.identity();
+      } else if (gray != null && op.lut.keepsAlphaApart()) {
+        gray.post = Lut.compose(gray.post, op.lut);
+      } else {
+        if (gray != null) {
+          steps.add(gray);
+          gray = null;
+        }
+        pending = Lut.compose(pending, op.lut);
+      }
+    }
+    if (gray != null) {
+      steps.add(gray);
+    }
+    if (!pending.isIdentity()) {
+      steps.add(new LutStep(pending));
+    }
+    for (Step step : steps) {
+      step.prepare();
+    }
+    return steps.toArray(new Step[0]);
+  }
+
+  // output channel c is tables[c][input channel sources[c]], with channels in Channel order
+  private static final class Lut {
+    final int[][] tables = new int[4][LEVELS];
+    final int[] sources = {0, 1, 2, 3};
+
+    static Lut identity() {
+      Lut lut = new Lut();
+      for (int[] table : lut.tables) {
+        for (int v = 0; v < LEVELS; v++) {
+          table[v] = v;
+        }
+      }
+      return lut;
+    }
+
+    // the table that applies first and then second
+    static Lut compose(Lut first, Lut second) {
+      Lut lut = new Lut();
+      for (int c = 0; c < 4; c++) {
+        int source = second.sources[c];
+        lut.sources[c] = first.sources[source];
+        for (int v = 0; v < LEVELS; v++) {
+          lut.tables[c][v] = second.tables[c][first.tables[source][v]];
+        }
+      }
+      return lut;
+    }
+
+    boolean isIdentity() {
+      for (int c = 0; c < 4; c++) {
+        if (sources[c] != c) {
+          return false;
+        }
+        for (int v = 0; v < LEVELS; v++) {
+          if (tables[c][v] != v) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+
+    // alpha comes from alpha and colours from colours, as a gray step's output needs
+    boolean keepsAlphaApart() {
+      if (sources[ALPHA] != ALPHA) {
+        return false;
+      }
+      for (int c = 1; c < 4; c++) {
+        if (sources[c] == ALPHA) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private abstract static class Step {
+    abstract void prepare();
+
+    abstract int apply(int argb);
+
+    abstract void apply(int[] argb, int from, int to);
+  }
+
+  // any chain of per-channel tables and swizzles
+  private static final class LutStep extends Step {
+    private final Lut lut;
+    private final int[][] shifted = new int[4][]; // tables with values moved to their channel
+    private final int[] sourceShifts = new int[4];
+
+    LutStep(Lut lut) {
+      this.lut = lut;
+    }
+
+    @Override
+    void prepare() {
+      for (int c = 0; c < 4; c++) {
+        int shift = Channel.values()[c].shift();
+        shifted[c] = new int[LEVELS];
+        for (int v = 0; v < LEVELS; v++) {
+          shifted[c][v] = lut.tables[c][v] << shift;
+        }
+        sourceShifts[c] = Channel.values()[lut.sources[c]].shift();
+      }
+    }
+
+    @Override
+    int apply(int p) {
+      return shifted[0][(p >>> sourceShifts[0]) & MAX]
+          | shifted[1][(p >>> sourceShifts[1]) & MAX]
+          | shifted[2][(p >>> sourceShifts[2]) & MAX]
+          | shifted[3][(p >>> sourceShifts[3]) & MAX];
+    }
+
+    @Override
+    void apply(int[] argb, int from, int to) {
+      int[] a = shifted[0];
+      int[] r = shifted[1];
+      int[] g = shifted[2];
+      int[] b = shifted[3];
+      int sa = sourceShifts[0];
+      int sr = sourceShifts[1];
+      int sg = sourceShifts[2];
+      int sb = sourceShifts[3];
+      for (int i = from; i < to; i++) {
+        int p = argb[i];
+        argb[i] =
+            a[(p >>> sa) & MAX] | r[(p >>> sr) & MAX] | g[(p >>> sg) & MAX] | b[(p >>> sb) & MAX];
+      }
+    }
+  }
+
+  // a grayscale conversion with the tables before it folded into its weights and the tables
+  // after it applied to its output
+  private static final class GrayStep extends Step {
+    private final Lut pre;
+    private Lut post;
+    private final int[] redWeights = new int[LEVELS];
+    private final int[] greenWeights = new int[LEVELS];
+    private final int[] blueWeights = new int[LEVELS];
+    private final int[] alpha = new int[LEVELS];
+    private final int[] gray = new int[LEVELS]; // luma to shifted red, green and blue
+    private final int[] sourceShifts = new int[4];
+
+    GrayStep(Lut pre, Lut post) {
+      this.pre = pre;
+      this.post = post;
+    }
+
+    @Override
+    void prepare() {
+      for (int v = 0; v < LEVELS; v++) {
+        redWeights[v] = RED_WEIGHT * pre.tables[1][v];
+        greenWeights[v] = GREEN_WEIGHT * pre.tables[2][v];
+        blueWeights[v] = BLUE_WEIGHT * pre.tables[3][v];
+        alpha[v] = post.tables[ALPHA][pre.tables[ALPHA][v]] << 24;
+        gray[v] = post.tables[1][v] << 16 | post.tables[2][v] << 8 | post.tables[3][v];
+      }
+      for (int c = 0; c < 4; c++) {
+        sourceShifts[c] = Channel.values()[pre.sources[c]].shift();
+      }
+    }
+
+    @Override
+    int apply(int p) {
+      int luma =
+          (redWeights[(p >>> sourceShifts[1]) & MAX]
+                  + greenWeights[(p >>> sourceShifts[2]) & MAX]
+                  + blueWeights[(p >>> sourceShifts[3]) & MAX]
+                  + 128)
+              >>> 8;
+      return alpha[(p >>> sourceShifts[0]) & MAX] | gray[luma];
+    }
+
+    @Override
+    void apply(int[] argb, int from, int to) {
+      int sa = sourceShifts[0];
+      int sr = sourceShifts[1];
+      int sg = sourceShifts[2];
+      int sb = sourceShifts[3];
+      for (int i = from; i < to; i++) {
+        int p = argb[i];
+        int luma =
+            (redWeights[(p >>> sr) & MAX]
+                    + greenWeights[(p >>> sg) & MAX]
+                    + blueWeights[(p >>> sb) & MAX]
+                    + 128)
+                >>> 8;
+        argb[i] = alpha[(p >>> sa) & MAX] | gray[luma];
+      }
+    }
+  }
+}
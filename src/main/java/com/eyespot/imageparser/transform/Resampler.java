@@ -0,0 +1,316 @@
+package com.eyespot.imageparser.transform;
+
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.util.RowBands;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Resizes ARGB images with a bilinear, bicubic or Lanczos filter.
+ *
+ * <p>The filter weights for every output column and every output row are computed once per resize.
+ * Each band of output rows then filters the source rows it needs horizontally, and the result
+ * vertically, so the cost per output pixel is the width of the filter on each axis rather than its
+ * area. When shrinking, the filter is widened by the scale factor so that every source pixel
+ * contributes, which avoids aliasing. Bands of output rows, sized by the source rows they filter,
+ * run in parallel for large images:
+ *
+ * <pre>{@code
+ * PixelBuffer thumbnail = new Resampler(Filter.LANCZOS3, true).resize(pixels, 320, 240);
+ * }</pre>
+ *
+ * <p>Colours are filtered with premultiplied alpha, so transparent pixels do not bleed their colour
+ * into their neighbours. In linear-light mode the sRGB values are converted to linear intensities
+ * with lookup tables before filtering and back afterwards, which keeps fine detail from darkening
+ * when an image is shrunk, at a small extra cost.
+ *
+ * <p>Instances are immutable and may be shared between threads.
+ *
+ * @author Kevin Babu
+ */
+public final class Resampler {
+
+  /** A reconstruction filter. */
+  public enum Filter {
+    /** Linear interpolation between the two nearest pixels on each axis. */
+    BILINEAR(1) {
+      @Override
+      double weight(double x) {
+        return Math.max(0, 1 - Math.abs(x));
+      }
+    },
+    /** The Catmull-Rom cubic, as used by {@code Graphics2D} bicubic interpolation. */
+    BICUBIC(2) {
+      @Override
+      double weight(double x) {
+        double t = Math.abs(x);
+        if (t < 1) {
+          return (1.5 * t - 2.5) * t * t + 1;
+        }
+        return t < 2 ? ((-0.5 * t + 2.5) * t - 4) * t + 2 : 0;
+      }
+    },
+    /** The Lanczos windowed sinc with three lobes, the sharpest of the three filters. */
+    LANCZOS3(3) {
+      @Override
+      double weight(double x) {
+        if (x == 0) {
+          return 1;
+        }
+        if (Math.abs(x) >= 3) {
+          return 0;
+        }
+        double px = Math.PI * x;
+        return 3 * Math.sin(px) * Math.sin(px / 3) / (px * px);
+      }
+    };
+
+    private final int radius;
+
+    Filter(int radius) {
+      this.radius = radius;
+    }
+
+    /** @return the distance in pixels from the centre beyond which the filter is zero */
+    public int getRadius() {
+      return radius;
+    }
+
+    abstract double weight(double x);
+  }
+
+  // bits of precision of the table converting linear intensities back to sRGB
+  private static final int ENCODE_BITS = 14;
+
+  private static final float[] SRGB_TO_LINEAR = new float[256];
+  private static final float[] UNIT = new float[256];
+  private static final byte[] LINEAR_TO_SRGB = new byte[(1 << ENCODE_BITS) + 1];
+
+  static {
+    for (int v = 0; v < 256; v++) {
+      double c = v / 255.0;
+      SRGB_TO_LINEAR[v] = (float) (c <= 0.04045 ? c / 12.92 : Math.pow((c + 0.055) / 1.055, 2.4));
+      UNIT[v] = (float) c;
+    }
+    for (int i = 0; i < LINEAR_TO_SRGB.length; i++) {
+      double linear = i / (double) (1 << ENCODE_BITS);
+      double c = linear <= 0.0031308 ? linear * 12.92 : 1.055 * Math.pow(linear, 1 / 2.4) - 0.055;
+      LINEAR_TO_SRGB[i] = (byte) Math.round(c * 255);
+    }
+  }
+
+  private final Filter filter;
+  private final boolean isLinearLight;
+
+  /**
+   * Creates a resampler.
+   *
+   * @param filter the reconstruction filter
+   * @param isLinearLight {@code true} to filter linear intensities rather than sRGB values
+   */
+  public Resampler(Filter filter, boolean isLinearLight) {
+    this.filter = Objects.requireNonNull(filter, "Filter cannot be null.");
+    this.isLinearLight = isLinearLight;
+  }
+
+  /** @return the reconstruction filter */
+  public Filter getFilter() {
+    return filter;
+  }
+
+  /** @return {@code true} if linear intensities are filtered rather than sRGB values */
+  public boolean isLinearLight() {
+    return isLinearLight;
+  }
+
+  /**
+   * Resizes the image. The source is not modified and may be any view.
+   *
+   * @param source the image to resize
+   * @param width the width of the result in pixels
+   * @param height the height of the result in pixels
+   * @return a new packed buffer holding the resized image
+   * @throws IllegalArgumentException if {@code width} or {@code height} is not positive, or the
+   *     source is empty
+   */
+  public PixelBuffer resize(PixelBuffer source, int width, int height) {
+    Objects.requireNonNull(source, "Source cannot be null.");
+    if (width <= 0 || height <= 0) {
+      throw new IllegalArgumentException("Size must be positive: " + width + "x" + height);
+    }
+    if (source.width() == 0 || source.height() == 0) {
+      throw new IllegalArgumentException("Cannot resize an empty image");
+    }
+    Weights columns = new Weights(filter, source.width(), width);
+    Weights rows = new Weights(filter, source.height(), height);
+    PixelBuffer target = new PixelBuffer(width, height);
+    // Size bands by the work of each output row, which filters up to rows.stride source rows, not
+    // by output pixels, or a large image shrunk to a thumbnail runs as a single band. Neighbouring
+    // bands filter the source rows they share once each, so bands are kept to a few per thread.
+    long rowCost = (long) rows.stride * Math.max(source.width(), width);
+    int maxBands = 4 * (ForkJoinPool.getCommonPoolParallelism() + 1);
+    int rowsPerBand =
+        (int) Math.max(RowBands.BAND_PIXELS / rowCost, (height + maxBands - 1L) / maxBands);
+    RowBands.forEachBand(
+        height,
+        rowsPerBand,
+        (first, end) -> new Band(source, target, columns, rows).run(first, end));
+    return target;
+  }
+
+  // the source pixels and weights contributing to each output pixel along one axis
+  private static final class Weights {
+    final int[] starts; // first source pixel for each output pixel
+    final int[] counts; // number of source pixels for each output pixel
+    final float[] weights; // counts[i] weights for output pixel i, starting at i * stride
+    final int stride;
+
+    Weights(Filter filter, int sourceSize, int targetSize) {
+      double scale = sourceSize / (double) targetSize;
+      double widening = Math.max(1, scale); // stretch the filter when shrinking
+      double support = filter.getRadius() * widening;
+      this.stride = (int) Math.ceil(2 * support) + 1;
+      this.starts = new int[targetSize];
+      this.counts = new int[targetSize];
+      this.weights = new float[targetSize * stride];
+      double[] raw = new double[stride];
+      for (int i = 0; i < targetSize; i++) {
+        double centre = (i + 0.5) * scale - 0.5;
+        int first = Math.max(0, (int) Math.ceil(centre - support));
+        int last = Math.min(sourceSize - 1, (int) Math.floor(centre + support));
+        // clipping at the edges drops weights, so renormalize whatever remains
+        double total = 0;
+        for (int j = first; j <= last; j++) {
+          raw[j - first] = filter.weight((j - centre) / widening);
+          total += raw[j - first];
+        }
+        if (total == 0) {
+          // a filter wider than the source may miss every pixel; fall back to the nearest
+          first = Math.max(0, Math.min(sourceSize - 1, (int) Math.round(centre)));
+          last = first;
+          raw[0] = total = 1;
+        }
+        starts[i] = first;
+        counts[i] = last - first + 1;
+        for (int j = 0; j < counts[i]; j++) {
+          weights[i * stride + j] = (float) (raw[j] / total);
+        }
+      }
+    }
+  }
+
+  // scratch space for one band of output rows
+  private final class Band {
+    private final PixelBuffer source;
+    private final PixelBuffer target;
+    private final Weights columns;
+    private final Weights rows;
+    private final int width;
+    private final int[] argb;
+    private final float[] line; // one source row, premultiplied, four floats per pixel
+    private final float[] sum; // one output row before packing
+
+    Band(PixelBuffer source, PixelBuffer target, Weights columns, Weights rows) {
+      this.source = source;
+      this.target = target;
+      this.columns = columns;
+      this.rows = rows;
+      this.width = target.width();
+      this.argb = new int[Math.max(source.width(), width)];
+      this.line = new float[4 * source.width()];
+      this.sum = new float[4 * width];
+    }
+
+    void run(int first, int end) {
+      // filter every source row the band needs horizontally, once
+      int firstSource = rows.starts[first];
+      int endSource = firstSource;
+      for (int y = first; y < end; y++) {
+        endSource = Math.max(endSource, rows.starts[y] + rows.counts[y]);
+      }
+      float[] passes = new float[(endSource - firstSource) * 4 * width];
+      for (int y = firstSource; y < endSource; y++) {
+        load(y);
+        horizontalPass(passes, (y - firstSource) * 4 * width);
+      }
+
+      for (int y = first; y < end; y++) {
+        Arrays.fill(sum, 0);
+        int offset = y * rows.stride;
+        for (int j = 0; j < rows.counts[y]; j++) {
+          float weight = rows.weights[offset + j];
+          int pass = (rows.starts[y] + j - firstSource) * 4 * width;
+          for (int x = 0; x < sum.length; x++) {
+            sum[x] += weight * passes[pass + x];
+          }
+        }
+        store(y);
+      }
+    }
+
+    // reads source row y into line as premultiplied, optionally linear, channels
+    private void load(int y) {
+      int count = source.width();
+      source.getARGB(0, y, count, 1, argb, 0, count);
+      float[] decode = isLinearLight ? SRGB_TO_LINEAR : UNIT;
+      for (int x = 0; x < count; x++) {
+        int pixel = argb[x];
+        float alpha = UNIT[pixel >>> 24];
+        line[4 * x] = alpha;
+        line[4 * x + 1] = decode[(pixel >>> 16) & 0xFF] * alpha;
+        line[4 * x + 2] = decode[(pixel >>> 8) & 0xFF] * alpha;
+        line[4 * x + 3] = decode[pixel & 0xFF] * alpha;
+      }
+    }
+
+    private void horizontalPass(float[] passes, int offset) {
+      for (int x = 0; x < width; x++) {
+        float a = 0;
+        float r = 0;
+        float g = 0;
+        float b = 0;
+        int weight = x * columns.stride;
+        int pixel = 4 * columns.starts[x];
+        for (int j = 0; j < columns.counts[x]; j++, weight++, pixel += 4) {
+          float w = columns.weights[weight];
+          a += w * line[pixel];
+          r += w * line[pixel + 1];
+          g += w * line[pixel + 2];
+          b += w * line[pixel + 3];
+        }
+        int out = offset + 4 * x;
+        passes[out] = a;
+        passes[out + 1] = r;
+        passes[out + 2] = g;
+        passes[out + 3] = b;
+      }
+    }
+
+    // unpremultiplies, encodes and writes output row y
+    private void store(int y) {
+      for (int x = 0; x < width; x++) {
+        float alpha = sum[4 * x];
+        if (alpha <= 0) {
+          argb[x] = 0;
+          continue;
+        }
+        alpha = Math.min(alpha, 1);
+        argb[x] =
+            Math.round(alpha * 255) << 24
+                | encode(sum[4 * x + 1] / alpha) << 16
+                | encode(sum[4 * x + 2] / alpha) << 8
+                | encode(sum[4 * x + 3] / alpha);
+      }
+      target.setARGB(0, y, width, 1, argb, 0, width);
+    }
+
+    private int encode(float value) {
+      float clamped = Math.max(0, Math.min(1, value));
+      if (isLinearLight) {
+        return LINEAR_TO_SRGB[Math.round(clamped * (1 << ENCODE_BITS))] & 0xFF;
+      }
+      return Math.round(clamped * 255);
+    }
+  }
+}
@@ -70,9 +70,16 @@ public final class ImageUtils {
    * @throws IndexOutOfBoundsException if the offset is out of bounds.
    */
   public static int readInt(byte[] data, int offset) {
-    return ByteBuffer.wrap(Arrays.copyOfRange(data, offset, offset + 4))
-        .order(ByteOrder.LITTLE_ENDIAN)
-        .getInt();
+    if (offset < 0 || offset > data.length - 4) {
+      return ByteBuffer.wrap(Arrays.copyOfRange(data, offset, offset + 4))
+          .order(ByteOrder.LITTLE_ENDIAN)
+          .getInt();
+    }
+    // Assembled by hand: this is called once per pixel and must not allocate
+    return (data[offset] & 0xFF)
+        | (data[offset + 1] & 0xFF) << 8
+        | (data[offset + 2] & 0xFF) << 16
+        | data[offset + 3] << 24;
   }
 
   /**
@@ -84,9 +91,12 @@ public final class ImageUtils {
    * @throws IndexOutOfBoundsException if the offset is out of bounds.
    */
   public static short readShort(byte[] data, int offset) {
-    return ByteBuffer.wrap(Arrays.copyOfRange(data, offset, offset + 2))
-        .order(ByteOrder.LITTLE_ENDIAN)
-        .getShort();
+    if (offset < 0 || offset > data.length - 2) {
+      return ByteBuffer.wrap(Arrays.copyOfRange(data, offset, offset + 2))
+          .order(ByteOrder.LITTLE_ENDIAN)
+          .getShort();
+    }
+    return (short) ((data[offset] & 0xFF) | data[offset + 1] << 8);
   }
 
   /**
@@ -95,16 +105,73 @@ public final class ImageUtils {
    * @param offset current cursor position
    * @param needed number of bytes required
    * @param message exception message to throw in case there are not enough bytes to satisfy read
+   * @param length number of bytes available
    * @param isCorrupted determines if pixels processed so far should be returned
+   * @throws CorruptedImageException if there are not enough bytes and {@code isCorrupted} is set
+   * @throws IllegalArgumentException if there are not enough bytes and {@code isCorrupted} is not
+   *     set
    */
   public static void ensureBytesAvailable(
       int offset, int needed, String message, int length, boolean isCorrupted)
       throws CorruptedImageException {
     if (offset + needed > length) {
       if (isCorrupted) {
-        throw new CorruptedImageException(message);
+        throw new CorruptedImageException(message, offset, true);
       }
       throw new IllegalArgumentException(message);
     }
   }
+
+  /**
+   * Same as {@link #ensureBytesAvailable(int, int, String, int, boolean)}, but the message is a
+   * {@link String#format(String, Object...)} template that is only filled in when the check fails,
+   * so that per-pixel checks do not build a string for every pixel.
+   *
+   * @param offset current cursor position
+   * @param needed number of bytes required
+   * @param template exception message template with one {@code %d} placeholder
+   * @param length number of bytes available
+   * @param isCorrupted determines if pixels processed so far should be returned
+   * @param argument value for the placeholder
+   * @throws CorruptedImageException if there are not enough bytes and {@code isCorrupted} is set
+   * @throws IllegalArgumentException if there are not enough bytes and {@code isCorrupted} is not
+   *     set
+   */
+  public static void ensureBytesAvailable(
+      int offset, int needed, String template, int length, boolean isCorrupted, int argument)
+      throws CorruptedImageException {
+    if (offset + needed > length) {
+      ensureBytesAvailable(offset, needed, String.format(template, argument), length, isCorrupted);
+    }
+  }
+
+  /**
+   * Same as {@link #ensureBytesAvailable(int, int, String, int, boolean, int)}, with two
+   * placeholders.
+   *
+   * @param offset current cursor position
+   * @param needed number of bytes required
+   * @param template exception message template with two {@code %d} placeholders
+   * @param length number of bytes available
+   * @param isCorrupted determines if pixels processed so far should be returned
+   * @param first value for the first placeholder
+   * @param second value for the second placeholder
+   * @throws CorruptedImageException if there are not enough bytes and {@code isCorrupted} is set
+   * @throws IllegalArgumentException if there are not enough bytes and {@code isCorrupted} is not
+   *     set
+   */
+  public static void ensureBytesAvailable(
+      int offset,
+      int needed,
+      String template,
+      int length,
+      boolean isCorrupted,
+      int first,
+      int second)
+      throws CorruptedImageException {
+    if (offset + needed > length) {
+      ensureBytesAvailable(
+          offset, needed, String.format(template, first, second), length, isCorrupted);
+    }
+  }
 }
@@ -0,0 +1,109 @@
+package com.eyespot.imageparser.util;
+
+import java.util.Arrays;
+
+/**
+ * A bounded set of {@code int} values, such as ARGB colours, that gives each distinct value a dense
+ * index in insertion order.
+ *
+ * <p>Values are kept in a primitive open-addressing table with linear probing, sized so that it is
+ * at most half full, and no value is ever boxed. The set refuses to grow beyond its capacity, so
+ * callers that only care whether a few values suffice can stop scanning as soon as {@link
+ * #add(int)} reports that the set is full.
+ *
+ * <p>Instances are not thread-safe.
+ *
+ * @author Kevin Babu
+ */
+public final class IntIndexMap {
+  private static final int HASH_MULTIPLIER = 0x9E3779B9; // golden ratio, spreads nearby values
+
+  private final int capacity;
+  private final int[] keys;
+  private final int[] slots; // index + 1 of the value in each slot, 0 if the slot is empty
+  private final int shift;
+  private final int mask;
+  private final int[] values; // the distinct values in insertion order
+  private int size;
+
+  /**
+   * Creates an empty set that holds at most {@code capacity} distinct values.
+   *
+   * @param capacity the maximum number of distinct values
+   * @throws IllegalArgumentException if {@code capacity} is not between 1 and 2<sup>29</sup>
+   */
+  public IntIndexMap(int capacity) {
+    if (capacity < 1 || capacity > 1 << 29) {
+      throw new IllegalArgumentException("Capacity must be between 1 and 2^29: " + capacity);
+    }
+    int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+    this.capacity = capacity;
+    this.keys = new int[tableSize];
+    this.slots = new int[tableSize];
+    this.shift = Integer.numberOfLeadingZeros(tableSize) + 1;
+    this.mask = tableSize - 1;
+    this.values = new int[capacity];
+  }
+
+  /**
+   * Adds a value if it is not already present.
+   *
+   * @param value the value to add
+   * @return the index of the value, or -1 if it is new and the set already holds {@link
+   *     #capacity()} values
+   */
+  public int add(int value) {
+    int slot = (value * HASH_MULTIPLIER) >>> shift;
+    while (slots[slot] != 0) {
+      if (keys[slot] == value) {
+        return slots[slot] - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+    if (size == capacity) {
+      return -1;
+    }
+    keys[slot] = value;
+    values[size] = value;
+    slots[slot] = ++size;
+    return size - 1;
+  }
+
+  /**
+   * Returns the index of a value.
+   *
+   * @param value the value to look up
+   * @return the index of the value, or -1 if it is not in the set
+   */
+  public int indexOf(int value) {
+    int slot = (value * HASH_MULTIPLIER) >>> shift;
+    while (slots[slot] != 0) {
+      if (keys[slot] == value) {
+        return slots[slot] - 1;
+      }
+      slot = (slot + 1) & mask;
+    }
+    return -1;
+  }
+
+  /** @return the number of distinct values added */
+  public int size() {
+    return size;
+  }
+
+  /** @return the maximum number of distinct values */
+  public int capacity() {
+    return capacity;
+  }
+
+  /** @return a new array holding the distinct values, indexed as returned by {@link #add(int)} */
+  public int[] toArray() {
+    return Arrays.copyOf(values, size);
+  }
+
+  /** Removes every value, keeping the allocated table. */
+  public void clear() {
+    Arrays.fill(slots, 0);
+    size = 0;
+  }
+}
@@ -0,0 +1,161 @@
+package com.eyespot.imageparser.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free histogram of non-negative {@code long} values, such as latencies in nanoseconds.
+ *
+ * <p>Buckets are log-linear: each power of two is split into {@value #SUB_BUCKETS} equal buckets,
+ * so any value is known to within 12.5% using fewer than 500 buckets for the whole {@code long}
+ * range. Values below {@value #SUB_BUCKETS} are counted exactly.
+ *
+ * <p>Counts are striped: each thread records into one of several copies of the buckets, picked by
+ * its id, so that threads recording at the same time rarely update the same memory. Reads add the
+ * stripes up. The maximum is only written when it grows, which soon becomes rare. A read that
+ * overlaps with recording sees some of the concurrent values and not others, which is fine for
+ * monitoring.
+ *
+ * @author Kevin Babu
+ */
+public final class LogLinearHistogram {
+  /** Number of bits of each value kept below its highest set bit. */
+  private static final int SUB_BUCKET_BITS = 3;
+
+  /** Number of buckets each power of two is split into. */
+  public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  // values below SUB_BUCKETS, then SUB_BUCKETS buckets for each higher power of two
+  private static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private static final int MAX_STRIPES = 64;
+
+  private final AtomicLongArray[] stripes;
+  private final AtomicLong max = new AtomicLong();
+  private final LongAdder sum = new LongAdder();
+
+  /** Creates an empty histogram with a stripe per available processor, up to 64. */
+  public LogLinearHistogram() {
+    int processors = Runtime.getRuntime().availableProcessors();
+    int count = Math.min(MAX_STRIPES, Integer.highestOneBit(Math.max(1, processors - 1)) << 1);
+    stripes = new AtomicLongArray[count];
+    for (int i = 0; i < count; i++) {
+      stripes[i] = new AtomicLongArray(BUCKETS);
+    }
+  }
+
+  /**
+   * Records a value. Negative values are recorded as zero.
+   *
+   * @param value the value
+   */
+  public void record(long value) {
+    long v = Math.max(0, value);
+    int stripe = (int) Thread.currentThread().getId() & (stripes.length - 1);
+    stripes[stripe].incrementAndGet(bucketOf(v));
+    sum.add(v);
+    long previous = max.get();
+    while (v > previous && !max.compareAndSet(previous, v)) {
+      previous = max.get();
+    }
+  }
+
+  /** @return the number of values recorded */
+  public long getCount() {
+    long count = 0;
+    for (long n : snapshot()) {
+      count += n;
+    }
+    return count;
+  }
+
+  /** @return the largest value recorded, or 0 if none was */
+  public long getMax() {
+    return max.get();
+  }
+
+  /** @return the mean of the values recorded, or 0 if none was */
+  public double getMean() {
+    long count = getCount();
+    return count == 0 ? 0 : (double) sum.sum() / count;
+  }
+
+  /**
+   * Returns the value below which the given percentage of the recorded values fall, rounded up to
+   * the top of its bucket and never above {@link #getMax()}.
+   *
+   * @param percentile the percentage, from 0 to 100
+   * @return the value at the percentile, or 0 if no value was recorded
+   * @throws IllegalArgumentException if {@code percentile} is not between 0 and 100
+   */
+  public long getValueAtPercentile(double percentile) {
+    if (!(percentile >= 0 && percentile <= 100)) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+    }
+    long[] counts = snapshot();
+    long total = 0;
+    for (long n : counts) {
+      total += n;
+    }
+    if (total == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+    long seen = 0;
+    for (int bucket = 0; bucket < counts.length; bucket++) {
+      seen += counts[bucket];
+      if (seen >= rank) {
+        return Math.min(highestValueIn(bucket), getMax());
+      }
+    }
+    return getMax();
+  }
+
+  /** Discards every recorded value. */
+  public void reset() {
+    for (AtomicLongArray stripe : stripes) {
+      for (int i = 0; i < BUCKETS; i++) {
+        stripe.set(i, 0);
+      }
+    }
+    sum.reset();
+    max.set(0);
+  }
+
+  // the counts of every bucket, added up across the stripes
+  private long[] snapshot() {
+    long[] counts = new long[BUCKETS];
+    for (AtomicLongArray stripe : stripes) {
+      for (int i = 0; i < BUCKETS; i++) {
+        counts[i] += stripe.get(i);
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * @param value a non-negative value
+   * @return the index of the bucket that counts {@code value}
+   */
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int shift = Long.SIZE - 1 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  /**
+   * @param bucket the index of a bucket
+   * @return the largest value counted by the bucket
+   */
+  static long highestValueIn(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = bucket / SUB_BUCKETS - 1;
+    long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+    return lowest + (1L << shift) - 1;
+  }
+}
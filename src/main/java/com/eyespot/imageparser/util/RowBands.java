@@ -0,0 +1,70 @@
+package com.eyespot.imageparser.util;
+
+import java.util.stream.IntStream;
+
+/**
+ * Splits the rows of an image into bands and processes them, in parallel on the common {@link
+ * java.util.concurrent.ForkJoinPool} when the image is large enough to benefit.
+ *
+ * <p>Bands hold about {@value #BAND_PIXELS} pixels, enough to amortize the cost of handing work to
+ * another thread while keeping every core busy on large images. Smaller images are processed on the
+ * calling thread.
+ *
+ * @author Kevin Babu
+ */
+public final class RowBands {
+  /** Approximate number of pixels in one band. */
+  public static final int BAND_PIXELS = 1 << 18;
+
+  /** Work done on one band of rows. */
+  @FunctionalInterface
+  public interface Task {
+    /**
+     * Processes rows {@code firstRow} (inclusive) to {@code endRow} (exclusive).
+     *
+     * @param firstRow the first row of the band
+     * @param endRow the row after the last row of the band
+     */
+    void process(int firstRow, int endRow);
+  }
+
+  private RowBands() {}
+
+  /**
+   * Runs the task over every row of a {@code width} by {@code height} image, one band at a time.
+   * Bands may run concurrently and in any order, so the task must only write to the rows it is
+   * given.
+   *
+   * @param width the width of the image in pixels
+   * @param height the height of the image in pixels
+   * @param task the work to do on each band
+   */
+  public static void forEach(int width, int height, Task task) {
+    forEachBand(height, Math.max(1, BAND_PIXELS / Math.max(width, 1)), task);
+  }
+
+  /**
+   * Runs the task over {@code height} rows in bands of {@code rowsPerBand} rows, for work that is
+   * already blocked to a fixed number of rows. Bands may run concurrently and in any order.
+   *
+   * @param height the number of rows
+   * @param rowsPerBand the number of rows in every band but the last
+   * @param task the work to do on each band
+   * @throws IllegalArgumentException if {@code rowsPerBand} is not positive
+   */
+  public static void forEachBand(int height, int rowsPerBand, Task task) {
+    if (rowsPerBand <= 0) {
+      throw new IllegalArgumentException("Rows per band must be positive: " + rowsPerBand);
+    }
+    int bands = (height + rowsPerBand - 1) / rowsPerBand;
+    if (bands <= 1) {
+      if (height > 0) {
+        task.process(0, height);
+      }
+      return;
+    }
+    IntStream.range(0, bands)
+        .parallel()
+        .forEach(i -> task.process(i * rowsPerBand, Math.min(height, (i + 1) * rowsPerBand)));
+  }
+}
@@ -0,0 +1,133 @@
+package com.eyespot.imageparser.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The rate at which something is counted over the last minute, such as bytes or pixels per second.
+ *
+ * <p>Counts go into a ring of {@value #BUCKETS} buckets of five seconds each. The rate is the sum
+ * of the buckets still inside the window divided by the time they cover, which is the full minute
+ * once the rate has been running that long and the time since it started or was reset before then.
+ * So it follows changes in load within a minute, where an average since start would flatten them
+ * out.
+ *
+ * <p>Adding takes no locks while the current bucket stays the same. Moving on to the next bucket,
+ * every five seconds, clears it under a lock; a read that overlaps with adding or with that sees
+ * some of the concurrent counts and not others, which is fine for monitoring.
+ *
+ * @author Kevin Babu
+ */
+public final class WindowedRate {
+  /** Number of buckets in the window. */
+  public static final int BUCKETS = 12;
+
+  /** Length of each bucket, in nanoseconds. */
+  public static final long BUCKET_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+  private static final double NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final LongAdder[] counts = new LongAdder[BUCKETS];
+  // the bucket number each slot of counts holds, or -1 if none; counted from originNanos
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final long originNanos;
+  private volatile long startNanos;
+
+  /** Creates a rate that starts now. */
+  public WindowedRate() {
+    this(System.nanoTime());
+  }
+
+  /**
+   * Creates a rate that starts at the given time.
+   *
+   * @param nowNanos the current {@link System#nanoTime()}
+   */
+  public WindowedRate(long nowNanos) {
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = new LongAdder();
+      buckets.set(i, -1);
+    }
+    originNanos = nowNanos;
+    startNanos = nowNanos;
+  }
+
+  /**
+   * Counts an amount now.
+   *
+   * @param amount the amount
+   */
+  public void add(long amount) {
+    add(amount, System.nanoTime());
+  }
+
+  /**
+   * Counts an amount at the given time.
+   *
+   * @param amount the amount
+   * @param nowNanos the current {@link System#nanoTime()}, no earlier than any time passed before
+   */
+  public void add(long amount, long nowNanos) {
+    long bucket = bucketOf(nowNanos);
+    int slot = (int) (bucket % BUCKETS);
+    if (buckets.get(slot) != bucket) {
+      advance(slot, bucket);
+    }
+    counts[slot].add(amount);
+  }
+
+  private synchronized void advance(int slot, long bucket) {
+    if (buckets.get(slot) < bucket) {
+      // clear before publishing the new bucket, so nothing counted for it is lost
+      counts[slot].reset();
+      buckets.set(slot, bucket);
+    }
+  }
+
+  /** @return the rate per second over the last minute, or 0 if nothing was counted in it */
+  public double getPerSecond() {
+    return getPerSecond(System.nanoTime());
+  }
+
+  /**
+   * @param nowNanos the current {@link System#nanoTime()}
+   * @return the rate per second over the minute before the given time
+   */
+  public double getPerSecond(long nowNanos) {
+    long current = bucketOf(nowNanos);
+    long oldest = current - BUCKETS + 1;
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      long bucket = buckets.get(i);
+      if (bucket >= oldest && bucket <= current) {
+        total += counts[i].sum();
+      }
+    }
+    long windowStart = Math.max(startNanos, originNanos + oldest * BUCKET_NANOS);
+    long elapsed = nowNanos - windowStart;
+    return total == 0 || elapsed <= 0 ? 0 : total * NANOS_PER_SECOND / elapsed;
+  }
+
+  /** Forgets everything counted so far, so that the window starts again now. */
+  public void reset() {
+    reset(System.nanoTime());
+  }
+
+  /**
+   * Forgets everything counted so far, so that the window starts again at the given time.
+   *
+   * @param nowNanos the current {@link System#nanoTime()}
+   */
+  public synchronized void reset(long nowNanos) {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets.set(i, -1);
+      counts[i].reset();
+    }
+    startNanos = nowNanos;
+  }
+
+  private long bucketOf(long nowNanos) {
+    return Math.max(0, nowNanos - originNanos) / BUCKET_NANOS;
+  }
+}
@@ -0,0 +1,159 @@
+package com.eyespot.imageparser.util;
+
+/**
+ * Streaming implementation of the 64-bit xxHash algorithm (XXH64) over {@code int} data.
+ *
+ * <p>Each {@code int} is hashed as its four little-endian bytes, so the digest of a sequence of
+ * {@code int}s is identical to the reference XXH64 digest of the same values serialized in
+ * little-endian order. Data may be supplied in any number of {@link #update(int[], int, int)}
+ * calls; only the concatenation matters.
+ *
+ * <p>Instances are not thread-safe.
+ *
+ * @author Kevin Babu
+ * @see <a href="https://github.com/Cyan4973/xxHash/blob/dev/doc/xxhash_spec.md">xxHash
+ *     specification</a>
+ */
+public final class XxHash64 {
+  private static final long PRIME1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME3 = 0x165667B19E3779F9L;
+  private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+  /** Number of {@code int}s in one 32-byte stripe. */
+  private static final int STRIPE_INTS = 8;
+
+  private final long seed;
+  private long v1;
+  private long v2;
+  private long v3;
+  private long v4;
+  private long totalInts;
+  private final int[] pending = new int[STRIPE_INTS];
+  private int pendingCount;
+
+  /**
+   * Creates a hasher with the given seed.
+   *
+   * @param seed the XXH64 seed
+   */
+  public XxHash64(long seed) {
+    this.seed = seed;
+    this.v1 = seed + PRIME1 + PRIME2;
+    this.v2 = seed + PRIME2;
+    this.v3 = seed;
+    this.v4 = seed - PRIME1;
+  }
+
+  /**
+   * Hashes {@code len} values of {@code data} starting at {@code off}.
+   *
+   * @param data the values to hash
+   * @param off the index of the first value
+   * @param len the number of values
+   * @return this hasher
+   */
+  public XxHash64 update(int[] data, int off, int len) {
+    int i = off;
+    int end = off + len;
+    totalInts += len;
+
+    if (pendingCount > 0) {
+      int take = Math.min(STRIPE_INTS - pendingCount, len);
+      System.arraycopy(data, i, pending, pendingCount, take);
+      pendingCount += take;
+      i += take;
+      if (pendingCount < STRIPE_INTS) {
+        return this;
+      }
+      consumeStripe(pending, 0);
+      pendingCount = 0;
+    }
+
+    for (; i <= end - STRIPE_INTS; i += STRIPE_INTS) {
+      consumeStripe(data, i);
+    }
+
+    pendingCount = end - i;
+    System.arraycopy(data, i, pending, 0, pendingCount);
+    return this;
+  }
+
+  /**
+   * Returns the digest of everything hashed so far. The hasher may continue to be updated
+   * afterwards.
+   *
+   * @return the 64-bit XXH64 digest
+   */
+  public long digest() {
+    long h;
+    if (totalInts >= STRIPE_INTS) {
+      h =
+          Long.rotateLeft(v1, 1)
+              + Long.rotateLeft(v2, 7)
+              + Long.rotateLeft(v3, 12)
+              + Long.rotateLeft(v4, 18);
+      h = mergeRound(h, v1);
+      h = mergeRound(h, v2);
+      h = mergeRound(h, v3);
+      h = mergeRound(h, v4);
+    } else {
+      h = seed + PRIME5;
+    }
+    h += totalInts * 4;
+
+    int i = 0;
+    for (; i + 1 < pendingCount; i += 2) {
+      h ^= round(0, lane(pending, i));
+      h = Long.rotateLeft(h, 27) * PRIME1 + PRIME4;
+    }
+    if (i < pendingCount) {
+      h ^= (pending[i] & 0xFFFFFFFFL) * PRIME1;
+      h = Long.rotateLeft(h, 23) * PRIME2 + PRIME3;
+    }
+
+    h ^= h >>> 33;
+    h *= PRIME2;
+    h ^= h >>> 29;
+    h *= PRIME3;
+    h ^= h >>> 32;
+    return h;
+  }
+
+  /**
+   * Convenience method that hashes a range of an array in one call.
+   *
+   * @param data the values to hash
+   * @param off the index of the first value
+   * @param len the number of values
+   * @param seed the XXH64 seed
+   * @return the 64-bit XXH64 digest
+   */
+  public static long hash(int[] data, int off, int len, long seed) {
+    return new XxHash64(seed).update(data, off, len).digest();
+  }
+
+  private void consumeStripe(int[] data, int i) {
+    v1 = round(v1, lane(data, i));
+    v2 = round(v2, lane(data, i + 2));
+    v3 = round(v3, lane(data, i + 4));
+    v4 = round(v4, lane(data, i + 6));
+  }
+
+  // two consecutive ints read as one little-endian 64-bit lane
+  private static long lane(int[] data, int i) {
+    return (data[i] & 0xFFFFFFFFL) | ((long) data[i + 1] << 32);
+  }
+
+  private static long round(long acc, long input) {
+    acc += input * PRIME2;
+    acc = Long.rotateLeft(acc, 31);
+    return acc * PRIME1;
+  }
+
+  private static long mergeRound(long acc, long value) {
+    acc ^= round(0, value);
+    return acc * PRIME1 + PRIME4;
+  }
+}
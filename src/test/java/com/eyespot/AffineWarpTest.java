@@ -0,0 +1,147 @@
+package com.eyespot;
+
+import static com.eyespot.TestImages.randomOpaqueImage;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.eyespot.imageparser.IndexedImage;
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.transform.AffineWarp;
+import com.eyespot.imageparser.transform.AffineWarp.Sampling;
+import com.eyespot.imageparser.transform.Orientation;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class AffineWarpTest {
+  private static final int BACKGROUND = 0xFFFFFFFF;
+
+  @Test
+  void GivenIdentity_WhenWarping_ThenImageIsUnchanged() {
+    PixelBuffer source = randomOpaqueImage(31, 17, 41);
+    for (Sampling sampling : Sampling.values()) {
+      PixelBuffer warped = AffineWarp.identity().apply(source, 31, 17, sampling, BACKGROUND);
+      assertTrue(warped.contentEquals(source), sampling.toString());
+    }
+  }
+
+  @Test
+  void GivenWholePixelTranslation_WhenWarping_ThenPixelsMoveAndGapsAreBackground() {
+    PixelBuffer source = randomOpaqueImage(20, 10, 41);
+    AffineWarp shift = AffineWarp.identity().translate(3, -2);
+    for (Sampling sampling : Sampling.values()) {
+      PixelBuffer warped = shift.apply(source, 20, 10, sampling, BACKGROUND);
+      for (int y = 0; y < 10; y++) {
+        for (int x = 0; x < 20; x++) {
+          int expected = x < 3 || y >= 8 ? BACKGROUND : source.getARGB(x - 3, y + 2);
+          assertEquals(expected, warped.getARGB(x, y), sampling + " at " + x + "," + y);
+        }
+      }
+    }
+  }
+
+  @Test
+  void GivenQuarterTurnAboutCentre_WhenWarping_ThenResultMatchesExactRotation() {
+    PixelBuffer source = randomOpaqueImage(40, 40, 41);
+    AffineWarp turn = AffineWarp.rotation(Math.PI / 2, 20, 20);
+    PixelBuffer warped = turn.apply(source, 40, 40, Sampling.NEAREST, BACKGROUND);
+    assertTrue(warped.contentEquals(Orientation.rotate90(source)));
+  }
+
+  @Test
+  void GivenGeneralWarp_WhenSamplingNearest_ThenEveryPixelMatchesDirectInverseMapping() {
+    PixelBuffer source = randomOpaqueImage(90, 70, 41);
+    AffineWarp warp =
+        AffineWarp.identity()
+            .rotate(Math.toRadians(7))
+            .shear(0.1, -0.05)
+            .scale(1.3, 0.9)
+            .translate(5, 12);
+    PixelBuffer warped = warp.apply(source, 120, 80, Sampling.NEAREST, BACKGROUND);
+
+    // invert the warp numerically from where it sends the origin and the unit vectors
+    double[] origin = warp.map(0, 0);
+    double[] ex = warp.map(1, 0);
+    double[] ey = warp.map(0, 1);
+    double a = ex[0] - origin[0];
+    double b = ey[0] - origin[0];
+    double c = ex[1] - origin[1];
+    double d = ey[1] - origin[1];
+    double determinant = a * d - b * c;
+    for (int y = 0; y < 80; y++) {
+      for (int x = 0; x < 120; x++) {
+        double tx = x + 0.5 - origin[0];
+        double ty = y + 0.5 - origin[1];
+        double sx = (d * tx - b * ty) / determinant;
+        double sy = (a * ty - c * tx) / determinant;
+        if (Math.abs(sx - Math.round(sx)) < 1e-3 || Math.abs(sy - Math.round(sy)) < 1e-3) {
+          continue; // too close to a pixel boundary for the fixed-point rounding to agree
+        }
+        int col = (int) Math.floor(sx);
+        int row = (int) Math.floor(sy);
+        boolean isInside = col >= 0 && col < 90 && row >= 0 && row < 70;
+        int expected = isInside ? source.getARGB(col, row) : BACKGROUND;
+        assertEquals(expected, warped.getARGB(x, y), "at " + x + "," + y);
+      }
+    }
+  }
+
+  @Test
+  void GivenHalfPixelShift_WhenSamplingBilinear_ThenNeighboursAreAveraged() {
+    PixelBuffer source = new PixelBuffer(4, 1);
+    for (int x = 0; x < 4; x++) {
+      source.setARGB(x, 0, 0xFF000000 | x * 0x404040);
+    }
+    PixelBuffer warped =
+        AffineWarp.identity().translate(0.5, 0).apply(source, 4, 1, Sampling.BILINEAR, 0);
+    assertEquals(0xFF202020, warped.getARGB(1, 0));
+    assertEquals(0xFF606060, warped.getARGB(2, 0));
+    assertEquals(0xFFA0A0A0, warped.getARGB(3, 0));
+  }
+
+  @Test
+  void GivenTransparentNeighbour_WhenSamplingBilinear_ThenItsColourDoesNotBleed() {
+    PixelBuffer source = new PixelBuffer(2, 1);
+    source.setARGB(0, 0, 0x00FF0000);
+    source.setARGB(1, 0, 0xFF0000FF);
+    PixelBuffer warped =
+        AffineWarp.identity().translate(0.5, 0).apply(source, 2, 1, Sampling.BILINEAR, 0);
+    assertEquals(0x800000FF, warped.getARGB(1, 0));
+  }
+
+  @Test
+  void GivenLargeIndexedScan_WhenDeskewing_ThenIndicesMatchNearestArgbWarp() {
+    int width = 900;
+    int height = 700;
+    Random random = new Random(41);
+    byte[] indices = new byte[width * height];
+    for (int i = 0; i < indices.length; i++) {
+      indices[i] = (byte) (random.nextInt(8) == 0 ? 1 : 0);
+    }
+    IndexedImage scan =
+        new IndexedImage(width, height, new int[] {BACKGROUND, 0xFF000000}, indices);
+    AffineWarp deskew = AffineWarp.rotation(Math.toRadians(-1.5), width / 2.0, height / 2.0);
+
+    IndexedImage straight = deskew.apply(scan, width, height, 0);
+    assertArrayEquals(scan.getPalette(), straight.getPalette());
+    PixelBuffer expected =
+        deskew.apply(scan.toPixelBuffer(), width, height, Sampling.NEAREST, BACKGROUND);
+    assertTrue(straight.toPixelBuffer().contentEquals(expected));
+  }
+
+  @Test
+  void GivenInvalidArguments_WhenWarping_ThenExceptionIsThrown() {
+    PixelBuffer source = randomOpaqueImage(4, 4, 41);
+    IndexedImage indexed = new IndexedImage(1, 1, new int[] {0}, new byte[1]);
+    AffineWarp flat = AffineWarp.identity().scale(1, 0);
+    assertThrows(IllegalStateException.class, () -> flat.apply(source, 4, 4, Sampling.NEAREST, 0));
+    assertThrows(
+        IllegalArgumentException.class, () -> AffineWarp.identity().apply(indexed, 1, 1, 1));
+    assertThrows(
+        IllegalArgumentException.class, () -> AffineWarp.identity().apply(indexed, -1, 1, 0));
+    assertThrows(
+        NullPointerException.class,
+        () -> AffineWarp.identity().apply((PixelBuffer) null, 1, 1, Sampling.NEAREST, 0));
+  }
+}
@@ -0,0 +1,146 @@
+package com.eyespot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.eyespot.imageparser.ColourQuantizer;
+import com.eyespot.imageparser.IndexedImage;
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import com.eyespot.imageparser.bitmap.BitmapWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import org.junit.jupiter.api.Test;
+
+class ColourQuantizerTest {
+
+  // smooth gradients in all three channels, with far more than 256 colours
+  private static PixelBuffer gradient(int width, int height) {
+    PixelBuffer pixels = new PixelBuffer(width, height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        int red = x * 255 / (width - 1);
+        int green = y * 255 / (height - 1);
+        int blue = (x + y) * 255 / (width + height - 2);
+        pixels.setARGB(x, y, 0xFF000000 | red << 16 | green << 8 | blue);
+      }
+    }
+    return pixels;
+  }
+
+  private static double meanError(PixelBuffer expected, PixelBuffer actual) {
+    long total = 0;
+    for (int y = 0; y < expected.height(); y++) {
+      for (int x = 0; x < expected.width(); x++) {
+        int a = expected.getARGB(x, y);
+        int b = actual.getARGB(x, y);
+        for (int shift = 0; shift <= 16; shift += 8) {
+          total += Math.abs(((a >>> shift) & 0xFF) - ((b >>> shift) & 0xFF));
+        }
+      }
+    }
+    return total / (3.0 * expected.width() * expected.height());
+  }
+
+  @Test
+  void GivenFewColours_WhenQuantized_ThenImageIsKeptExactly() {
+    PixelBuffer pixels = new PixelBuffer(4, 1, new int[] {0xFF112233, 0x80FF0000, 0xFF112233, 0});
+
+    IndexedImage image = new ColourQuantizer(16, true).quantize(pixels);
+
+    assertEquals(3, image.getPalette().length);
+    assertTrue(image.toPixelBuffer().contentEquals(pixels));
+  }
+
+  @Test
+  void GivenGradient_WhenQuantizedTo256Colours_ThenColoursStayClose() {
+    PixelBuffer pixels = gradient(640, 480);
+
+    IndexedImage image = new ColourQuantizer(256, false).quantize(pixels);
+
+    assertTrue(image.getPalette().length <= 256);
+    double error = meanError(pixels, image.toPixelBuffer());
+    assertTrue(error < 6, "mean error " + error);
+  }
+
+  @Test
+  void GivenGradient_WhenQuantizedWithDithering_ThenLocalAveragesArePreserved() {
+    PixelBuffer pixels = gradient(256, 256);
+
+    PixelBuffer plain = new ColourQuantizer(16, false).quantize(pixels).toPixelBuffer();
+    IndexedImage dithered = new ColourQuantizer(16, true).quantize(pixels);
+
+    assertTrue(dithered.getPalette().length <= 16);
+    // averaged over 8x8 blocks, error diffusion is much closer to the original than plain mapping
+    double plainError = meanError(blur(pixels), blur(plain));
+    double ditheredError = meanError(blur(pixels), blur(dithered.toPixelBuffer()));
+    assertTrue(ditheredError < plainError / 2, ditheredError + " vs " + plainError);
+  }
+
+  private static PixelBuffer blur(PixelBuffer pixels) {
+    int size = 8;
+    PixelBuffer blocks = new PixelBuffer(pixels.width() / size, pixels.height() / size);
+    for (int by = 0; by < blocks.height(); by++) {
+      for (int bx = 0; bx < blocks.width(); bx++) {
+        int[] sums = new int[3];
+        for (int y = by * size; y < (by + 1) * size; y++) {
+          for (int x = bx * size; x < (bx + 1) * size; x++) {
+            int argb = pixels.getARGB(x, y);
+            sums[0] += (argb >>> 16) & 0xFF;
+            sums[1] += (argb >>> 8) & 0xFF;
+            sums[2] += argb & 0xFF;
+          }
+        }
+        int n = size * size;
+        blocks.setARGB(
+            bx, by, 0xFF000000 | (sums[0] / n) << 16 | (sums[1] / n) << 8 | (sums[2] / n));
+      }
+    }
+    return blocks;
+  }
+
+  @Test
+  void GivenTransparentPixels_WhenQuantized_ThenTheyShareATransparentEntry() {
+    PixelBuffer pixels = gradient(64, 64);
+    for (int x = 0; x < 64; x++) {
+      pixels.setARGB(x, 10, x);
+    }
+
+    IndexedImage image = new ColourQuantizer(16, true).quantize(pixels);
+
+    assertTrue(image.getPalette().length <= 16);
+    for (int x = 0; x < 64; x++) {
+      assertEquals(0, image.getARGB(x, 10));
+    }
+    assertEquals(0xFF, image.getARGB(5, 20) >>> 24);
+  }
+
+  @Test
+  void GivenLargeImage_WhenQuantizedInParallel_ThenResultIsDeterministic() {
+    PixelBuffer pixels = gradient(1500, 900);
+    ColourQuantizer quantizer = new ColourQuantizer(256, false);
+
+    IndexedImage first = quantizer.quantize(pixels);
+    IndexedImage second = quantizer.quantize(pixels);
+
+    assertTrue(first.toPixelBuffer().contentEquals(second.toPixelBuffer()));
+  }
+
+  @Test
+  void GivenQuantizedImage_WhenWrittenAs8Bpp_ThenParserReadsPaletteColours() throws IOException {
+    IndexedImage image = new ColourQuantizer(256, true).quantize(gradient(100, 80));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    new BitmapWriter(BitmapWriter.Format.INDEXED8).write(image, Channels.newChannel(out));
+
+    assertTrue(new BitmapParser(out.toByteArray()).decode().contentEquals(image.toPixelBuffer()));
+  }
+
+  @Test
+  void GivenInvalidPaletteSize_WhenCreated_ThenThrowsIllegalArgumentException() {
+    assertThrows(IllegalArgumentException.class, () -> new ColourQuantizer(1, false));
+    assertThrows(IllegalArgumentException.class, () -> new ColourQuantizer(257, false));
+  }
+}
@@ -0,0 +1,197 @@
+package com.eyespot;
+
+import static com.eyespot.TestImages.randomImage;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.transform.Convolution;
+import com.eyespot.imageparser.transform.Convolution.EdgeMode;
+import com.eyespot.imageparser.transform.Kernel;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+class ConvolutionTest {
+
+  // the pixel that stands in for (col, row), or 0 outside the image for ZERO
+  private static int sample(PixelBuffer pixels, int col, int row, EdgeMode mode) {
+    int x = edge(col, pixels.width(), mode);
+    int y = edge(row, pixels.height(), mode);
+    return x < 0 || y < 0 ? 0 : pixels.getARGB(x, y);
+  }
+
+  private static int edge(int index, int size, EdgeMode mode) {
+    while (index < 0 || index >= size) {
+      switch (mode) {
+        case CLAMP:
+          return Math.max(0, Math.min(size - 1, index));
+        case REFLECT:
+          index = index < 0 ? -index : 2 * (size - 1) - index;
+          break;
+        case WRAP:
+          index = index < 0 ? index + size : index - size;
+          break;
+        default:
+          return -1;
+      }
+    }
+    return index;
+  }
+
+  // a direct convolution in double precision, of premultiplied colours when alpha is convolved
+  private static int[] reference(PixelBuffer pixels, Kernel kernel, EdgeMode mode, int x, int y) {
+    boolean isAlphaConvolved = Math.abs(kernel.sum() - 1) < 1e-4;
+    double[] sums = new double[4];
+    for (int j = 0; j < kernel.height(); j++) {
+      for (int i = 0; i < kernel.width(); i++) {
+        int pixel = sample(pixels, x + i - kernel.width() / 2, y + j - kernel.height() / 2, mode);
+        double weight = kernel.weight(i, j) * (isAlphaConvolved ? (pixel >>> 24) / 255.0 : 1);
+        sums[0] += kernel.weight(i, j) * (pixel >>> 24);
+        for (int c = 1; c < 4; c++) {
+          sums[c] += weight * ((pixel >>> (24 - 8 * c)) & 0xFF);
+        }
+      }
+    }
+    int[] channels = new int[4];
+    if (!isAlphaConvolved) {
+      channels[0] = pixels.getARGB(x, y) >>> 24;
+    } else {
+      channels[0] = clamp(sums[0]);
+      if (channels[0] == 0) {
+        return channels;
+      }
+    }
+    double scale = isAlphaConvolved ? 255 / Math.min(sums[0], 255) : 1;
+    for (int c = 1; c < 4; c++) {
+      channels[c] = clamp(sums[c] * scale);
+    }
+    return channels;
+  }
+
+  private static int clamp(double value) {
+    return (int) Math.max(0, Math.min(255, Math.round(value)));
+  }
+
+  private static void assertMatchesReference(
+      PixelBuffer source, PixelBuffer actual, Kernel kernel, EdgeMode mode) {
+    assertEquals(source.width(), actual.width());
+    assertEquals(source.height(), actual.height());
+    for (int y = 0; y < source.height(); y++) {
+      for (int x = 0; x < source.width(); x++) {
+        int[] expected = reference(source, kernel, mode, x, y);
+        int pixel = actual.getARGB(x, y);
+        for (int c = 0; c < 4; c++) {
+          int channel = (pixel >>> (24 - 8 * c)) & 0xFF;
+          int difference = Math.abs(expected[c] - channel);
+          if (difference > 1) {
+            assertEquals(expected[c], channel, "channel " + c + " at " + x + "," + y);
+          }
+        }
+      }
+    }
+  }
+
+  private static Stream<Arguments> kernelsAndEdgeModes() {
+    Kernel[] kernels = {
+      Kernel.gaussian(1.5),
+      Kernel.box(2),
+      Kernel.of(3, 1, 1, 1, 1),
+      Kernel.sobelX(),
+      Kernel.sharpen(),
+      Kernel.of(3, 5, 0, 1, 0, 2, 0, -1, 0, 0, 3, 1, 1, 1, 0, -2, 0)
+    };
+    Stream.Builder<Arguments> arguments = Stream.builder();
+    for (Kernel kernel : kernels) {
+      for (EdgeMode mode : EdgeMode.values()) {
+        arguments.add(Arguments.of(kernel, mode));
+      }
+    }
+    return arguments.build();
+  }
+
+  @ParameterizedTest
+  @MethodSource("kernelsAndEdgeModes")
+  void GivenKernelAndEdgeMode_WhenConvolvingAcrossTiles_ThenResultMatchesDirectConvolution(
+      Kernel kernel, EdgeMode mode) {
+    // wide and tall enough to span several tiles, with partial tiles at the right and bottom
+    PixelBuffer source = randomImage(300, 140, 38);
+    PixelBuffer actual = new Convolution(kernel, mode).apply(source);
+    assertMatchesReference(source, actual, kernel, mode);
+  }
+
+  @Test
+  void GivenImageSmallerThanKernel_WhenConvolving_ThenEdgesAreSampledRepeatedly() {
+    PixelBuffer source = randomImage(2, 3, 38);
+    for (EdgeMode mode : EdgeMode.values()) {
+      Kernel kernel = Kernel.gaussian(2);
+      assertMatchesReference(source, new Convolution(kernel, mode).apply(source), kernel, mode);
+    }
+  }
+
+  @Test
+  void GivenView_WhenConvolving_ThenResultMatchesCompactCopy() {
+    PixelBuffer view = randomImage(120, 90, 38).crop(10, 5, 70, 80).rotate90().flipHorizontal();
+    Convolution convolution = new Convolution(Kernel.gaussian(1), EdgeMode.CLAMP);
+    assertTrue(convolution.apply(view).contentEquals(convolution.apply(view.compact())));
+  }
+
+  @Test
+  void GivenUniformImage_WhenBlurring_ThenImageIsUnchanged() {
+    PixelBuffer source = new PixelBuffer(50, 40);
+    for (int y = 0; y < 40; y++) {
+      for (int x = 0; x < 50; x++) {
+        source.setARGB(x, y, 0xC0336699);
+      }
+    }
+    for (Kernel kernel : new Kernel[] {Kernel.box(4), Kernel.gaussian(3), Kernel.sharpen()}) {
+      assertTrue(new Convolution(kernel, EdgeMode.REFLECT).apply(source).contentEquals(source));
+    }
+  }
+
+  @Test
+  void GivenOpaqueShapeOnTransparentBackground_WhenBlurring_ThenEdgesKeepTheirColour() {
+    PixelBuffer source = new PixelBuffer(40, 40);
+    for (int y = 10; y < 30; y++) {
+      for (int x = 10; x < 30; x++) {
+        source.setARGB(x, y, 0xFFE03010);
+      }
+    }
+    PixelBuffer blurred = new Convolution(Kernel.gaussian(2), EdgeMode.ZERO).apply(source);
+
+    int edge = blurred.getARGB(8, 20);
+    assertTrue((edge >>> 24) > 0 && (edge >>> 24) < 255);
+    assertEquals(0xE03010, edge & 0xFFFFFF);
+    assertEquals(0, blurred.getARGB(0, 0));
+  }
+
+  @Test
+  void GivenCommonKernels_WhenCreated_ThenSeparabilityIsDetected() {
+    assertTrue(Kernel.gaussian(2).isSeparable());
+    assertFalse(Kernel.gaussian(2).isBox());
+    assertTrue(Kernel.box(3).isSeparable());
+    assertTrue(Kernel.box(3).isBox());
+    assertTrue(Kernel.sobelX().isSeparable());
+    assertTrue(Kernel.sobelY().isSeparable());
+    assertFalse(Kernel.sharpen().isSeparable());
+    assertFalse(Kernel.of(3, 3, 1, 0, 0, 0, 1, 0, 0, 0, 1).isSeparable());
+    assertEquals(1, Kernel.gaussian(0.8).sum(), 1e-5);
+    assertEquals(0, Kernel.sobelX().sum());
+  }
+
+  @Test
+  void GivenInvalidArguments_WhenCreatingKernel_ThenExceptionIsThrown() {
+    assertThrows(IllegalArgumentException.class, () -> Kernel.of(2, 1, 1, 1));
+    assertThrows(IllegalArgumentException.class, () -> Kernel.of(3, 3, 1, 1));
+    assertThrows(IllegalArgumentException.class, () -> Kernel.of(1, 1, Float.NaN));
+    assertThrows(IllegalArgumentException.class, () -> Kernel.gaussian(0));
+    assertThrows(IllegalArgumentException.class, () -> Kernel.box(-1));
+    assertThrows(IndexOutOfBoundsException.class, () -> Kernel.sobelX().weight(3, 0));
+    assertThrows(NullPointerException.class, () -> new Convolution(null, EdgeMode.CLAMP));
+    assertThrows(NullPointerException.class, () -> new Convolution(Kernel.box(1), null));
+  }
+}
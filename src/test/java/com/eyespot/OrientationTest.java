@@ -0,0 +1,118 @@
+package com.eyespot;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.transform.Orientation;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+import org.junit.jupiter.api.Test;
+
+class OrientationTest {
+
+  private static PixelBuffer numbered(int width, int height) {
+    int[] pixels = new int[width * height];
+    for (int i = 0; i < pixels.length; i++) {
+      pixels[i] = i;
+    }
+    return new PixelBuffer(width, height, pixels);
+  }
+
+  private static void assertCopyMatchesView(
+      PixelBuffer source, UnaryOperator<PixelBuffer> copy, UnaryOperator<PixelBuffer> view) {
+    PixelBuffer expected = view.apply(source);
+    PixelBuffer actual = copy.apply(source);
+    assertTrue(actual.isPacked());
+    assertNotSame(source.getPixels(), actual.getPixels());
+    assertEquals(expected.isOriginUpperLeft(), actual.isOriginUpperLeft());
+    assertTrue(actual.contentEquals(expected));
+  }
+
+  private static void assertAllCopiesMatchViews(PixelBuffer source) {
+    assertCopyMatchesView(source, Orientation::rotate90, PixelBuffer::rotate90);
+    assertCopyMatchesView(source, Orientation::rotate180, PixelBuffer::rotate180);
+    assertCopyMatchesView(source, Orientation::rotate270, PixelBuffer::rotate270);
+    assertCopyMatchesView(source, Orientation::transpose, PixelBuffer::transpose);
+  }
+
+  @Test
+  void GivenImageSpanningSeveralTiles_WhenRotatingCopies_ThenResultsMatchViews() {
+    assertAllCopiesMatchViews(numbered(150, 97));
+    assertAllCopiesMatchViews(numbered(150, 97).crop(7, 3, 130, 70));
+    PixelBuffer lowerLeft = numbered(65, 64);
+    lowerLeft.setOriginLowerLeft();
+    assertAllCopiesMatchViews(lowerLeft);
+  }
+
+  @Test
+  void GivenSinglePixel_WhenTransposing_ThenCopyDoesNotShareTheArray() {
+    assertAllCopiesMatchViews(numbered(1, 1));
+  }
+
+  @Test
+  void GivenLargeImage_WhenRotatingInParallel_ThenEveryPixelMoves() {
+    int width = 1100;
+    int height = 800;
+    PixelBuffer rotated = Orientation.rotate90(numbered(width, height));
+    assertEquals(height, rotated.width());
+    assertEquals(width, rotated.height());
+    for (int row = 0; row < width; row++) {
+      for (int col = 0; col < height; col++) {
+        assertEquals((height - 1 - col) * width + row, rotated.getARGB(col, row));
+      }
+    }
+  }
+
+  private static void assertInPlaceMatchesView(
+      Consumer<PixelBuffer> inPlace, UnaryOperator<PixelBuffer> view) {
+    for (int[] size : new int[][] {{1, 1}, {4, 3}, {5, 6}, {700, 401}}) {
+      PixelBuffer expected = view.apply(numbered(size[0], size[1])).compact();
+      PixelBuffer actual = numbered(size[0], size[1]);
+      inPlace.accept(actual);
+      assertTrue(actual.contentEquals(expected), size[0] + "x" + size[1]);
+    }
+
+    // only the pixels of a view move
+    PixelBuffer whole = numbered(20, 15);
+    PixelBuffer region = whole.crop(3, 2, 9, 7).flipHorizontal();
+    PixelBuffer expected = view.apply(region).compact();
+    inPlace.accept(region);
+    assertTrue(region.contentEquals(expected));
+    int[] untouched = numbered(20, 15).getPixels();
+    for (int i = 0; i < untouched.length; i++) {
+      int col = i % 20;
+      int row = i / 20;
+      if (col < 3 || col >= 12 || row < 2 || row >= 9) {
+        assertEquals(untouched[i], whole.getPixels()[i]);
+      }
+    }
+  }
+
+  @Test
+  void GivenImages_WhenRotating180InPlace_ThenResultMatchesView() {
+    assertInPlaceMatchesView(Orientation::rotate180InPlace, PixelBuffer::rotate180);
+  }
+
+  @Test
+  void GivenImages_WhenFlippingHorizontallyInPlace_ThenResultMatchesView() {
+    assertInPlaceMatchesView(Orientation::flipHorizontalInPlace, PixelBuffer::flipHorizontal);
+  }
+
+  @Test
+  void GivenImages_WhenFlippingVerticallyInPlace_ThenResultMatchesView() {
+    assertInPlaceMatchesView(Orientation::flipVerticalInPlace, PixelBuffer::flipVertical);
+  }
+
+  @Test
+  void GivenImage_WhenRotating180InPlaceTwice_ThenOriginalIsRestored() {
+    PixelBuffer pixels = numbered(33, 21);
+    Orientation.rotate180InPlace(pixels);
+    assertFalse(pixels.contentEquals(numbered(33, 21)));
+    Orientation.rotate180InPlace(pixels);
+    assertArrayEquals(numbered(33, 21).getPixels(), pixels.getPixels());
+  }
+}
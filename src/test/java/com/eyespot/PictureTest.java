@@ -14,6 +14,7 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.when;
 
 import com.eyespot.imageparser.Picture;
+import com.eyespot.imageparser.PixelBuffer;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.WindowEvent;
@@ -21,6 +22,7 @@ import java.awt.event.WindowListener;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.lang.reflect.Field;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -154,6 +156,39 @@ class PictureTest {
     assertEquals(expected, picture.toString());
   }
 
+  @Test
+  void GivenPicture_WhenWriteTo_ThenMatchesFormattedDump() throws URISyntaxException, IOException {
+    URL resource = PictureTest.class.getClassLoader().getResource("24bit.bmp");
+    Assertions.assertNotNull(resource);
+    Picture bitmap = new Picture(Paths.get(resource.toURI()));
+    bitmap.setOriginLowerLeft();
+
+    StringBuilder expected = new StringBuilder();
+    expected
+        .append(bitmap.width())
+        .append("-by-")
+        .append(bitmap.height())
+        .append(" picture (RGB values given in hex)\n");
+    for (int row = 0; row < bitmap.height(); row++) {
+      for (int col = 0; col < bitmap.width(); col++) {
+        expected.append(String.format("#%06X ", bitmap.getARGB(col, row) & 0xFFFFFF));
+      }
+      expected.append("\n");
+    }
+    StringWriter writer = new StringWriter();
+    bitmap.writeTo(writer);
+
+    assertEquals(expected.toString().trim(), writer.toString());
+    assertEquals(writer.toString(), bitmap.toString());
+  }
+
+  @Test
+  void GivenEmptyPicture_WhenToStringCalled_ThenReturnsHeaderOnly() {
+    Picture empty = Picture.fromPixels(new PixelBuffer(0, 3));
+    assertEquals("0-by-3 picture (RGB values given in hex)", empty.toString());
+    assertThrows(IllegalArgumentException.class, () -> empty.writeTo(null));
+  }
+
   @Test
   void GivenPicture_WhenHashCodeCalled_ThenThrowsException() {
     assertThrows(UnsupportedOperationException.class, () -> picture.hashCode());
@@ -301,11 +336,11 @@ class PictureTest {
 
   @Test
   void GivenFile_WhenSaveException_ThenThrowsException() {
-    File file = new File("image.bmp");
+    File file = new File("image.jpg");
 
     try (MockedStatic<ImageIO> mockedImageIO = mockStatic(ImageIO.class)) {
       mockedImageIO
-          .when(() -> ImageIO.write(any(), eq("bmp"), eq(file)))
+          .when(() -> ImageIO.write(any(), eq("jpg"), eq(file)))
           .thenThrow(new IOException("disk error"));
 
       IllegalArgumentException ex =
@@ -317,17 +352,17 @@ class PictureTest {
 
   @Test
   void GiveFIle_WhenSaveValidFormatWithoutTransparency_ThenSuccess() {
-    File file = new File("image.bmp");
+    File file = new File("image.jpg");
 
     try (MockedStatic<ImageIO> mockedImageIO = mockStatic(ImageIO.class)) {
       mockedImageIO
-          .when(() -> ImageIO.write(any(BufferedImage.class), eq("bmp"), eq(file)))
+          .when(() -> ImageIO.write(any(BufferedImage.class), eq("jpg"), eq(file)))
           .thenReturn(false)
           .thenReturn(true);
 
       assertDoesNotThrow(() -> picture.save(file));
       mockedImageIO.verify(
-          () -> ImageIO.write(any(BufferedImage.class), eq("bmp"), eq(file)), times(2));
+          () -> ImageIO.write(any(BufferedImage.class), eq("jpg"), eq(file)), times(2));
     }
   }
 
@@ -481,4 +516,64 @@ class PictureTest {
 
     assertEquals("/tmp/image.png", pic.lastSavedPath);
   }
+
+  @Test
+  void GivenLazyPicture_WhenDimensionsRequested_ThenPixelsAreNotDecoded()
+      throws URISyntaxException, IOException {
+    URL resource = PictureTest.class.getClassLoader().getResource("8bit.bmp");
+    Assertions.assertNotNull(resource);
+    Picture lazy = Picture.lazy(Paths.get(resource.toURI()));
+    Picture eager = new Picture(Paths.get(resource.toURI()));
+
+    assertEquals(eager.width(), lazy.width());
+    assertEquals(eager.height(), lazy.height());
+    assertEquals(eager.hasAlpha(), lazy.hasAlpha());
+    assertFalse(lazy.isDecoded());
+    assertTrue(eager.isDecoded());
+  }
+
+  @Test
+  void GivenLazyPicture_WhenPixelRequested_ThenDecodesOnce()
+      throws URISyntaxException, IOException {
+    URL resource = PictureTest.class.getClassLoader().getResource("24bit.bmp");
+    Assertions.assertNotNull(resource);
+    Picture lazy = Picture.lazy(Paths.get(resource.toURI()));
+    Picture eager = new Picture(Paths.get(resource.toURI()));
+
+    assertEquals(eager.getARGB(0, 0), lazy.getARGB(0, 0));
+    assertTrue(lazy.isDecoded());
+    assertEquals(eager, lazy);
+    assertFalse(lazy.hasAlpha());
+  }
+
+  @Test
+  void GivenLazyPictureWithoutAlphaInHeaders_WhenAlphaRequested_ThenDecodedPixelsAreKept()
+      throws URISyntaxException, IOException {
+    URL resource = PictureTest.class.getClassLoader().getResource("24bit.bmp");
+    Assertions.assertNotNull(resource);
+    Picture lazy = Picture.lazy(Paths.get(resource.toURI()));
+    Picture eager = new Picture(Paths.get(resource.toURI()));
+
+    assertFalse(lazy.hasAlpha());
+    assertTrue(lazy.isDecoded());
+    assertEquals(eager, lazy);
+  }
+
+  @Test
+  void GivenLazyPictureWithLowerLeftOrigin_WhenDecoded_ThenOriginIsApplied()
+      throws URISyntaxException, IOException {
+    URL resource = PictureTest.class.getClassLoader().getResource("24bit.bmp");
+    Assertions.assertNotNull(resource);
+    Picture lazy = Picture.lazy(Paths.get(resource.toURI()));
+    Picture eager = new Picture(Paths.get(resource.toURI()));
+    lazy.setOriginLowerLeft();
+
+    assertFalse(lazy.isDecoded());
+    assertEquals(eager.getARGB(0, eager.height() - 1), lazy.getARGB(0, 0));
+  }
+
+  @Test
+  void GivenNullPath_WhenLazyCalled_ThenThrowsException() {
+    assertThrows(IllegalArgumentException.class, () -> Picture.lazy(null));
+  }
 }
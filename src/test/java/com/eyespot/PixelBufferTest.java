@@ -0,0 +1,329 @@
+package com.eyespot;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.eyespot.imageparser.Picture;
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Paths;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class PixelBufferTest {
+
+  @Test
+  void GivenDimensions_WhenCreated_ThenPixelsAreTransparentBlack() {
+    PixelBuffer buffer = new PixelBuffer(3, 2);
+    assertEquals(3, buffer.width());
+    assertEquals(2, buffer.height());
+    assertEquals(6, buffer.getPixels().length);
+    assertEquals(0, buffer.getARGB(2, 1));
+  }
+
+  @Test
+  void GivenNegativeDimensions_WhenCreated_ThenThrowsIllegalArgumentException() {
+    assertThrows(IllegalArgumentException.class, () -> new PixelBuffer(-1, 2));
+    assertThrows(IllegalArgumentException.class, () -> new PixelBuffer(2, -1));
+  }
+
+  @Test
+  void GivenHugeDimensions_WhenCreated_ThenThrowsIllegalArgumentException() {
+    assertThrows(IllegalArgumentException.class, () -> new PixelBuffer(60000, 60000));
+  }
+
+  @Test
+  void GivenMismatchedArray_WhenCreated_ThenThrowsIllegalArgumentException() {
+    assertThrows(IllegalArgumentException.class, () -> new PixelBuffer(2, 2, new int[3]));
+  }
+
+  @Test
+  void GivenLowerLeftOrigin_WhenGetARGB_ThenRowIsFlipped() {
+    int[] pixels = {1, 2, 3, 4};
+    PixelBuffer buffer = new PixelBuffer(2, 2, pixels);
+    assertEquals(1, buffer.getARGB(0, 0));
+
+    buffer.setOriginLowerLeft();
+    assertFalse(buffer.isOriginUpperLeft());
+    assertEquals(3, buffer.getARGB(0, 0));
+
+    buffer.setARGB(1, 0, 9);
+    assertEquals(9, pixels[3]);
+
+    buffer.setOriginUpperLeft();
+    assertEquals(9, buffer.getARGB(1, 1));
+  }
+
+  @Test
+  void GivenInvalidCoordinates_WhenGetARGB_ThenThrowsIndexOutOfBounds() {
+    PixelBuffer buffer = new PixelBuffer(2, 2);
+    assertThrows(IndexOutOfBoundsException.class, () -> buffer.getARGB(2, 0));
+    assertThrows(IndexOutOfBoundsException.class, () -> buffer.getARGB(0, -1));
+    assertThrows(IndexOutOfBoundsException.class, () -> buffer.setARGB(-1, 0, 0));
+  }
+
+  @Test
+  void GivenOpaqueAndTranslucentPixels_WhenHasTransparentPixel_ThenReturnsCorrectValue() {
+    PixelBuffer buffer = new PixelBuffer(2, 1, new int[] {0xFF000000, 0xFFFFFFFF});
+    assertFalse(buffer.hasTransparentPixel());
+    buffer.setARGB(1, 0, 0x80FFFFFF);
+    assertTrue(buffer.hasTransparentPixel());
+  }
+
+  @Test
+  void GivenBitmap_WhenDecode_ThenMatchesGetPixels() throws URISyntaxException, IOException {
+    URL resource = PixelBufferTest.class.getClassLoader().getResource("8bit_compressed.bmp");
+    Assertions.assertNotNull(resource);
+    BitmapParser parser = new BitmapParser(Paths.get(resource.toURI()));
+
+    PixelBuffer buffer = parser.decode();
+    int[][] pixels = parser.getPixels();
+
+    assertEquals(parser.getWidth(), buffer.width());
+    assertEquals(parser.getHeight(), buffer.height());
+    assertArrayEquals(pixels, buffer.toArray());
+  }
+
+  @Test
+  void GivenPixelBuffer_WhenWrappedInPicture_ThenPixelsAreShared() {
+    PixelBuffer buffer = new PixelBuffer(2, 1, new int[] {0xFF112233, 0xFF445566});
+    Picture picture = Picture.fromPixels(buffer);
+
+    assertSame(buffer, picture.getPixelBuffer());
+    assertEquals(2, picture.width());
+    assertFalse(picture.hasAlpha());
+
+    picture.setARGB(0, 0, 0x00000000);
+    assertEquals(0, buffer.getARGB(0, 0));
+    assertTrue(picture.hasAlpha());
+  }
+
+  @Test
+  void GivenNullBuffer_WhenFromPixels_ThenThrowsIllegalArgumentException() {
+    assertThrows(IllegalArgumentException.class, () -> Picture.fromPixels(null));
+  }
+
+  @Test
+  void GivenRegion_WhenBulkGetARGB_ThenCopiesRowsWithScan() {
+    PixelBuffer buffer = new PixelBuffer(3, 3, new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8});
+    int[] dst = new int[7];
+
+    buffer.getARGB(1, 1, 2, 2, dst, 1, 3);
+
+    assertArrayEquals(new int[] {0, 4, 5, 0, 7, 8, 0}, dst);
+  }
+
+  @Test
+  void GivenLowerLeftOrigin_WhenBulkGetARGB_ThenRowsAreFlipped() {
+    PixelBuffer buffer = new PixelBuffer(2, 2, new int[] {1, 2, 3, 4});
+    buffer.setOriginLowerLeft();
+    int[] dst = new int[4];
+
+    buffer.getARGB(0, 0, 2, 2, dst, 0, 2);
+
+    assertArrayEquals(new int[] {3, 4, 1, 2}, dst);
+  }
+
+  @Test
+  void GivenRegion_WhenBulkSetARGB_ThenMatchesPerPixelSet() {
+    PixelBuffer bulk = new PixelBuffer(4, 3);
+    PixelBuffer single = new PixelBuffer(4, 3);
+    bulk.setOriginLowerLeft();
+    single.setOriginLowerLeft();
+    int[] src = {10, 11, 12, 13, 14, 15};
+
+    bulk.setARGB(1, 1, 3, 2, src, 0, 3);
+    for (int j = 0; j < 2; j++) {
+      for (int i = 0; i < 3; i++) {
+        single.setARGB(1 + i, 1 + j, src[j * 3 + i]);
+      }
+    }
+
+    assertArrayEquals(single.getPixels(), bulk.getPixels());
+  }
+
+  @Test
+  void GivenInvalidRegion_WhenBulkAccess_ThenThrowsIndexOutOfBounds() {
+    PixelBuffer buffer = new PixelBuffer(2, 2);
+    int[] array = new int[4];
+    assertThrows(IndexOutOfBoundsException.class, () -> buffer.getARGB(1, 0, 2, 1, array, 0, 2));
+    assertThrows(IndexOutOfBoundsException.class, () -> buffer.getARGB(0, 0, 2, 2, array, 1, 2));
+    assertThrows(IndexOutOfBoundsException.class, () -> buffer.setARGB(0, 0, 2, 2, array, 0, -2));
+    assertThrows(IndexOutOfBoundsException.class, () -> buffer.setARGB(0, 0, -1, 1, array, 0, 2));
+    assertDoesNotThrow(() -> buffer.getARGB(2, 2, 0, 0, array, 0, 0));
+  }
+
+  @Test
+  void GivenPicture_WhenBulkGetARGB_ThenMatchesPerPixelGet()
+      throws URISyntaxException, IOException {
+    URL resource = PixelBufferTest.class.getClassLoader().getResource("24bit.bmp");
+    Assertions.assertNotNull(resource);
+    Picture picture = new Picture(Paths.get(resource.toURI()));
+    int w = picture.width();
+    int h = picture.height();
+    int[] dst = new int[w * h];
+
+    picture.getARGB(0, 0, w, h, dst, 0, w);
+
+    for (int row = 0; row < h; row++) {
+      for (int col = 0; col < w; col++) {
+        assertEquals(picture.getARGB(col, row), dst[row * w + col]);
+      }
+    }
+    assertThrows(IllegalArgumentException.class, () -> picture.getARGB(0, 0, 1, 1, null, 0, 1));
+    assertThrows(IllegalArgumentException.class, () -> picture.setARGB(0, 0, 1, 1, null, 0, 1));
+  }
+
+  @Test
+  void GivenBuffersWithDifferentOrigins_WhenContentEquals_ThenComparesLogicalRows() {
+    PixelBuffer upper = new PixelBuffer(2, 2, new int[] {3, 4, 1, 2});
+    PixelBuffer lower = new PixelBuffer(2, 2, new int[] {1, 2, 3, 4});
+    lower.setOriginLowerLeft();
+
+    assertTrue(upper.contentEquals(lower));
+    assertEquals(upper.contentHash(), lower.contentHash());
+
+    lower.setARGB(1, 1, 5);
+    assertFalse(upper.contentEquals(lower));
+    assertFalse(upper.contentEquals(new PixelBuffer(4, 1, new int[] {3, 4, 1, 2})));
+    assertFalse(upper.contentEquals(null));
+  }
+
+  @Test
+  void GivenSamePixelsWithDifferentDimensions_WhenContentHash_ThenDigestsDiffer() {
+    int[] pixels = {1, 2, 3, 4, 5, 6};
+    assertTrue(
+        new PixelBuffer(2, 3, pixels).contentHash() != new PixelBuffer(3, 2, pixels).contentHash());
+  }
+
+  @Test
+  void GivenPictures_WhenPixelChanged_ThenContentHashAndEqualsFollow()
+      throws URISyntaxException, IOException {
+    URL resource = PixelBufferTest.class.getClassLoader().getResource("24bit.bmp");
+    Assertions.assertNotNull(resource);
+    Picture first = new Picture(Paths.get(resource.toURI()));
+    Picture second = Picture.lazy(Paths.get(resource.toURI()));
+
+    assertEquals(first.contentHash(), second.contentHash());
+    assertEquals(first, second);
+
+    int argb = first.getARGB(0, 0);
+    first.setARGB(0, 0, ~argb);
+    assertTrue(first.contentHash() != second.contentHash());
+    assertFalse(first.equals(second));
+
+    first.setARGB(0, 0, argb);
+    assertEquals(second.contentHash(), first.contentHash());
+    assertEquals(first, second);
+  }
+
+  @Test
+  void GivenSharedPixelBuffer_WhenWrittenDirectly_ThenContentHashIsNotStale() {
+    PixelBuffer buffer = new PixelBuffer(2, 1, new int[] {1, 2});
+    Picture picture = Picture.fromPixels(buffer);
+    long before = picture.contentHash();
+
+    buffer.getPixels()[0] = 3;
+
+    assertTrue(before != picture.contentHash());
+    assertEquals(buffer.contentHash(), picture.contentHash());
+  }
+
+  // 3-by-2 image:  1 2 3
+  //                4 5 6
+  private static PixelBuffer sample() {
+    return new PixelBuffer(3, 2, new int[] {1, 2, 3, 4, 5, 6});
+  }
+
+  @Test
+  void GivenBuffer_WhenViewed_ThenViewsShareThePixelsInTheirOwnOrientation() {
+    PixelBuffer buffer = sample();
+
+    assertArrayEquals(new int[][] {{3, 2, 1}, {6, 5, 4}}, buffer.flipHorizontal().toArray());
+    assertArrayEquals(new int[][] {{4, 5, 6}, {1, 2, 3}}, buffer.flipVertical().toArray());
+    assertArrayEquals(new int[][] {{1, 4}, {2, 5}, {3, 6}}, buffer.transpose().toArray());
+    assertArrayEquals(new int[][] {{4, 1}, {5, 2}, {6, 3}}, buffer.rotate90().toArray());
+    assertArrayEquals(new int[][] {{6, 5, 4}, {3, 2, 1}}, buffer.rotate180().toArray());
+    assertArrayEquals(new int[][] {{3, 6}, {2, 5}, {1, 4}}, buffer.rotate270().toArray());
+    assertArrayEquals(new int[][] {{5, 6}}, buffer.crop(1, 1, 2, 1).toArray());
+
+    PixelBuffer rotated = buffer.rotate90();
+    assertSame(buffer.getPixels(), rotated.getPixels());
+    rotated.setARGB(0, 0, 9);
+    assertEquals(9, buffer.getARGB(0, 1));
+    assertTrue(rotated.rotate270().contentEquals(buffer));
+  }
+
+  @Test
+  void GivenLowerLeftOrigin_WhenCrop_ThenRegionIsRelativeToOrigin() {
+    PixelBuffer buffer = sample();
+    buffer.setOriginLowerLeft();
+
+    PixelBuffer crop = buffer.crop(0, 0, 2, 1);
+
+    assertFalse(crop.isOriginUpperLeft());
+    assertEquals(4, crop.getARGB(0, 0));
+    assertArrayEquals(new int[][] {{4, 5}}, crop.toArray());
+    assertThrows(IndexOutOfBoundsException.class, () -> buffer.crop(2, 0, 2, 1));
+  }
+
+  @Test
+  void GivenViews_WhenCompacted_ThenPackedCopiesMatch() {
+    PixelBuffer view = sample().rotate90();
+    assertFalse(view.isPacked());
+
+    PixelBuffer packed = view.compact();
+
+    assertTrue(packed.isPacked());
+    assertArrayEquals(new int[] {4, 1, 5, 2, 6, 3}, packed.getPixels());
+    assertTrue(packed.contentEquals(view));
+    assertEquals(packed.contentHash(), view.contentHash());
+    assertSame(packed, packed.compact());
+  }
+
+  @Test
+  void GivenBottomUpBuffer_WhenAccessed_ThenRowZeroIsTheTopRow() {
+    PixelBuffer buffer = PixelBuffer.bottomUp(2, 2);
+    buffer.setARGB(0, 0, 1);
+    buffer.setARGB(1, 1, 0xFF000000);
+
+    assertFalse(buffer.isPacked());
+    assertArrayEquals(new int[] {0, 0xFF000000, 1, 0}, buffer.getPixels());
+    assertArrayEquals(new int[][] {{1, 0}, {0, 0xFF000000}}, buffer.toArray());
+    assertTrue(buffer.hasTransparentPixel());
+  }
+
+  @Test
+  void GivenStridedLayout_WhenCreated_ThenRowsSkipThePadding() {
+    int[] padded = {0xFF000001, 0xFF000002, 0, 0xFF000003, 0xFF000004, 0};
+    PixelBuffer buffer = new PixelBuffer(2, 2, padded, 0, 3);
+
+    assertArrayEquals(
+        new int[][] {{0xFF000001, 0xFF000002}, {0xFF000003, 0xFF000004}}, buffer.toArray());
+    assertFalse(buffer.hasTransparentPixel());
+    assertThrows(IllegalArgumentException.class, () -> new PixelBuffer(2, 2, padded, 3, 3));
+    assertThrows(IllegalArgumentException.class, () -> new PixelBuffer(2, 2, padded, 0, 1));
+  }
+
+  @Test
+  void GivenBottomUpBitmap_WhenDecode_ThenScanlinesStayInFileOrder()
+      throws URISyntaxException, IOException {
+    URL resource = PixelBufferTest.class.getClassLoader().getResource("24bit.bmp");
+    Assertions.assertNotNull(resource);
+    BitmapParser parser = new BitmapParser(Paths.get(resource.toURI()));
+
+    PixelBuffer buffer = parser.decode();
+
+    assertFalse(buffer.isPacked());
+    assertEquals(-buffer.width(), buffer.rowStride());
+    assertArrayEquals(parser.getPixels(), buffer.compact().toArray());
+  }
+}
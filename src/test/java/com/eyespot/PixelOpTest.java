@@ -0,0 +1,181 @@
+package com.eyespot;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.transform.PixelOp;
+import com.eyespot.imageparser.transform.PixelOp.Channel;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class PixelOpTest {
+
+  private static int[] randomPixels(int count) {
+    Random random = new Random(37);
+    int[] pixels = new int[count];
+    for (int i = 0; i < count; i++) {
+      pixels[i] = random.nextInt();
+    }
+    return pixels;
+  }
+
+  // each operation on its own, so that applying them in turn gives the unfused result
+  private static final List<PixelOp> OPS =
+      Arrays.asList(
+          PixelOp.identity().gamma(0.7),
+          PixelOp.identity().contrast(1.4),
+          PixelOp.identity().swizzle(Channel.ALPHA, Channel.BLUE, Channel.RED, Channel.GREEN),
+          PixelOp.identity().brightness(-20),
+          PixelOp.identity().grayscale(),
+          PixelOp.identity().invert(),
+          PixelOp.identity().gamma(1.8),
+          PixelOp.identity().swizzle(Channel.RED, Channel.GREEN, Channel.BLUE, Channel.ALPHA),
+          PixelOp.identity().grayscale(),
+          PixelOp.identity().brightness(35),
+          PixelOp.identity().threshold(100),
+          PixelOp.identity().contrast(0.5));
+
+  @Test
+  void GivenGrayscale_WhenApplied_ThenLumaIsUsedAndAlphaKept() {
+    int pixel = 0x80C86432;
+    int luma = (77 * 0xC8 + 150 * 0x64 + 29 * 0x32 + 128) >>> 8;
+    assertEquals(
+        0x80000000 | luma << 16 | luma << 8 | luma, PixelOp.identity().grayscale().apply(pixel));
+  }
+
+  @Test
+  void GivenSingleOperations_WhenApplied_ThenChannelsAreMappedAsDocumented() {
+    assertEquals(0xFF0A14FF, PixelOp.identity().brightness(10).apply(0xFF000AFA));
+    assertEquals(0x7FF59BCD, PixelOp.identity().invert().apply(0x7F0A6432));
+    assertEquals(0x7F000000, PixelOp.identity().contrast(0).apply(0x7F0A6432) & 0xFF000000);
+    assertEquals(0xFF000000, PixelOp.identity().threshold(128).apply(0xFF101010));
+    assertEquals(0xFFFFFFFF, PixelOp.identity().threshold(128).apply(0xFF808080));
+    assertEquals(
+        0x11443322,
+        PixelOp.identity()
+            .swizzle(Channel.ALPHA, Channel.BLUE, Channel.GREEN, Channel.RED)
+            .apply(0x11223344));
+    assertEquals(
+        0x12345678, PixelOp.identity().gamma(1).brightness(0).contrast(1).apply(0x12345678));
+  }
+
+  @Test
+  void GivenLongChain_WhenFused_ThenResultMatchesApplyingEachOperationInTurn() {
+    PixelOp chain = PixelOp.identity();
+    for (PixelOp op : OPS) {
+      chain = chain.then(op);
+    }
+    int[] pixels = randomPixels(10_000);
+    int[] fused = pixels.clone();
+    chain.apply(fused, 0, fused.length);
+
+    for (int i = 0; i < pixels.length; i++) {
+      int expected = pixels[i];
+      for (PixelOp op : OPS) {
+        expected = op.apply(expected);
+      }
+      assertEquals(expected, fused[i], "pixel " + i);
+      assertEquals(expected, chain.apply(pixels[i]), "pixel " + i);
+    }
+  }
+
+  @Test
+  void GivenEveryPrefixOfChain_WhenFused_ThenResultMatchesUnfused() {
+    int[] pixels = randomPixels(2_000);
+    PixelOp chain = PixelOp.identity();
+    for (int length = 0; length < OPS.size(); length++) {
+      chain = chain.then(OPS.get(length));
+      for (int pixel : pixels) {
+        int expected = pixel;
+        for (PixelOp op : OPS.subList(0, length + 1)) {
+          expected = op.apply(expected);
+        }
+        assertEquals(expected, chain.apply(pixel), "chain of " + (length + 1));
+      }
+    }
+  }
+
+  @Test
+  void GivenViews_WhenAppliedToBuffer_ThenOnlyViewPixelsChange() {
+    PixelOp op = PixelOp.identity().invert().grayscale();
+    int width = 23;
+    int height = 17;
+    int[] source = randomPixels(width * height);
+    for (int view = 0; view < 4; view++) {
+      int[] pixels = source.clone();
+      PixelBuffer copy = view(view, new PixelBuffer(width, height, pixels));
+      int[][] before = copy.toArray();
+      op.applyTo(copy);
+
+      int changed = 0;
+      for (int i = 0; i < pixels.length; i++) {
+        if (pixels[i] != source[i]) {
+          changed++;
+        }
+      }
+      assertEquals(copy.width() * copy.height(), changed);
+      for (int y = 0; y < copy.height(); y++) {
+        for (int x = 0; x < copy.width(); x++) {
+          assertEquals(op.apply(before[y][x]), copy.getARGB(x, y));
+        }
+      }
+    }
+  }
+
+  private static PixelBuffer view(int index, PixelBuffer base) {
+    switch (index) {
+      case 0:
+        return base.crop(3, 2, 11, 9);
+      case 1:
+        return base.crop(3, 2, 11, 9).flipHorizontal();
+      case 2:
+        return base.crop(1, 4, 15, 10).rotate90();
+      default:
+        return base.crop(5, 1, 7, 13).flipVertical().transpose();
+    }
+  }
+
+  @Test
+  void GivenLargeImage_WhenAppliedInParallel_ThenResultMatchesSerial() {
+    int width = 1500;
+    int height = 900;
+    int[] source = randomPixels(width * height);
+    PixelOp op = PixelOp.identity().gamma(2.2).grayscale().threshold(90);
+
+    PixelBuffer pixels = PixelBuffer.bottomUp(width, height);
+    pixels.setARGB(0, 0, width, height, source, 0, width);
+    op.applyTo(pixels);
+
+    int[] expected = source.clone();
+    op.apply(expected, 0, expected.length);
+    int[] actual = new int[width * height];
+    pixels.getARGB(0, 0, width, height, actual, 0, width);
+    assertArrayEquals(expected, actual);
+  }
+
+  @Test
+  void GivenRowTransform_WhenApplied_ThenOnlyWidthPixelsChange() {
+    int[] row = {0xFF000000, 0xFF000000, 0xFF000000};
+    PixelOp.identity().invert().asRowTransform().apply(row, 2);
+    assertArrayEquals(new int[] {0xFFFFFFFF, 0xFFFFFFFF, 0xFF000000}, row);
+  }
+
+  @Test
+  void GivenInvalidArguments_WhenBuildingChain_ThenExceptionIsThrown() {
+    PixelOp identity = PixelOp.identity();
+    assertThrows(IllegalArgumentException.class, () -> identity.brightness(256));
+    assertThrows(IllegalArgumentException.class, () -> identity.contrast(-1));
+    assertThrows(IllegalArgumentException.class, () -> identity.contrast(Double.NaN));
+    assertThrows(IllegalArgumentException.class, () -> identity.gamma(0));
+    assertThrows(IllegalArgumentException.class, () -> identity.threshold(-1));
+    assertThrows(
+        NullPointerException.class,
+        () -> identity.swizzle(Channel.ALPHA, null, Channel.GREEN, Channel.BLUE));
+    assertThrows(NullPointerException.class, () -> identity.applyTo(null));
+    assertThrows(IndexOutOfBoundsException.class, () -> identity.apply(new int[2], 1, 3));
+  }
+}
@@ -0,0 +1,129 @@
+package com.eyespot;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.eyespot.imageparser.Picture;
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.transform.Resampler;
+import com.eyespot.imageparser.transform.Resampler.Filter;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class ResamplerTest {
+
+  private static PixelBuffer randomOpaqueImage(int width, int height) {
+    Random random = new Random(39);
+    PixelBuffer pixels = new PixelBuffer(width, height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        pixels.setARGB(x, y, 0xFF000000 | random.nextInt());
+      }
+    }
+    return pixels;
+  }
+
+  private static PixelBuffer filled(int width, int height, int argb) {
+    PixelBuffer pixels = new PixelBuffer(width, height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        pixels.setARGB(x, y, argb);
+      }
+    }
+    return pixels;
+  }
+
+  @ParameterizedTest
+  @EnumSource(Filter.class)
+  void GivenSameSize_WhenResizing_ThenImageIsUnchanged(Filter filter) {
+    PixelBuffer source = randomOpaqueImage(37, 29);
+    assertTrue(new Resampler(filter, false).resize(source, 37, 29).contentEquals(source));
+    assertTrue(new Resampler(filter, true).resize(source, 37, 29).contentEquals(source));
+  }
+
+  @ParameterizedTest
+  @EnumSource(Filter.class)
+  void GivenUniformImage_WhenResizing_ThenColourIsKept(Filter filter) {
+    PixelBuffer source = filled(40, 30, 0x80336699);
+    for (boolean isLinearLight : new boolean[] {false, true}) {
+      Resampler resampler = new Resampler(filter, isLinearLight);
+      assertTrue(resampler.resize(source, 13, 7).contentEquals(filled(13, 7, 0x80336699)));
+      assertTrue(resampler.resize(source, 97, 61).contentEquals(filled(97, 61, 0x80336699)));
+    }
+  }
+
+  @Test
+  void GivenCheckerboard_WhenHalvingInLinearLight_ThenGrayIsPerceptuallyCorrect() {
+    PixelBuffer source = new PixelBuffer(64, 64);
+    for (int y = 0; y < 64; y++) {
+      for (int x = 0; x < 64; x++) {
+        source.setARGB(x, y, (x + y) % 2 == 0 ? 0xFF000000 : 0xFFFFFFFF);
+      }
+    }
+    PixelBuffer gamma = new Resampler(Filter.BILINEAR, false).resize(source, 32, 32);
+    PixelBuffer linear = new Resampler(Filter.BILINEAR, true).resize(source, 32, 32);
+    for (int y = 2; y < 30; y++) {
+      for (int x = 2; x < 30; x++) {
+        // half the light of white is sRGB 188, not 128
+        assertEquals(0xFF808080, gamma.getARGB(x, y), 0x010101);
+        int red = (linear.getARGB(x, y) >>> 16) & 0xFF;
+        assertTrue(Math.abs(red - 188) <= 1, "red " + red);
+      }
+    }
+  }
+
+  @Test
+  void GivenTransparentNeighbours_WhenResizing_ThenTheirColourDoesNotBleed() {
+    PixelBuffer source = new PixelBuffer(20, 10);
+    for (int y = 0; y < 10; y++) {
+      for (int x = 0; x < 20; x++) {
+        source.setARGB(x, y, x < 10 ? 0x00FF0000 : 0xFF0000FF);
+      }
+    }
+    for (Filter filter : Filter.values()) {
+      PixelBuffer result = new Resampler(filter, true).resize(source, 33, 7);
+      for (int y = 0; y < 7; y++) {
+        for (int x = 0; x < 33; x++) {
+          int pixel = result.getARGB(x, y);
+          if (pixel >>> 24 != 0) {
+            assertEquals(0x0000FF, pixel & 0xFFFFFF, filter + " at " + x + "," + y);
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  void GivenLargeView_WhenResizingInParallel_ThenResultMatchesCompactCopy() {
+    PixelBuffer view = randomOpaqueImage(1300, 900).crop(50, 20, 1200, 850).rotate90();
+    Resampler resampler = new Resampler(Filter.LANCZOS3, true);
+    PixelBuffer expected = resampler.resize(view.compact(), 700, 530);
+    assertTrue(resampler.resize(view, 700, 530).contentEquals(expected));
+    assertEquals(700, expected.width());
+    assertEquals(530, expected.height());
+  }
+
+  @Test
+  void GivenPicture_WhenResizing_ThenCopyHasNewSize() {
+    Picture picture = Picture.fromPixels(randomOpaqueImage(30, 20));
+    Picture resized = picture.resize(15, 45);
+    assertEquals(15, resized.width());
+    assertEquals(45, resized.height());
+    assertEquals(30, picture.width());
+  }
+
+  @Test
+  void GivenInvalidArguments_WhenResizing_ThenExceptionIsThrown() {
+    Resampler resampler = new Resampler(Filter.BICUBIC, false);
+    PixelBuffer source = randomOpaqueImage(4, 4);
+    assertThrows(NullPointerException.class, () -> new Resampler(null, false));
+    assertThrows(NullPointerException.class, () -> resampler.resize(null, 2, 2));
+    assertThrows(IllegalArgumentException.class, () -> resampler.resize(source, 0, 2));
+    assertThrows(IllegalArgumentException.class, () -> resampler.resize(source, 2, -1));
+    assertThrows(
+        IllegalArgumentException.class, () -> resampler.resize(new PixelBuffer(0, 4), 2, 2));
+  }
+}
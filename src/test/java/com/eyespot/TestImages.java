@@ -0,0 +1,66 @@
+package com.eyespot;
+
+import com.eyespot.imageparser.PixelBuffer;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+
+/** Test images shared by the test classes: files under the test resources, and random pixels. */
+public final class TestImages {
+
+  private TestImages() {}
+
+  /**
+   * @param name the path of the file relative to the test resources
+   * @return the path of the file, failing the test if it does not exist
+   */
+  public static Path resource(String name) throws URISyntaxException {
+    URL url = TestImages.class.getClassLoader().getResource(name);
+    Assertions.assertNotNull(url, name);
+    return Paths.get(url.toURI());
+  }
+
+  /**
+   * @param name the path of the file relative to the test resources
+   * @return the contents of the file, failing the test if it does not exist
+   */
+  public static byte[] resourceBytes(String name) throws URISyntaxException, IOException {
+    return Files.readAllBytes(resource(name));
+  }
+
+  /**
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param seed the seed of the pixels, so that a test sees the same image every run
+   * @return an image of random ARGB pixels, with random alpha
+   */
+  public static PixelBuffer randomImage(int width, int height, long seed) {
+    return randomImage(width, height, seed, 0);
+  }
+
+  /**
+   * @param width the width of the image
+   * @param height the height of the image
+   * @param seed the seed of the pixels, so that a test sees the same image every run
+   * @return an image of random opaque pixels
+   */
+  public static PixelBuffer randomOpaqueImage(int width, int height, long seed) {
+    return randomImage(width, height, seed, 0xFF000000);
+  }
+
+  private static PixelBuffer randomImage(int width, int height, long seed, int setBits) {
+    Random random = new Random(seed);
+    PixelBuffer pixels = new PixelBuffer(width, height);
+    for (int y = 0; y < height; y++) {
+      for (int x = 0; x < width; x++) {
+        pixels.setARGB(x, y, setBits | random.nextInt());
+      }
+    }
+    return pixels;
+  }
+}
@@ -0,0 +1,172 @@
+package com.eyespot.parser;
+
+import com.eyespot.imageparser.ColourQuantizer;
+import com.eyespot.imageparser.IndexedImage;
+import com.eyespot.imageparser.Picture;
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import com.eyespot.imageparser.bitmap.BitmapWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+/**
+ * Guards the decode hot paths against per-pixel allocation. Each test measures the bytes the
+ * current thread allocates while decoding and fails if they exceed the output arrays plus a small
+ * fixed allowance, so a boxed value, a temporary buffer or a string built for every pixel shows up
+ * as a test failure rather than as garbage collector pressure in production.
+ */
+class AllocationBudgetTest {
+
+  private static final int WIDTH = 640;
+  private static final int HEIGHT = 480;
+  private static final long PIXELS = (long) WIDTH * HEIGHT;
+
+  // Headers, the parser and other per-call objects, independent of the image size
+  private static final long FIXED_ALLOWANCE = 64 * 1024;
+
+  // An int[] row as allocated by getPixels(): array header plus the reference to it
+  private static final long ROW_OVERHEAD = 32;
+
+  private static final int WARM_UP_RUNS = 20;
+  private static final int MEASURED_RUNS = 5;
+
+  private static com.sun.management.ThreadMXBean threads;
+
+  @BeforeAll
+  static void setUpAllocationCounter() {
+    Assumptions.assumeTrue(
+        ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean,
+        "per-thread allocation counters are not available on this JVM");
+    threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    Assumptions.assumeTrue(threads.isThreadAllocatedMemorySupported());
+    threads.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  private static PixelBuffer photo() {
+    PixelBuffer pixels = new PixelBuffer(WIDTH, HEIGHT);
+    int seed = 42;
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        seed = seed * 1103515245 + 12345;
+        int red = x * 255 / (WIDTH - 1);
+        int green = y * 255 / (HEIGHT - 1);
+        int blue = Math.min(255, Math.max(0, (red + green) / 2 + (seed >>> 28) - 8));
+        pixels.setARGB(x, y, 0xFF000000 | red << 16 | green << 8 | blue);
+      }
+    }
+    return pixels;
+  }
+
+  private static byte[] encode(BitmapWriter.Format format) throws IOException {
+    PixelBuffer pixels = photo();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BitmapWriter writer = new BitmapWriter(format);
+    if (format.isIndexed()) {
+      int colours = Math.min(IndexedImage.MAX_PALETTE_SIZE, format.getMaxPaletteSize());
+      writer.write(new ColourQuantizer(colours, false).quantize(pixels), Channels.newChannel(out));
+    } else {
+      writer.write(pixels, Channels.newChannel(out));
+    }
+    return out.toByteArray();
+  }
+
+  /** Returns the fewest bytes allocated by the current thread across several runs of the task. */
+  private static long allocatedBytes(Supplier<?> task) {
+    for (int i = 0; i < WARM_UP_RUNS; i++) {
+      Assertions.assertNotNull(task.get());
+    }
+    long thread = Thread.currentThread().getId();
+    long fewest = Long.MAX_VALUE;
+    for (int i = 0; i < MEASURED_RUNS; i++) {
+      long before = threads.getThreadAllocatedBytes(thread);
+      Object result = task.get();
+      long after = threads.getThreadAllocatedBytes(thread);
+      Assertions.assertNotNull(result);
+      fewest = Math.min(fewest, after - before);
+    }
+    return fewest;
+  }
+
+  private static void assertWithinBudget(long budget, long allocated) {
+    Assertions.assertTrue(
+        allocated <= budget,
+        () ->
+            String.format(
+                "allocated %d bytes (%.2f per pixel), budget is %d",
+                allocated, (double) allocated / PIXELS, budget));
+  }
+
+  @ParameterizedTest
+  @EnumSource(BitmapWriter.Format.class)
+  void GivenEncodedImage_WhenDecoded_ThenOnlyTheOutputBufferIsAllocated(BitmapWriter.Format format)
+      throws IOException {
+    BitmapParser parser = new BitmapParser(encode(format));
+
+    long allocated = allocatedBytes(parser::decode);
+
+    assertWithinBudget(PIXELS * Integer.BYTES + FIXED_ALLOWANCE, allocated);
+  }
+
+  @ParameterizedTest
+  @EnumSource(
+      value = BitmapWriter.Format.class,
+      names = {"RGB24", "RGB565", "ARGB32_V5", "INDEXED8", "RLE8", "RLE4"})
+  void GivenEncodedImage_WhenPixelsRequested_ThenOnlyTheBufferAndRowsAreAllocated(
+      BitmapWriter.Format format) throws IOException {
+    BitmapParser parser = new BitmapParser(encode(format));
+
+    long allocated = allocatedBytes(parser::getPixels);
+
+    // The flat buffer decode() fills, plus the int[][] copy of it
+    long budget = 2 * PIXELS * Integer.BYTES + HEIGHT * ROW_OVERHEAD + FIXED_ALLOWANCE;
+    assertWithinBudget(budget, allocated);
+  }
+
+  @Test
+  void GivenPicture_WhenAccessedInBulk_ThenNothingIsAllocatedPerPixel() {
+    Picture picture = Picture.fromPixels(photo());
+    int[] row = new int[WIDTH];
+
+    long allocated =
+        allocatedBytes(
+            () -> {
+              for (int y = 0; y < HEIGHT; y++) {
+                picture.getARGB(0, y, WIDTH, 1, row, 0, WIDTH);
+                picture.setARGB(0, y, WIDTH, 1, row, 0, WIDTH);
+              }
+              return row;
+            });
+
+    assertWithinBudget(FIXED_ALLOWANCE, allocated);
+  }
+
+  @Test
+  void GivenPicture_WhenAccessedPixelByPixel_ThenNothingIsAllocatedPerPixel() {
+    Picture picture = Picture.fromPixels(photo());
+
+    long allocated =
+        allocatedBytes(
+            () -> {
+              long sum = 0;
+              for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                  int argb = picture.getARGB(x, y);
+                  picture.setARGB(x, y, argb);
+                  sum += argb;
+                }
+              }
+              return sum;
+            });
+
+    assertWithinBudget(FIXED_ALLOWANCE, allocated);
+  }
+}
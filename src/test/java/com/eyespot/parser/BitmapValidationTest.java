@@ -0,0 +1,137 @@
+package com.eyespot.parser;
+
+import static com.eyespot.TestImages.resource;
+
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import com.eyespot.imageparser.bitmap.ValidationProblem;
+import com.eyespot.imageparser.bitmap.ValidationProblem.Kind;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class BitmapValidationTest {
+
+  private static Set<Kind> kinds(List<ValidationProblem> problems) {
+    return problems.stream()
+        .map(ValidationProblem::getKind)
+        .collect(Collectors.toCollection(() -> EnumSet.noneOf(Kind.class)));
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "1bit.bmp",
+        "4bit.bmp",
+        "8bit.bmp",
+        "16bit.bmp",
+        "24bit.bmp",
+        "4bit_compressed.bmp",
+        "8bit_compressed.bmp",
+        "16bit_565_bitfield.bmp",
+        "32bit_888_bitfield_v4.bmp",
+        "32bit_v5.bmp",
+        "core_header_4bit.bmp",
+        "common_bmp_no_size_in_header.bmp",
+        "bmp_common_8bpp_rle8_with_delta_esc_codes.bmp",
+        "bmp_v4_palette_alpha.bmp"
+      })
+  void GivenWellFormedImage_WhenValidated_ThenNoProblems(String name)
+      throws URISyntaxException, IOException {
+    List<ValidationProblem> problems = new BitmapParser(resource(name)).validate();
+
+    Assertions.assertTrue(problems.isEmpty(), problems.toString());
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "badbitcount.bmp, BIT_DEPTH",
+    "bitdepth-large.bmp, BIT_DEPTH",
+    "badplanes.bmp, COLOUR_PLANES",
+    "badwidth.bmp, DIMENSIONS",
+    "width-zero.bmp, DIMENSIONS",
+    "height-zero.bmp, DIMENSIONS",
+    "reallybig.bmp, DIMENSIONS",
+    "badfilesize.bmp, FILE_SIZE",
+    "badbitssize.bmp, IMAGE_SIZE",
+    "baddens1.bmp, RESOLUTION",
+    "baddens2.bmp, RESOLUTION",
+    "badpalettesize.bmp, PALETTE",
+    "8bpp-colorsused-negative.bmp, PALETTE",
+    "8bpp-colorsimportant-large.bmp, PALETTE",
+    "8bpp-no-palette.bmp, PIXEL_DATA_OFFSET",
+    "offbits-zero.bmp, PIXEL_DATA_OFFSET",
+    "negative_offset_8bit.bmp, PIXEL_DATA_OFFSET",
+    "pixeldata-missing.bmp, PIXEL_DATA_OFFSET",
+    "24bpp-pixeldata-cropped.bmp, PIXEL_DATA",
+    "colormasks-missing.bmp, COLOUR_MASKS",
+    "rgb16-880.bmp, COLOUR_MASKS",
+    "pal8badindex.bmp, PALETTE_INDEX",
+    "rletopdown.bmp, COMPRESSION",
+    "badrle.bmp, RLE_STREAM",
+    "badrle4.bmp, RLE_STREAM",
+    "badrle4bis.bmp, RLE_STREAM",
+    "rle8-absolute-cropped.bmp, RLE_STREAM",
+    "rle8-delta-cropped.bmp, RLE_STREAM",
+    "rle8-runlength-cropped.bmp, RLE_STREAM"
+  })
+  void GivenMalformedImage_WhenValidated_ThenProblemIsReported(String name, Kind expected)
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("b/" + name));
+
+    List<ValidationProblem> problems = parser.validate();
+
+    Assertions.assertTrue(kinds(problems).contains(expected), problems.toString());
+    for (ValidationProblem problem : problems) {
+      Assertions.assertTrue(problem.getOffset() <= parser.getRawData().length, problem.toString());
+      Assertions.assertNotNull(problem.getMessage());
+    }
+  }
+
+  @Test
+  void GivenShortFile_WhenValidated_ThenEveryProblemIsReported()
+      throws URISyntaxException, IOException {
+    List<ValidationProblem> problems = new BitmapParser(resource("b/shortfile.bmp")).validate();
+
+    Assertions.assertEquals(EnumSet.of(Kind.FILE_SIZE, Kind.PIXEL_DATA), kinds(problems));
+    Assertions.assertEquals(2, problems.get(0).getOffset());
+  }
+
+  @Test
+  void GivenRunLeavingTheImage_WhenValidated_ThenOffsetIsThatOfTheRun()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("b/badrle.bmp"));
+
+    List<ValidationProblem> problems = parser.validate();
+
+    Assertions.assertEquals(1, problems.size(), problems.toString());
+    ValidationProblem problem = problems.get(0);
+    Assertions.assertEquals(Kind.RLE_STREAM, problem.getKind());
+    Assertions.assertTrue(problem.getOffset() >= parser.getOffset());
+  }
+
+  @Test
+  void GivenLastScanlineCutShort_WhenValidated_ThenPixelDataIsReported()
+      throws URISyntaxException, IOException {
+    byte[] bytes = Files.readAllBytes(resource("24bit.bmp"));
+    BitmapParser truncated = new BitmapParser(Arrays.copyOf(bytes, bytes.length - 1));
+
+    Assertions.assertTrue(kinds(truncated.validate()).contains(Kind.PIXEL_DATA));
+  }
+
+  @Test
+  void GivenValidationProblems_WhenModified_ThenThrows() throws URISyntaxException, IOException {
+    List<ValidationProblem> problems = new BitmapParser(resource("b/badplanes.bmp")).validate();
+
+    Assertions.assertThrows(UnsupportedOperationException.class, () -> problems.remove(0));
+  }
+}
@@ -0,0 +1,244 @@
+package com.eyespot.parser;
+
+import com.eyespot.imageparser.IndexedImage;
+import com.eyespot.imageparser.Picture;
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.bitmap.BitmapConstants;
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import com.eyespot.imageparser.bitmap.BitmapWriter;
+import com.eyespot.imageparser.bitmap.InfoHeaderType;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class BitmapWriterTest {
+
+  @TempDir Path tempDir;
+
+  // 3 pixels wide so that 24bpp and 16bpp rows need padding
+  private static PixelBuffer sample() {
+    return new PixelBuffer(
+        3,
+        2,
+        new int[] {
+          0xFFFF0000, 0xFF00FF00, 0xFF0000FF,
+          0x80102030, 0x00000000, 0xFFFFFFFF
+        });
+  }
+
+  private static byte[] encode(BitmapWriter.Format format, PixelBuffer pixels) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new BitmapWriter(format).write(pixels, Channels.newChannel(out));
+    return out.toByteArray();
+  }
+
+  @ParameterizedTest
+  @EnumSource(
+      value = BitmapWriter.Format.class,
+      names = {"RGB24", "RGB32", "RGB565", "ARGB32_V4", "ARGB32_V5"})
+  void GivenPixels_WhenWritten_ThenParserReadsHeaders(BitmapWriter.Format format)
+      throws IOException {
+    BitmapParser parser = new BitmapParser(encode(format, sample()));
+
+    Assertions.assertEquals(3, parser.getWidth());
+    Assertions.assertEquals(2, parser.getHeight());
+    Assertions.assertEquals(format.getBitsPerPixel(), parser.getBitsPerPixel());
+    Assertions.assertEquals(format.getCompression(), parser.getCompression());
+  }
+
+  @Test
+  void GivenTranslucentPixels_WhenWrittenAsV5_ThenRoundTripIsExact() throws IOException {
+    byte[] bytes = encode(BitmapWriter.Format.ARGB32_V5, sample());
+    BitmapParser parser = new BitmapParser(bytes);
+
+    Assertions.assertEquals(InfoHeaderType.BITMAPV5HEADER, parser.getDibHeaderType());
+    Assertions.assertTrue(parser.decode().contentEquals(sample()));
+    Assertions.assertTrue(parser.hasAlphaChannel());
+  }
+
+  @Test
+  void GivenTranslucentPixels_WhenWrittenAsV4_ThenRoundTripIsExact() throws IOException {
+    BitmapParser parser = new BitmapParser(encode(BitmapWriter.Format.ARGB32_V4, sample()));
+
+    Assertions.assertEquals(InfoHeaderType.BITMAPV4HEADER, parser.getDibHeaderType());
+    Assertions.assertTrue(parser.decode().contentEquals(sample()));
+  }
+
+  @ParameterizedTest
+  @EnumSource(
+      value = BitmapWriter.Format.class,
+      names = {"RGB24", "RGB32"})
+  void GivenPixels_WhenWrittenOpaque_ThenColoursSurviveAndAlphaIsDropped(BitmapWriter.Format format)
+      throws IOException {
+    PixelBuffer decoded = new BitmapParser(encode(format, sample())).decode();
+
+    for (int row = 0; row < 2; row++) {
+      for (int col = 0; col < 3; col++) {
+        int expected = 0xFF000000 | sample().getARGB(col, row);
+        Assertions.assertEquals(expected, decoded.getARGB(col, row));
+      }
+    }
+  }
+
+  @Test
+  void GivenPixels_WhenWrittenAsRgb565_ThenColoursAreTruncated() throws IOException {
+    PixelBuffer decoded = new BitmapParser(encode(BitmapWriter.Format.RGB565, sample())).decode();
+
+    Assertions.assertEquals(0xFFFF0000, decoded.getARGB(0, 0));
+    Assertions.assertEquals(0xFF00FF00, decoded.getARGB(1, 0));
+    Assertions.assertEquals(0xFFFFFFFF, decoded.getARGB(2, 1));
+  }
+
+  @Test
+  void GivenPixels_WhenWritten_ThenFileHeaderMatchesLayout() throws IOException {
+    byte[] bytes = encode(BitmapWriter.Format.RGB24, sample());
+    int pixelOffset = BitmapConstants.FILE_HEADER_SIZE + BitmapConstants.BITMAPINFOHEADER_SIZE;
+
+    Assertions.assertEquals('B', bytes[0]);
+    Assertions.assertEquals('M', bytes[1]);
+    Assertions.assertEquals(pixelOffset + 2 * 12, bytes.length);
+    Assertions.assertEquals(pixelOffset, bytes[BitmapConstants.BF_OFFBITS_OFFSET]);
+    // the bottom row comes first: blue, green, red of 0x80102030
+    Assertions.assertEquals(0x30, bytes[pixelOffset]);
+    Assertions.assertEquals(0x20, bytes[pixelOffset + 1]);
+    Assertions.assertEquals(0x10, bytes[pixelOffset + 2]);
+  }
+
+  @Test
+  void GivenLowerLeftOriginAndView_WhenWritten_ThenImageIsUnchanged() throws IOException {
+    PixelBuffer rotated = sample().rotate90();
+    rotated.setOriginLowerLeft();
+
+    PixelBuffer decoded = new BitmapParser(encode(BitmapWriter.Format.ARGB32_V5, rotated)).decode();
+
+    rotated.setOriginUpperLeft();
+    Assertions.assertTrue(decoded.contentEquals(rotated));
+  }
+
+  @Test
+  void GivenLargeImage_WhenWrittenToFile_ThenRowsSpanSeveralChunks() throws IOException {
+    PixelBuffer pixels = new PixelBuffer(301, 250);
+    for (int i = 0; i < pixels.getPixels().length; i++) {
+      pixels.getPixels()[i] = 0xFF000000 | (i * 7919);
+    }
+    Path path = tempDir.resolve("large.bmp");
+
+    new BitmapWriter(BitmapWriter.Format.RGB24).write(pixels, path);
+
+    Assertions.assertTrue(new BitmapParser(path).decode().contentEquals(pixels));
+  }
+
+  @Test
+  void GivenBitmap_WhenPictureSavedAsBmp_ThenWrittenNatively()
+      throws URISyntaxException, IOException {
+    URL resource = BitmapWriterTest.class.getClassLoader().getResource("24bit.bmp");
+    Assertions.assertNotNull(resource);
+    Picture picture = new Picture(Paths.get(resource.toURI()));
+    Path path = tempDir.resolve("copy.bmp");
+
+    picture.save(path.toFile());
+
+    Assertions.assertTrue(Files.size(path) > 0);
+    Assertions.assertEquals(picture, new Picture(path));
+  }
+
+  @Test
+  void GivenNullArguments_WhenWrite_ThenThrowsNullPointerException() {
+    BitmapWriter writer = new BitmapWriter(BitmapWriter.Format.RGB24);
+    Assertions.assertThrows(NullPointerException.class, () -> new BitmapWriter(null));
+    Assertions.assertThrows(
+        NullPointerException.class,
+        () -> writer.write((PixelBuffer) null, tempDir.resolve("a.bmp")));
+    Assertions.assertThrows(NullPointerException.class, () -> writer.write(sample(), (Path) null));
+  }
+
+  private static PixelBuffer withColours(int width, int height, int colours) {
+    PixelBuffer pixels = new PixelBuffer(width, height);
+    int[] data = pixels.getPixels();
+    for (int i = 0; i < data.length; i++) {
+      data[i] = 0xFF000000 | ((i * 31 + i / width) % colours) * 0x010203;
+    }
+    return pixels;
+  }
+
+  private static BitmapWriter.Format writeLossless(PixelBuffer pixels, ByteArrayOutputStream out)
+      throws IOException {
+    return BitmapWriter.writeLossless(pixels, Channels.newChannel(out));
+  }
+
+  @ParameterizedTest
+  @EnumSource(
+      value = BitmapWriter.Format.class,
+      names = {"INDEXED1", "INDEXED4", "INDEXED8"})
+  void GivenIndexedImage_WhenWrittenUncompressed_ThenRoundTripIsExact(BitmapWriter.Format format)
+      throws IOException {
+    // 13 pixels wide so that every depth needs a partial byte or scanline padding
+    IndexedImage image =
+        IndexedImage.fromPixels(withColours(13, 5, format.getMaxPaletteSize() == 2 ? 2 : 16));
+    Assertions.assertNotNull(image);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    new BitmapWriter(format).write(image, Channels.newChannel(out));
+
+    BitmapParser parser = new BitmapParser(out.toByteArray());
+    Assertions.assertEquals(format.getBitsPerPixel(), parser.getBitsPerPixel());
+    Assertions.assertEquals(BitmapConstants.BI_RGB, parser.getCompression());
+    Assertions.assertTrue(parser.decode().contentEquals(image.toPixelBuffer()));
+  }
+
+  @Test
+  void GivenFewColours_WhenWrittenLossless_ThenSmallestPaletteFormatIsChosen() throws IOException {
+    int[][] cases = {{1, 1}, {2, 1}, {3, 4}, {16, 4}, {17, 8}, {256, 8}};
+    for (int[] colours : cases) {
+      PixelBuffer pixels = withColours(40, 30, colours[0]);
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+      BitmapWriter.Format format = writeLossless(pixels, out);
+
+      Assertions.assertEquals(colours[1], format.getBitsPerPixel(), colours[0] + " colours");
+      Assertions.assertTrue(new BitmapParser(out.toByteArray()).decode().contentEquals(pixels));
+    }
+  }
+
+  @Test
+  void GivenManyColoursOrTransparency_WhenWrittenLossless_ThenDirectFormatIsChosen()
+      throws IOException {
+    PixelBuffer opaque = withColours(40, 30, 257);
+    PixelBuffer translucent = withColours(4, 4, 2);
+    translucent.setARGB(1, 1, 0x80FF0000);
+
+    Assertions.assertEquals(
+        BitmapWriter.Format.RGB24, writeLossless(opaque, new ByteArrayOutputStream()));
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    Assertions.assertEquals(BitmapWriter.Format.ARGB32_V5, writeLossless(translucent, out));
+    Assertions.assertTrue(new BitmapParser(out.toByteArray()).decode().contentEquals(translucent));
+    Assertions.assertNull(IndexedImage.fromPixels(opaque));
+  }
+
+  @Test
+  void GivenOptimalPalette32bppBitmap_WhenWrittenLossless_ThenFileIsAQuarterOfTheSize()
+      throws URISyntaxException, IOException {
+    URL resource =
+        BitmapWriterTest.class.getClassLoader().getResource("32bpp-888-optimalpalette-320x240.bmp");
+    Assertions.assertNotNull(resource);
+    Path source = Paths.get(resource.toURI());
+    PixelBuffer pixels = new BitmapParser(source).decode();
+    Path path = tempDir.resolve("reduced.bmp");
+
+    BitmapWriter.Format format = BitmapWriter.writeLossless(pixels, path);
+
+    Assertions.assertTrue(format.isIndexed());
+    Assertions.assertTrue(Files.size(path) * 4 < Files.size(source));
+    Assertions.assertTrue(new BitmapParser(path).decode().contentEquals(pixels));
+  }
+}
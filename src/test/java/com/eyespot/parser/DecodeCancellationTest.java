@@ -0,0 +1,161 @@
+package com.eyespot.parser;
+
+import static com.eyespot.TestImages.resource;
+
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import com.eyespot.imageparser.bitmap.DecodeOptions;
+import com.eyespot.imageparser.exception.DecodeCancelledException;
+import com.eyespot.imageparser.exception.DecodeCancelledException.Reason;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DecodeCancellationTest {
+
+  /** Replaces the pixel data of an RLE8 file with {@code repeats} copies of {@code code}. */
+  private static BitmapParser rle8WithPixelData(byte[] code, int repeats)
+      throws URISyntaxException, IOException {
+    byte[] bytes = Files.readAllBytes(resource("8bit_compressed.bmp"));
+    int offset = new BitmapParser(bytes).getOffset();
+    byte[] forged = Arrays.copyOf(bytes, offset + code.length * repeats);
+    for (int i = offset; i < forged.length; i += code.length) {
+      System.arraycopy(code, 0, forged, i, code.length);
+    }
+    return new BitmapParser(forged);
+  }
+
+  /** Counts the cancellation checks and cancels once {@code limit} of them have passed. */
+  private static final class CountingCancellation {
+    final AtomicInteger checks = new AtomicInteger();
+    final int limit;
+
+    CountingCancellation(int limit) {
+      this.limit = limit;
+    }
+
+    boolean isCancelled() {
+      return checks.incrementAndGet() > limit;
+    }
+  }
+
+  @Test
+  void GivenUncompressedImage_WhenDecoded_ThenCancellationIsCheckedOncePerScanline()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("24bit.bmp"));
+    CountingCancellation cancellation = new CountingCancellation(Integer.MAX_VALUE);
+
+    parser.decode(DecodeOptions.DEFAULT.withCancellation(cancellation::isCancelled));
+
+    Assertions.assertEquals(Math.abs(parser.getHeight()), cancellation.checks.get());
+  }
+
+  @Test
+  void GivenCancellationPartWayThrough_WhenDecoded_ThenStopsAndReportsRowsCompleted()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("24bit.bmp"));
+    CountingCancellation cancellation = new CountingCancellation(3);
+
+    DecodeCancelledException e =
+        Assertions.assertThrows(
+            DecodeCancelledException.class,
+            () -> parser.decode(DecodeOptions.DEFAULT.withCancellation(cancellation::isCancelled)));
+
+    Assertions.assertEquals(Reason.CANCELLED, e.getReason());
+    Assertions.assertEquals(3, e.getRowsCompleted());
+  }
+
+  @Test
+  void GivenDeadlineInThePast_WhenDecoded_ThenDeadlineExceeded()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("32bit_888_bitfield.bmp"));
+
+    DecodeCancelledException e =
+        Assertions.assertThrows(
+            DecodeCancelledException.class,
+            () -> parser.decode(DecodeOptions.DEFAULT.withDeadline(System.nanoTime() - 1)));
+
+    Assertions.assertEquals(Reason.DEADLINE_EXCEEDED, e.getReason());
+    Assertions.assertEquals(0, e.getRowsCompleted());
+  }
+
+  @Test
+  void GivenGenerousTimeout_WhenDecoded_ThenSameAsWithout() throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("8bit_compressed.bmp"));
+
+    Assertions.assertArrayEquals(
+        parser.getPixels(),
+        parser.decode(DecodeOptions.DEFAULT.withTimeout(Duration.ofDays(365_000))).toArray());
+  }
+
+  @Test
+  void GivenInterruptedThread_WhenDecoded_ThenStopsAndKeepsInterruptStatus()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("8bit.bmp"));
+
+    Thread.currentThread().interrupt();
+    DecodeCancelledException e;
+    try {
+      e = Assertions.assertThrows(DecodeCancelledException.class, parser::decode);
+    } finally {
+      Assertions.assertTrue(Thread.interrupted());
+    }
+
+    Assertions.assertEquals(Reason.INTERRUPTED, e.getReason());
+  }
+
+  @Test
+  void GivenRle8RunsThatNeverEndALine_WhenDecoded_ThenCancellationIsStillChecked()
+      throws URISyntaxException, IOException {
+    // 255-pixel runs on the first row, far past its end
+    BitmapParser parser = rle8WithPixelData(new byte[] {(byte) 0xFF, 0x00}, 100_000);
+    CountingCancellation cancellation = new CountingCancellation(5);
+
+    Assertions.assertThrows(
+        DecodeCancelledException.class,
+        () -> parser.decode(DecodeOptions.DEFAULT.withCancellation(cancellation::isCancelled)));
+
+    Assertions.assertEquals(6, cancellation.checks.get());
+  }
+
+  @Test
+  void GivenRle8DeltasThatNeverMove_WhenDecoded_ThenCancellationIsStillChecked()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = rle8WithPixelData(new byte[] {0x00, 0x02, 0x00, 0x00}, 100_000);
+    CountingCancellation cancellation = new CountingCancellation(Integer.MAX_VALUE);
+
+    parser.decode(DecodeOptions.DEFAULT.withCancellation(cancellation::isCancelled));
+
+    Assertions.assertTrue(cancellation.checks.get() > 1, "checks: " + cancellation.checks.get());
+  }
+
+  @Test
+  void GivenRle4Image_WhenCancelledAtThirdCheck_ThenThreeScanlinesAreCompleted()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("4bit_compressed.bmp"));
+    CountingCancellation cancellation = new CountingCancellation(2);
+
+    DecodeCancelledException e =
+        Assertions.assertThrows(
+            DecodeCancelledException.class,
+            () -> parser.decode(DecodeOptions.DEFAULT.withCancellation(cancellation::isCancelled)));
+
+    Assertions.assertEquals(3, e.getRowsCompleted());
+  }
+
+  @Test
+  void GivenInvalidTimeout_WhenOptionsBuilt_ThenThrows() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> DecodeOptions.DEFAULT.withTimeout(Duration.ofMillis(-1)));
+    Assertions.assertThrows(
+        NullPointerException.class, () -> DecodeOptions.DEFAULT.withTimeout(null));
+    Assertions.assertThrows(
+        NullPointerException.class, () -> DecodeOptions.DEFAULT.withCancellation(null));
+    Assertions.assertFalse(DecodeOptions.DEFAULT.hasDeadline());
+  }
+}
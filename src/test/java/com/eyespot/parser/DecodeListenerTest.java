@@ -0,0 +1,137 @@
+package com.eyespot.parser;
+
+import static com.eyespot.TestImages.resource;
+
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import com.eyespot.imageparser.bitmap.DecodeListener;
+import com.eyespot.imageparser.bitmap.DecodeListener.Stage;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DecodeListenerTest {
+
+  /** Records every callback as a line of text, and the stage timings separately. */
+  private static final class RecordingListener implements DecodeListener {
+    final List<String> calls = new ArrayList<>();
+    final List<Long> nanos = new ArrayList<>();
+
+    @Override
+    public void stageCompleted(Stage stage, long nanos) {
+      calls.add(stage.name());
+      this.nanos.add(nanos);
+    }
+
+    @Override
+    public void parsed(BitmapParser parser, long bytesRead) {
+      calls.add("parsed " + parser.getBitsPerPixel() + "bpp " + bytesRead);
+    }
+
+    @Override
+    public void decoded(BitmapParser parser, long pixels, boolean isCorrupted) {
+      calls.add("decoded " + pixels + (isCorrupted ? " corrupted" : ""));
+    }
+
+    @Override
+    public void failed(Stage stage, Exception e) {
+      calls.add("failed " + stage + " " + e.getClass().getSimpleName());
+    }
+  }
+
+  @Test
+  void GivenIndexedFile_WhenParsedAndDecoded_ThenEveryStageIsReportedInOrder()
+      throws URISyntaxException, IOException {
+    Path path = resource("8bit.bmp");
+    RecordingListener listener = new RecordingListener();
+
+    BitmapParser parser = new BitmapParser(path, listener);
+    parser.decode();
+
+    long pixels = (long) parser.getWidth() * Math.abs(parser.getHeight());
+    Assertions.assertEquals(
+        Arrays.asList(
+            "FILE_READ",
+            "HEADER",
+            "DIB_HEADER",
+            "COLOUR_PALETTE",
+            "parsed 8bpp " + Files.size(path),
+            "PIXEL_DECODE",
+            "decoded " + pixels),
+        listener.calls);
+    Assertions.assertTrue(listener.nanos.stream().allMatch(n -> n >= 0));
+  }
+
+  @Test
+  void GivenTrueColourBytes_WhenParsed_ThenNoFileReadOrPaletteIsReported()
+      throws URISyntaxException, IOException {
+    byte[] bytes = Files.readAllBytes(resource("24bit.bmp"));
+    RecordingListener listener = new RecordingListener();
+
+    new BitmapParser(bytes, listener);
+
+    Assertions.assertEquals(
+        Arrays.asList("HEADER", "DIB_HEADER", "parsed 24bpp " + bytes.length), listener.calls);
+  }
+
+  @Test
+  void GivenTruncatedPixelData_WhenDecoded_ThenCorruptionIsReported()
+      throws URISyntaxException, IOException {
+    byte[] bytes = Files.readAllBytes(resource("24bit.bmp"));
+    byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+    RecordingListener listener = new RecordingListener();
+    BitmapParser parser = new BitmapParser(truncated, listener);
+
+    parser.decode();
+
+    String last = listener.calls.get(listener.calls.size() - 1);
+    Assertions.assertTrue(last.startsWith("decoded ") && last.endsWith(" corrupted"), last);
+  }
+
+  @Test
+  void GivenBytesThatAreNotABitmap_WhenParsed_ThenHeaderFailureIsReported() {
+    byte[] bytes = new byte[64];
+    RecordingListener listener = new RecordingListener();
+
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> new BitmapParser(bytes, listener));
+
+    Assertions.assertEquals(
+        Arrays.asList("failed HEADER IllegalArgumentException"), listener.calls);
+  }
+
+  @Test
+  void GivenUnsupportedBitCount_WhenDecoded_ThenDecodeFailureIsReported()
+      throws URISyntaxException, IOException {
+    RecordingListener listener = new RecordingListener();
+    BitmapParser parser = new BitmapParser(resource("badbitcount.bmp"), listener);
+
+    Assertions.assertThrows(UnsupportedOperationException.class, parser::decode);
+
+    Assertions.assertEquals(
+        "failed PIXEL_DECODE UnsupportedOperationException",
+        listener.calls.get(listener.calls.size() - 1));
+  }
+
+  @Test
+  void GivenMissingFile_WhenParsed_ThenFileReadFailureIsReported() {
+    RecordingListener listener = new RecordingListener();
+
+    Assertions.assertThrows(
+        IOException.class, () -> new BitmapParser(Paths.get("missing.bmp"), listener));
+
+    Assertions.assertEquals(Arrays.asList("failed FILE_READ NoSuchFileException"), listener.calls);
+  }
+
+  @Test
+  void GivenNullListener_WhenParserCreated_ThenThrows() {
+    byte[] bytes = new byte[64];
+    Assertions.assertThrows(NullPointerException.class, () -> new BitmapParser(bytes, null));
+  }
+}
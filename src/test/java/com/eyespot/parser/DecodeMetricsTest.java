@@ -0,0 +1,103 @@
+package com.eyespot.parser;
+
+import static com.eyespot.TestImages.resourceBytes;
+
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import com.eyespot.imageparser.bitmap.DecodeListener;
+import com.eyespot.imageparser.bitmap.DecodeOptions;
+import com.eyespot.imageparser.bitmap.DecodeResult;
+import com.eyespot.imageparser.metrics.DecodeMetrics;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.util.Arrays;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DecodeMetricsTest {
+
+  @AfterEach
+  void tearDown() {
+    DecodeMetrics.unregister();
+  }
+
+  @Test
+  void GivenMetrics_WhenImagesDecoded_ThenCountsAndLatenciesAreRecorded()
+      throws URISyntaxException, IOException {
+    DecodeMetrics metrics = new DecodeMetrics();
+    byte[] bytes = resourceBytes("24bit.bmp");
+    BitmapParser parser = new BitmapParser(bytes, metrics);
+
+    parser.decode();
+    parser.decode();
+
+    long pixels = (long) parser.getWidth() * Math.abs(parser.getHeight());
+    Assertions.assertEquals(2, metrics.getDecodeCount());
+    Assertions.assertEquals(bytes.length, metrics.getBytesRead());
+    Assertions.assertEquals(2 * pixels, metrics.getPixelsDecoded());
+    Assertions.assertEquals(0, metrics.getErrorCount());
+    Assertions.assertTrue(metrics.getPixelsPerSecond() > 0);
+    Assertions.assertTrue(metrics.getLatencyMaxMillis() > 0);
+    Assertions.assertTrue(
+        metrics.getLatency50thPercentileMillis() <= metrics.getLatency999thPercentileMillis());
+    Assertions.assertTrue(
+        metrics.getLatency999thPercentileMillis() <= metrics.getLatencyMaxMillis());
+  }
+
+  @Test
+  void GivenMetrics_WhenDecodesFail_ThenErrorsAreCountedByType()
+      throws URISyntaxException, IOException {
+    DecodeMetrics metrics = new DecodeMetrics();
+    byte[] bytes = resourceBytes("24bit.bmp");
+    new BitmapParser(Arrays.copyOf(bytes, bytes.length / 2), metrics).decode();
+    BitmapParser unsupported = new BitmapParser(resourceBytes("badbitcount.bmp"), metrics);
+    Assertions.assertThrows(UnsupportedOperationException.class, unsupported::decode);
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> new BitmapParser(new byte[64], metrics));
+
+    Assertions.assertEquals(3, metrics.getErrorCount());
+    Assertions.assertEquals(1L, metrics.getErrorCounts().get("CorruptedImageException"));
+    Assertions.assertEquals(1L, metrics.getErrorCounts().get("UnsupportedOperationException"));
+    Assertions.assertEquals(1L, metrics.getErrorCounts().get("IllegalArgumentException"));
+
+    metrics.reset();
+    Assertions.assertEquals(0, metrics.getErrorCount());
+    Assertions.assertEquals(0, metrics.getDecodeCount());
+  }
+
+  @Test
+  void GivenTruncatedImage_WhenDecoded_ThenOnlyTheRowsDecodedAreCounted()
+      throws URISyntaxException, IOException {
+    DecodeMetrics metrics = new DecodeMetrics();
+    byte[] bytes = resourceBytes("24bit.bmp");
+    BitmapParser parser = new BitmapParser(Arrays.copyOf(bytes, bytes.length / 2), metrics);
+
+    DecodeResult result = parser.decodeWithResult(DecodeOptions.DEFAULT);
+
+    Assertions.assertTrue(result.getRowsCompleted() < Math.abs(parser.getHeight()));
+    Assertions.assertEquals(
+        (long) parser.getWidth() * result.getRowsCompleted(), metrics.getPixelsDecoded());
+  }
+
+  @Test
+  void GivenRegisteredMetrics_WhenParserCreatedWithoutListener_ThenMBeanReportsTheDecode()
+      throws URISyntaxException, IOException, JMException {
+    DecodeMetrics metrics = DecodeMetrics.register();
+    Assertions.assertSame(metrics, DecodeMetrics.register());
+
+    new BitmapParser(resourceBytes("8bit.bmp")).decode();
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(DecodeMetrics.OBJECT_NAME);
+    Assertions.assertEquals(1L, server.getAttribute(name, "DecodeCount"));
+    Assertions.assertNotNull(server.getAttribute(name, "ErrorCounts"));
+
+    DecodeMetrics.unregister();
+    Assertions.assertFalse(server.isRegistered(name));
+    Assertions.assertSame(DecodeListener.NONE, BitmapParser.getDefaultListener());
+  }
+}
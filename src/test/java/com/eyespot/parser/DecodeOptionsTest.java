@@ -0,0 +1,176 @@
+package com.eyespot.parser;
+
+import static com.eyespot.TestImages.resource;
+
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import com.eyespot.imageparser.bitmap.BitmapWriter;
+import com.eyespot.imageparser.bitmap.DecodeOptions;
+import com.eyespot.imageparser.bitmap.DecodeOptions.OutputFormat;
+import com.eyespot.imageparser.exception.CorruptedImageException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DecodeOptionsTest {
+
+  private static BitmapParser translucentImage() throws IOException {
+    PixelBuffer pixels = new PixelBuffer(3, 1);
+    pixels.setARGB(0, 0, 0xFF102030);
+    pixels.setARGB(1, 0, 0x80FF8040);
+    pixels.setARGB(2, 0, 0x00FFFFFF);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new BitmapWriter(BitmapWriter.Format.ARGB32_V5).write(pixels, Channels.newChannel(out));
+    return new BitmapParser(out.toByteArray());
+  }
+
+  @Test
+  void GivenHugeDeclaredDimensions_WhenDecodedWithDefaults_ThenRejectedBeforeAllocating()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("b/reallybig.bmp"));
+
+    IllegalArgumentException e =
+        Assertions.assertThrows(IllegalArgumentException.class, parser::decode);
+
+    Assertions.assertTrue(e.getMessage().contains("exceeds the limit"), e.getMessage());
+  }
+
+  @Test
+  void GivenPixelLimit_WhenImageIsLarger_ThenRejected() throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("24bit.bmp"));
+    long pixels = (long) parser.getWidth() * Math.abs(parser.getHeight());
+
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> parser.decode(DecodeOptions.DEFAULT.withMaxPixels(pixels - 1)));
+    Assertions.assertEquals(
+        parser.getWidth(), parser.decode(DecodeOptions.DEFAULT.withMaxPixels(pixels)).width());
+  }
+
+  @Test
+  void GivenDecodedSizeLimit_WhenImageIsLarger_ThenRejected()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("24bit.bmp"));
+    long bytes = (long) parser.getWidth() * Math.abs(parser.getHeight()) * Integer.BYTES;
+
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> parser.decode(DecodeOptions.DEFAULT.withMaxDecodedBytes(bytes - 1)));
+    Assertions.assertNotNull(parser.decode(DecodeOptions.DEFAULT.withMaxDecodedBytes(bytes)));
+  }
+
+  @Test
+  void GivenRleExpansionLimit_WhenCompressedImageExpandsFurther_ThenRejected()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("8bit_compressed.bmp"));
+
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> parser.decode(DecodeOptions.DEFAULT.withMaxRleExpansion(0.5)));
+    Assertions.assertArrayEquals(
+        parser.getPixels(),
+        parser.decode(DecodeOptions.DEFAULT.withMaxRleExpansion(255 / 2.0 * 8)).toArray());
+  }
+
+  @Test
+  void GivenRleExpansionLimit_WhenImageIsUncompressed_ThenLimitDoesNotApply()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("8bit.bmp"));
+
+    Assertions.assertNotNull(parser.decode(DecodeOptions.DEFAULT.withMaxRleExpansion(0.001)));
+  }
+
+  @Test
+  void GivenTruncatedPixelData_WhenDecodedStrictly_ThenThrowsWithCorruptionAsCause()
+      throws URISyntaxException, IOException {
+    byte[] bytes = Files.readAllBytes(resource("24bit.bmp"));
+    BitmapParser parser = new BitmapParser(Arrays.copyOf(bytes, bytes.length / 2));
+
+    IllegalArgumentException e =
+        Assertions.assertThrows(
+            IllegalArgumentException.class,
+            () -> parser.decode(DecodeOptions.DEFAULT.withStrict(true)));
+
+    Assertions.assertInstanceOf(CorruptedImageException.class, e.getCause());
+    Assertions.assertNotNull(parser.decode());
+  }
+
+  @Test
+  void GivenRleDeltaOutsideTheImage_WhenDecodedStrictly_ThenRejected()
+      throws URISyntaxException, IOException {
+    BitmapParser parser =
+        new BitmapParser(resource("malformed_bmp_common_8bpp_rle8_with_delta.bmp"));
+
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> parser.decode(DecodeOptions.DEFAULT.withStrict(true)));
+  }
+
+  @Test
+  void GivenWellFormedRle_WhenDecodedStrictly_ThenSameAsLenient()
+      throws URISyntaxException, IOException {
+    for (String name :
+        new String[] {
+          "8bit_compressed.bmp",
+          "4bit_compressed.bmp",
+          "bmp_common_8bpp_rle8_with_delta_esc_codes.bmp"
+        }) {
+      BitmapParser parser = new BitmapParser(resource(name));
+
+      Assertions.assertArrayEquals(
+          parser.getPixels(),
+          parser.decode(DecodeOptions.DEFAULT.withStrict(true)).toArray(),
+          name);
+    }
+  }
+
+  @Test
+  void GivenRgbOutput_WhenDecoded_ThenEveryPixelIsOpaque() throws IOException {
+    int[] pixels =
+        translucentImage()
+            .decode(DecodeOptions.DEFAULT.withOutputFormat(OutputFormat.RGB))
+            .toArray()[0];
+
+    Assertions.assertArrayEquals(new int[] {0xFF102030, 0xFFFF8040, 0xFFFFFFFF}, pixels);
+  }
+
+  @Test
+  void GivenPremultipliedOutput_WhenDecoded_ThenColoursAreScaledByAlpha() throws IOException {
+    int[] pixels =
+        translucentImage()
+            .decode(DecodeOptions.DEFAULT.withOutputFormat(OutputFormat.ARGB_PRE))
+            .toArray()[0];
+
+    Assertions.assertArrayEquals(new int[] {0xFF102030, 0x80804020, 0x00000000}, pixels);
+  }
+
+  @Test
+  void GivenInvalidSettings_WhenOptionsBuilt_ThenThrows() {
+    DecodeOptions options = DecodeOptions.DEFAULT;
+
+    Assertions.assertThrows(IllegalArgumentException.class, () -> options.withMaxPixels(-1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> options.withMaxDecodedBytes(-1));
+    Assertions.assertThrows(IllegalArgumentException.class, () -> options.withMaxRleExpansion(0));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> options.withMaxRleExpansion(Double.NaN));
+    Assertions.assertThrows(NullPointerException.class, () -> options.withOutputFormat(null));
+  }
+
+  @Test
+  void GivenDefaults_WhenCopiedWithChanges_ThenDefaultsAreUnchanged() {
+    DecodeOptions options =
+        DecodeOptions.DEFAULT.withMaxPixels(10).withStrict(true).withOutputFormat(OutputFormat.RGB);
+
+    Assertions.assertEquals(10, options.getMaxPixels());
+    Assertions.assertTrue(options.isStrict());
+    Assertions.assertEquals(OutputFormat.RGB, options.getOutputFormat());
+    Assertions.assertEquals(DecodeOptions.DEFAULT_MAX_PIXELS, DecodeOptions.DEFAULT.getMaxPixels());
+    Assertions.assertFalse(DecodeOptions.DEFAULT.isStrict());
+    Assertions.assertEquals(OutputFormat.ARGB, DecodeOptions.DEFAULT.getOutputFormat());
+  }
+}
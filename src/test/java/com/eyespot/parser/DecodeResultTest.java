@@ -0,0 +1,198 @@
+package com.eyespot.parser;
+
+import static com.eyespot.TestImages.resource;
+
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import com.eyespot.imageparser.bitmap.DecodeOptions;
+import com.eyespot.imageparser.bitmap.DecodeResult;
+import com.eyespot.imageparser.bitmap.DecodeResult.ErrorKind;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class DecodeResultTest {
+
+  @Test
+  void GivenWellFormedImage_WhenDecodedWithResult_ThenCompleteWithNoError()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("8bit.bmp"));
+    int height = Math.abs(parser.getHeight());
+
+    DecodeResult result = parser.decodeWithResult(DecodeOptions.DEFAULT);
+
+    Assertions.assertTrue(result.isComplete());
+    Assertions.assertEquals(ErrorKind.NONE, result.getErrorKind());
+    Assertions.assertEquals(height, result.getRowsCompleted());
+    Assertions.assertEquals(-1, result.getFirstBadOffset());
+    Assertions.assertNull(result.getErrorMessage());
+    Assertions.assertTrue(result.isRowDecoded(0) && result.isRowDecoded(height - 1));
+    Assertions.assertTrue(result.getPixels().contentEquals(parser.decode()));
+  }
+
+  @Test
+  void GivenTruncatedBottomUpImage_WhenDecodedWithResult_ThenBottomRowsAreValid()
+      throws URISyntaxException, IOException {
+    byte[] bytes = Files.readAllBytes(resource("24bit.bmp"));
+    BitmapParser whole = new BitmapParser(bytes);
+    int width = whole.getWidth();
+    int height = whole.getHeight();
+    Assertions.assertTrue(height > 0, "expected a bottom-up image");
+    int scanline = (width * 3 + 3) & ~3;
+    int keptRows = height / 3;
+    // cut the file part way through the scanline after the kept ones
+    int length = whole.getOffset() + keptRows * scanline + scanline / 2;
+    BitmapParser truncated = new BitmapParser(Arrays.copyOf(bytes, length));
+
+    DecodeResult result = truncated.decodeWithResult(DecodeOptions.DEFAULT.withStrict(true));
+
+    Assertions.assertFalse(result.isComplete());
+    Assertions.assertEquals(ErrorKind.TRUNCATED, result.getErrorKind());
+    Assertions.assertEquals(keptRows, result.getRowsCompleted());
+    Assertions.assertTrue(
+        result.getFirstBadOffset() > length - 3 && result.getFirstBadOffset() <= length,
+        "offset " + result.getFirstBadOffset());
+    Assertions.assertNotNull(result.getErrorMessage());
+    int[][] expected = whole.getPixels();
+    int[][] actual = result.getPixels().toArray();
+    for (int row = 0; row < height; row++) {
+      Assertions.assertEquals(row >= height - keptRows, result.isRowDecoded(row), "row " + row);
+      if (result.isRowDecoded(row)) {
+        Assertions.assertArrayEquals(expected[row], actual[row], "row " + row);
+      }
+    }
+  }
+
+  @Test
+  void GivenTruncatedBitfieldImage_WhenDecodedWithResult_ThenTruncatedAtTheCut()
+      throws URISyntaxException, IOException {
+    byte[] bytes = Files.readAllBytes(resource("32bit_888_bitfield.bmp"));
+    BitmapParser whole = new BitmapParser(bytes);
+    int scanline = whole.getWidth() * 4;
+    int keptRows = Math.abs(whole.getHeight()) / 2;
+    int length = whole.getOffset() + keptRows * scanline + 2;
+    BitmapParser truncated = new BitmapParser(Arrays.copyOf(bytes, length));
+
+    DecodeResult result = truncated.decodeWithResult(DecodeOptions.DEFAULT);
+
+    Assertions.assertEquals(ErrorKind.TRUNCATED, result.getErrorKind());
+    Assertions.assertEquals(keptRows, result.getRowsCompleted());
+    Assertions.assertEquals(length - 2, result.getFirstBadOffset());
+  }
+
+  @Test
+  void GivenRleAbsoluteRunCutShort_WhenDecodedWithResult_ThenTruncated()
+      throws URISyntaxException, IOException {
+    byte[] bytes = Files.readAllBytes(resource("8bit_compressed.bmp"));
+
+    // 1662 bytes ends part way through an absolute run
+    BitmapParser parser = new BitmapParser(Arrays.copyOf(bytes, 1662));
+    DecodeResult result = parser.decodeWithResult(DecodeOptions.DEFAULT);
+
+    Assertions.assertEquals(ErrorKind.TRUNCATED, result.getErrorKind());
+    Assertions.assertTrue(result.getFirstBadOffset() >= parser.getOffset());
+    Assertions.assertTrue(result.getFirstBadOffset() <= 1662);
+  }
+
+  @Test
+  void GivenRleRunOutsideTheImage_WhenDecodedStrictlyWithResult_ThenMalformedAtTheRun()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("b/badrle.bmp"));
+
+    DecodeResult result = parser.decodeWithResult(DecodeOptions.DEFAULT.withStrict(true));
+
+    Assertions.assertEquals(ErrorKind.MALFORMED, result.getErrorKind());
+    Assertions.assertTrue(result.getFirstBadOffset() >= parser.getOffset());
+    Assertions.assertTrue(result.getFirstBadOffset() < parser.getRawData().length);
+  }
+
+  @Test
+  void GivenRleStreamCutShort_WhenDecodedWithResult_ThenTruncatedWithinTheFile()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("b/rle8-absolute-cropped.bmp"));
+
+    DecodeResult result = parser.decodeWithResult(DecodeOptions.DEFAULT);
+
+    Assertions.assertEquals(ErrorKind.TRUNCATED, result.getErrorKind());
+    Assertions.assertTrue(result.getRowsCompleted() > 0);
+    Assertions.assertTrue(result.getRowsCompleted() < Math.abs(parser.getHeight()));
+    Assertions.assertTrue(result.getFirstBadOffset() <= parser.getRawData().length);
+  }
+
+  @Test
+  void GivenCancellation_WhenDecodedWithResult_ThenReportsInsteadOfThrowing()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("24bit.bmp"));
+
+    DecodeResult result =
+        parser.decodeWithResult(DecodeOptions.DEFAULT.withDeadline(System.nanoTime() - 1));
+
+    Assertions.assertEquals(ErrorKind.CANCELLED, result.getErrorKind());
+    Assertions.assertEquals(0, result.getRowsCompleted());
+    Assertions.assertEquals(-1, result.getFirstBadOffset());
+  }
+
+  @Test
+  void GivenProgressListener_WhenDecoded_ThenReportedEveryIntervalAndAtTheEnd()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("24bit.bmp"));
+    int height = Math.abs(parser.getHeight());
+    List<Integer> reports = new ArrayList<>();
+
+    parser.decode(
+        DecodeOptions.DEFAULT.withProgress(
+            10,
+            (rowsCompleted, total) -> {
+              Assertions.assertEquals(height, total);
+              reports.add(rowsCompleted);
+            }));
+
+    List<Integer> expected = new ArrayList<>();
+    for (int rows = 10; rows < height; rows += 10) {
+      expected.add(rows);
+    }
+    expected.add(height);
+    Assertions.assertEquals(expected, reports);
+  }
+
+  @Test
+  void GivenProgressListener_WhenRleDecodeStopsEarly_ThenCompletionIsNotReported()
+      throws URISyntaxException, IOException {
+    BitmapParser parser = new BitmapParser(resource("b/rle8-runlength-cropped.bmp"));
+    int height = Math.abs(parser.getHeight());
+    List<Integer> reports = new ArrayList<>();
+
+    DecodeResult result =
+        parser.decodeWithResult(
+            DecodeOptions.DEFAULT.withProgress(
+                16, (rowsCompleted, total) -> reports.add(rowsCompleted)));
+
+    Assertions.assertFalse(reports.isEmpty());
+    Assertions.assertFalse(reports.contains(height));
+    Assertions.assertTrue(reports.get(reports.size() - 1) <= result.getRowsCompleted());
+    Assertions.assertTrue(reports.stream().allMatch(rows -> rows % 16 == 0), reports.toString());
+  }
+
+  @Test
+  void GivenInvalidProgressSettings_WhenOptionsBuilt_ThenThrows() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> DecodeOptions.DEFAULT.withProgress(0, (rowsCompleted, height) -> {}));
+    Assertions.assertThrows(
+        NullPointerException.class, () -> DecodeOptions.DEFAULT.withProgress(1, null));
+  }
+
+  @Test
+  void GivenResult_WhenRowOutsideTheImage_ThenThrows() throws URISyntaxException, IOException {
+    DecodeResult result =
+        new BitmapParser(resource("8bit.bmp")).decodeWithResult(DecodeOptions.DEFAULT);
+
+    Assertions.assertThrows(IndexOutOfBoundsException.class, () -> result.isRowDecoded(-1));
+    Assertions.assertThrows(
+        IndexOutOfBoundsException.class, () -> result.isRowDecoded(result.getPixels().height()));
+  }
+}
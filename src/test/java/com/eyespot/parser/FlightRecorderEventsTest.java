@@ -0,0 +1,113 @@
+package com.eyespot.parser;
+
+import static com.eyespot.TestImages.resource;
+
+import com.eyespot.imageparser.Picture;
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import com.eyespot.imageparser.bitmap.BitmapWriter;
+import com.eyespot.imageparser.jfr.AlphaScanEvent;
+import com.eyespot.imageparser.jfr.ImageDecodeEvent;
+import com.eyespot.imageparser.jfr.ImageEncodeEvent;
+import com.eyespot.imageparser.jfr.ImageParseEvent;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Collectors;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class FlightRecorderEventsTest {
+
+  @TempDir Path tempDir;
+
+  /** Runs the task under a recording of the library's events and returns those it emitted. */
+  private List<RecordedEvent> record(String eventName, Runnable task) throws IOException {
+    Assumptions.assumeTrue(FlightRecorder.isAvailable(), "JFR is not available on this JVM");
+    Path file = tempDir.resolve("events.jfr");
+    try (Recording recording = new Recording()) {
+      recording.enable(eventName).withoutThreshold();
+      recording.start();
+      task.run();
+      recording.stop();
+      recording.dump(file);
+    }
+    return RecordingFile.readAllEvents(file).stream()
+        .filter(event -> event.getEventType().getName().equals(eventName))
+        .collect(Collectors.toList());
+  }
+
+  @Test
+  void GivenRecording_WhenImageParsedAndDecoded_ThenBothEventsDescribeTheImage()
+      throws URISyntaxException, IOException {
+    byte[] bytes = Files.readAllBytes(resource("8bit.bmp"));
+    BitmapParser parser = new BitmapParser(bytes);
+
+    List<RecordedEvent> parses = record(ImageParseEvent.NAME, () -> new BitmapParser(bytes));
+    List<RecordedEvent> decodes = record(ImageDecodeEvent.NAME, parser::decode);
+
+    Assertions.assertEquals(1, parses.size());
+    RecordedEvent parse = parses.get(0);
+    Assertions.assertEquals(parser.getWidth(), parse.getInt("width"));
+    Assertions.assertEquals(parser.getHeight(), parse.getInt("height"));
+    Assertions.assertEquals(8, parse.getInt("bitsPerPixel"));
+    Assertions.assertEquals(parser.getCompression(), parse.getInt("compression"));
+    Assertions.assertEquals(parser.getDibHeaderType().name(), parse.getString("headerType"));
+    Assertions.assertEquals(bytes.length, parse.getLong("bytes"));
+
+    Assertions.assertEquals(1, decodes.size());
+    RecordedEvent decode = decodes.get(0);
+    Assertions.assertEquals(
+        (long) parser.getWidth() * Math.abs(parser.getHeight()), decode.getLong("pixels"));
+    Assertions.assertFalse(decode.getBoolean("corrupted"));
+    Assertions.assertFalse(decode.getDuration().isNegative());
+  }
+
+  @Test
+  void GivenRecording_WhenImageWritten_ThenEncodeEventCarriesTheFormat() throws IOException {
+    PixelBuffer pixels = new PixelBuffer(5, 3);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    List<RecordedEvent> events =
+        record(
+            ImageEncodeEvent.NAME,
+            () -> {
+              try {
+                new BitmapWriter(BitmapWriter.Format.ARGB32_V5)
+                    .write(pixels, Channels.newChannel(out));
+              } catch (IOException e) {
+                throw new AssertionError(e);
+              }
+            });
+
+    Assertions.assertEquals(1, events.size());
+    RecordedEvent event = events.get(0);
+    Assertions.assertEquals(5, event.getInt("width"));
+    Assertions.assertEquals(32, event.getInt("bitsPerPixel"));
+    Assertions.assertEquals("BITMAPV5HEADER", event.getString("headerType"));
+    Assertions.assertEquals(out.size(), event.getLong("bytes"));
+  }
+
+  @Test
+  void GivenRecording_WhenPixelsScannedForAlpha_ThenAlphaScanEventIsEmitted() throws IOException {
+    PixelBuffer pixels = new PixelBuffer(4, 2);
+    pixels.setARGB(3, 1, 0x80FFFFFF);
+    Picture picture = Picture.fromPixels(pixels);
+
+    List<RecordedEvent> events = record(AlphaScanEvent.NAME, picture::hasAlpha);
+
+    Assertions.assertEquals(1, events.size());
+    Assertions.assertTrue(events.get(0).getBoolean("transparent"));
+    Assertions.assertFalse(events.get(0).getBoolean("decoded"));
+  }
+}
@@ -0,0 +1,206 @@
+package com.eyespot.parser;
+
+import com.eyespot.imageparser.IndexedImage;
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.bitmap.BitmapConstants;
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import com.eyespot.imageparser.bitmap.BitmapWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+class RleEncodingTest {
+
+  @TempDir Path tempDir;
+
+  private static int[] greyPalette(int size) {
+    int[] palette = new int[size];
+    for (int i = 0; i < size; i++) {
+      int v = i * 255 / (size - 1);
+      palette[i] = 0xFF000000 | (v << 16) | (v << 8) | v;
+    }
+    return palette;
+  }
+
+  // rows of runs with random lengths and colours, mixed with noisy stretches
+  private static IndexedImage sample(int width, int height, int colours, long seed) {
+    Random random = new Random(seed);
+    byte[] indices = new byte[width * height];
+    int i = 0;
+    while (i < indices.length) {
+      int length = 1 + random.nextInt(random.nextBoolean() ? 300 : 6);
+      byte colour = (byte) random.nextInt(colours);
+      boolean noisy = random.nextInt(4) == 0;
+      for (int k = 0; k < length && i < indices.length; k++, i++) {
+        indices[i] = noisy ? (byte) random.nextInt(colours) : colour;
+      }
+    }
+    return new IndexedImage(width, height, greyPalette(colours), indices);
+  }
+
+  private static byte[] encode(BitmapWriter.Format format, IndexedImage image) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new BitmapWriter(format).write(image, Channels.newChannel(out));
+    return out.toByteArray();
+  }
+
+  private static int pixelOffset(int paletteSize) {
+    return BitmapConstants.FILE_HEADER_SIZE
+        + BitmapConstants.BITMAPINFOHEADER_SIZE
+        + 4 * paletteSize;
+  }
+
+  @ParameterizedTest
+  @EnumSource(
+      value = BitmapWriter.Format.class,
+      names = {"RLE8", "RLE4"})
+  void GivenIndexedImage_WhenEncoded_ThenParserDecodesSamePixels(BitmapWriter.Format format)
+      throws IOException {
+    IndexedImage image = sample(517, 23, format == BitmapWriter.Format.RLE4 ? 16 : 200, 42);
+
+    BitmapParser parser = new BitmapParser(encode(format, image));
+
+    Assertions.assertEquals(format.getCompression(), parser.getCompression());
+    Assertions.assertTrue(parser.decode().contentEquals(image.toPixelBuffer()));
+  }
+
+  @Test
+  void GivenFlatImage_WhenEncodedAsRle8_ThenOutputIsFarSmallerThanUncompressed()
+      throws IOException {
+    byte[] indices = new byte[640 * 480];
+    for (int row = 0; row < 480; row++) {
+      Arrays.fill(indices, row * 640, row * 640 + 640, (byte) (row / 60));
+    }
+    IndexedImage image = new IndexedImage(640, 480, greyPalette(8), indices);
+    Path path = tempDir.resolve("flat.bmp");
+
+    new BitmapWriter(BitmapWriter.Format.RLE8).write(image, path);
+
+    byte[] bytes = Files.readAllBytes(path);
+    Assertions.assertTrue(bytes.length * 50L < indices.length);
+    BitmapParser parser = new BitmapParser(path);
+    Assertions.assertEquals(bytes.length - pixelOffset(8), parser.getImageDataSize());
+    Assertions.assertEquals(
+        bytes.length,
+        ByteBuffer.wrap(bytes, BitmapConstants.BF_SIZE_OFFSET, 4)
+            .order(ByteOrder.LITTLE_ENDIAN)
+            .getInt());
+    Assertions.assertTrue(parser.decode().contentEquals(image.toPixelBuffer()));
+  }
+
+  @Test
+  void GivenSameImage_WhenWrittenToFileAndStream_ThenBytesAreIdentical() throws IOException {
+    IndexedImage image = sample(300, 300, 256, 7);
+    Path path = tempDir.resolve("image.bmp");
+
+    new BitmapWriter(BitmapWriter.Format.RLE8).write(image, path);
+
+    Assertions.assertArrayEquals(encode(BitmapWriter.Format.RLE8, image), Files.readAllBytes(path));
+  }
+
+  @Test
+  void GivenTransparentPaletteEntry_WhenEncoded_ThenPixelsAreSkipped() throws IOException {
+    int[] palette = {0x00000000, 0xFFFF0000, 0xFF0000FF};
+    byte[] indices = {
+      0, 0, 1, 1, 0, 2, 0, 0,
+      1, 2, 1, 2, 1, 0, 0, 0,
+      0, 0, 0, 0, 0, 0, 0, 0
+    };
+    IndexedImage image = new IndexedImage(8, 3, palette, indices);
+
+    for (BitmapWriter.Format format :
+        new BitmapWriter.Format[] {BitmapWriter.Format.RLE8, BitmapWriter.Format.RLE4}) {
+      PixelBuffer decoded = new BitmapParser(encode(format, image)).decode();
+      Assertions.assertTrue(decoded.contentEquals(image.toPixelBuffer()), format.toString());
+    }
+  }
+
+  @Test
+  void GivenRandomRows_WhenEncoded_ThenSizeMatchesOptimalEncoding() throws IOException {
+    Random random = new Random(3);
+    for (int trial = 0; trial < 200; trial++) {
+      boolean fourBit = trial % 2 == 0;
+      int colours = fourBit ? 1 + random.nextInt(16) : 1 + random.nextInt(256);
+      int width = 1 + random.nextInt(trial < 150 ? 40 : 700);
+      byte[] indices = new byte[width];
+      for (int i = 0; i < width; i++) {
+        indices[i] =
+            random.nextInt(3) == 0 && i > 0 ? indices[i - 1] : (byte) random.nextInt(colours);
+      }
+      int[] palette = new int[colours];
+      Arrays.fill(palette, 0xFF000000);
+      IndexedImage image = new IndexedImage(width, 1, palette, indices);
+      BitmapWriter.Format format = fourBit ? BitmapWriter.Format.RLE4 : BitmapWriter.Format.RLE8;
+
+      byte[] bytes = encode(format, image);
+
+      int expected = optimalCost(indices, fourBit) + 2; // plus end of bitmap
+      Assertions.assertEquals(expected, bytes.length - pixelOffset(colours), "trial " + trial);
+      Assertions.assertTrue(
+          new BitmapParser(bytes).decode().contentEquals(image.toPixelBuffer()), "trial " + trial);
+    }
+  }
+
+  // exhaustive dynamic programme over every run length, as a reference
+  private static int optimalCost(byte[] px, boolean fourBit) {
+    int n = px.length;
+    int[] cost = new int[n + 1];
+    for (int i = n - 1; i >= 0; i--) {
+      int best = Integer.MAX_VALUE;
+      for (int length = 1; length <= 255 && i + length <= n; length++) {
+        int k = i + length - 1;
+        boolean matches = fourBit ? px[k] == px[i + ((length - 1) % 2)] : px[k] == px[i];
+        if (!matches) {
+          break;
+        }
+        best = Math.min(best, 2 + cost[i + length]);
+      }
+      for (int length = 3; length <= 255 && i + length <= n; length++) {
+        int bytes = fourBit ? (length + 1) / 2 : length;
+        best = Math.min(best, 2 + bytes + (bytes % 2) + cost[i + length]);
+      }
+      cost[i] = best;
+    }
+    return cost[0];
+  }
+
+  @Test
+  void GivenInvalidInput_WhenWritten_ThenThrowsIllegalArgumentException() {
+    IndexedImage wide = new IndexedImage(1, 1, greyPalette(17), new byte[] {16});
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> encode(BitmapWriter.Format.RLE4, wide));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> encode(BitmapWriter.Format.RGB24, wide));
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () ->
+            new BitmapWriter(BitmapWriter.Format.RLE8)
+                .write(new PixelBuffer(1, 1), Channels.newChannel(new ByteArrayOutputStream())));
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> new IndexedImage(2, 1, greyPalette(2), new byte[] {0, 2}));
+  }
+
+  @Test
+  void GivenPalette_WhenChangedOutsideTheImage_ThenImageKeepsItsColours() {
+    int[] palette = {0xFF000000, 0xFFFFFFFF};
+    IndexedImage image = new IndexedImage(2, 1, palette, new byte[] {0, 1});
+
+    palette[1] = 0xFFFF0000;
+    image.getPalette()[0] = 0xFF00FF00;
+
+    Assertions.assertEquals(0xFF000000, image.getARGB(0, 0));
+    Assertions.assertEquals(0xFFFFFFFF, image.getARGB(1, 0));
+  }
+}
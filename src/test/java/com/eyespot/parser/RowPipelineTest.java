@@ -0,0 +1,187 @@
+package com.eyespot.parser;
+
+import static com.eyespot.TestImages.resource;
+
+import com.eyespot.imageparser.IndexedImage;
+import com.eyespot.imageparser.PixelBuffer;
+import com.eyespot.imageparser.bitmap.BitmapConstants;
+import com.eyespot.imageparser.bitmap.BitmapParser;
+import com.eyespot.imageparser.bitmap.BitmapRowSink;
+import com.eyespot.imageparser.bitmap.BitmapRowSource;
+import com.eyespot.imageparser.bitmap.BitmapWriter;
+import com.eyespot.imageparser.pipeline.RowPipeline;
+import com.eyespot.imageparser.pipeline.RowTransform;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+class RowPipelineTest {
+
+  @TempDir Path tempDir;
+
+  private Path stream(Path input, BitmapWriter.Format format, RowTransform transform, boolean flip)
+      throws IOException {
+    Path output = tempDir.resolve("out.bmp");
+    try (BitmapRowSource source = BitmapRowSource.open(input);
+        BitmapRowSink sink = new BitmapRowSink(output, format)) {
+      RowPipeline pipeline = new RowPipeline(source);
+      if (transform != null) {
+        pipeline.then(transform);
+      }
+      if (flip) {
+        pipeline.flipVertically();
+      }
+      pipeline.run(sink);
+    }
+    return output;
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {
+        "1bit.bmp",
+        "4bit.bmp",
+        "8bit.bmp",
+        "16bit.bmp",
+        "16bit_565_bitfield.bmp",
+        "24bit.bmp",
+        "32bit_888_bitfield.bmp",
+        "32bit_v5.bmp",
+        "core_header_1bit.bmp",
+        "bmp_v4_palette_alpha.bmp",
+        "8bit_compressed.bmp",
+        "4bit_compressed.bmp",
+        "bmp_common_8bpp_rle8_with_delta_esc_codes.bmp",
+        "b/badrle.bmp",
+        "b/badrle4bis.bmp",
+        "b/rletopdown.bmp",
+        "b/rle8-absolute-cropped.bmp",
+        "b/rle8-delta-cropped.bmp"
+      })
+  void GivenBitmap_WhenStreamedThroughPipeline_ThenPixelsMatchDecode(String name)
+      throws URISyntaxException, IOException {
+    Path input = resource(name);
+
+    Path output = stream(input, BitmapWriter.Format.ARGB32_V5, null, false);
+
+    PixelBuffer expected = new BitmapParser(input).decode();
+    Assertions.assertTrue(new BitmapParser(output).decode().contentEquals(expected));
+  }
+
+  @Test
+  void GivenTransformAndFlip_WhenStreamed_ThenOutputIsTransformedAndUpsideDown()
+      throws URISyntaxException, IOException {
+    Path input = resource("24bit.bmp");
+
+    Path output = stream(input, BitmapWriter.Format.RGB24, RowTransform.grayscale(), true);
+
+    PixelBuffer expected = new BitmapParser(input).decode();
+    int[] row = new int[expected.width()];
+    for (int y = 0; y < expected.height(); y++) {
+      expected.getARGB(0, y, row.length, 1, row, 0, row.length);
+      RowTransform.grayscale().apply(row, row.length);
+      expected.setARGB(0, y, row.length, 1, row, 0, row.length);
+    }
+    BitmapParser parser = new BitmapParser(output);
+    Assertions.assertTrue(parser.decode().contentEquals(expected.flipVertical()));
+    Assertions.assertTrue(parser.decode().isOriginUpperLeft());
+  }
+
+  @Test
+  void GivenLargeImage_WhenStreamed_ThenRowsSpanSeveralChunks() throws IOException {
+    PixelBuffer pixels = new PixelBuffer(1001, 300);
+    for (int i = 0; i < pixels.getPixels().length; i++) {
+      pixels.getPixels()[i] = 0xFF000000 | (i * 7919);
+    }
+    Path input = tempDir.resolve("large.bmp");
+    new BitmapWriter(BitmapWriter.Format.RGB24).write(pixels, input);
+
+    Path output =
+        stream(
+            input,
+            BitmapWriter.Format.RGB32,
+            RowTransform.swapRedBlue().andThen(RowTransform.flipHorizontal()),
+            false);
+
+    PixelBuffer decoded = new BitmapParser(output).decode();
+    for (int y = 0; y < 300; y += 37) {
+      for (int x = 0; x < 1001; x += 53) {
+        int argb = pixels.getARGB(1000 - x, y);
+        int swapped = (argb & 0xFF00FF00) | (argb >>> 16) & 0xFF | (argb & 0xFF) << 16;
+        Assertions.assertEquals(swapped, decoded.getARGB(x, y));
+      }
+    }
+  }
+
+  @ParameterizedTest
+  @EnumSource(
+      value = BitmapWriter.Format.class,
+      names = {"RLE8", "RLE4"})
+  void GivenLargeRunLengthEncodedImage_WhenStreamed_ThenRowsSpanSeveralChunks(
+      BitmapWriter.Format format) throws IOException {
+    int colours = format == BitmapWriter.Format.RLE8 ? 256 : 16;
+    int[] palette = new int[colours];
+    for (int i = 0; i < colours; i++) {
+      palette[i] = 0xFF000000 | (i * 0x010305);
+    }
+    // runs of random length, and noise that needs absolute runs, so codes straddle the chunks
+    Random random = new Random(36);
+    byte[] indices = new byte[1200 * 500];
+    for (int i = 0; i < indices.length; ) {
+      int length = random.nextBoolean() ? 1 + random.nextInt(40) : 1;
+      Arrays.fill(indices, i, Math.min(indices.length, i + length), (byte) random.nextInt(colours));
+      i += length;
+    }
+    Path input = tempDir.resolve("large-rle.bmp");
+    new BitmapWriter(format).write(new IndexedImage(1200, 500, palette, indices), input);
+    Assertions.assertTrue(Files.size(input) > 64 * 1024, "expected more than one chunk");
+
+    Path output = stream(input, BitmapWriter.Format.ARGB32_V5, null, false);
+
+    PixelBuffer expected = new BitmapParser(input).decode();
+    Assertions.assertTrue(new BitmapParser(output).decode().contentEquals(expected));
+  }
+
+  @Test
+  void GivenRunLengthEncodedFile_WhenOpened_ThenMetadataComesFromTheHeaders()
+      throws URISyntaxException, IOException {
+    try (BitmapRowSource source = BitmapRowSource.open(resource("4bit_compressed.bmp"))) {
+      Assertions.assertEquals(BitmapConstants.BI_RLE4, source.getCompression());
+      Assertions.assertEquals(4, source.getBitsPerPixel());
+      Assertions.assertNotNull(source.getDibHeaderType());
+    }
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> BitmapRowSource.open(resource("bmp_common_4bpp_rle8_with_delta.bmp")));
+  }
+
+  @Test
+  void GivenSourceAndSink_WhenMisused_ThenThrows() throws URISyntaxException, IOException {
+    try (BitmapRowSource source = BitmapRowSource.open(resource("1bit.bmp"));
+        BitmapRowSink sink =
+            new BitmapRowSink(tempDir.resolve("out.bmp"), BitmapWriter.Format.RGB24)) {
+      int[] row = new int[source.width()];
+      Assertions.assertThrows(IllegalStateException.class, () -> sink.writeRow(row));
+      sink.begin(source.width(), source.height(), source.isBottomUp());
+      sink.writeRow(row);
+      Assertions.assertThrows(IllegalStateException.class, sink::end);
+      for (int y = 0; y < source.height(); y++) {
+        source.readRow(row);
+      }
+      Assertions.assertThrows(NoSuchElementException.class, () -> source.readRow(row));
+    }
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> new BitmapRowSink(tempDir.resolve("rle.bmp"), BitmapWriter.Format.RLE8));
+  }
+}
@@ -1,6 +1,7 @@
 package com.eyespot.util;
 
 import com.eyespot.imageparser.ImageType;
+import com.eyespot.imageparser.exception.CorruptedImageException;
 import com.eyespot.imageparser.util.ImageUtils;
 import java.io.IOException;
 import java.net.URISyntaxException;
@@ -46,6 +47,27 @@ class ImageUtilsTest {
     Assertions.assertEquals(10, ImageUtils.readShort(bytes, 0));
   }
 
+  @Test
+  void GivenNegativeBytes_ReadIntAndReadShort_KeepTheSign() {
+    byte[] bytes = {0x00, (byte) 0xFE, (byte) 0xFF, (byte) 0xFF};
+    Assertions.assertEquals(-512, ImageUtils.readInt(bytes, 0));
+    Assertions.assertEquals(-2, ImageUtils.readShort(bytes, 1));
+  }
+
+  @Test
+  void GivenOffsetNearTheEnd_ReadInt_PadsMissingBytesWithZero() {
+    byte[] bytes = {0x01, 0x02, 0x03};
+    Assertions.assertEquals(0x0302, ImageUtils.readInt(bytes, 1));
+    Assertions.assertEquals(0x03, ImageUtils.readShort(bytes, 2));
+  }
+
+  @Test
+  void GivenOffsetPastTheEnd_ReadInt_Throws() {
+    byte[] bytes = {0x01, 0x02};
+    Assertions.assertThrows(IndexOutOfBoundsException.class, () -> ImageUtils.readInt(bytes, 3));
+    Assertions.assertThrows(IndexOutOfBoundsException.class, () -> ImageUtils.readShort(bytes, -1));
+  }
+
   @Test
   void GivenBytes_IsEmpty_ReturnsUndetermined() {
     byte[] bytes = null;
@@ -74,4 +96,23 @@ class ImageUtilsTest {
     Assertions.assertThrows(
         IllegalArgumentException.class, () -> ImageUtils.ensureBytesAvailable(0, 4, "", 3, false));
   }
+
+  @Test
+  void GivenMessageTemplate_WhenNotEnoughBytesForNextRead_ThenThrowsFormattedMessage() {
+    CorruptedImageException e =
+        Assertions.assertThrows(
+            CorruptedImageException.class,
+            () -> ImageUtils.ensureBytesAvailable(2, 4, "pixel at (%d,%d)", 5, true, 7, 9));
+    Assertions.assertEquals("pixel at (7,9)", e.getMessage());
+  }
+
+  @Test
+  void GivenCorruptedFlag_WhenNotEnoughBytes_ThenExceptionCarriesTheOffset() {
+    CorruptedImageException e =
+        Assertions.assertThrows(
+            CorruptedImageException.class,
+            () -> ImageUtils.ensureBytesAvailable(3, 4, "truncated", 5, true));
+    Assertions.assertEquals(3, e.getOffset());
+    Assertions.assertTrue(e.isTruncated());
+  }
 }
@@ -0,0 +1,118 @@
+package com.eyespot.util;
+
+import com.eyespot.imageparser.util.LogLinearHistogram;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class LogLinearHistogramTest {
+
+  @Test
+  void GivenEmptyHistogram_WhenRead_ThenEverythingIsZero() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+
+    Assertions.assertEquals(0, histogram.getCount());
+    Assertions.assertEquals(0, histogram.getMax());
+    Assertions.assertEquals(0, histogram.getMean());
+    Assertions.assertEquals(0, histogram.getValueAtPercentile(99));
+  }
+
+  @Test
+  void GivenSmallValues_WhenRecorded_ThenPercentilesAreExact() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    for (int v = 1; v <= 7; v++) {
+      histogram.record(v);
+    }
+
+    Assertions.assertEquals(7, histogram.getCount());
+    Assertions.assertEquals(4, histogram.getValueAtPercentile(50));
+    Assertions.assertEquals(7, histogram.getValueAtPercentile(100));
+    Assertions.assertEquals(1, histogram.getValueAtPercentile(0));
+    Assertions.assertEquals(4.0, histogram.getMean());
+  }
+
+  @Test
+  void GivenSpreadOfValues_WhenRecorded_ThenPercentilesAreWithinOneBucket() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    Random random = new Random(7);
+    long[] values = new long[10_000];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (long) Math.exp(random.nextDouble() * 25);
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+
+    for (double percentile : new double[] {10, 50, 90, 99, 99.9}) {
+      long exact = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+      long estimate = histogram.getValueAtPercentile(percentile);
+      Assertions.assertTrue(estimate >= exact, percentile + ": " + estimate + " < " + exact);
+      Assertions.assertTrue(estimate <= exact * 1.125 + 1, percentile + ": " + estimate);
+    }
+    Assertions.assertEquals(values[values.length - 1], histogram.getMax());
+  }
+
+  @Test
+  void GivenExtremeValues_WhenRecorded_ThenTheyAreCountedWithoutOverflow() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE);
+
+    Assertions.assertEquals(2, histogram.getCount());
+    Assertions.assertEquals(0, histogram.getValueAtPercentile(50));
+    Assertions.assertEquals(Long.MAX_VALUE, histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  void GivenManyThreads_WhenRecordingConcurrently_ThenNoValueIsLost() throws Exception {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    int threads = 16;
+    int perThread = 50_000;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; t++) {
+        futures.add(
+            executor.submit(
+                () -> {
+                  for (int i = 0; i < perThread; i++) {
+                    histogram.record(i);
+                  }
+                }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    Assertions.assertEquals((long) threads * perThread, histogram.getCount());
+    Assertions.assertEquals(perThread - 1, histogram.getMax());
+  }
+
+  @Test
+  void GivenRecordedValues_WhenReset_ThenHistogramIsEmpty() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    histogram.record(1000);
+
+    histogram.reset();
+
+    Assertions.assertEquals(0, histogram.getCount());
+    Assertions.assertEquals(0, histogram.getMax());
+  }
+
+  @Test
+  void GivenPercentileOutOfRange_WhenRead_ThenThrows() {
+    LogLinearHistogram histogram = new LogLinearHistogram();
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> histogram.getValueAtPercentile(101));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> histogram.getValueAtPercentile(Double.NaN));
+  }
+}
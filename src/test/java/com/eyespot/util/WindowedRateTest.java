@@ -0,0 +1,60 @@
+package com.eyespot.util;
+
+import com.eyespot.imageparser.util.WindowedRate;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class WindowedRateTest {
+
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  @Test
+  void GivenNothingCounted_WhenRead_ThenRateIsZero() {
+    WindowedRate rate = new WindowedRate(0);
+
+    Assertions.assertEquals(0, rate.getPerSecond(0));
+    Assertions.assertEquals(0, rate.getPerSecond(90 * SECOND));
+  }
+
+  @Test
+  void GivenLessThanAWindow_WhenRead_ThenRateIsOverTheTimeSinceStart() {
+    WindowedRate rate = new WindowedRate(0);
+    rate.add(100, SECOND);
+    rate.add(300, 12 * SECOND);
+
+    Assertions.assertEquals(400 / 20.0, rate.getPerSecond(20 * SECOND), 1e-9);
+  }
+
+  @Test
+  void GivenSteadyLoadThatStops_WhenRead_ThenRateFallsToZeroWithinAMinute() {
+    WindowedRate rate = new WindowedRate(0);
+    for (int second = 0; second < 300; second++) {
+      rate.add(1000, second * SECOND);
+    }
+
+    Assertions.assertEquals(1000, rate.getPerSecond(300 * SECOND), 1000 * 0.1);
+    Assertions.assertEquals(0, rate.getPerSecond(370 * SECOND));
+  }
+
+  @Test
+  void GivenLoadThatChanges_WhenRead_ThenRateFollowsTheLastMinute() {
+    WindowedRate rate = new WindowedRate(0);
+    for (int second = 0; second < 600; second++) {
+      rate.add(second < 540 ? 10 : 1000, second * SECOND);
+    }
+
+    // an average since start would still be below 110
+    Assertions.assertTrue(rate.getPerSecond(600 * SECOND) > 900);
+  }
+
+  @Test
+  void GivenReset_WhenRead_ThenEarlierCountsAreForgotten() {
+    WindowedRate rate = new WindowedRate(0);
+    rate.add(500, SECOND);
+    rate.reset(2 * SECOND);
+    rate.add(40, 3 * SECOND);
+
+    Assertions.assertEquals(40 / 2.0, rate.getPerSecond(4 * SECOND), 1e-9);
+  }
+}
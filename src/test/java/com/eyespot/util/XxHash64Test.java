@@ -0,0 +1,45 @@
+package com.eyespot.util;
+
+import com.eyespot.imageparser.util.XxHash64;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class XxHash64Test {
+
+  // "abcdefghijklmnopqrstuvwxyz0123456789" as little-endian ints
+  private static int[] alphabet() {
+    byte[] bytes = "abcdefghijklmnopqrstuvwxyz0123456789".getBytes(StandardCharsets.US_ASCII);
+    ByteBuffer buffer = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    int[] ints = new int[bytes.length / 4];
+    buffer.asIntBuffer().get(ints);
+    return ints;
+  }
+
+  @Test
+  void GivenEmptyInput_WhenHash_ThenMatchesReferenceDigest() {
+    Assertions.assertEquals(0xEF46DB3751D8E999L, XxHash64.hash(new int[0], 0, 0, 0));
+  }
+
+  @Test
+  void GivenKnownInput_WhenHash_ThenMatchesReferenceDigest() {
+    int[] data = alphabet();
+    Assertions.assertEquals(0xDE0327B0D25D92CCL, XxHash64.hash(data, 0, 1, 0));
+    Assertions.assertEquals(0x64F23ECF1609B766L, XxHash64.hash(data, 0, data.length, 0));
+    Assertions.assertEquals(0x3444D3C79B397331L, XxHash64.hash(data, 0, data.length, 2654435761L));
+  }
+
+  @Test
+  void GivenInputInChunks_WhenUpdate_ThenDigestMatchesSingleCall() {
+    int[] data = new int[100];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = i * 0x9E3779B9;
+    }
+    XxHash64 hasher = new XxHash64(7);
+    hasher.update(data, 0, 3).update(data, 3, 0).update(data, 3, 13).update(data, 16, 84);
+
+    Assertions.assertEquals(XxHash64.hash(data, 0, data.length, 7), hasher.digest());
+  }
+}